@@ -0,0 +1,35 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/**
+ * Startup class for the lightweight mock runtime. Only domain model, dispatchers, mock caches and Rest/Soap mock
+ * controllers are packaged, so component scanning only finds what is needed for serving mocks.
+ * @author laurent
+ */
+@SpringBootApplication
+public class MockRuntimeApplication {
+
+   public static void main(String[] args) {
+      SpringApplication.run(MockRuntimeApplication.class, args);
+   }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.mockruntime;
+
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import io.github.microcks.service.MockDefinitionSource;
+import io.github.microcks.util.snapshot.CatalogSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * MockDefinitionSource serving Services and Responses directly from a memory-mapped binary catalog snapshot
+ * (see ImportExportService.exportCatalogSnapshot()). Only the snapshot index is loaded at startup, records are
+ * decoded on lookup and then kept by mock routing index and response cache. Snapshot is read-only: this source
+ * is intended for nodes only serving mocks.
+ * @author laurent
+ */
+@Component
+@ConditionalOnProperty(name = "mocks.source", havingValue = "binary-snapshot")
+public class BinarySnapshotMockDefinitionSource implements MockDefinitionSource {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(BinarySnapshotMockDefinitionSource.class);
+
+   @Value("${mocks.binary-snapshot.location:/deployments/catalog.snapshot}")
+   private String snapshotLocation;
+
+   private CatalogSnapshot snapshot;
+
+
+   @PostConstruct
+   public void openSnapshot() throws IOException {
+      long startTime = System.currentTimeMillis();
+      snapshot = CatalogSnapshot.open(Paths.get(snapshotLocation));
+      log.info("Catalog snapshot {} opened in {} ms with {} services and {} responses", snapshotLocation,
+            System.currentTimeMillis() - startTime, snapshot.getServiceCount(), snapshot.getResponseCount());
+   }
+
+   @Override
+   public List<Service> findAllServices() {
+      try {
+         return snapshot.getServices();
+      } catch (IOException ioe) {
+         log.error("Services cannot be read from catalog snapshot", ioe);
+      }
+      return Collections.emptyList();
+   }
+
+   @Override
+   public Service findServiceByNameAndVersion(String name, String version) {
+      try {
+         return snapshot.findService(name, version);
+      } catch (IOException ioe) {
+         log.error("Service [{}, {}] cannot be read from catalog snapshot", name, version, ioe);
+      }
+      return null;
+   }
+
+   @Override
+   public List<Response> findResponsesByOperationIdAndDispatchCriteria(String operationId, String dispatchCriteria) {
+      try {
+         return snapshot.findResponsesByOperationIdAndDispatchCriteria(operationId, dispatchCriteria);
+      } catch (IOException ioe) {
+         log.error("Responses of {} cannot be read from catalog snapshot", operationId, ioe);
+      }
+      return Collections.emptyList();
+   }
+
+   @Override
+   public List<Response> findResponsesByOperationIdAndName(String operationId, String name) {
+      try {
+         return snapshot.findResponsesByOperationIdAndName(operationId, name);
+      } catch (IOException ioe) {
+         log.error("Responses of {} cannot be read from catalog snapshot", operationId, ioe);
+      }
+      return Collections.emptyList();
+   }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.mockruntime;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import io.github.microcks.service.MockDefinitionSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * MockDefinitionSource serving Services and Responses from a repository snapshot exported by Microcks
+ * (see /api/export). Snapshot is loaded once at startup and kept in memory, so no database is needed.
+ * @author laurent
+ */
+@Component
+@ConditionalOnProperty(name = "mocks.source", havingValue = "snapshot")
+public class SnapshotMockDefinitionSource implements MockDefinitionSource {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(SnapshotMockDefinitionSource.class);
+
+   @Value("${mocks.snapshot.location:file:/deployments/snapshot.json}")
+   private Resource snapshotLocation;
+
+   private List<Service> services = Collections.emptyList();
+   private Map<String, Service> servicesByKey = Collections.emptyMap();
+   private Map<String, List<Response>> responsesByOperation = Collections.emptyMap();
+
+
+   @PostConstruct
+   public void loadSnapshot() throws IOException {
+      log.info("Loading mocks snapshot from {}", snapshotLocation);
+      try (InputStream stream = snapshotLocation.getInputStream()) {
+         load(stream);
+      }
+   }
+
+   /**
+    * Load a repository snapshot, replacing the currently loaded one.
+    * @param stream The stream of snapshot JSON content
+    * @throws IOException if snapshot cannot be read
+    */
+   public void load(InputStream stream) throws IOException {
+      ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+      Snapshot snapshot = mapper.readValue(stream, Snapshot.class);
+
+      List<Service> loadedServices = (snapshot.services != null ? snapshot.services : new ArrayList<>());
+      Map<String, Service> loadedServicesByKey = new HashMap<>();
+      for (Service service : loadedServices) {
+         loadedServicesByKey.putIfAbsent(buildServiceKey(service.getName(), service.getVersion()), service);
+      }
+      Map<String, List<Response>> loadedResponses = (snapshot.responses != null ?
+            snapshot.responses.stream().filter(r -> r.getOperationId() != null)
+                  .collect(Collectors.groupingBy(Response::getOperationId)) : new HashMap<>());
+
+      services = Collections.unmodifiableList(loadedServices);
+      servicesByKey = loadedServicesByKey;
+      responsesByOperation = loadedResponses;
+      log.info("Mocks snapshot loaded with {} services and {} responses", services.size(),
+            snapshot.responses != null ? snapshot.responses.size() : 0);
+   }
+
+   @Override
+   public List<Service> findAllServices() {
+      return services;
+   }
+
+   @Override
+   public Service findServiceByNameAndVersion(String name, String version) {
+      return servicesByKey.get(buildServiceKey(name, version));
+   }
+
+   @Override
+   public List<Response> findResponsesByOperationIdAndDispatchCriteria(String operationId, String dispatchCriteria) {
+      return responsesByOperation.getOrDefault(operationId, Collections.emptyList()).stream()
+            .filter(r -> Objects.equals(dispatchCriteria, r.getDispatchCriteria()))
+            .collect(Collectors.toList());
+   }
+
+   @Override
+   public List<Response> findResponsesByOperationIdAndName(String operationId, String name) {
+      return responsesByOperation.getOrDefault(operationId, Collections.emptyList()).stream()
+            .filter(r -> Objects.equals(name, r.getName()))
+            .collect(Collectors.toList());
+   }
+
+   private static String buildServiceKey(String name, String version) {
+      return name + ":" + version;
+   }
+
+
+   /** The parts of an export snapshot needed for serving mocks, resources and requests are ignored. */
+   @JsonIgnoreProperties(ignoreUnknown = true)
+   private static class Snapshot {
+      public List<Service> services;
+      public List<Response> responses;
+   }
+}
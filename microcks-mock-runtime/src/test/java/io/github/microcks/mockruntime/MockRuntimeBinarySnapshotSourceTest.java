@@ -0,0 +1,112 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.mockruntime;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.microcks.MockRuntimeApplication;
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import io.github.microcks.service.CatalogCoherenceManager;
+import io.github.microcks.service.MockDefinitionSource;
+import io.github.microcks.service.MockResponseCache;
+import io.github.microcks.service.MockRoutingIndex;
+import io.github.microcks.util.snapshot.CatalogSnapshotWriter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case checking the mock runtime context loads and serves definitions from a binary catalog snapshot,
+ * without MongoDB.
+ * @author laurent
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = MockRuntimeApplication.class)
+@ContextConfiguration(initializers = MockRuntimeBinarySnapshotSourceTest.BinarySnapshotInitializer.class)
+@ActiveProfiles("binary-snapshot")
+public class MockRuntimeBinarySnapshotSourceTest {
+
+   @Autowired
+   private ApplicationContext applicationContext;
+
+   @Autowired
+   private MockDefinitionSource definitionSource;
+
+   @Autowired
+   private MockRoutingIndex routingIndex;
+
+   @Autowired
+   private MockResponseCache responseCache;
+
+   @Test
+   public void testContextLoads() {
+      assertTrue(definitionSource instanceof BinarySnapshotMockDefinitionSource);
+      assertTrue(applicationContext.getBeansOfType(CatalogCoherenceManager.class).isEmpty());
+      assertTrue(applicationContext.getBeansOfType(MongoTemplate.class).isEmpty());
+
+      assertNotNull(routingIndex.getService("BeerCatalog", "1.0"));
+      assertNotNull(responseCache.findByOperationIdAndDispatchCriteria("5c6e8a1b-GET /beer/{name}",
+            "/name=Rodenbach"));
+   }
+
+   /** Write the JSON test snapshot as a binary catalog snapshot and point the runtime to it. */
+   public static class BinarySnapshotInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+      @Override
+      public void initialize(ConfigurableApplicationContext applicationContext) {
+         ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+         try (InputStream stream = getClass().getResourceAsStream("/snapshot.json")) {
+            JsonNode snapshot = mapper.readTree(stream);
+            File snapshotFile = File.createTempFile("catalog", ".snapshot");
+            snapshotFile.deleteOnExit();
+            try (CatalogSnapshotWriter writer = new CatalogSnapshotWriter(new FileOutputStream(snapshotFile))) {
+               for (JsonNode service : snapshot.get("services")) {
+                  writer.writeService(mapper.treeToValue(service, Service.class));
+               }
+               for (JsonNode response : snapshot.get("responses")) {
+                  writer.writeResponse(mapper.treeToValue(response, Response.class));
+               }
+            }
+            TestPropertyValues.of("mocks.binary-snapshot.location=" + snapshotFile.getAbsolutePath())
+                  .applyTo(applicationContext);
+         } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+         }
+      }
+   }
+}
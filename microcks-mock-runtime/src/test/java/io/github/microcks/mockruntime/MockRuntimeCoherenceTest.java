@@ -0,0 +1,89 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.mockruntime;
+
+import io.github.microcks.MockRuntimeApplication;
+import io.github.microcks.domain.CatalogChange;
+import io.github.microcks.domain.CatalogVersion;
+import io.github.microcks.domain.Service;
+import io.github.microcks.event.ServiceUpdateEvent;
+import io.github.microcks.service.CatalogCoherenceManager;
+import io.github.microcks.service.MockRoutingIndex;
+import io.github.microcks.web.EmbeddedMongoInitializer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the mock runtime caches coherence with changes recorded by other nodes.
+ * @author laurent
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = MockRuntimeApplication.class,
+      properties = {"mocks.source=mongo", "mocks.coherence.poll-interval=60000"})
+@ContextConfiguration(initializers = EmbeddedMongoInitializer.class)
+public class MockRuntimeCoherenceTest {
+
+   @Autowired
+   private MongoTemplate template;
+
+   @Autowired
+   private MockRoutingIndex routingIndex;
+
+   @Autowired
+   private CatalogCoherenceManager coherenceManager;
+
+   @Test
+   public void testChangeFromOtherNodeEvictsRoutes() {
+      Service service = new Service();
+      service.setName("BeerCatalog");
+      service.setVersion("1.0");
+      template.save(service);
+
+      assertNotNull(routingIndex.getServiceRoutes("BeerCatalog", "1.0"));
+      assertNotNull(routingIndex.getServiceRoutesIfPresent("BeerCatalog", "1.0"));
+
+      // Simulate an import made by another node sharing the same database.
+      long version = coherenceManager.getCatalogVersion() + 1;
+      CatalogVersion catalogVersion = new CatalogVersion();
+      catalogVersion.setId(CatalogVersion.CATALOG_ID);
+      catalogVersion.setVersion(version);
+      template.save(catalogVersion);
+
+      CatalogChange change = new CatalogChange();
+      change.setVersion(version);
+      change.setServiceId(service.getId());
+      change.setServiceName("BeerCatalog");
+      change.setServiceVersion("1.0");
+      change.setChangeType(ServiceUpdateEvent.ChangeType.UPDATED.name());
+      change.setNodeId("another-node");
+      template.save(change);
+
+      coherenceManager.poll();
+
+      assertEquals(version, coherenceManager.getLastSeenVersion());
+      assertNull(routingIndex.getServiceRoutesIfPresent("BeerCatalog", "1.0"));
+   }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.mockruntime;
+
+import io.github.microcks.MockRuntimeApplication;
+import io.github.microcks.domain.Operation;
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import io.github.microcks.service.CatalogCoherenceManager;
+import io.github.microcks.service.MockDefinitionSource;
+import io.github.microcks.service.MockResponseCache;
+import io.github.microcks.service.MockRoutingIndex;
+import io.github.microcks.service.MongoMockDefinitionSource;
+import io.github.microcks.web.EmbeddedMongoInitializer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case checking the mock runtime context loads and serves definitions from MongoDB.
+ * @author laurent
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = MockRuntimeApplication.class, properties = "mocks.source=mongo")
+@ContextConfiguration(initializers = EmbeddedMongoInitializer.class)
+public class MockRuntimeMongoSourceTest {
+
+   @Autowired
+   private ApplicationContext applicationContext;
+
+   @Autowired
+   private MockDefinitionSource definitionSource;
+
+   @Autowired
+   private MockRoutingIndex routingIndex;
+
+   @Autowired
+   private MockResponseCache responseCache;
+
+   @Autowired
+   private MongoTemplate template;
+
+   @Test
+   public void testContextLoads() {
+      assertTrue(definitionSource instanceof MongoMockDefinitionSource);
+      assertNotNull(applicationContext.getBean(CatalogCoherenceManager.class));
+
+      Operation operation = new Operation();
+      operation.setName("GET /beer/{name}");
+      Service service = new Service();
+      service.setName("BeerCatalog");
+      service.setVersion("1.0");
+      service.setOperations(Collections.singletonList(operation));
+      template.save(service);
+
+      Response response = new Response();
+      response.setName("rodenbach");
+      response.setOperationId(service.getId() + "-GET /beer/{name}");
+      response.setDispatchCriteria("/name=Rodenbach");
+      response.setContent("{\"name\": \"Rodenbach\"}");
+      template.save(response);
+
+      assertNotNull(routingIndex.getService("BeerCatalog", "1.0"));
+      assertNotNull(responseCache.findByOperationIdAndDispatchCriteria(service.getId() + "-GET /beer/{name}",
+            "/name=Rodenbach"));
+   }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.mockruntime;
+
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for SnapshotMockDefinitionSource class.
+ * @author laurent
+ */
+public class SnapshotMockDefinitionSourceTest {
+
+   private SnapshotMockDefinitionSource source;
+
+   @Before
+   public void setUp() throws Exception {
+      source = new SnapshotMockDefinitionSource();
+      try (InputStream stream = getClass().getResourceAsStream("/snapshot.json")) {
+         source.load(stream);
+      }
+   }
+
+   @Test
+   public void testServiceLookups() {
+      assertEquals(1, source.findAllServices().size());
+      Service service = source.findServiceByNameAndVersion("BeerCatalog", "1.0");
+      assertNotNull(service);
+      assertEquals(1, service.getOperations().size());
+      assertNull(source.findServiceByNameAndVersion("BeerCatalog", "2.0"));
+   }
+
+   @Test
+   public void testResponseLookups() {
+      List<Response> responses = source.findResponsesByOperationIdAndDispatchCriteria(
+            "5c6e8a1b-GET /beer/{name}", "/name=Westmalle");
+      assertEquals(1, responses.size());
+      assertEquals("westmalle", responses.get(0).getName());
+      assertEquals(1, source.findResponsesByOperationIdAndName("5c6e8a1b-GET /beer/{name}", "rodenbach").size());
+      assertTrue(source.findResponsesByOperationIdAndDispatchCriteria("5c6e8a1b-GET /beer/{name}", "/name=Orval").isEmpty());
+      assertTrue(source.findResponsesByOperationIdAndName("unknown-operation", "rodenbach").isEmpty());
+   }
+}
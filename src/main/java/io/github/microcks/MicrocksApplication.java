@@ -22,14 +22,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoReactiveAutoConfiguration;
 import org.springframework.scheduling.annotation.EnableAsync;
 
 
 /**
- * Startup class for Application.
+ * Startup class for Application. Reactive MongoDB client is only created by ReactiveMockListenerConfiguration
+ * when reactive mocks listener is enabled.
  * @author laurent
  */
-@SpringBootApplication
+@SpringBootApplication(exclude = {MongoReactiveAutoConfiguration.class, MongoReactiveDataAutoConfiguration.class,
+      MongoReactiveRepositoriesAutoConfiguration.class})
 @EnableAsync
 public class MicrocksApplication {
 
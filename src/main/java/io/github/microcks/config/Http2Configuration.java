@@ -0,0 +1,60 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.config;
+
+import io.undertow.UndertowOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.undertow.UndertowServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Spring configuration enabling HTTP/2 on embedded Undertow server when "http2" profile is active.
+ * Beside HTTP/2 over TLS, this enables cleartext h2c on plain HTTP listener for in-cluster traffic.
+ * @author laurent
+ */
+@Configuration
+@Profile("http2")
+public class Http2Configuration {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(Http2Configuration.class);
+
+   @Value("${http2.max-concurrent-streams:256}")
+   private int maxConcurrentStreams;
+
+   @Value("${http2.initial-window-size:1048576}")
+   private int initialWindowSize;
+
+
+   @Bean
+   public WebServerFactoryCustomizer<UndertowServletWebServerFactory> http2Customizer() {
+      return factory -> factory.addBuilderCustomizers(builder -> {
+         log.info("Enabling HTTP/2 and h2c with max concurrent streams: {}, initial window size: {}",
+               maxConcurrentStreams, initialWindowSize);
+         builder.setServerOption(UndertowOptions.ENABLE_HTTP2, true)
+               .setServerOption(UndertowOptions.HTTP2_SETTINGS_MAX_CONCURRENT_STREAMS, maxConcurrentStreams)
+               .setServerOption(UndertowOptions.HTTP2_SETTINGS_INITIAL_WINDOW_SIZE, initialWindowSize);
+      });
+   }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.config;
+
+import io.undertow.Handlers;
+import io.undertow.Undertow;
+import io.undertow.predicate.Predicates;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.handlers.ResponseCodeHandler;
+import io.undertow.servlet.Servlets;
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.api.DeploymentManager;
+import io.undertow.servlet.util.ImmediateInstanceFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Spring configuration starting a dedicated listener for mock endpoints (/rest, /soap and /dynarest) when
+ * "mocks.listener.enabled" is true. This listener has its own Undertow server and worker pool and serves
+ * a DispatcherServlet sharing application context but without the security, CORS and static resources
+ * filters of main server. Mock traffic and management API or UI traffic do not compete for threads anymore.
+ * @author laurent
+ */
+@Configuration
+@ConditionalOnProperty(name = "mocks.listener.enabled", havingValue = "true")
+public class MockListenerConfiguration implements SmartLifecycle {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(MockListenerConfiguration.class);
+
+   @Autowired
+   private WebApplicationContext applicationContext;
+
+   @Value("${mocks.listener.host:0.0.0.0}")
+   private String host;
+
+   @Value("${mocks.listener.port:8081}")
+   private int port;
+
+   @Value("${mocks.listener.io-threads:2}")
+   private int ioThreads;
+
+   @Value("${mocks.listener.worker-threads:64}")
+   private int workerThreads;
+
+   private DeploymentManager deploymentManager;
+   private Undertow server;
+
+
+   @Override
+   public synchronized void start() {
+      try {
+         DispatcherServlet dispatcherServlet = new DispatcherServlet(applicationContext);
+         DeploymentInfo deployment = Servlets.deployment()
+               .setClassLoader(getClass().getClassLoader())
+               .setContextPath("")
+               .setDeploymentName("microcks-mocks")
+               .addServlet(Servlets.servlet("mocksDispatcherServlet", DispatcherServlet.class,
+                        new ImmediateInstanceFactory<>(dispatcherServlet))
+                     .addMapping("/")
+                     .setLoadOnStartup(1)
+                     .setAsyncSupported(true));
+
+         deploymentManager = Servlets.newContainer().addDeployment(deployment);
+         deploymentManager.deploy();
+         HttpHandler servletHandler = deploymentManager.start();
+
+         // Only mock endpoints are reachable through this listener.
+         HttpHandler mocksHandler = Handlers.predicate(Predicates.prefixes("/rest", "/soap", "/dynarest"),
+               servletHandler, ResponseCodeHandler.HANDLE_404);
+
+         server = Undertow.builder()
+               .addHttpListener(port, host)
+               .setIoThreads(ioThreads)
+               .setWorkerThreads(workerThreads)
+               .setHandler(mocksHandler)
+               .build();
+         server.start();
+         log.info("Mocks listener started on port {} with {} io threads and {} worker threads",
+               getPort(), ioThreads, workerThreads);
+      } catch (Exception e) {
+         throw new IllegalStateException("Unable to start mocks listener on port " + port, e);
+      }
+   }
+
+   @Override
+   public synchronized void stop() {
+      if (server != null) {
+         server.stop();
+         server = null;
+      }
+      if (deploymentManager != null) {
+         try {
+            deploymentManager.stop();
+         } catch (Exception e) {
+            log.warn("Exception while stopping mocks listener deployment", e);
+         }
+         deploymentManager.undeploy();
+         deploymentManager = null;
+      }
+      log.info("Mocks listener stopped");
+   }
+
+   @Override
+   public synchronized boolean isRunning() {
+      return server != null;
+   }
+
+   @Override
+   public int getPhase() {
+      // Start after and stop before the main web server.
+      return Integer.MAX_VALUE;
+   }
+
+   /** @return The actual port of mocks listener (may differ from configured one if 0), -1 if not running. */
+   public synchronized int getPort() {
+      if (server == null) {
+         return -1;
+      }
+      return ((InetSocketAddress) server.getListenerInfo().get(0).getAddress()).getPort();
+   }
+}
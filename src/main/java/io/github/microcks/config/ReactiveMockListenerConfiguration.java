@@ -0,0 +1,110 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.config;
+
+import io.github.microcks.web.reactive.ReactiveMockHandler;
+import io.undertow.Undertow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.UndertowHttpHandlerAdapter;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Spring configuration starting a non-blocking listener for mock endpoints (/rest and /soap) when
+ * "mocks.reactive-listener.enabled" is true. Requests are handled by ReactiveMockHandler directly on the
+ * Undertow I/O threads, so concurrency is not bound to a worker pool size. The reactive MongoDB client it
+ * relies on is created by ReactiveMongoConfiguration.
+ * @author laurent
+ */
+@Configuration
+@ConditionalOnProperty(name = "mocks.reactive-listener.enabled", havingValue = "true")
+public class ReactiveMockListenerConfiguration implements SmartLifecycle {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(ReactiveMockListenerConfiguration.class);
+
+   @Autowired
+   private ReactiveMockHandler mockHandler;
+
+   @Value("${mocks.reactive-listener.host:0.0.0.0}")
+   private String host;
+
+   @Value("${mocks.reactive-listener.port:8082}")
+   private int port;
+
+   /** Number of I/O threads, 0 means one per available processor. */
+   @Value("${mocks.reactive-listener.io-threads:0}")
+   private int ioThreads;
+
+   private Undertow server;
+
+
+   @Override
+   public synchronized void start() {
+      int threads = (ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors());
+      HttpHandler httpHandler = RouterFunctions.toHttpHandler(mockHandler.routes());
+      try {
+         server = Undertow.builder()
+               .addHttpListener(port, host)
+               .setIoThreads(threads)
+               .setHandler(new UndertowHttpHandlerAdapter(httpHandler))
+               .build();
+         server.start();
+      } catch (Exception e) {
+         throw new IllegalStateException("Unable to start reactive mocks listener on port " + port, e);
+      }
+      log.info("Reactive mocks listener started on port {} with {} io threads", getPort(), threads);
+   }
+
+   @Override
+   public synchronized void stop() {
+      if (server != null) {
+         server.stop();
+         server = null;
+      }
+      log.info("Reactive mocks listener stopped");
+   }
+
+   @Override
+   public synchronized boolean isRunning() {
+      return server != null;
+   }
+
+   @Override
+   public int getPhase() {
+      // Start after and stop before the main web server.
+      return Integer.MAX_VALUE;
+   }
+
+   /** @return The actual port of reactive mocks listener (may differ from configured one if 0), -1 if not running. */
+   public synchronized int getPort() {
+      if (server == null) {
+         return -1;
+      }
+      return ((InetSocketAddress) server.getListenerInfo().get(0).getAddress()).getPort();
+   }
+}
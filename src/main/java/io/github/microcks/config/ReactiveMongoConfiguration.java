@@ -0,0 +1,62 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.config;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoProperties;
+import org.springframework.boot.autoconfigure.mongo.ReactiveMongoClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.SimpleReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.Collections;
+
+/**
+ * Spring configuration of the reactive MongoDB client used by the reactive mocks listener. Reactive MongoDB
+ * auto-configurations are excluded (see MicrocksApplication) so that the client and its connection pool only
+ * exist when "mocks.reactive-listener.enabled" is true.
+ * @author laurent
+ */
+@Configuration
+@ConditionalOnProperty(name = "mocks.reactive-listener.enabled", havingValue = "true")
+public class ReactiveMongoConfiguration {
+
+   @Bean(destroyMethod = "close")
+   public MongoClient reactiveMongoClient(MongoProperties properties, Environment environment) {
+      return new ReactiveMongoClientFactory(properties, environment, Collections.emptyList()).createMongoClient(null);
+   }
+
+   @Bean
+   public ReactiveMongoTemplate reactiveMongoTemplate(MongoClient reactiveMongoClient, MongoProperties properties,
+         MongoMappingContext mappingContext, MongoCustomConversions conversions) {
+      // Same mapping as blocking template, without DBRef resolution that cannot be done reactively.
+      MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+      converter.setCustomConversions(conversions);
+      converter.afterPropertiesSet();
+      return new ReactiveMongoTemplate(new SimpleReactiveMongoDatabaseFactory(reactiveMongoClient,
+            properties.getMongoClientDatabase()), converter);
+   }
+}
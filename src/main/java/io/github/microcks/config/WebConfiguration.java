@@ -18,6 +18,8 @@
  */
 package io.github.microcks.config;
 
+import io.github.microcks.service.ResponseCompressor;
+import io.github.microcks.web.filter.CompressionFilter;
 import io.github.microcks.web.filter.CorsFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +32,7 @@ import javax.servlet.DispatcherType;
 import javax.servlet.FilterRegistration;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
 import java.util.Arrays;
 import java.util.EnumSet;
 
@@ -45,12 +48,16 @@ public class WebConfiguration implements ServletContextInitializer {
    @Autowired
    private Environment env;
 
+   @Autowired
+   private ResponseCompressor compressor;
+
 
    @Override
    public void onStartup(ServletContext servletContext) throws ServletException {
       log.info("Starting web application configuration, using profiles: {}", Arrays.toString(env.getActiveProfiles()));
       EnumSet<DispatcherType> disps = EnumSet.of(DispatcherType.REQUEST, DispatcherType.FORWARD, DispatcherType.ASYNC);
       initCORSFilter(servletContext, disps);
+      initCompressionFilter(servletContext, disps);
       log.info("Web application fully configured");
    }
 
@@ -60,4 +67,37 @@ public class WebConfiguration implements ServletContextInitializer {
       corsFilter.addMappingForUrlPatterns(disps, true, "/api/*");
       corsFilter.setAsyncSupported(true);
    }
+
+   /** Register the filters compressing API and dynamic mocks responses, streamed ones being compressed on the fly. */
+   private void initCompressionFilter(ServletContext servletContext, EnumSet<DispatcherType> disps) {
+      FilterRegistration.Dynamic apiCompressionFilter = servletContext.addFilter("apiCompressionFilter",
+            new CompressionFilter(compressor, "api", WebConfiguration::isApiExportRequest,
+                  WebConfiguration::isApiSnapshotExportRequest));
+      apiCompressionFilter.addMappingForUrlPatterns(disps, true, "/api/*");
+      apiCompressionFilter.setAsyncSupported(true);
+
+      FilterRegistration.Dynamic dynarestCompressionFilter = servletContext.addFilter("dynarestCompressionFilter",
+            new CompressionFilter(compressor, "dynarest", WebConfiguration::isDynarestListRequest));
+      dynarestCompressionFilter.addMappingForUrlPatterns(disps, true, "/dynarest/*");
+      dynarestCompressionFilter.setAsyncSupported(true);
+   }
+
+   /** Repository JSON exports (GET /api/export) are streamed. */
+   private static boolean isApiExportRequest(HttpServletRequest request) {
+      return "/api/export".equals(request.getRequestURI().substring(request.getContextPath().length()));
+   }
+
+   /** Binary catalog snapshots (GET /api/export/snapshot) are already compact: stream them as is. */
+   private static boolean isApiSnapshotExportRequest(HttpServletRequest request) {
+      return "/api/export/snapshot".equals(request.getRequestURI().substring(request.getContextPath().length()));
+   }
+
+   /** Resources lists of dynamic mocks (GET /dynarest/{service}/{version}/{resource}) are streamed. */
+   private static boolean isDynarestListRequest(HttpServletRequest request) {
+      if (!"GET".equals(request.getMethod())) {
+         return false;
+      }
+      String path = request.getRequestURI().substring(request.getContextPath().length());
+      return path.split("/").length == 5;
+   }
 }
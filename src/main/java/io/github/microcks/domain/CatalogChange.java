@@ -0,0 +1,105 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.domain;
+
+import org.springframework.data.annotation.Id;
+
+import java.util.Date;
+
+/**
+ * Domain object recording a change on the mocks catalog. Each change is bound to the catalog
+ * version it produced and tells which Service has been changed and by which Microcks node.
+ * @author laurent
+ */
+public class CatalogChange {
+
+   @Id
+   private String id;
+   private long version;
+   private String serviceId;
+   private String serviceName;
+   private String serviceVersion;
+   private String changeType;
+   private String nodeId;
+   private Date timestamp;
+
+   public String getId() {
+      return id;
+   }
+
+   public void setId(String id) {
+      this.id = id;
+   }
+
+   public long getVersion() {
+      return version;
+   }
+
+   public void setVersion(long version) {
+      this.version = version;
+   }
+
+   public String getServiceId() {
+      return serviceId;
+   }
+
+   public void setServiceId(String serviceId) {
+      this.serviceId = serviceId;
+   }
+
+   public String getServiceName() {
+      return serviceName;
+   }
+
+   public void setServiceName(String serviceName) {
+      this.serviceName = serviceName;
+   }
+
+   public String getServiceVersion() {
+      return serviceVersion;
+   }
+
+   public void setServiceVersion(String serviceVersion) {
+      this.serviceVersion = serviceVersion;
+   }
+
+   public String getChangeType() {
+      return changeType;
+   }
+
+   public void setChangeType(String changeType) {
+      this.changeType = changeType;
+   }
+
+   public String getNodeId() {
+      return nodeId;
+   }
+
+   public void setNodeId(String nodeId) {
+      this.nodeId = nodeId;
+   }
+
+   public Date getTimestamp() {
+      return timestamp;
+   }
+
+   public void setTimestamp(Date timestamp) {
+      this.timestamp = timestamp;
+   }
+}
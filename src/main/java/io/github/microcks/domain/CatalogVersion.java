@@ -0,0 +1,53 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.domain;
+
+import org.springframework.data.annotation.Id;
+
+/**
+ * Domain object holding the global version of the mocks catalog. A single document exists and its
+ * version is incremented each time a Service is created, updated or deleted so that Microcks nodes
+ * sharing the same database can detect they have to refresh their caches.
+ * @author laurent
+ */
+public class CatalogVersion {
+
+   /** The identifier of the single catalog version document. */
+   public static final String CATALOG_ID = "catalog";
+
+   @Id
+   private String id;
+   private long version;
+
+   public String getId() {
+      return id;
+   }
+
+   public void setId(String id) {
+      this.id = id;
+   }
+
+   public long getVersion() {
+      return version;
+   }
+
+   public void setVersion(long version) {
+      this.version = version;
+   }
+}
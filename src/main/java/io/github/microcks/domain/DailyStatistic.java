@@ -19,13 +19,16 @@
 package io.github.microcks.domain;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Domain objects representing daily invocation stats of mocks
- * served by Microcks.
+ * served by Microcks. Hourly counters are stored as a fixed-length array
+ * and minute counters are stored sparsely (only minutes having invocations)
+ * but both are still exposed as complete maps.
  * @author laurent
  */
 public class DailyStatistic {
@@ -37,8 +40,11 @@ public class DailyStatistic {
    private String serviceVersion;
    private long dailyCount;
 
-   private Map<String, Integer> hourlyCount = new HashMap<>();
-   private Map<String, Integer> minuteCount = new HashMap<>();
+   public static final int HOURS_IN_DAY = 24;
+   public static final int MINUTES_IN_DAY = 24 * 60;
+
+   private int[] hourlyCounts = new int[HOURS_IN_DAY];
+   private Map<String, Integer> minuteCounts = new HashMap<>();
 
    public String getId() {
       return id;
@@ -80,19 +86,40 @@ public class DailyStatistic {
       this.dailyCount = dailyCount;
    }
 
+   @Transient
    public Map<String, Integer> getHourlyCount() {
-      return hourlyCount;
+      Map<String, Integer> result = new HashMap<>(HOURS_IN_DAY);
+      for (int i=0; i<HOURS_IN_DAY; i++) {
+         result.put(String.valueOf(i), (hourlyCounts != null && i < hourlyCounts.length ? hourlyCounts[i] : 0));
+      }
+      return result;
    }
 
    public void setHourlyCount(Map<String, Integer> hourlyCount) {
-      this.hourlyCount = hourlyCount;
+      this.hourlyCounts = new int[HOURS_IN_DAY];
+      for (Map.Entry<String, Integer> entry : hourlyCount.entrySet()) {
+         this.hourlyCounts[Integer.parseInt(entry.getKey())] = entry.getValue();
+      }
    }
 
+   @Transient
    public Map<String, Integer> getMinuteCount() {
-      return minuteCount;
+      Map<String, Integer> result = new HashMap<>(MINUTES_IN_DAY);
+      for (int i=0; i<MINUTES_IN_DAY; i++) {
+         result.put(String.valueOf(i), 0);
+      }
+      if (minuteCounts != null) {
+         result.putAll(minuteCounts);
+      }
+      return result;
    }
 
    public void setMinuteCount(Map<String, Integer> minuteCount) {
-      this.minuteCount = minuteCount;
+      this.minuteCounts = new HashMap<>();
+      for (Map.Entry<String, Integer> entry : minuteCount.entrySet()) {
+         if (entry.getValue() != null && entry.getValue() != 0) {
+            this.minuteCounts.put(entry.getKey(), entry.getValue());
+         }
+      }
    }
 }
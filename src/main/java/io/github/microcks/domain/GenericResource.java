@@ -13,6 +13,7 @@ public class GenericResource {
    private String id;
    private String serviceId;
    private Document payload;
+   private long version;
 
    public String getId() {
       return id;
@@ -37,4 +38,12 @@ public class GenericResource {
    public void setPayload(Document payload) {
       this.payload = payload;
    }
+
+   public long getVersion() {
+      return version;
+   }
+
+   public void setVersion(long version) {
+      this.version = version;
+   }
 }
@@ -32,6 +32,7 @@ public abstract class Message {
    private String content;
    private String operationId;
    private String testCaseId;
+   private String contentHash;
 
    private Set<Header> headers;
 
@@ -67,6 +68,14 @@ public abstract class Message {
       this.testCaseId = testCaseId;
    }
 
+   public String getContentHash() {
+      return contentHash;
+   }
+
+   public void setContentHash(String contentHash) {
+      this.contentHash = contentHash;
+   }
+
    public Set<Header> getHeaders() {
       return headers;
    }
@@ -32,6 +32,7 @@ public class Operation {
    private String method;
    private String inputName;
    private String outputName;
+   private String action;
 
    private boolean override = false;
    private String dispatcher;
@@ -72,6 +73,14 @@ public class Operation {
       this.outputName = outputName;
    }
 
+   public String getAction() {
+      return action;
+   }
+
+   public void setAction(String action) {
+      this.action = action;
+   }
+
    public boolean hasOverride() {
       return this.override;
    }
@@ -0,0 +1,76 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.event;
+
+import org.springframework.context.ApplicationEvent;
+/**
+ * Simple bean representing a change event on a Service definition (and its bound messages).
+ * @author laurent
+ */
+public class ServiceUpdateEvent extends ApplicationEvent {
+
+   /** The different kinds of change that may occur on a Service. */
+   public enum ChangeType {
+      CREATED,
+      UPDATED,
+      DELETED
+   }
+
+   /** */
+   private final String serviceId;
+   /** */
+   private final String serviceName;
+   /** */
+   private final String serviceVersion;
+   /** */
+   private final ChangeType changeType;
+
+   /**
+    * Create a new service update event.
+    * @param source Source object for event
+    * @param serviceId Identifier of changed service
+    * @param serviceName Name of changed service
+    * @param serviceVersion Version of changed service
+    * @param changeType The kind of change
+    */
+   public ServiceUpdateEvent(Object source, String serviceId, String serviceName, String serviceVersion,
+         ChangeType changeType) {
+      super(source);
+      this.serviceId = serviceId;
+      this.serviceName = serviceName;
+      this.serviceVersion = serviceVersion;
+      this.changeType = changeType;
+   }
+
+   public String getServiceId() {
+      return serviceId;
+   }
+
+   public String getServiceName() {
+      return serviceName;
+   }
+
+   public String getServiceVersion() {
+      return serviceVersion;
+   }
+
+   public ChangeType getChangeType() {
+      return changeType;
+   }
+}
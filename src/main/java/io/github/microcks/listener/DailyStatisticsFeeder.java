@@ -18,20 +18,41 @@
  */
 package io.github.microcks.listener;
 
-import io.github.microcks.domain.DailyStatistic;
 import io.github.microcks.event.MockInvocationEvent;
+import io.github.microcks.repository.CustomDailyStatisticRepository.StatisticIncrement;
 import io.github.microcks.repository.DailyStatisticRepository;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 /**
- * Application event listener that updates daily statistics on incoming event.
+ * Application event listener that updates daily statistics on incoming event. Invocations are
+ * put into a bounded queue that never blocks the mock request thread, then aggregated and
+ * periodically flushed to the repository as a batch of updates. Increments whose statistic document
+ * cannot be initialized are kept and retried on next flush.
  * @author laurent
  */
 @Component
@@ -42,71 +63,181 @@ public class DailyStatisticsFeeder implements ApplicationListener<MockInvocation
    
    @Autowired
    private DailyStatisticRepository statisticsRepository;
-   
+
+   @Value("${mocks.statistics.queue-capacity:100000}")
+   private int queueCapacity;
+
+   @Value("${mocks.statistics.flush-interval:2000}")
+   private long flushInterval;
+
+   private final Queue<Invocation> pendingInvocations = new ConcurrentLinkedQueue<>();
+   private final AtomicInteger pendingCount = new AtomicInteger();
+   private final AtomicLong droppedCount = new AtomicLong();
+
+   /** Number of most recent days whose initialized statistic documents are remembered. */
+   private static final int INITIALIZED_DAYS_KEPT = 2;
+
+   /** Keys of statistic documents known to be initialized, by day. */
+   private final TreeMap<String, Set<String>> initializedStatistics = new TreeMap<>();
+
+   /** Increments whose statistic document is missing, they are retried on next flush. */
+   private final Map<String, StatisticIncrement> retryIncrements = new HashMap<>();
+
+   private ScheduledExecutorService flusher;
+
+
+   /**
+    * Migrate statistics still using the legacy map layout, ensure their uniqueness then start the periodic
+    * flush. Flushing is deferred until migration completes so that increments never target a document being
+    * migrated; invocations received meanwhile are simply queued.
+    */
+   @EventListener(ApplicationReadyEvent.class)
+   public void startFlusher() {
+      try {
+         statisticsRepository.migrateLegacyDailyStatistics();
+      } catch (Exception e) {
+         log.error("Exception while migrating daily statistics to compact layout", e);
+      }
+      try {
+         statisticsRepository.ensureUniqueDailyStatistics();
+      } catch (Exception e) {
+         // Concurrent nodes may then create duplicates: counts are split but not lost, they're merged on next start.
+         log.error("Exception while ensuring daily statistics uniqueness", e);
+      }
+      flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+         Thread thread = new Thread(runnable, "statistics-flusher");
+         thread.setDaemon(true);
+         return thread;
+      });
+      flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+   }
+
+   @PreDestroy
+   public void stopFlusher() {
+      if (flusher != null) {
+         flusher.shutdownNow();
+      }
+      // Flush remaining invocations before leaving.
+      flush();
+   }
+
    @Override
    public void onApplicationEvent(MockInvocationEvent event){
       log.debug("Received a MockInvocationEvent on " + event.getServiceName() + " - v" + event.getServiceVersion());
-      
-      // Compute day string representation.
+
+      // Never block the request thread: drop invocation if queue is full.
+      if (pendingCount.incrementAndGet() > queueCapacity) {
+         pendingCount.decrementAndGet();
+         if (droppedCount.incrementAndGet() % 1000 == 1) {
+            log.warn("Statistics queue is full, " + droppedCount.get() + " invocations have been dropped so far");
+         }
+         return;
+      }
+      pendingInvocations.offer(new Invocation(event.getServiceName(), event.getServiceVersion(),
+            event.getInvocationTimestamp().getTime()));
+   }
+
+   /** @return The number of invocations that have been dropped because queue was full. */
+   public long getDroppedCount() {
+      return droppedCount.get();
+   }
+
+   /**
+    * Drain pending invocations, aggregate them per statistic document and write them to repository.
+    */
+   public synchronized void flush() {
+      Map<String, StatisticIncrement> increments = new HashMap<>(retryIncrements);
+      retryIncrements.clear();
       Calendar calendar = Calendar.getInstance();
-      calendar.setTime(event.getInvocationTimestamp());
-      
-      // Computing keys based on invocation date.
-      int month = calendar.get(Calendar.MONTH) + 1;
-      String monthStr = (month<10 ? "0" : "") + String.valueOf(month);
-      int dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
-      String dayOfMonthStr = (dayOfMonth<10 ? "0" : "") + String.valueOf(dayOfMonth);
-      
-      String day = String.valueOf(calendar.get(Calendar.YEAR)) + monthStr + dayOfMonthStr;
-      String hourKey = String.valueOf(calendar.get(Calendar.HOUR_OF_DAY));
-      String minuteKey = String.valueOf((60 * calendar.get(Calendar.HOUR_OF_DAY)) + calendar.get(Calendar.MINUTE));
-      if (log.isDebugEnabled()){
-         log.debug("hourKey for statistic is " + hourKey);
-         log.debug("minuteKey for statistic is " + minuteKey);
+
+      Invocation invocation;
+      while ((invocation = pendingInvocations.poll()) != null) {
+         pendingCount.decrementAndGet();
+         calendar.setTimeInMillis(invocation.timestamp);
+
+         // Computing keys based on invocation date.
+         int month = calendar.get(Calendar.MONTH) + 1;
+         String monthStr = (month<10 ? "0" : "") + String.valueOf(month);
+         int dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
+         String dayOfMonthStr = (dayOfMonth<10 ? "0" : "") + String.valueOf(dayOfMonth);
+
+         String day = String.valueOf(calendar.get(Calendar.YEAR)) + monthStr + dayOfMonthStr;
+         String hourKey = String.valueOf(calendar.get(Calendar.HOUR_OF_DAY));
+         String minuteKey = String.valueOf((60 * calendar.get(Calendar.HOUR_OF_DAY)) + calendar.get(Calendar.MINUTE));
+
+         String serviceName = invocation.serviceName;
+         String serviceVersion = invocation.serviceVersion;
+         increments.computeIfAbsent(day + "|" + serviceName + "|" + serviceVersion,
+               k -> new StatisticIncrement(day, serviceName, serviceVersion))
+               .increment(hourKey, minuteKey);
+      }
+      if (increments.isEmpty()) {
+         return;
+      }
+      log.debug("Flushing statistics for " + increments.size() + " services");
+
+      // Ensure zero filled documents exist for new (day, service, version), whatever the day of each
+      // increment: a batch may straddle midnight.
+      List<StatisticIncrement> newStatistics = increments.values().stream()
+            .filter(increment -> !isInitialized(increment)).collect(Collectors.toList());
+      Set<StatisticIncrement> notApplied = Collections.newSetFromMap(new IdentityHashMap<>());
+      try {
+         notApplied.addAll(statisticsRepository.initializeDailyStatistics(newStatistics));
+      } catch (Exception e) {
+         log.warn("Exception while initializing statistics, increments will be retried: " + e.getMessage());
+         notApplied.addAll(newStatistics);
+      }
+      newStatistics.stream().filter(increment -> !notApplied.contains(increment)).forEach(this::markInitialized);
+
+      // Only apply increments whose document exists, others are kept for next flush.
+      List<StatisticIncrement> initialized = increments.values().stream()
+            .filter(increment -> !notApplied.contains(increment)).collect(Collectors.toList());
+      try {
+         List<StatisticIncrement> missing = statisticsRepository.incrementDailyStatistics(initialized);
+         missing.forEach(this::unmarkInitialized);
+         notApplied.addAll(missing);
+      } catch (Exception e) {
+         log.error("Exception while flushing statistics, some invocations have not been recorded", e);
+      }
+      for (StatisticIncrement increment : notApplied) {
+         retryIncrements.put(increment.getKey(), increment);
       }
-      
-      // First check if there's a statistic document for invocation day.
-      DailyStatistic statistic = statisticsRepository.findByDayAndServiceNameAndServiceVersion(day, 
-            event.getServiceName(), event.getServiceVersion());
-      
-      if (statistic == null){
-         // No statistic's yet...
-         log.debug("There's no statistics for " + day + " yet. Create one....");
-         // Initialize a new 0 filled structure.
-         statistic = new DailyStatistic();
-         statistic.setDay(day);
-         statistic.setServiceName(event.getServiceName());
-         statistic.setServiceVersion(event.getServiceVersion());
-         statistic.setHourlyCount(initializeHourlyMap());
-         statistic.setMinuteCount(initializeMinuteMap());
-         // Now set first values before saving.
-         statistic.setDailyCount(1);
-         statistic.getHourlyCount().put(hourKey, 1);
-         statistic.getMinuteCount().put(minuteKey, 1);
-         statisticsRepository.save(statistic);
-      } else {
-         // Already a statistic document for this day, increment fields.
-         log.debug("Found an existing statistic document for " + day);
-         statisticsRepository.incrementDailyStatistic(day, event.getServiceName(), event.getServiceVersion(),
-               hourKey, minuteKey);
+      if (!notApplied.isEmpty()) {
+         log.debug(notApplied.size() + " statistics increments will be retried on next flush");
       }
-      
-      log.debug("Processing of MockInvocationEvent done !");
+      log.debug("Flushing of statistics done !");
    }
-   
-   private Map<String, Integer> initializeHourlyMap(){
-      Map<String, Integer> result = new HashMap<String, Integer>(24);
-      for (int i=0; i<24; i++){
-         result.put(String.valueOf(i), 0);
+
+   private boolean isInitialized(StatisticIncrement increment) {
+      Set<String> keys = initializedStatistics.get(increment.getDay());
+      return keys != null && keys.contains(increment.getKey());
+   }
+
+   private void markInitialized(StatisticIncrement increment) {
+      initializedStatistics.computeIfAbsent(increment.getDay(), day -> new HashSet<>()).add(increment.getKey());
+      // Forget about past days, statistics of current and previous days are enough.
+      while (initializedStatistics.size() > INITIALIZED_DAYS_KEPT) {
+         initializedStatistics.pollFirstEntry();
       }
-      return result;
    }
-   
-   private Map<String, Integer> initializeMinuteMap(){
-      Map<String, Integer> result = new HashMap<String, Integer>(24*60);
-      for (int i=0; i<24*60; i++){
-         result.put(String.valueOf(i), 0);
+
+   private void unmarkInitialized(StatisticIncrement increment) {
+      Set<String> keys = initializedStatistics.get(increment.getDay());
+      if (keys != null) {
+         keys.remove(increment.getKey());
+      }
+   }
+
+   /** Lightweight holder of invocation information waiting for aggregation. */
+   private static class Invocation {
+      private final String serviceName;
+      private final String serviceVersion;
+      private final long timestamp;
+
+      Invocation(String serviceName, String serviceVersion, long timestamp) {
+         this.serviceName = serviceName;
+         this.serviceVersion = serviceVersion;
+         this.timestamp = timestamp;
       }
-      return result;
    }
 }
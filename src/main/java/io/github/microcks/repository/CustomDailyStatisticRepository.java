@@ -20,7 +20,10 @@ package io.github.microcks.repository;
 
 import io.github.microcks.domain.DailyStatistic;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Custom repository interface for DailyStatistic domain objects.
@@ -30,6 +33,30 @@ public interface CustomDailyStatisticRepository {
 
    void incrementDailyStatistic(String day, String serviceName, String serviceVersion, String hourKey, String minuteKey);
 
+   /**
+    * Create the zero filled statistic documents of increments if they do not exist yet.
+    * @param increments The increments whose documents should exist
+    * @return The increments whose document could not be initialized (empty if all exist)
+    */
+   List<StatisticIncrement> initializeDailyStatistics(Collection<StatisticIncrement> increments);
+
+   /**
+    * Apply increments to existing statistic documents. Documents are never created here as increments alone
+    * cannot build the hourly counters array: see initializeDailyStatistics().
+    * @param increments The increments to apply
+    * @return The increments that have not been applied because their document does not exist
+    */
+   List<StatisticIncrement> incrementDailyStatistics(Collection<StatisticIncrement> increments);
+
+   int migrateLegacyDailyStatistics();
+
+   /**
+    * Merge the duplicate statistic documents of a same (day, service, version) then ensure the unique index
+    * preventing concurrent initializations from creating new ones.
+    * @return The number of duplicate documents that have been merged
+    */
+   int ensureUniqueDailyStatistics();
+
    DailyStatistic aggregateDailyStatistics(String day);
 
    List<InvocationCount> aggregateDailyStatistics(String afterday, String beforeday);
@@ -54,4 +81,54 @@ public interface CustomDailyStatisticRepository {
        this.number = number;
     }
  }
+
+   class StatisticIncrement {
+      String day;
+      String serviceName;
+      String serviceVersion;
+      long dailyCount;
+      Map<String, Integer> hourlyCount = new HashMap<>();
+      Map<String, Integer> minuteCount = new HashMap<>();
+
+      public StatisticIncrement(String day, String serviceName, String serviceVersion) {
+         this.day = day;
+         this.serviceName = serviceName;
+         this.serviceVersion = serviceVersion;
+      }
+
+      public void increment(String hourKey, String minuteKey) {
+         dailyCount++;
+         hourlyCount.merge(hourKey, 1, Integer::sum);
+         minuteCount.merge(minuteKey, 1, Integer::sum);
+      }
+
+      public void merge(StatisticIncrement other) {
+         dailyCount += other.dailyCount;
+         other.hourlyCount.forEach((hourKey, count) -> hourlyCount.merge(hourKey, count, Integer::sum));
+         other.minuteCount.forEach((minuteKey, count) -> minuteCount.merge(minuteKey, count, Integer::sum));
+      }
+
+      public String getKey() {
+         return day + "|" + serviceName + "|" + serviceVersion;
+      }
+
+      public String getDay() {
+         return day;
+      }
+      public String getServiceName() {
+         return serviceName;
+      }
+      public String getServiceVersion() {
+         return serviceVersion;
+      }
+      public long getDailyCount() {
+         return dailyCount;
+      }
+      public Map<String, Integer> getHourlyCount() {
+         return hourlyCount;
+      }
+      public Map<String, Integer> getMinuteCount() {
+         return minuteCount;
+      }
+   }
 }
@@ -21,6 +21,7 @@ package io.github.microcks.repository;
 import io.github.microcks.domain.GenericResource;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Custom repository interface for GenericResource domain objects.
@@ -29,4 +30,25 @@ import java.util.List;
 public interface CustomGenericResourceRepository {
 
    List<GenericResource> findByServiceIdAndJSONQuery(String serviceId, String jsonQuery);
+
+   /**
+    * Find a page of resources keys (identifier and version only), ordered by identifier.
+    * @param serviceId The identifier of owning service
+    * @param jsonQuery An optional JSON query on resources payload (may be null)
+    * @param afterId An optional identifier after which the page starts (keyset pagination, may be null)
+    * @param skip The number of resources to skip (offset pagination)
+    * @param limit The maximum number of resources to return
+    * @return The resources holding only their identifier and version
+    */
+   List<GenericResource> findKeysByServiceIdAndJSONQuery(String serviceId, String jsonQuery, String afterId,
+         long skip, int limit);
+
+   long countByServiceIdAndJSONQuery(String serviceId, String jsonQuery);
+
+   /**
+    * Stream complete resources from a database cursor, ordered by identifier.
+    * @param ids The identifiers of resources to stream
+    * @return A stream of resources that must be closed once consumed
+    */
+   Stream<GenericResource> streamByIds(List<String> ids);
 }
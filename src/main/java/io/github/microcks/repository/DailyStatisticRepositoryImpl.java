@@ -18,22 +18,40 @@
  */
 package io.github.microcks.repository;
 
+import com.mongodb.BulkWriteError;
 import io.github.microcks.domain.DailyStatistic;
+import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Direction;
 import org.springframework.data.domain.Sort.Order;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
 import org.springframework.data.mongodb.core.mapreduce.MapReduceResults;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.springframework.data.domain.Sort.Direction.ASC;
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
@@ -47,6 +65,13 @@ public class DailyStatisticRepositoryImpl implements CustomDailyStatisticReposit
    /** A simple logger for diagnostic messages. */
    private static Logger log = LoggerFactory.getLogger(DailyStatisticRepositoryImpl.class);
    
+   private static final String STATISTICS_COLLECTION = "dailyStatistic";
+   private static final int MIGRATION_BATCH_SIZE = 500;
+   private static final int MIGRATION_MAX_PASSES = 5;
+   private static final int DUPLICATE_KEY_ERROR = 11000;
+   private static final String STATISTIC_KEY_INDEX = "day_serviceName_serviceVersion";
+   private static final int UNIQUE_INDEX_MAX_ATTEMPTS = 3;
+
    @Autowired
    private MongoTemplate template;
 
@@ -62,12 +87,152 @@ public class DailyStatisticRepositoryImpl implements CustomDailyStatisticReposit
       //Query queryShort = query(where("day").is(day).and("serviceName").is(serviceName).and("serviceVersion").is(serviceVersion));
       
       // Build update to increment the 3 fields.
-      Update update = new Update().inc("dailyCount", 1).inc("hourlyCount." + hourKey, 1).inc("minuteCount." + minuteKey, 1);
+      Update update = new Update().inc("dailyCount", 1).inc("hourlyCounts." + hourKey, 1).inc("minuteCounts." + minuteKey, 1);
       
       // Do an upsert with find and modify.
       template.findAndModify(query, update, DailyStatistic.class);
    }
 
+   @Override
+   public List<StatisticIncrement> initializeDailyStatistics(Collection<StatisticIncrement> increments) {
+      if (increments.isEmpty()) {
+         return Collections.emptyList();
+      }
+      // Upsert documents with zero filled hourly array, leaving existing ones untouched.
+      // Minute counters are sparse and do not need initialization.
+      List<StatisticIncrement> ordered = new ArrayList<>(increments);
+      BulkOperations bulkOps = template.bulkOps(BulkMode.UNORDERED, DailyStatistic.class);
+      for (StatisticIncrement increment : ordered) {
+         Update update = new Update().setOnInsert("dailyCount", 0L)
+               .setOnInsert("hourlyCounts", initializeCountList(DailyStatistic.HOURS_IN_DAY));
+         bulkOps.upsert(buildStatisticQuery(increment), update);
+      }
+      try {
+         bulkOps.execute();
+      } catch (BulkOperationException boe) {
+         // Bulk is unordered: only failed upserts are missing. A duplicate key means the document has been
+         // concurrently created by another node, so it exists.
+         List<StatisticIncrement> failed = new ArrayList<>();
+         for (BulkWriteError error : boe.getErrors()) {
+            if (error.getCode() != DUPLICATE_KEY_ERROR) {
+               log.warn("Daily statistic cannot be initialized: " + error.getMessage());
+               failed.add(ordered.get(error.getIndex()));
+            }
+         }
+         return failed;
+      }
+      return Collections.emptyList();
+   }
+
+   @Override
+   public List<StatisticIncrement> incrementDailyStatistics(Collection<StatisticIncrement> increments) {
+      if (increments.isEmpty()) {
+         return Collections.emptyList();
+      }
+      // Send all the increments within a single bulk write. Do not upsert: $inc on hourlyCounts.N would
+      // create an embedded object instead of the hourly counters array.
+      BulkOperations bulkOps = template.bulkOps(BulkMode.UNORDERED, DailyStatistic.class);
+      for (StatisticIncrement increment : increments) {
+         Update update = new Update().inc("dailyCount", increment.getDailyCount());
+         increment.getHourlyCount().forEach((hourKey, count) -> update.inc("hourlyCounts." + hourKey, count));
+         increment.getMinuteCount().forEach((minuteKey, count) -> update.inc("minuteCounts." + minuteKey, count));
+         bulkOps.updateOne(buildStatisticQuery(increment), update);
+      }
+      if (bulkOps.execute().getMatchedCount() == increments.size()) {
+         return Collections.emptyList();
+      }
+      // Some documents are missing (eg: purged meanwhile), find the increments that have not been applied.
+      Set<String> existingKeys = new HashSet<>();
+      Query query = new Query(new Criteria().orOperator(increments.stream()
+            .map(this::buildStatisticCriteria).toArray(Criteria[]::new)));
+      query.fields().include("day").include("serviceName").include("serviceVersion");
+      for (DailyStatistic statistic : template.find(query, DailyStatistic.class)) {
+         existingKeys.add(statistic.getDay() + "|" + statistic.getServiceName() + "|" + statistic.getServiceVersion());
+      }
+      return increments.stream().filter(increment -> !existingKeys.contains(increment.getKey()))
+            .collect(Collectors.toList());
+   }
+
+   @Override
+   public int migrateLegacyDailyStatistics() {
+      // Legacy documents are the ones still holding the hourlyCount and minuteCount maps.
+      Query query = new Query(Criteria.where("hourlyCount").exists(true));
+      int migrated = 0;
+
+      // Every update is conditioned on the dailyCount that has been read, so that a document incremented
+      // meanwhile (by another node) is left untouched and migrated again on next pass.
+      for (int pass = 1; pass <= MIGRATION_MAX_PASSES; pass++) {
+         int conflicts = 0;
+         int batchSize = 0;
+         BulkOperations bulkOps = template.bulkOps(BulkMode.UNORDERED, DailyStatistic.class);
+         try (CloseableIterator<Document> legacies = template.stream(query, Document.class, STATISTICS_COLLECTION)) {
+            while (legacies.hasNext()) {
+               Document legacy = legacies.next();
+               bulkOps.updateOne(new Query(Criteria.where("_id").is(legacy.get("_id"))
+                     .and("hourlyCount").exists(true)
+                     .and("dailyCount").is(legacy.get("dailyCount"))), buildMigrationUpdate(legacy));
+
+               if (++batchSize == MIGRATION_BATCH_SIZE) {
+                  int matched = bulkOps.execute().getMatchedCount();
+                  migrated += matched;
+                  conflicts += batchSize - matched;
+                  batchSize = 0;
+                  bulkOps = template.bulkOps(BulkMode.UNORDERED, DailyStatistic.class);
+               }
+            }
+         }
+         if (batchSize > 0) {
+            int matched = bulkOps.execute().getMatchedCount();
+            migrated += matched;
+            conflicts += batchSize - matched;
+         }
+         if (conflicts == 0) {
+            break;
+         }
+         log.debug("{} daily statistics have been modified during migration pass {}", conflicts, pass);
+         if (pass == MIGRATION_MAX_PASSES) {
+            log.warn("{} daily statistics are still using legacy layout, they will be migrated on next startup",
+                  conflicts);
+         }
+      }
+      if (migrated > 0) {
+         log.info("Migrated {} daily statistics to compact layout", migrated);
+      }
+      return migrated;
+   }
+
+   @Override
+   public int ensureUniqueDailyStatistics() {
+      IndexOperations indexOps = template.indexOps(DailyStatistic.class);
+      // A previous version declared the same index without uniqueness: options cannot be changed in place.
+      for (IndexInfo info : indexOps.getIndexInfo()) {
+         if (STATISTIC_KEY_INDEX.equals(info.getName()) && !info.isUnique()) {
+            log.info("Dropping non unique index {} before recreating it as unique", STATISTIC_KEY_INDEX);
+            indexOps.dropIndex(STATISTIC_KEY_INDEX);
+         }
+      }
+
+      // Other nodes may still create duplicates until index exists, so merge and retry if creation fails.
+      int merged = 0;
+      for (int attempt = 1; ; attempt++) {
+         merged += mergeDuplicateDailyStatistics();
+         try {
+            indexOps.ensureIndex(new Index().named(STATISTIC_KEY_INDEX).unique()
+                  .on("day", Direction.ASC).on("serviceName", Direction.ASC).on("serviceVersion", Direction.ASC));
+            break;
+         } catch (DuplicateKeyException dke) {
+            if (attempt == UNIQUE_INDEX_MAX_ATTEMPTS) {
+               throw dke;
+            }
+            log.debug("Daily statistics duplicates have been created meanwhile, merging them again");
+         }
+      }
+      if (merged > 0) {
+         log.info("Merged {} duplicate daily statistics", merged);
+      }
+      return merged;
+   }
+
    @Override
    public DailyStatistic aggregateDailyStatistics(String day) {
       
@@ -75,7 +240,7 @@ public class DailyStatisticRepositoryImpl implements CustomDailyStatisticReposit
       Query query = new Query(Criteria.where("day").is(day));
       
       // Execute a MapReduce command.
-      MapReduceResults<WrappedDailyStatistic> results = template.mapReduce(query, "dailyStatistic", 
+      MapReduceResults<WrappedDailyStatistic> results = template.mapReduce(query, STATISTICS_COLLECTION, 
             "classpath:mapDailyStatisticForADay.js", 
             "classpath:reduceDailyStatisticForADay.js", 
             WrappedDailyStatistic.class);
@@ -125,6 +290,115 @@ public class DailyStatisticRepositoryImpl implements CustomDailyStatisticReposit
    }
    
    
+   private Query buildStatisticQuery(StatisticIncrement increment) {
+      return new Query(buildStatisticCriteria(increment));
+   }
+
+   private Criteria buildStatisticCriteria(StatisticIncrement increment) {
+      return Criteria.where("day").is(increment.getDay())
+            .and("serviceName").is(increment.getServiceName())
+            .and("serviceVersion").is(increment.getServiceVersion());
+   }
+
+   private int mergeDuplicateDailyStatistics() {
+      Aggregation aggregation = newAggregation(
+            group("day", "serviceName", "serviceVersion").count().as("count").push("_id").as("ids"),
+            match(Criteria.where("count").gt(1))
+      );
+      int merged = 0;
+      for (Document duplicates : template.aggregate(aggregation, STATISTICS_COLLECTION, Document.class)) {
+         Query duplicatesQuery = new Query(Criteria.where("_id").in(duplicates.get("ids", List.class)));
+         List<Document> statistics = template.find(duplicatesQuery, Document.class, STATISTICS_COLLECTION);
+         // Keep a document having the hourly counters array if any.
+         Document kept = statistics.stream().filter(statistic -> statistic.get("hourlyCounts") instanceof List)
+               .findFirst().orElse(statistics.get(0));
+
+         long dailyCount = 0;
+         List<Integer> hourlyCounts = initializeCountList(DailyStatistic.HOURS_IN_DAY);
+         Map<String, Integer> minuteCounts = new HashMap<>();
+         for (Document duplicate : statistics) {
+            if (duplicate == kept) {
+               continue;
+            }
+            // Only merge the duplicate if it has not been incremented since it has been read.
+            Query query = new Query(Criteria.where("_id").is(duplicate.get("_id"))
+                  .and("dailyCount").is(duplicate.get("dailyCount")));
+            if (template.remove(query, STATISTICS_COLLECTION).getDeletedCount() == 1) {
+               Object count = duplicate.get("dailyCount");
+               dailyCount += (count instanceof Number ? ((Number) count).longValue() : 0);
+               addHourlyCounts(hourlyCounts, duplicate.get("hourlyCounts"));
+               addHourlyCounts(hourlyCounts, duplicate.get("hourlyCount"));
+               addMinuteCounts(minuteCounts, duplicate.get("minuteCounts", Document.class));
+               addMinuteCounts(minuteCounts, duplicate.get("minuteCount", Document.class));
+               merged++;
+            }
+         }
+
+         // Increment kept document so that concurrent increments are preserved.
+         Update update = new Update().inc("dailyCount", dailyCount);
+         for (int hour=0; hour<hourlyCounts.size(); hour++) {
+            if (hourlyCounts.get(hour) > 0) {
+               update.inc("hourlyCounts." + hour, hourlyCounts.get(hour));
+            }
+         }
+         minuteCounts.forEach((minuteKey, count) -> {
+            if (count > 0) {
+               update.inc("minuteCounts." + minuteKey, count);
+            }
+         });
+         template.updateFirst(new Query(Criteria.where("_id").is(kept.get("_id"))), update, STATISTICS_COLLECTION);
+      }
+      return merged;
+   }
+
+   private Update buildMigrationUpdate(Document legacy) {
+      // Hourly counters become a fixed-length array.
+      List<Integer> hourlyCounts = initializeCountList(DailyStatistic.HOURS_IN_DAY);
+      addHourlyCounts(hourlyCounts, legacy.get("hourlyCount"));
+      // Keep the counters already incremented using compact layout by up-to-date nodes.
+      addHourlyCounts(hourlyCounts, legacy.get("hourlyCounts"));
+
+      // Minute counters only keep minutes having invocations.
+      Map<String, Integer> minuteCounts = new HashMap<>();
+      addMinuteCounts(minuteCounts, legacy.get("minuteCount", Document.class));
+      addMinuteCounts(minuteCounts, legacy.get("minuteCounts", Document.class));
+      minuteCounts.values().removeIf(count -> count == 0);
+
+      return new Update().set("hourlyCounts", hourlyCounts)
+            .set("minuteCounts", new Document(new HashMap<String, Object>(minuteCounts)))
+            .unset("hourlyCount").unset("minuteCount");
+   }
+
+   private void addHourlyCounts(List<Integer> hourlyCounts, Object counts) {
+      if (counts instanceof Document) {
+         for (Map.Entry<String, Object> entry : ((Document) counts).entrySet()) {
+            int hour = Integer.parseInt(entry.getKey());
+            hourlyCounts.set(hour, hourlyCounts.get(hour) + ((Number) entry.getValue()).intValue());
+         }
+      } else if (counts instanceof List) {
+         List<?> values = (List<?>) counts;
+         for (int hour=0; hour<values.size() && hour<hourlyCounts.size(); hour++) {
+            hourlyCounts.set(hour, hourlyCounts.get(hour) + ((Number) values.get(hour)).intValue());
+         }
+      }
+   }
+
+   private void addMinuteCounts(Map<String, Integer> minuteCounts, Document counts) {
+      if (counts != null) {
+         for (Map.Entry<String, Object> entry : counts.entrySet()) {
+            minuteCounts.merge(entry.getKey(), ((Number) entry.getValue()).intValue(), Integer::sum);
+         }
+      }
+   }
+
+   private List<Integer> initializeCountList(int size) {
+      List<Integer> result = new ArrayList<>(size);
+      for (int i=0; i<size; i++) {
+         result.add(0);
+      }
+      return result;
+   }
+
    /** Utility class used for wrapping a DailyStatistic object within MapReduce command results. */
    public class WrappedDailyStatistic{
       private String id;
@@ -20,14 +20,19 @@ package io.github.microcks.repository;
 
 import io.github.microcks.domain.GenericResource;
 import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.util.StreamUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author laurent
@@ -42,6 +47,39 @@ public class GenericResourceRepositoryImpl implements CustomGenericResourceRepos
 
    @Override
    public List<GenericResource> findByServiceIdAndJSONQuery(String serviceId, String jsonQuery) {
+      return template.find(new BasicQuery(buildQuery(serviceId, jsonQuery)), GenericResource.class);
+   }
+
+   @Override
+   public List<GenericResource> findKeysByServiceIdAndJSONQuery(String serviceId, String jsonQuery, String afterId,
+         long skip, int limit) {
+      Document query = buildQuery(serviceId, jsonQuery);
+      if (afterId != null) {
+         query.append("_id", new Document("$gt", new ObjectId(afterId)));
+      }
+      BasicQuery keysQuery = new BasicQuery(query, new Document("_id", 1).append("version", 1));
+      keysQuery.with(Sort.by(Sort.Direction.ASC, "_id")).skip(skip).limit(limit);
+      return template.find(keysQuery, GenericResource.class);
+   }
+
+   @Override
+   public long countByServiceIdAndJSONQuery(String serviceId, String jsonQuery) {
+      return template.count(new BasicQuery(buildQuery(serviceId, jsonQuery)), GenericResource.class);
+   }
+
+   @Override
+   public Stream<GenericResource> streamByIds(List<String> ids) {
+      List<ObjectId> objectIds = ids.stream().map(ObjectId::new).collect(Collectors.toList());
+      BasicQuery query = new BasicQuery(new Document("_id", new Document("$in", objectIds)));
+      query.with(Sort.by(Sort.Direction.ASC, "_id"));
+      return StreamUtils.createStreamFromIterator(template.stream(query, GenericResource.class));
+   }
+
+   /** Build the query document selecting service resources, optionally filtered by a query on payload. */
+   private Document buildQuery(String serviceId, String jsonQuery) {
+      if (jsonQuery == null) {
+         return new Document("serviceId", serviceId);
+      }
       // First parse query document and prepare a list of key to rename then remove.
       Document query = Document.parse(jsonQuery);
       ArrayList<String> keysToRemove = new ArrayList<>();
@@ -59,7 +97,6 @@ public class GenericResourceRepositoryImpl implements CustomGenericResourceRepos
 
       // Finally, append serviceId criterion before launching selection.
       query.append("serviceId", serviceId);
-
-      return template.find(new BasicQuery(query.toJson()), GenericResource.class);
+      return query;
    }
 }
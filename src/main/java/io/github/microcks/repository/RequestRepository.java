@@ -23,6 +23,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Repository interface for Request domain objects.
@@ -36,4 +37,7 @@ public interface RequestRepository extends MongoRepository<Request, String> {
 
    @Query("{ 'operationId' : {'$in' : ?0}}")
    List<Request> findByOperationIdIn(List<String> operationIds);
+
+   @Query("{ 'operationId' : {'$in' : ?0}}")
+   Stream<Request> streamByOperationIdIn(List<String> operationIds);
 }
@@ -23,6 +23,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Repository interface for Resource domain objects.
@@ -36,4 +37,7 @@ public interface ResourceRepository extends MongoRepository<Resource, String> {
 
    @Query("{ 'serviceId' : {'$in' : ?0}}")
    List<Resource> findByServiceIdIn(List<String> serviceIds);
+
+   @Query("{ 'serviceId' : {'$in' : ?0}}")
+   Stream<Resource> streamByServiceIdIn(List<String> serviceIds);
 }
@@ -23,6 +23,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Repository interface for Response domain objects.
@@ -40,4 +41,10 @@ public interface ResponseRepository extends MongoRepository<Response, String> {
 
    @Query("{ 'operationId' : {'$in' : ?0}}")
    List<Response> findByOperationIdIn(List<String> operationIds);
+
+   @Query("{ 'operationId' : {'$in' : ?0}}")
+   Stream<Response> streamByOperationIdIn(List<String> operationIds);
+
+   @Query("{ 'operationId' : {'$ne' : null}}")
+   Stream<Response> streamAllWithOperationId();
 }
@@ -0,0 +1,226 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.CatalogChange;
+import io.github.microcks.domain.CatalogVersion;
+import io.github.microcks.event.ServiceUpdateEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Component keeping the caches of several Microcks nodes sharing the same database coherent. Each local
+ * ServiceUpdateEvent increments a single catalog version document and records the matching change. Nodes
+ * cheaply poll this version and, when it moves, replay the changes made by other nodes as local
+ * ServiceUpdateEvents so that only the affected services are invalidated. If some changes cannot be
+ * replayed (expired or never written), all the caches are invalidated instead. Only active when mock
+ * definitions are read from MongoDB: snapshot sources are immutable.
+ * @author laurent
+ */
+@Component
+@ConditionalOnProperty(name = "mocks.source", havingValue = "mongo", matchIfMissing = true)
+public class CatalogCoherenceManager implements ApplicationListener<ServiceUpdateEvent> {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(CatalogCoherenceManager.class);
+
+   /** Maximum number of changes fetched at each poll. */
+   private static final int MAX_CHANGES_PER_POLL = 1000;
+
+   @Autowired
+   private MongoTemplate template;
+
+   @Autowired
+   private ApplicationContext applicationContext;
+
+   @Value("${mocks.coherence.enabled:true}")
+   private boolean enabled;
+
+   @Value("${mocks.coherence.poll-interval:2000}")
+   private long pollInterval;
+
+   @Value("${mocks.coherence.gap-timeout:30000}")
+   private long gapTimeout;
+
+   @Value("${mocks.coherence.change-retention:86400}")
+   private long changeRetention;
+
+   /** Identifier of this node, used to skip replaying its own changes. */
+   private final String nodeId = UUID.randomUUID().toString();
+
+   /** Last catalog version whose change has been applied by this node. */
+   private long lastSeenVersion;
+   /** Time at which a missing change has been detected, 0 if none. */
+   private long gapDetectedAt;
+
+   private ScheduledExecutorService poller;
+
+
+   @EventListener(ApplicationReadyEvent.class)
+   public void startPolling() {
+      if (!enabled) {
+         return;
+      }
+      try {
+         template.indexOps(CatalogChange.class).ensureIndex(new Index().on("version", Sort.Direction.ASC)
+               .named("version").unique());
+         template.indexOps(CatalogChange.class).ensureIndex(new Index().on("timestamp", Sort.Direction.ASC)
+               .named("timestamp_ttl").expire(changeRetention));
+      } catch (Exception e) {
+         log.warn("Indexes cannot be ensured on catalog changes: {}", e.getMessage());
+      }
+      // Caches are empty at startup: no need to replay previous changes.
+      synchronized (this) {
+         lastSeenVersion = getCatalogVersion();
+      }
+      poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+         Thread thread = new Thread(runnable, "catalog-coherence");
+         thread.setDaemon(true);
+         return thread;
+      });
+      poller.scheduleWithFixedDelay(this::pollSafely, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+      log.info("Catalog coherence polling started for node {} at version {}", nodeId, lastSeenVersion);
+   }
+
+   @PreDestroy
+   public void stopPolling() {
+      if (poller != null) {
+         poller.shutdownNow();
+      }
+   }
+
+   /** @return The identifier of this node */
+   public String getNodeId() {
+      return nodeId;
+   }
+
+   /** @return The last catalog version applied by this node */
+   public synchronized long getLastSeenVersion() {
+      return lastSeenVersion;
+   }
+
+   /** @return The current catalog version as stored in database, 0 if no change has been recorded yet. */
+   public long getCatalogVersion() {
+      CatalogVersion catalogVersion = template.findById(CatalogVersion.CATALOG_ID, CatalogVersion.class);
+      return catalogVersion != null ? catalogVersion.getVersion() : 0;
+   }
+
+   @Override
+   public void onApplicationEvent(ServiceUpdateEvent event) {
+      // Do not record again the changes we are replaying.
+      if (!enabled || event.getSource() == this) {
+         return;
+      }
+      try {
+         CatalogVersion catalogVersion = template.findAndModify(
+               new Query(Criteria.where("_id").is(CatalogVersion.CATALOG_ID)),
+               new Update().inc("version", 1L),
+               FindAndModifyOptions.options().upsert(true).returnNew(true), CatalogVersion.class);
+
+         CatalogChange change = new CatalogChange();
+         change.setVersion(catalogVersion.getVersion());
+         change.setServiceId(event.getServiceId());
+         change.setServiceName(event.getServiceName());
+         change.setServiceVersion(event.getServiceVersion());
+         change.setChangeType(event.getChangeType().name());
+         change.setNodeId(nodeId);
+         change.setTimestamp(new Date());
+         template.insert(change);
+         log.debug("Recorded catalog change {} for service {}", change.getVersion(), event.getServiceId());
+      } catch (Exception e) {
+         log.error("Catalog change for service " + event.getServiceId() + " cannot be recorded", e);
+      }
+   }
+
+   /**
+    * Check the catalog version and replay the changes made by other nodes since last poll. Changes are
+    * applied in version order; a missing change stops the replay until it appears or until the gap
+    * timeout is reached, in which case all the caches are invalidated.
+    * @return The number of changes that have been applied (including the ones made by this node)
+    */
+   public synchronized int poll() {
+      long catalogVersion = getCatalogVersion();
+      if (catalogVersion <= lastSeenVersion) {
+         return 0;
+      }
+      Query query = new Query(Criteria.where("version").gt(lastSeenVersion))
+            .with(Sort.by(Sort.Direction.ASC, "version")).limit(MAX_CHANGES_PER_POLL);
+      List<CatalogChange> changes = template.find(query, CatalogChange.class);
+
+      int applied = 0;
+      for (CatalogChange change : changes) {
+         if (change.getVersion() != lastSeenVersion + 1) {
+            break;
+         }
+         if (!nodeId.equals(change.getNodeId())) {
+            log.debug("Replaying catalog change {} on service {}", change.getVersion(), change.getServiceId());
+            applicationContext.publishEvent(new ServiceUpdateEvent(this, change.getServiceId(),
+                  change.getServiceName(), change.getServiceVersion(),
+                  ServiceUpdateEvent.ChangeType.valueOf(change.getChangeType())));
+         }
+         lastSeenVersion = change.getVersion();
+         applied++;
+      }
+
+      if (applied > 0 || lastSeenVersion >= catalogVersion) {
+         gapDetectedAt = 0;
+      } else if (gapDetectedAt == 0) {
+         gapDetectedAt = System.currentTimeMillis();
+      } else if (System.currentTimeMillis() - gapDetectedAt >= gapTimeout) {
+         log.warn("Catalog changes {} to {} cannot be replayed, invalidating all caches",
+               lastSeenVersion + 1, catalogVersion);
+         applicationContext.publishEvent(new ServiceUpdateEvent(this, null, null, null,
+               ServiceUpdateEvent.ChangeType.UPDATED));
+         lastSeenVersion = catalogVersion;
+         gapDetectedAt = 0;
+      }
+      return applied;
+   }
+
+   private void pollSafely() {
+      try {
+         poll();
+      } catch (Exception e) {
+         log.error("Exception while polling catalog version", e);
+      }
+   }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.microcks.util.soapui.SoapUIScriptEngineBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holder of a shared Groovy ScriptEngine and of a bounded cache of compiled dispatcher scripts. Scripts are
+ * cached using their source so that any change on operation dispatcher rules leads to a new compilation.
+ * Each evaluation uses its own bindings so that compiled scripts can be safely shared between threads.
+ * @author laurent
+ */
+@Component
+public class CompiledScriptCache {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(CompiledScriptCache.class);
+
+   @Value("${mocks.script-cache.max-size:1000}")
+   private long maxSize;
+
+   private ScriptEngine engine;
+
+   private Cache<String, CompiledScript> scripts;
+
+
+   @PostConstruct
+   public void initializeEngine() {
+      engine = new ScriptEngineManager().getEngineByExtension("groovy");
+      scripts = Caffeine.newBuilder().maximumSize(maxSize).build();
+   }
+
+   /**
+    * Evaluate a dispatcher script within a SoapUI environment built from request.
+    * @param script The source of script to evaluate (typically operation dispatcher rules)
+    * @param requestContent The content of request to use as data
+    * @param request The wrapped incoming servlet request.
+    * @return The result of script evaluation
+    * @throws ScriptException if script cannot be compiled or evaluated
+    */
+   public Object evaluate(String script, String requestContent, HttpServletRequest request) throws ScriptException {
+      return evaluate(script, SoapUIScriptEngineBinder.buildSoapUIBindings(engine, requestContent, request));
+   }
+
+   /**
+    * Evaluate a dispatcher script within a SoapUI environment built from request content and headers.
+    * @param script The source of script to evaluate (typically operation dispatcher rules)
+    * @param requestContent The content of request to use as data
+    * @param requestHeaders The headers of incoming request
+    * @return The result of script evaluation
+    * @throws ScriptException if script cannot be compiled or evaluated
+    */
+   public Object evaluate(String script, String requestContent, Map<String, List<String>> requestHeaders) throws ScriptException {
+      return evaluate(script, SoapUIScriptEngineBinder.buildSoapUIBindings(engine, requestContent, requestHeaders));
+   }
+
+   /** Invalidate all the compiled scripts. */
+   public void invalidateAll() {
+      scripts.invalidateAll();
+   }
+
+   private Object evaluate(String script, Bindings bindings) throws ScriptException {
+      if (engine instanceof Compilable) {
+         return getCompiledScript(script).eval(bindings);
+      }
+      return engine.eval(script, bindings);
+   }
+
+   /** Get the compiled form of a script, compiling and caching it on first call. Package protected for tests. */
+   CompiledScript getCompiledScript(String script) throws ScriptException {
+      CompiledScript compiled = scripts.getIfPresent(script);
+      if (compiled == null) {
+         log.debug("Compiling a new dispatcher script");
+         compiled = ((Compilable) engine).compile(script);
+         scripts.put(script, compiled);
+      }
+      return compiled;
+   }
+}
@@ -0,0 +1,414 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.GenericResource;
+import io.github.microcks.event.ServiceUpdateEvent;
+import io.github.microcks.repository.GenericResourceRepository;
+import io.github.microcks.util.DocumentQueryMatcher;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Storage of the GenericResources managed by dynamic (GENERIC_REST) mocks. In the default {@code mongo}
+ * storage mode, every operation goes straight to the GenericResourceRepository. In the {@code memory}
+ * storage mode, resources of a service are loaded once into a concurrent map and then read and written
+ * at memory speed; durability of writes depends on the configured policy:
+ * <ul>
+ *    <li>{@code write-through}: writes are also saved synchronously to the repository,</li>
+ *    <li>{@code write-behind}: writes are coalesced and saved asynchronously by batches,</li>
+ *    <li>{@code volatile}: writes are never persisted and are lost on restart.</li>
+ * </ul>
+ * Memory storage is local to a node and is never refreshed from repository: it must only be used when
+ * dynamic mocks are served by a single node. Memory and durability writes of a same resource are applied
+ * atomically so that the last persisted state is always the one kept in memory.
+ * @author laurent
+ */
+@Component
+public class GenericResourceStore implements ApplicationListener<ServiceUpdateEvent> {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(GenericResourceStore.class);
+
+   /** The durability policies of memory storage. */
+   public enum DurabilityPolicy {
+      WRITE_THROUGH,
+      WRITE_BEHIND,
+      VOLATILE
+   }
+
+   @Autowired
+   private GenericResourceRepository repository;
+
+   @Value("${mocks.dynarest.storage:mongo}")
+   private String storage;
+
+   @Value("${mocks.dynarest.durability:write-behind}")
+   private String durability;
+
+   @Value("${mocks.dynarest.flush-interval:1000}")
+   private long flushInterval;
+
+   @Value("${mocks.dynarest.flush-batch-size:500}")
+   private int flushBatchSize;
+
+   private boolean inMemory;
+   private DurabilityPolicy durabilityPolicy;
+
+   /** Resources of loaded services, indexed by service id then resource id. */
+   private final ConcurrentMap<String, ConcurrentSkipListMap<String, GenericResource>> resourcesByService =
+         new ConcurrentHashMap<>();
+   /** Writes not yet flushed, indexed by resource id. An empty value stands for a deletion. */
+   private final ConcurrentHashMap<String, Optional<GenericResource>> pendingWrites = new ConcurrentHashMap<>();
+
+   private ScheduledExecutorService flusher;
+
+
+   @PostConstruct
+   public void initialize() {
+      inMemory = "memory".equalsIgnoreCase(storage);
+      durabilityPolicy = DurabilityPolicy.valueOf(durability.trim().toUpperCase().replace('-', '_'));
+      if (inMemory && durabilityPolicy == DurabilityPolicy.WRITE_BEHIND) {
+         flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dynarest-flusher");
+            thread.setDaemon(true);
+            return thread;
+         });
+         flusher.scheduleWithFixedDelay(this::flushSafely, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+      }
+      if (inMemory) {
+         log.info("Dynamic mocks resources are stored in memory with {} durability", durabilityPolicy);
+      }
+   }
+
+   @PreDestroy
+   public void stopFlusher() {
+      if (flusher != null) {
+         flusher.shutdownNow();
+         // Flush remaining writes before leaving.
+         flushSafely();
+      }
+   }
+
+   /**
+    * Create a new resource for a service.
+    * @param serviceId The identifier of owning service
+    * @param payload The resource payload
+    * @return The created resource, holding its new identifier
+    */
+   public GenericResource createResource(String serviceId, Document payload) {
+      GenericResource resource = new GenericResource();
+      resource.setServiceId(serviceId);
+      resource.setPayload(payload);
+      if (!inMemory) {
+         return repository.save(resource);
+      }
+      // Mimic MongoDB identifiers so that memory order is also creation order.
+      resource.setId(new ObjectId().toHexString());
+      write(getServiceResources(serviceId), resource.getId(), Optional.of(resource));
+      return resource;
+   }
+
+   /**
+    * Save a resource that has been updated.
+    * @param resource The resource to save
+    * @return The saved resource
+    */
+   public GenericResource saveResource(GenericResource resource) {
+      if (!inMemory) {
+         return repository.save(resource);
+      }
+      write(getServiceResources(resource.getServiceId()), resource.getId(), Optional.of(resource));
+      return resource;
+   }
+
+   /**
+    * Get a resource of a service.
+    * @param serviceId The identifier of owning service
+    * @param resourceId The identifier of resource
+    * @return The resource or null if not found
+    */
+   public GenericResource getResource(String serviceId, String resourceId) {
+      if (!inMemory) {
+         return repository.findById(resourceId)
+               .filter(resource -> serviceId.equals(resource.getServiceId())).orElse(null);
+      }
+      GenericResource resource = getServiceResources(serviceId).get(resourceId);
+      return resource != null ? copy(resource) : null;
+   }
+
+   /**
+    * Find a page of resources of a service, in creation order.
+    * @param serviceId The identifier of owning service
+    * @param page The page index, starting at 0
+    * @param size The page size
+    * @return The resources of requested page
+    */
+   public List<GenericResource> findResources(String serviceId, int page, int size) {
+      if (!inMemory) {
+         return repository.findByServiceId(serviceId, PageRequest.of(page, size));
+      }
+      return getServiceResources(serviceId).values().stream()
+            .skip((long) page * size)
+            .limit(size)
+            .map(GenericResourceStore::copy)
+            .collect(Collectors.toList());
+   }
+
+   /**
+    * Find a page of resources keys of a service, optionally matching a JSON query on their payload. Page
+    * starts after the given resource identifier if any (keyset pagination), at page index otherwise.
+    * @param serviceId The identifier of owning service
+    * @param jsonQuery The MongoDB JSON query (may be null)
+    * @param afterId The identifier of resource after which page starts (may be null)
+    * @param page The page index, starting at 0, used if no afterId
+    * @param size The page size
+    * @return The resources holding only their identifier and version, ordered by identifier
+    * @throws IllegalArgumentException if afterId is not a valid resource identifier
+    */
+   public List<GenericResource> findResourceKeys(String serviceId, String jsonQuery, String afterId, int page, int size) {
+      if (afterId != null && !ObjectId.isValid(afterId)) {
+         throw new IllegalArgumentException("Invalid resource identifier: " + afterId);
+      }
+      long skip = afterId != null ? 0 : (long) page * size;
+      if (!inMemory) {
+         return repository.findKeysByServiceIdAndJSONQuery(serviceId, jsonQuery, afterId, skip, size);
+      }
+      ConcurrentSkipListMap<String, GenericResource> resources = getServiceResources(serviceId);
+      Predicate<Document> matcher = DocumentQueryMatcher.compile(
+            jsonQuery != null ? Document.parse(jsonQuery) : new Document());
+      return (afterId != null ? resources.tailMap(afterId, false) : resources).values().stream()
+            .filter(resource -> matcher.test(resource.getPayload()))
+            .skip(skip)
+            .limit(size)
+            .map(resource -> {
+               GenericResource key = new GenericResource();
+               key.setId(resource.getId());
+               key.setVersion(resource.getVersion());
+               return key;
+            })
+            .collect(Collectors.toList());
+   }
+
+   /**
+    * Stream complete resources of a service, in identifier order.
+    * @param serviceId The identifier of owning service
+    * @param ids The identifiers of resources to stream
+    * @return A stream of resources that must be closed once consumed
+    */
+   public Stream<GenericResource> streamResources(String serviceId, List<String> ids) {
+      if (!inMemory) {
+         return repository.streamByIds(ids);
+      }
+      ConcurrentSkipListMap<String, GenericResource> resources = getServiceResources(serviceId);
+      return ids.stream().sorted().map(resources::get).filter(Objects::nonNull).map(GenericResourceStore::copy);
+   }
+
+   /**
+    * Count the resources of a service matching a JSON query on their payload.
+    * @param serviceId The identifier of owning service
+    * @param jsonQuery The MongoDB JSON query (may be null)
+    * @return The number of matching resources
+    */
+   public long countResources(String serviceId, String jsonQuery) {
+      if (jsonQuery == null) {
+         return countResources(serviceId);
+      }
+      if (!inMemory) {
+         return repository.countByServiceIdAndJSONQuery(serviceId, jsonQuery);
+      }
+      Predicate<Document> matcher = DocumentQueryMatcher.compile(Document.parse(jsonQuery));
+      return getServiceResources(serviceId).values().stream()
+            .filter(resource -> matcher.test(resource.getPayload()))
+            .count();
+   }
+
+   /**
+    * Count the resources of a service.
+    * @param serviceId The identifier of owning service
+    * @return The number of resources
+    */
+   public long countResources(String serviceId) {
+      if (!inMemory) {
+         return repository.countByServiceId(serviceId);
+      }
+      return getServiceResources(serviceId).size();
+   }
+
+   /**
+    * Delete a resource of a service.
+    * @param serviceId The identifier of owning service
+    * @param resourceId The identifier of resource
+    */
+   public void deleteResource(String serviceId, String resourceId) {
+      if (!inMemory) {
+         repository.deleteById(resourceId);
+         return;
+      }
+      write(getServiceResources(serviceId), resourceId, Optional.empty());
+   }
+
+   /**
+    * Write the pending resources changes to repository by batches.
+    * @return The number of changes that have been written
+    */
+   public synchronized int flush() {
+      List<Map.Entry<String, Optional<GenericResource>>> writes = new ArrayList<>(pendingWrites.entrySet());
+      int flushed = 0;
+      for (int i = 0; i < writes.size(); i += flushBatchSize) {
+         List<Map.Entry<String, Optional<GenericResource>>> batch =
+               writes.subList(i, Math.min(i + flushBatchSize, writes.size()));
+
+         List<GenericResource> saved = batch.stream().map(Map.Entry::getValue)
+               .filter(Optional::isPresent).map(Optional::get).collect(Collectors.toList());
+         List<GenericResource> deleted = batch.stream().filter(entry -> !entry.getValue().isPresent())
+               .map(entry -> {
+                  GenericResource resource = new GenericResource();
+                  resource.setId(entry.getKey());
+                  return resource;
+               }).collect(Collectors.toList());
+         if (!saved.isEmpty()) {
+            repository.saveAll(saved);
+         }
+         if (!deleted.isEmpty()) {
+            repository.deleteAll(deleted);
+         }
+         // Only forget writes that have not been superseded in the meantime.
+         for (Map.Entry<String, Optional<GenericResource>> write : batch) {
+            pendingWrites.remove(write.getKey(), write.getValue());
+         }
+         flushed += batch.size();
+      }
+      if (flushed > 0) {
+         log.debug("{} dynamic mocks resources changes have been flushed", flushed);
+      }
+      return flushed;
+   }
+
+   /** @return The number of resources changes waiting to be flushed */
+   public int getPendingWritesCount() {
+      return pendingWrites.size();
+   }
+
+   @Override
+   public void onApplicationEvent(ServiceUpdateEvent event) {
+      // Drop resources of deleted services, or everything if service is unknown.
+      if (event.getServiceId() == null) {
+         resourcesByService.clear();
+      } else if (ServiceUpdateEvent.ChangeType.DELETED.equals(event.getChangeType())) {
+         resourcesByService.remove(event.getServiceId());
+      }
+   }
+
+   private ConcurrentSkipListMap<String, GenericResource> getServiceResources(String serviceId) {
+      return resourcesByService.computeIfAbsent(serviceId, id -> {
+         ConcurrentSkipListMap<String, GenericResource> resources = new ConcurrentSkipListMap<>();
+         for (GenericResource resource : repository.findByServiceId(id, Pageable.unpaged())) {
+            resources.put(resource.getId(), resource);
+         }
+         // Pending writes may not be in repository yet if service has been dropped before flush.
+         pendingWrites.forEach((resourceId, write) -> {
+            if (write.isPresent() && id.equals(write.get().getServiceId())) {
+               resources.put(resourceId, copy(write.get()));
+            } else if (!write.isPresent()) {
+               resources.remove(resourceId);
+            }
+         });
+         return resources;
+      });
+   }
+
+   /**
+    * Apply a resource write to memory and according to durability policy. Both are done while holding the
+    * lock of resource key within pending writes map, so that concurrent writes of a same resource are seen
+    * in the same order by memory, pending writes and repository.
+    */
+   private void write(ConcurrentSkipListMap<String, GenericResource> resources, String resourceId,
+         Optional<GenericResource> write) {
+      pendingWrites.compute(resourceId, (id, pending) -> {
+         if (!write.isPresent() && !resources.containsKey(id)) {
+            return pending;
+         }
+         Optional<GenericResource> result = pending;
+         switch (durabilityPolicy) {
+            case WRITE_THROUGH:
+               if (write.isPresent()) {
+                  repository.save(write.get());
+               } else {
+                  repository.deleteById(id);
+               }
+               break;
+            case WRITE_BEHIND:
+               result = write.map(GenericResourceStore::copy);
+               break;
+            default:
+               break;
+         }
+         if (write.isPresent()) {
+            resources.put(id, copy(write.get()));
+         } else {
+            resources.remove(id);
+         }
+         return result;
+      });
+   }
+
+   private void flushSafely() {
+      try {
+         flush();
+      } catch (Exception e) {
+         log.error("Exception while flushing dynamic mocks resources, will retry later", e);
+      }
+   }
+
+   /** Copy a resource so that callers can modify its payload without altering stored one. */
+   private static GenericResource copy(GenericResource resource) {
+      GenericResource copy = new GenericResource();
+      copy.setId(resource.getId());
+      copy.setServiceId(resource.getServiceId());
+      copy.setPayload(resource.getPayload() != null ? new Document(resource.getPayload()) : null);
+      copy.setVersion(resource.getVersion());
+      return copy;
+   }
+}
@@ -18,19 +18,56 @@
  */
 package io.github.microcks.service;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
 import io.github.microcks.domain.*;
+import io.github.microcks.event.ServiceUpdateEvent;
 import io.github.microcks.repository.RequestRepository;
 import io.github.microcks.repository.ResourceRepository;
 import io.github.microcks.repository.ResponseRepository;
 import io.github.microcks.repository.ServiceRepository;
 import io.github.microcks.util.IdBuilder;
+import io.github.microcks.util.snapshot.CatalogSnapshotWriter;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * A Service for managing imports and exports of Microcks repository part.
@@ -42,6 +79,19 @@ public class ImportExportService {
    /** A simple logger for diagnostic messages. */
    private static Logger log = LoggerFactory.getLogger(ImportExportService.class);
 
+   /** Maximum number of errors kept into an import report. */
+   private static final int MAX_REPORTED_ERRORS = 100;
+
+   /** The collections of an import file and the type of their definitions, in export order. */
+   private static final Map<String, Class<?>> IMPORTED_COLLECTIONS = new LinkedHashMap<>();
+
+   static {
+      IMPORTED_COLLECTIONS.put("services", Service.class);
+      IMPORTED_COLLECTIONS.put("resources", Resource.class);
+      IMPORTED_COLLECTIONS.put("requests", Request.class);
+      IMPORTED_COLLECTIONS.put("responses", Response.class);
+   }
+
    @Autowired
    private RequestRepository requestRepository;
 
@@ -54,35 +104,150 @@ public class ImportExportService {
    @Autowired
    private ServiceRepository serviceRepository;
 
+   @Autowired
+   private ApplicationContext applicationContext;
+
+   @Autowired
+   private MongoTemplate template;
+
+   @Value("${mocks.import.batch-size:500}")
+   private int importBatchSize;
+
    /**
     * Import a repository from JSON definitions.
     * @param json A String encoded into json and representing repository object definitions.
     * @return A boolean indicating operation success.
     */
    public boolean importRepository(String json){
+      ImportReport report = importRepository(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+      return report.isCompleted();
+   }
+
+   /**
+    * Import a repository from a stream of JSON definitions (as produced by export). Definitions are parsed
+    * incrementally and written by unordered bulk batches, so that memory usage does not depend on the size
+    * of import. A definition that cannot be read or written is reported without aborting the import.
+    * @param stream The stream to read definitions from
+    * @return A report on imported and failed definitions
+    */
+   public ImportReport importRepository(InputStream stream) {
       ObjectMapper mapper = new ObjectMapper();
-      ImportExportModel model = null;
-      try{
-         model = mapper.readValue(json, ImportExportModel.class);
-      } catch (Exception e){
-         log.error("Exception while reading json import", e);
+      ImportReport report = new ImportReport();
+      List<Service> importedServices = new ArrayList<>();
+
+      try (JsonParser parser = mapper.getFactory().createParser(stream)) {
+         if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a JSON object holding repository definitions");
+         }
+         while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String collection = parser.getCurrentName();
+            Class<?> entityClass = IMPORTED_COLLECTIONS.get(collection);
+            if (parser.nextToken() != JsonToken.START_ARRAY || entityClass == null) {
+               log.warn("Skipping unexpected '{}' field in repository import", collection);
+               parser.skipChildren();
+               continue;
+            }
+            importCollection(mapper, parser, collection, entityClass, report, importedServices);
+         }
+         report.setCompleted(true);
+      } catch (IOException ioe) {
+         log.error("Exception while reading json import", ioe);
+         report.addError(null, -1, ioe.getMessage());
+      }
+      log.info("Repository import {}: {} definitions imported, {} failed", report.isCompleted() ? "completed" : "aborted",
+            report.getImported(), report.getFailed());
+
+      // Imported services may override existing ones, notify so that caches are refreshed.
+      for (Service service : importedServices) {
+         applicationContext.publishEvent(new ServiceUpdateEvent(this, service.getId(), service.getName(),
+               service.getVersion(), ServiceUpdateEvent.ChangeType.UPDATED));
+      }
+      return report;
+   }
+
+   /** Read the elements of a JSON array one at a time, writing them to repository by batches. */
+   private void importCollection(ObjectMapper mapper, JsonParser parser, String collection, Class<?> entityClass,
+         ImportReport report, List<Service> importedServices) throws IOException {
+      List<Object> batch = new ArrayList<>(importBatchSize);
+      int batchIndex = 0;
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+         // Read element as a tree first so that a mapping error does not leave parser in the middle of it.
+         JsonNode node = mapper.readTree(parser);
+         try {
+            if (node == null || !node.isObject()) {
+               throw new JsonMappingException(parser, "Definition is not a JSON object");
+            }
+            batch.add(mapper.treeToValue(node, entityClass));
+         } catch (JsonProcessingException jpe) {
+            report.addError(collection, batchIndex, "Definition cannot be read: " + jpe.getOriginalMessage());
+            report.addFailed(collection, 1);
+         }
+         if (batch.size() >= importBatchSize) {
+            writeBatch(collection, entityClass, batch, batchIndex++, report, importedServices);
+            batch.clear();
+         }
+      }
+      if (!batch.isEmpty()) {
+         writeBatch(collection, entityClass, batch, batchIndex, report, importedServices);
+      }
+   }
+
+   /** Write a batch of entities with an unordered bulk of upserts, reporting written ones and errors. */
+   private void writeBatch(String collection, Class<?> entityClass, List<Object> batch, int batchIndex,
+         ImportReport report, List<Service> importedServices) {
+      List<WriteModel<Document>> writes = new ArrayList<>(batch.size());
+      for (Object entity : batch) {
+         Document document = new Document();
+         template.getConverter().write(entity, document);
+         Object id = document.get("_id");
+         if (id != null) {
+            writes.add(new ReplaceOneModel<>(new Document("_id", id), document, new ReplaceOptions().upsert(true)));
+         } else {
+            // Assign identifier here as the one generated by driver is not set back on entity.
+            assignId(entity, document);
+            writes.add(new InsertOneModel<>(document));
+         }
       }
 
-      if (log.isInfoEnabled()){
-         log.info("Retrieve " + model.getServices().size() + " services to import into repository");
-         log.info("Retrieve " + model.getResources().size() + " resources to import into repository");
-         log.info("Retrieve " + model.getResponses().size() + " responses to import into repository");
-         log.info("Retrieve " + model.getRequests().size() + " requests to import into repository");
+      Set<Integer> failedIndexes = new HashSet<>();
+      try {
+         template.getCollection(template.getCollectionName(entityClass))
+               .bulkWrite(writes, new BulkWriteOptions().ordered(false));
+      } catch (MongoBulkWriteException mbwe) {
+         for (BulkWriteError error : mbwe.getWriteErrors()) {
+            failedIndexes.add(error.getIndex());
+            report.addError(collection, batchIndex, error.getMessage());
+         }
+      } catch (Exception e) {
+         log.error("Batch " + batchIndex + " of " + collection + " cannot be imported", e);
+         for (int i = 0; i < batch.size(); i++) {
+            failedIndexes.add(i);
+         }
+         report.addError(collection, batchIndex, e.getMessage());
       }
-      if (model != null){
-         serviceRepository.saveAll(model.getServices());
-         resourceRepository.saveAll(model.getResources());
-         responseRepository.saveAll(model.getResponses());
-         requestRepository.saveAll(model.getRequests());
-         return true;
+
+      report.addImported(collection, batch.size() - failedIndexes.size());
+      report.addFailed(collection, failedIndexes.size());
+      if (entityClass == Service.class) {
+         for (int i = 0; i < batch.size(); i++) {
+            if (!failedIndexes.contains(i)) {
+               Service service = (Service) batch.get(i);
+               importedServices.add(service);
+            }
+         }
       }
+      log.info("Imported {} {} so far", report.getImported(collection), collection);
+   }
 
-      return false;
+   /** Assign a new ObjectId to an entity having no identifier, both in its document and in entity itself. */
+   private void assignId(Object entity, Document document) {
+      MongoPersistentEntity<?> persistentEntity = template.getConverter().getMappingContext()
+            .getRequiredPersistentEntity(entity.getClass());
+      MongoPersistentProperty idProperty = persistentEntity.getRequiredIdProperty();
+      ObjectId id = new ObjectId();
+      document.put("_id", id);
+      persistentEntity.getPropertyAccessor(entity).setProperty(idProperty,
+            template.getConverter().getConversionService().convert(id, idProperty.getType()));
    }
 
    /**
@@ -92,46 +257,173 @@ public class ImportExportService {
     * @return A string representation of this repository export
     */
    public String exportRepository(List<String> ids, String format){
-      StringBuilder result = new StringBuilder("{");
-      ObjectMapper mapper = new ObjectMapper();
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      try {
+         exportRepository(ids, format, result);
+      } catch (IOException ioe) {
+         log.error("Exception while serializing repository export", ioe);
+      }
+      return new String(result.toByteArray(), StandardCharsets.UTF_8);
+   }
+
+   /**
+    * Write a partial export of repository using the specified services identifiers. Resources, requests
+    * and responses are streamed from repository cursors to a JSON generator so that memory usage does not
+    * depend on the size of export.
+    * @param ids The list of service ids to export
+    * @param format The format for this export (reserved for future usage)
+    * @param stream The stream to write export to, it is closed once export is complete
+    * @throws IOException if export cannot be written
+    */
+   public void exportRepository(List<String> ids, String format, OutputStream stream) throws IOException {
+      ObjectMapper mapper = new ObjectMapper().disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
 
-      // First, retrieve service list.
-      List<Service> services = serviceRepository.findByIdIn(ids);
-      try{
-         String jsonArray = mapper.writeValueAsString(services);
-         result.append("\"services\":").append(jsonArray).append(", ");
-      } catch (Exception e){
-         log.error("Exception while serializing services for export", e);
-      }
-
-      // Then, get resources associated to services.
-      List<Resource> resources = resourceRepository.findByServiceIdIn(ids);
-      try{
-         String jsonArray = mapper.writeValueAsString(resources);
-         result.append("\"resources\":").append(jsonArray).append(", ");
-      } catch (Exception e){
-         log.error("Exception while serializing resources for export", e);
-      }
-
-      // Finally, get requests and responses associated to services.
-      List<String> operationIds = new ArrayList<>();
-      for (Service service : services){
-         for (Operation operation : service.getOperations()){
-            operationIds.add(IdBuilder.buildOperationId(service, operation));
+      try (JsonGenerator generator = mapper.getFactory().createGenerator(stream, JsonEncoding.UTF8)) {
+         generator.writeStartObject();
+
+         // First, retrieve service list.
+         List<Service> services = serviceRepository.findByIdIn(ids);
+         generator.writeFieldName("services");
+         writeArray(mapper, generator, services.stream());
+
+         // Then, get resources associated to services.
+         generator.writeFieldName("resources");
+         try (Stream<Resource> resources = resourceRepository.streamByServiceIdIn(ids)) {
+            writeArray(mapper, generator, resources);
+         }
+
+         // Finally, get requests and responses associated to services.
+         List<String> operationIds = new ArrayList<>();
+         for (Service service : services){
+            for (Operation operation : service.getOperations()){
+               operationIds.add(IdBuilder.buildOperationId(service, operation));
+            }
+         }
+         generator.writeFieldName("requests");
+         try (Stream<Request> requests = requestRepository.streamByOperationIdIn(operationIds)) {
+            writeArray(mapper, generator, requests);
          }
+         generator.writeFieldName("responses");
+         try (Stream<Response> responses = responseRepository.streamByOperationIdIn(operationIds)) {
+            writeArray(mapper, generator, responses);
+         }
+
+         generator.writeEndObject();
+      }
+   }
+
+   /**
+    * Export all the Services and mock Responses of repository as a binary catalog snapshot that mock serving
+    * nodes can memory-map (see CatalogSnapshot). Responses are streamed from repository cursor to output.
+    * @param stream The stream to write snapshot to, it is closed once snapshot is complete
+    * @throws IOException if snapshot cannot be written
+    */
+   public void exportCatalogSnapshot(OutputStream stream) throws IOException {
+      int serviceCount = 0;
+      int responseCount = 0;
+      try (CatalogSnapshotWriter writer = new CatalogSnapshotWriter(stream);
+           Stream<Response> responses = responseRepository.streamAllWithOperationId()) {
+         for (Service service : serviceRepository.findAll()) {
+            writer.writeService(service);
+            serviceCount++;
+         }
+         Iterator<Response> iterator = responses.iterator();
+         while (iterator.hasNext()) {
+            writer.writeResponse(iterator.next());
+            responseCount++;
+         }
+      }
+      log.info("Catalog snapshot exported with {} services and {} responses", serviceCount, responseCount);
+   }
+
+   /** Write the elements of a stream as a JSON array, one at a time. */
+   private static void writeArray(ObjectMapper mapper, JsonGenerator generator, Stream<?> elements) throws IOException {
+      generator.writeStartArray();
+      Iterator<?> iterator = elements.iterator();
+      while (iterator.hasNext()) {
+         mapper.writeValue(generator, iterator.next());
       }
-      List<Request> requests = requestRepository.findByOperationIdIn(operationIds);
-      List<Response> responses = responseRepository.findByOperationIdIn(operationIds);
-      try{
-         String jsonArray = mapper.writeValueAsString(requests);
-         result.append("\"requests\":").append(jsonArray).append(", ");
-         jsonArray = mapper.writeValueAsString(responses);
-         result.append("\"responses\":").append(jsonArray);
-      } catch (Exception e){
-         log.error("Exception while serializing messages for export", e);
+      generator.writeEndArray();
+   }
+
+   /** A report on a repository import: imported and failed definitions per collection and errors. */
+   public static class ImportReport {
+      private boolean completed;
+      private final Map<String, Long> imported = new LinkedHashMap<>();
+      private final Map<String, Long> failed = new LinkedHashMap<>();
+      private final List<ImportError> errors = new ArrayList<>();
+
+      public boolean isCompleted() {
+         return completed;
+      }
+
+      public void setCompleted(boolean completed) {
+         this.completed = completed;
+      }
+
+      public Map<String, Long> getImportedByCollection() {
+         return imported;
+      }
+
+      public Map<String, Long> getFailedByCollection() {
+         return failed;
+      }
+
+      public long getImported() {
+         return imported.values().stream().mapToLong(Long::longValue).sum();
       }
 
-      return result.append("}").toString();
+      public long getImported(String collection) {
+         return imported.getOrDefault(collection, 0L);
+      }
+
+      public long getFailed() {
+         return failed.values().stream().mapToLong(Long::longValue).sum();
+      }
+
+      public List<ImportError> getErrors() {
+         return errors;
+      }
+
+      void addImported(String collection, long count) {
+         imported.merge(collection, count, Long::sum);
+      }
+
+      void addFailed(String collection, long count) {
+         failed.merge(collection, count, Long::sum);
+      }
+
+      void addError(String collection, int batch, String message) {
+         // Keep report bounded if a whole backup is broken.
+         if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new ImportError(collection, batch, message));
+         }
+      }
+   }
+
+   /** An error occurring while importing a batch of a collection. */
+   public static class ImportError {
+      private final String collection;
+      private final int batch;
+      private final String message;
+
+      public ImportError(String collection, int batch, String message) {
+         this.collection = collection;
+         this.batch = batch;
+         this.message = message;
+      }
+
+      public String getCollection() {
+         return collection;
+      }
+
+      public int getBatch() {
+         return batch;
+      }
+
+      public String getMessage() {
+         return message;
+      }
    }
 
    public static class ImportExportModel {
@@ -0,0 +1,89 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.microcks.util.dispatcher.CompiledJsonEvaluator;
+import io.github.microcks.util.dispatcher.JsonEvaluationSpecification;
+import io.github.microcks.util.dispatcher.JsonMappingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * A bounded cache of CompiledJsonEvaluator used by JSON_BODY dispatchers. Evaluators are cached using the
+ * dispatcher rules so that any change on operation dispatcher rules leads to a new compilation. Evaluators
+ * being immutable, they are shared between threads. Payloads larger than a configurable threshold are
+ * evaluated in streaming mode for avoiding large JSON trees allocation.
+ * @author laurent
+ */
+@Component
+public class JsonEvaluatorCache {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(JsonEvaluatorCache.class);
+
+   @Value("${mocks.json-evaluator-cache.max-size:1000}")
+   private long maxSize;
+
+   @Value("${mocks.json-evaluator-cache.streaming-threshold:16384}")
+   private int streamingThreshold;
+
+   private Cache<String, CompiledJsonEvaluator> evaluators;
+
+
+   @PostConstruct
+   public void initializeCache() {
+      evaluators = Caffeine.newBuilder().maximumSize(maxSize).build();
+   }
+
+   /**
+    * Evaluate a Json payload using an evaluator compiled from JSON_BODY dispatcher rules.
+    * @param rules The JSON representation of JsonEvaluationSpecification (typically operation dispatcher rules)
+    * @param jsonText The Json payload to evaluate
+    * @return The result of evaluation
+    * @throws JsonMappingException if rules cannot be compiled or Json payload is malformed
+    */
+   public String evaluate(String rules, String jsonText) throws JsonMappingException {
+      CompiledJsonEvaluator evaluator = getEvaluator(rules);
+      if (jsonText != null && jsonText.length() > streamingThreshold) {
+         return evaluator.evaluateStreaming(jsonText);
+      }
+      return evaluator.evaluate(jsonText);
+   }
+
+   /** Invalidate all the evaluators. */
+   public void invalidateAll() {
+      evaluators.invalidateAll();
+   }
+
+   private CompiledJsonEvaluator getEvaluator(String rules) throws JsonMappingException {
+      CompiledJsonEvaluator evaluator = evaluators.getIfPresent(rules);
+      if (evaluator == null) {
+         log.debug("Compiling a new JSON_BODY evaluator");
+         evaluator = CompiledJsonEvaluator.compile(JsonEvaluationSpecification.buildFromJsonString(rules));
+         evaluators.put(rules, evaluator);
+      }
+      return evaluator;
+   }
+}
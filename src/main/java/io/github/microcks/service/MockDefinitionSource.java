@@ -0,0 +1,60 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+
+import java.util.List;
+
+/**
+ * Read-only source of the Services and Responses used for serving mocks. This is what mock routing index and
+ * response cache are loaded from: MongoDB repositories by default, an exported snapshot for the standalone
+ * mock runtime.
+ * @author laurent
+ */
+public interface MockDefinitionSource {
+
+   /** @return All the available Services. */
+   List<Service> findAllServices();
+
+   /**
+    * Find a Service using its name and version.
+    * @param name The name of Service
+    * @param version The version of Service
+    * @return The Service or null if none.
+    */
+   Service findServiceByNameAndVersion(String name, String version);
+
+   /**
+    * Find the Responses of an operation having the given dispatch criteria.
+    * @param operationId The identifier of operation
+    * @param dispatchCriteria The dispatch criteria of responses
+    * @return The matching responses, may be empty.
+    */
+   List<Response> findResponsesByOperationIdAndDispatchCriteria(String operationId, String dispatchCriteria);
+
+   /**
+    * Find the Responses of an operation having the given name.
+    * @param operationId The identifier of operation
+    * @param name The name of responses
+    * @return The matching responses, may be empty.
+    */
+   List<Response> findResponsesByOperationIdAndName(String operationId, String name);
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Component simulating mock response delays without blocking request threads. Delayed responses are returned
+ * as DeferredResults to Spring MVC asynchronous request processing and released by a shared timer when delay
+ * expires, so that in-flight delayed responses only cost memory.
+ * @author laurent
+ */
+@Component
+public class MockDelayScheduler {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(MockDelayScheduler.class);
+
+   /** Margin added to delay for asynchronous request timeout. */
+   private static final long ASYNC_TIMEOUT_MARGIN = 10000L;
+
+   @Value("${mocks.delay-scheduler.threads:1}")
+   private int threads;
+
+   private ScheduledExecutorService timer;
+
+
+   @PostConstruct
+   public void initializeTimer() {
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), runnable -> {
+         Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+         thread.setName("mock-delay-" + thread.getName());
+         thread.setDaemon(true);
+         return thread;
+      });
+      // Do not keep track of released responses.
+      executor.setRemoveOnCancelPolicy(true);
+      timer = executor;
+   }
+
+   @PreDestroy
+   public void shutdownTimer() {
+      timer.shutdownNow();
+   }
+
+   /**
+    * Compute the delay to apply to a mock response.
+    * @param requestedDelay The delay requested by invocation (may be null)
+    * @param defaultDelay The default delay of operation (may be null)
+    * @param startTime The timestamp of invocation start
+    * @return The remaining time to wait in milliseconds, 0 if none.
+    */
+   public long computeRemainingDelay(Long requestedDelay, Long defaultDelay, long startTime) {
+      // Setting delay to default one if not set.
+      Long delay = (requestedDelay != null ? requestedDelay : defaultDelay);
+      if (delay != null && delay > -1) {
+         long duration = System.currentTimeMillis() - startTime;
+         return Math.max(0, delay - duration);
+      }
+      return 0;
+   }
+
+   /**
+    * Release a mock response after a delay. The calling handler should return the resulting DeferredResult
+    * so that Spring MVC processes request asynchronously and writes response when delay expires. If there's
+    * no remaining delay, the DeferredResult is already completed.
+    * @param response The mock response to release
+    * @param remainingDelay The remaining time to wait in milliseconds
+    * @param <T> The type of response
+    * @return A DeferredResult completed with response once delay has expired.
+    */
+   public <T> DeferredResult<T> release(T response, long remainingDelay) {
+      return release(response, remainingDelay, null);
+   }
+
+   /**
+    * Release a mock response after a delay, running a callback when delay has expired and just before response
+    * is written. Callback typically publishes the invocation event so that its duration includes the delay.
+    * @param response The mock response to release
+    * @param remainingDelay The remaining time to wait in milliseconds
+    * @param onRelease The callback to run on release (may be null)
+    * @param <T> The type of response
+    * @return A DeferredResult completed with response once delay has expired.
+    */
+   public <T> DeferredResult<T> release(T response, long remainingDelay, Runnable onRelease) {
+      if (remainingDelay <= 0) {
+         runReleaseCallback(onRelease);
+         return completed(response);
+      }
+      log.debug("Mock delay is turned on, deferring response for {} ms", remainingDelay);
+      DeferredResult<T> deferredResult = new DeferredResult<>(remainingDelay + ASYNC_TIMEOUT_MARGIN);
+      timer.schedule(() -> {
+         log.debug("Delay now expired, releasing response !");
+         runReleaseCallback(onRelease);
+         deferredResult.setResult(response);
+      }, remainingDelay, TimeUnit.MILLISECONDS);
+      return deferredResult;
+   }
+
+   private static void runReleaseCallback(Runnable onRelease) {
+      if (onRelease == null) {
+         return;
+      }
+      try {
+         onRelease.run();
+      } catch (Exception e) {
+         // Response should be released anyway.
+         log.warn("Release callback of mock response failed", e);
+      }
+   }
+
+   /**
+    * Build an already completed DeferredResult, for responses that are not subject to delay.
+    * @param response The response to release immediately
+    * @param <T> The type of response
+    * @return A completed DeferredResult
+    */
+   public static <T> DeferredResult<T> completed(T response) {
+      DeferredResult<T> deferredResult = new DeferredResult<>();
+      deferredResult.setResult(response);
+      return deferredResult;
+   }
+}
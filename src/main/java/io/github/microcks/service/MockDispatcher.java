@@ -0,0 +1,317 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.Operation;
+import io.github.microcks.domain.Service;
+import io.github.microcks.event.MockInvocationEvent;
+import io.github.microcks.util.DispatchCriteriaHelper;
+import io.github.microcks.util.DispatchStyles;
+import io.github.microcks.util.IdBuilder;
+import io.github.microcks.util.SoapMessageReader;
+import io.github.microcks.util.SoapMessageValidator;
+import io.github.microcks.util.dispatcher.JsonMappingException;
+import org.apache.xmlbeans.XmlError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Component holding the dispatch semantics of mock invocations, shared by servlet controllers and the reactive
+ * handler: operation resolution, dispatch criteria evaluation, response lookup and invocation events. Methods
+ * evaluating criteria may be CPU intensive, callers not running on a worker thread should offload them.
+ * @author laurent
+ */
+@Component
+public class MockDispatcher {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(MockDispatcher.class);
+
+   @Autowired
+   private MockResponseCache responseCache;
+
+   @Autowired
+   private CompiledScriptCache scriptCache;
+
+   @Autowired
+   private JsonEvaluatorCache jsonEvaluatorCache;
+
+   @Autowired
+   private XPathMatcherCache xpathCache;
+
+   @Autowired
+   private ApplicationContext applicationContext;
+
+   @Value("${validation.resourceUrl}")
+   private final String resourceUrl = null;
+
+
+   /**
+    * Find the Operation of a SOAP invocation using its SOAPAction header value and its payload.
+    * @param routes The routes of invoked Service
+    * @param soapActionHeader The raw value of SOAPAction header (may be null)
+    * @param payload The SOAP request payload
+    * @return The matching Operation or null if none.
+    */
+   public static Operation findSoapOperation(MockRoutingIndex.ServiceRoutes routes, String soapActionHeader,
+         String payload) {
+      // Use SOAPAction header as a fast path, soap:body element wins if they disagree.
+      return routes.findSoapOperation(SoapMessageReader.extractSoapAction(soapActionHeader),
+            getBodyElementName(payload));
+   }
+
+   /**
+    * Compute the dispatch criteria of a Rest invocation received by a servlet controller.
+    * @param operation The invoked Operation
+    * @param resourcePath The resource path of invocation
+    * @param fullURI The full URI of invocation, including query string
+    * @param body The request body (may be null)
+    * @param request The incoming servlet request, for dispatch scripts
+    * @return The dispatch criteria or null if none.
+    */
+   public String computeRestDispatchCriteria(Operation operation, String resourcePath, String fullURI, String body,
+         HttpServletRequest request) {
+      return evaluateRestDispatchCriteria(operation, resourcePath, fullURI, body,
+            () -> scriptCache.evaluate(operation.getDispatcherRules(), body, request));
+   }
+
+   /**
+    * Compute the dispatch criteria of a Rest invocation from its headers.
+    * @param operation The invoked Operation
+    * @param resourcePath The resource path of invocation
+    * @param fullURI The full URI of invocation, including query string
+    * @param body The request body (may be null)
+    * @param requestHeaders The headers of incoming request, for dispatch scripts
+    * @return The dispatch criteria or null if none.
+    */
+   public String computeRestDispatchCriteria(Operation operation, String resourcePath, String fullURI, String body,
+         Map<String, List<String>> requestHeaders) {
+      return evaluateRestDispatchCriteria(operation, resourcePath, fullURI, body,
+            () -> scriptCache.evaluate(operation.getDispatcherRules(), body, requestHeaders));
+   }
+
+   /**
+    * Compute the dispatch criteria of a Soap invocation received by a servlet controller.
+    * @param operation The invoked Operation
+    * @param body The SOAP request payload
+    * @param request The incoming servlet request, for dispatch scripts
+    * @return The dispatch criteria or null if none.
+    */
+   public String computeSoapDispatchCriteria(Operation operation, String body, HttpServletRequest request) {
+      return evaluateSoapDispatchCriteria(operation, body,
+            () -> scriptCache.evaluate(operation.getDispatcherRules(), body, request));
+   }
+
+   /**
+    * Compute the dispatch criteria of a Soap invocation from its headers.
+    * @param operation The invoked Operation
+    * @param body The SOAP request payload
+    * @param requestHeaders The headers of incoming request, for dispatch scripts
+    * @return The dispatch criteria or null if none.
+    */
+   public String computeSoapDispatchCriteria(Operation operation, String body,
+         Map<String, List<String>> requestHeaders) {
+      return evaluateSoapDispatchCriteria(operation, body,
+            () -> scriptCache.evaluate(operation.getDispatcherRules(), body, requestHeaders));
+   }
+
+   /**
+    * Tell if computing dispatch criteria of an operation evaluates its request body, using CPU.
+    * @param operation The invoked Operation
+    * @return True if criteria come from a JSON or XPath evaluation of body.
+    */
+   public boolean isBodyEvaluated(Operation operation) {
+      return DispatchStyles.JSON_BODY.equals(operation.getDispatcher())
+            || DispatchStyles.QUERY_MATCH.equals(operation.getDispatcher());
+   }
+
+   /**
+    * Tell if computing dispatch criteria of an operation runs a dispatch script that may block.
+    * @param operation The invoked Operation
+    * @return True if criteria come from a script evaluation.
+    */
+   public boolean isScriptEvaluated(Operation operation) {
+      return DispatchStyles.SCRIPT.equals(operation.getDispatcher());
+   }
+
+   /**
+    * Find the response of a Rest invocation. When using the JSON_BODY dispatcher, criteria may be the name of
+    * response so that name is tried if no response has these criteria.
+    * @param service The invoked Service
+    * @param operation The invoked Operation
+    * @param dispatchCriteria The dispatch criteria of invocation
+    * @return The prepared response or null if none.
+    */
+   public PreparedResponse findRestResponse(Service service, Operation operation, String dispatchCriteria) {
+      String operationId = IdBuilder.buildOperationId(service, operation);
+      PreparedResponse response = responseCache.findPreparedByOperationIdAndDispatchCriteria(operationId,
+            dispatchCriteria);
+      if (response == null) {
+         response = responseCache.findPreparedByOperationIdAndName(operationId, dispatchCriteria);
+      }
+      return response;
+   }
+
+   /**
+    * Find the response of a Soap invocation.
+    * @param service The invoked Service
+    * @param operation The invoked Operation
+    * @param dispatchCriteria The dispatch criteria of invocation
+    * @return The prepared response or null if none.
+    */
+   public PreparedResponse findSoapResponse(Service service, Operation operation, String dispatchCriteria) {
+      return responseCache.findPreparedByOperationIdAndDispatchCriteria(
+            IdBuilder.buildOperationId(service, operation), dispatchCriteria);
+   }
+
+   /**
+    * Validate a SOAP request payload against the WSDL of its service. This may load WSDL and block.
+    * @param service The invoked Service
+    * @param operation The invoked Operation
+    * @param version The invoked version of Service
+    * @param body The SOAP request payload
+    * @return The validation errors, empty if payload is valid or cannot be validated.
+    */
+   public List<XmlError> validateSoapMessage(Service service, Operation operation, String version, String body) {
+      try {
+         List<XmlError> errors = SoapMessageValidator.validateSoapMessage(
+               operation.getInputName(), service.getXmlNS(), body,
+               resourceUrl + service.getName() + "-" + version + ".wsdl", true);
+         log.debug("SoapBody validation errors: " + errors.size());
+         return errors;
+      } catch (Exception e) {
+         log.error("Error during Soap validation", e);
+      }
+      return Collections.emptyList();
+   }
+
+   /**
+    * Build a callback publishing a MockInvocationEvent, to be run when response is released after delay.
+    * @param service The invoked Service
+    * @param version The invoked version of Service
+    * @param response The released response
+    * @param startTime The time invocation has been received at
+    * @return A callback publishing invocation event
+    */
+   public Runnable buildInvocationPublisher(Service service, String version, PreparedResponse response,
+         long startTime) {
+      return () -> {
+         MockInvocationEvent event = new MockInvocationEvent(this, service.getName(), version,
+               response.getResponse().getName(), new Date(startTime), startTime - System.currentTimeMillis());
+         applicationContext.publishEvent(event);
+         log.debug("Mock invocation event has been published");
+      };
+   }
+
+   private String evaluateRestDispatchCriteria(Operation operation, String resourcePath, String fullURI, String body,
+         ScriptEvaluation scriptEvaluation) {
+      String uriPattern = getURIPattern(operation.getName());
+      String dispatchCriteria = null;
+
+      // Depending on dispatcher, evaluate request with rules.
+      if (DispatchStyles.SEQUENCE.equals(operation.getDispatcher())
+            || DispatchStyles.URI_PARTS.equals(operation.getDispatcher())) {
+         dispatchCriteria = DispatchCriteriaHelper.extractFromURIPattern(uriPattern, resourcePath);
+      }
+      else if (DispatchStyles.SCRIPT.equals(operation.getDispatcher())) {
+         dispatchCriteria = evaluateScript(scriptEvaluation);
+      }
+      // New cases related to services/operations/messages coming from a postman collection file.
+      else if (DispatchStyles.URI_PARAMS.equals(operation.getDispatcher())) {
+         dispatchCriteria = DispatchCriteriaHelper.extractFromURIParams(operation.getDispatcherRules(), fullURI);
+      }
+      else if (DispatchStyles.URI_ELEMENTS.equals(operation.getDispatcher())) {
+         dispatchCriteria = DispatchCriteriaHelper.extractFromURIPattern(uriPattern, resourcePath);
+         dispatchCriteria += DispatchCriteriaHelper.extractFromURIParams(operation.getDispatcherRules(), fullURI);
+      }
+      else if (DispatchStyles.JSON_BODY.equals(operation.getDispatcher())) {
+         try {
+            dispatchCriteria = jsonEvaluatorCache.evaluate(operation.getDispatcherRules(), body);
+         } catch (JsonMappingException jme) {
+            log.error("Dispatching rules of request cannot be interpreted as valid JSON", jme);
+         }
+      }
+      log.debug("Dispatch criteria for finding response is {}", dispatchCriteria);
+      return dispatchCriteria;
+   }
+
+   private String evaluateSoapDispatchCriteria(Operation operation, String body, ScriptEvaluation scriptEvaluation) {
+      String dispatchCriteria = null;
+
+      // Depending on dispatcher, evaluate request with rules.
+      if (DispatchStyles.QUERY_MATCH.equals(operation.getDispatcher())) {
+         try {
+            // Evaluating request regarding XPath build with operation dispatcher rules.
+            dispatchCriteria = xpathCache.evaluate(operation.getDispatcherRules(), body);
+         } catch (Exception e) {
+            log.error("Error during Xpath evaluation", e);
+         }
+      } else if (DispatchStyles.SCRIPT.equals(operation.getDispatcher())) {
+         dispatchCriteria = evaluateScript(scriptEvaluation);
+      }
+      log.debug("Dispatch criteria for finding response is {}", dispatchCriteria);
+      return dispatchCriteria;
+   }
+
+   private String evaluateScript(ScriptEvaluation scriptEvaluation) {
+      try {
+         // Evaluating request with script coming from operation dispatcher rules.
+         return (String) scriptEvaluation.evaluate();
+      } catch (Exception e) {
+         log.error("Error during Script evaluation", e);
+      }
+      return null;
+   }
+
+   /** Get the name of SOAP Body first child element using a streaming read. Null if not found or malformed. */
+   private static QName getBodyElementName(String payload) {
+      try {
+         return SoapMessageReader.readFirstBodyElementName(payload);
+      } catch (XMLStreamException xse) {
+         log.warn("SOAP payload cannot be read as valid XML: {}", xse.getMessage());
+      }
+      return null;
+   }
+
+   private static String getURIPattern(String operationName) {
+      if (operationName.startsWith("GET ") || operationName.startsWith("POST ")
+            || operationName.startsWith("PUT ") || operationName.startsWith("DELETE ")) {
+         return operationName.substring(operationName.indexOf(' ') + 1);
+      }
+      return operationName;
+   }
+
+   /** Evaluation of a dispatch script against the incoming request, whatever the way it has been received. */
+   @FunctionalInterface
+   private interface ScriptEvaluation {
+      Object evaluate() throws Exception;
+   }
+}
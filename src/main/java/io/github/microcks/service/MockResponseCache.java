@@ -0,0 +1,268 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.github.microcks.domain.Response;
+import io.github.microcks.event.ServiceUpdateEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A size-bounded cache of mock Responses sitting in front of MockDefinitionSource. Cache is keyed by
+ * operation identifier and dispatch criteria (or response name) and also remembers misses. Responses are
+ * cached into their prepared wire form, entries are weighted using their content length and are invalidated
+ * on each received ServiceUpdateEvent. Each invalidation bumps a generation so that an entry loaded before
+ * invalidation, but stored after it, is discarded instead of being served stale.
+ * @author laurent
+ */
+@Component
+public class MockResponseCache implements ApplicationListener<ServiceUpdateEvent> {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(MockResponseCache.class);
+
+   /** Fixed weight accounting for response object, key and cache entry overhead. */
+   private static final int ENTRY_OVERHEAD_WEIGHT = 512;
+
+   @Autowired
+   private MockDefinitionSource definitionSource;
+
+   @Autowired(required = false)
+   private MeterRegistry meterRegistry;
+
+   @Value("${mocks.response-cache.enabled:true}")
+   private boolean enabled;
+
+   @Value("${mocks.response-cache.max-weight:67108864}")
+   private long maxWeight;
+
+   private Cache<ResponseKey, Optional<PreparedResponse>> cache;
+
+   /** Incremented before each invalidation. */
+   private final AtomicLong generation = new AtomicLong();
+
+
+   @PostConstruct
+   public void initializeCache() {
+      cache = Caffeine.newBuilder()
+            .maximumWeight(enabled ? maxWeight : 0)
+            .weigher((ResponseKey key, Optional<PreparedResponse> value) -> weigh(value))
+            .recordStats()
+            .build();
+      if (meterRegistry != null) {
+         CaffeineCacheMetrics.monitor(meterRegistry, cache, "mockResponses");
+      }
+      log.info("Mock response cache initialized with enabled: {}, max weight: {}", enabled, maxWeight);
+   }
+
+   /**
+    * Find the first Response of an operation having the given dispatch criteria.
+    * @param operationId The identifier of operation
+    * @param dispatchCriteria The dispatch criteria of response
+    * @return The matching response or null if none.
+    */
+   public Response findByOperationIdAndDispatchCriteria(String operationId, String dispatchCriteria) {
+      PreparedResponse prepared = findPreparedByOperationIdAndDispatchCriteria(operationId, dispatchCriteria);
+      return (prepared != null ? prepared.getResponse() : null);
+   }
+
+   /**
+    * Find the prepared wire form of the first Response of an operation having the given dispatch criteria.
+    * @param operationId The identifier of operation
+    * @param dispatchCriteria The dispatch criteria of response
+    * @return The matching prepared response or null if none.
+    */
+   public PreparedResponse findPreparedByOperationIdAndDispatchCriteria(String operationId, String dispatchCriteria) {
+      return load(new ResponseKey(operationId, dispatchCriteria, false),
+            () -> definitionSource.findResponsesByOperationIdAndDispatchCriteria(operationId, dispatchCriteria)
+      ).orElse(null);
+   }
+
+   /**
+    * Find the first Response of an operation having the given name.
+    * @param operationId The identifier of operation
+    * @param name The name of response
+    * @return The matching response or null if none.
+    */
+   public Response findByOperationIdAndName(String operationId, String name) {
+      PreparedResponse prepared = findPreparedByOperationIdAndName(operationId, name);
+      return (prepared != null ? prepared.getResponse() : null);
+   }
+
+   /**
+    * Find the prepared wire form of the first Response of an operation having the given name.
+    * @param operationId The identifier of operation
+    * @param name The name of response
+    * @return The matching prepared response or null if none.
+    */
+   public PreparedResponse findPreparedByOperationIdAndName(String operationId, String name) {
+      return load(new ResponseKey(operationId, name, true),
+            () -> definitionSource.findResponsesByOperationIdAndName(operationId, name)
+      ).orElse(null);
+   }
+
+   /**
+    * Get the cached lookup result of a Response without querying the repository. This is intended for
+    * non-blocking callers that load responses on their own and then call {@link #putPrepared}.
+    * @param operationId The identifier of operation
+    * @param criteria The dispatch criteria or the name of response
+    * @param byName Whether criteria is a response name
+    * @return The cached lookup result (empty if cached as a miss) or null if not cached.
+    */
+   public Optional<PreparedResponse> getPreparedIfPresent(String operationId, String criteria, boolean byName) {
+      return cache.getIfPresent(new ResponseKey(operationId, criteria, byName));
+   }
+
+   /**
+    * Get the current invalidation generation. Callers loading responses on their own should get it before
+    * loading and give it back to {@link #putPrepared}.
+    * @return The current generation
+    */
+   public long getGeneration() {
+      return generation.get();
+   }
+
+   /**
+    * Cache the lookup result of a Response loaded by caller. Result is not kept if cache has been invalidated
+    * since the given generation.
+    * @param operationId The identifier of operation
+    * @param criteria The dispatch criteria or the name of response
+    * @param byName Whether criteria is a response name
+    * @param response The first matching Response or null if none
+    * @param loadGeneration The generation of cache when loading of response started
+    * @return The prepared response or null if none.
+    */
+   public PreparedResponse putPrepared(String operationId, String criteria, boolean byName, Response response,
+         long loadGeneration) {
+      Optional<PreparedResponse> prepared = (response != null ?
+            Optional.of(PreparedResponse.prepare(response)) : Optional.empty());
+      ResponseKey key = new ResponseKey(operationId, criteria, byName);
+      cache.put(key, prepared);
+      discardIfInvalidated(key, prepared, loadGeneration);
+      return prepared.orElse(null);
+   }
+
+   /**
+    * Invalidate all the cached responses of a Service.
+    * @param serviceId The identifier of service to invalidate responses for
+    */
+   public void invalidateService(String serviceId) {
+      // Operation identifiers are built from service identifier, see IdBuilder.
+      String operationIdPrefix = serviceId + "-";
+      generation.incrementAndGet();
+      cache.asMap().keySet().removeIf(key -> key.operationId != null && key.operationId.startsWith(operationIdPrefix));
+   }
+
+   /** Invalidate the whole cache. */
+   public void invalidateAll() {
+      generation.incrementAndGet();
+      cache.invalidateAll();
+   }
+
+   /** @return The statistics (hits, misses, evictions, ...) of this cache */
+   public CacheStats getStats() {
+      return cache.stats();
+   }
+
+   @Override
+   public void onApplicationEvent(ServiceUpdateEvent event) {
+      log.debug("Invalidating cached responses for service {}", event.getServiceId());
+      if (event.getServiceId() != null) {
+         invalidateService(event.getServiceId());
+      } else {
+         invalidateAll();
+      }
+   }
+
+   private Optional<PreparedResponse> load(ResponseKey key, Supplier<List<Response>> loader) {
+      long loadGeneration = generation.get();
+      Optional<PreparedResponse> prepared = cache.get(key, k -> firstOf(loader.get()));
+      discardIfInvalidated(key, prepared, loadGeneration);
+      return prepared;
+   }
+
+   /**
+    * Remove an entry that has just been stored if an invalidation happened since its loading started: the
+    * invalidation may have missed it as it was not stored yet. As invalidations bump the generation before
+    * removing entries, an entry stored before generation is checked is always seen by one or the other.
+    */
+   private void discardIfInvalidated(ResponseKey key, Optional<PreparedResponse> value, long loadGeneration) {
+      if (generation.get() != loadGeneration) {
+         cache.asMap().remove(key, value);
+      }
+   }
+
+   private static Optional<PreparedResponse> firstOf(List<Response> responses) {
+      return (responses == null || responses.isEmpty()) ? Optional.empty()
+            : Optional.of(PreparedResponse.prepare(responses.get(0)));
+   }
+
+   private static int weigh(Optional<PreparedResponse> value) {
+      return ENTRY_OVERHEAD_WEIGHT + value.map(PreparedResponse::getWeight).orElse(0);
+   }
+
+
+   /** Cache key: an operation identifier and a dispatch criteria or a response name. */
+   private static class ResponseKey {
+
+      private final String operationId;
+      private final String criteria;
+      private final boolean byName;
+
+      private ResponseKey(String operationId, String criteria, boolean byName) {
+         this.operationId = operationId;
+         this.criteria = criteria;
+         this.byName = byName;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (this == o) {
+            return true;
+         }
+         if (!(o instanceof ResponseKey)) {
+            return false;
+         }
+         ResponseKey other = (ResponseKey) o;
+         return byName == other.byName && Objects.equals(operationId, other.operationId)
+               && Objects.equals(criteria, other.criteria);
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hash(operationId, criteria, byName);
+      }
+   }
+}
@@ -0,0 +1,273 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.Operation;
+import io.github.microcks.domain.Service;
+import io.github.microcks.event.ServiceUpdateEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.xml.namespace.QName;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory routing index used by mock controllers for resolving Services and Operations
+ * without querying the repository on each invocation. Index is warmed up at startup, lazily
+ * completed on lookups and invalidated on each received ServiceUpdateEvent. Services loaded outside of index
+ * are registered with the generation of index when their loading started, so that they are discarded if an
+ * invalidation happened meanwhile.
+ * @author laurent
+ */
+@Component
+public class MockRoutingIndex implements ApplicationListener<ServiceUpdateEvent> {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(MockRoutingIndex.class);
+
+   @Autowired
+   private MockDefinitionSource definitionSource;
+
+   private final ConcurrentMap<String, ServiceRoutes> routesByService = new ConcurrentHashMap<>();
+
+   /** Incremented before each invalidation. */
+   private final AtomicLong generation = new AtomicLong();
+
+
+   /** Warm up the index with all the services present into repository. */
+   @EventListener(ApplicationReadyEvent.class)
+   public void warmUp() {
+      try {
+         long loadGeneration = generation.get();
+         List<Service> services = definitionSource.findAllServices();
+         for (Service service : services) {
+            registerService(service, loadGeneration);
+         }
+         log.info("Mock routing index has been warmed up with {} services", services.size());
+      } catch (Exception e) {
+         log.warn("Mock routing index cannot be warmed up, will be lazily loaded", e);
+      }
+   }
+
+   /**
+    * Get the routes of a Service using its name and version.
+    * @param serviceName The name of Service to get routes for
+    * @param serviceVersion The version of Service to get routes for
+    * @return The routes of the service or null if no such service exists.
+    */
+   public ServiceRoutes getServiceRoutes(String serviceName, String serviceVersion) {
+      return routesByService.computeIfAbsent(buildServiceKey(serviceName, serviceVersion), key -> {
+         Service service = definitionSource.findServiceByNameAndVersion(serviceName, serviceVersion);
+         return service != null ? new ServiceRoutes(service) : null;
+      });
+   }
+
+   /**
+    * Get the routes of a Service using its name and version, only if already present into index. This never
+    * queries the definition source and is intended for non-blocking callers that load services on their own.
+    * @param serviceName The name of Service to get routes for
+    * @param serviceVersion The version of Service to get routes for
+    * @return The routes of the service or null if not indexed yet.
+    */
+   public ServiceRoutes getServiceRoutesIfPresent(String serviceName, String serviceVersion) {
+      return routesByService.get(buildServiceKey(serviceName, serviceVersion));
+   }
+
+   /**
+    * Get the current invalidation generation. Callers loading services on their own should get it before
+    * loading and give it back to {@link #registerService}.
+    * @return The current generation
+    */
+   public long getGeneration() {
+      return generation.get();
+   }
+
+   /**
+    * Add a Service loaded by caller into index, keeping already indexed routes if any. Routes are not kept
+    * into index if it has been invalidated since the given generation.
+    * @param service The Service to index
+    * @param loadGeneration The generation of index when loading of service started
+    * @return The routes of the service.
+    */
+   public ServiceRoutes registerService(Service service, long loadGeneration) {
+      String key = buildServiceKey(service.getName(), service.getVersion());
+      ServiceRoutes routes = routesByService.computeIfAbsent(key, k -> new ServiceRoutes(service));
+      // Invalidation bumps generation before removing routes: either it sees these routes or we see it.
+      if (generation.get() != loadGeneration) {
+         routesByService.remove(key, routes);
+      }
+      return routes;
+   }
+
+   /**
+    * Get a Service using its name and version.
+    * @param serviceName The name of Service to retrieve
+    * @param serviceVersion The version of Service to retrieve
+    * @return The Service or null if no such service exists.
+    */
+   public Service getService(String serviceName, String serviceVersion) {
+      ServiceRoutes routes = getServiceRoutes(serviceName, serviceVersion);
+      return routes != null ? routes.getService() : null;
+   }
+
+   /** Invalidate the whole index. */
+   public void invalidateAll() {
+      generation.incrementAndGet();
+      routesByService.clear();
+   }
+
+   @Override
+   public void onApplicationEvent(ServiceUpdateEvent event) {
+      log.debug("Invalidating mock routes for service [{}, {}]", event.getServiceName(), event.getServiceVersion());
+      if (event.getServiceName() != null) {
+         generation.incrementAndGet();
+         routesByService.remove(buildServiceKey(event.getServiceName(), event.getServiceVersion()));
+      } else {
+         invalidateAll();
+      }
+   }
+
+   private static String buildServiceKey(String serviceName, String serviceVersion) {
+      return serviceName + ":" + serviceVersion;
+   }
+
+
+   /**
+    * Immutable routing table of a Service: its operations indexed by Http verb and resource path
+    * and - for SOAP services - by SOAP action and input element name.
+    */
+   public static class ServiceRoutes {
+
+      private final Service service;
+      private final Map<String, Operation> operationsByRoute;
+      private final Map<String, Operation> operationsByAction;
+      private final Map<QName, Operation> operationsByInputQName;
+      private final Map<String, Operation> operationsByInputName;
+
+      private ServiceRoutes(Service service) {
+         this.service = service;
+         Map<String, Operation> routes = new HashMap<>();
+         Map<String, Operation> actions = new HashMap<>();
+         Set<String> ambiguousActions = new HashSet<>();
+         Map<QName, Operation> inputQNames = new HashMap<>();
+         Map<String, Operation> inputNames = new HashMap<>();
+         if (service.getOperations() != null) {
+            for (Operation operation : service.getOperations()) {
+               // First declared operation wins, as when browsing operations list.
+               if (operation.getMethod() != null && operation.getResourcePaths() != null) {
+                  for (String resourcePath : operation.getResourcePaths()) {
+                     routes.putIfAbsent(buildRouteKey(operation.getMethod(), resourcePath), operation);
+                  }
+               }
+               if (operation.getInputName() != null) {
+                  if (service.getXmlNS() != null) {
+                     inputQNames.putIfAbsent(new QName(service.getXmlNS(), operation.getInputName()), operation);
+                  }
+                  inputNames.putIfAbsent(operation.getInputName(), operation);
+               }
+               if (operation.getAction() != null && !operation.getAction().isEmpty()) {
+                  if (actions.putIfAbsent(operation.getAction(), operation) != null) {
+                     ambiguousActions.add(operation.getAction());
+                  }
+               }
+            }
+         }
+         // An action shared by many operations cannot be used for dispatching.
+         actions.keySet().removeAll(ambiguousActions);
+
+         this.operationsByRoute = Collections.unmodifiableMap(routes);
+         this.operationsByAction = Collections.unmodifiableMap(actions);
+         this.operationsByInputQName = Collections.unmodifiableMap(inputQNames);
+         this.operationsByInputName = Collections.unmodifiableMap(inputNames);
+      }
+
+      public Service getService() {
+         return service;
+      }
+
+      /**
+       * Find the Operation matching an Http verb and a resource path.
+       * @param method The Http verb (GET, POST, PUT, etc ...)
+       * @param resourcePath The resource path of invocation
+       * @return The matching Operation or null if none.
+       */
+      public Operation findOperation(String method, String resourcePath) {
+         return operationsByRoute.get(buildRouteKey(method.toUpperCase(), resourcePath));
+      }
+
+      /**
+       * Find the Operation having the given SOAP action.
+       * @param action The SOAP action of invocation
+       * @return The matching Operation or null if none or many operations share this action.
+       */
+      public Operation findOperationByAction(String action) {
+         return action != null ? operationsByAction.get(action) : null;
+      }
+
+      /**
+       * Find the Operation whose input is the given SOAP Body element.
+       * @param elementName The qualified name of SOAP Body first child element
+       * @return The matching Operation or null if none.
+       */
+      public Operation findOperationByInputElement(QName elementName) {
+         if (elementName == null) {
+            return null;
+         }
+         Operation operation = operationsByInputQName.get(elementName);
+         if (operation == null) {
+            operation = operationsByInputName.get(elementName.getLocalPart());
+         }
+         return operation;
+      }
+
+      /**
+       * Find the Operation of a SOAP invocation. SOAP action is used as a fast path but, as it may be stale or
+       * wrong on client side, the SOAP Body element wins when both designate different operations.
+       * @param action The SOAP action of invocation (may be null)
+       * @param bodyElementName The qualified name of SOAP Body first child element (may be null)
+       * @return The matching Operation or null if none.
+       */
+      public Operation findSoapOperation(String action, QName bodyElementName) {
+         Operation operation = findOperationByAction(action);
+         if (operation != null && (bodyElementName == null
+               || bodyElementName.getLocalPart().equals(operation.getInputName()))) {
+            return operation;
+         }
+         Operation bodyOperation = findOperationByInputElement(bodyElementName);
+         return bodyOperation != null ? bodyOperation : operation;
+      }
+
+      private static String buildRouteKey(String method, String resourcePath) {
+         return method + " " + resourcePath;
+      }
+   }
+}
@@ -0,0 +1,277 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.DailyStatistic;
+import io.github.microcks.domain.GenericResource;
+import io.github.microcks.domain.Request;
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Component managing the MongoDB indexes required by repositories queries. Indexes are declared here and
+ * created idempotently in background at startup. It also allows checking the query plans of repositories
+ * queries to detect collection scans. Indexes required for correctness (like the unique key of daily
+ * statistics, see DailyStatisticRepository) are not managed here as they cannot be optional.
+ * @author laurent
+ */
+@Component
+public class MongoIndexManager {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(MongoIndexManager.class);
+
+   /** The indexes required by repositories queries. */
+   private static final List<IndexDeclaration> INDEXES = Arrays.asList(
+         new IndexDeclaration(Response.class, "operationId_dispatchCriteria", "operationId", "dispatchCriteria"),
+         new IndexDeclaration(Response.class, "operationId_name", "operationId", "name"),
+         new IndexDeclaration(Response.class, "testCaseId", "testCaseId"),
+         new IndexDeclaration(Request.class, "operationId", "operationId"),
+         new IndexDeclaration(Request.class, "testCaseId", "testCaseId"),
+         new IndexDeclaration(Service.class, "name_version", "name", "version"),
+         new IndexDeclaration(DailyStatistic.class, "day_dailyCount", "day", "-dailyCount"),
+         // Also serves keyset pagination of resources, sorted on _id after a cursor.
+         new IndexDeclaration(GenericResource.class, "serviceId__id", "serviceId", "_id")
+   );
+
+   /** The indexes superseded by a declared one: they are dropped once the declared indexes are ensured. */
+   private static final List<IndexDeclaration> OBSOLETE_INDEXES = Arrays.asList(
+         new IndexDeclaration(GenericResource.class, "serviceId")
+   );
+
+   /** The repositories queries whose plans should be checked. */
+   private static final List<QueryDeclaration> QUERIES = Arrays.asList(
+         new QueryDeclaration("ResponseRepository.findByOperationIdAndDispatchCriteria", Response.class,
+               new Document("operationId", "").append("dispatchCriteria", ""), null),
+         new QueryDeclaration("ResponseRepository.findByOperationIdAndName", Response.class,
+               new Document("operationId", "").append("name", ""), null),
+         new QueryDeclaration("ResponseRepository.findByTestCaseId", Response.class,
+               new Document("testCaseId", ""), null),
+         new QueryDeclaration("RequestRepository.findByOperationId", Request.class,
+               new Document("operationId", ""), null),
+         new QueryDeclaration("RequestRepository.findByTestCaseId", Request.class,
+               new Document("testCaseId", ""), null),
+         new QueryDeclaration("ServiceRepository.findByNameAndVersion", Service.class,
+               new Document("name", "").append("version", ""), null),
+         new QueryDeclaration("DailyStatisticRepository.findByDayAndServiceNameAndServiceVersion", DailyStatistic.class,
+               new Document("day", "").append("serviceName", "").append("serviceVersion", ""), null),
+         new QueryDeclaration("DailyStatisticRepository.findTopStatistics", DailyStatistic.class,
+               new Document("day", ""), new Document("dailyCount", -1)),
+         new QueryDeclaration("GenericResourceRepository.findByServiceId", GenericResource.class,
+               new Document("serviceId", ""), null),
+         new QueryDeclaration("GenericResourceRepository.findKeysByServiceIdAndJSONQuery", GenericResource.class,
+               new Document("serviceId", "").append("_id", new Document("$gt", "")), new Document("_id", 1))
+   );
+
+   @Autowired
+   private MongoTemplate template;
+
+   @Value("${mocks.index-bootstrap.enabled:true}")
+   private boolean bootstrapEnabled;
+
+
+   @EventListener(ApplicationReadyEvent.class)
+   public void bootstrapIndexes() {
+      if (bootstrapEnabled) {
+         // Do not delay startup: indexes are built by a background thread.
+         Thread thread = new Thread(this::ensureIndexes, "index-bootstrap");
+         thread.setDaemon(true);
+         thread.start();
+      }
+   }
+
+   /**
+    * Create the declared indexes if they do not exist yet. Creation is done in background on MongoDB side.
+    * @return The number of indexes that have been ensured.
+    */
+   public int ensureIndexes() {
+      int ensured = 0;
+      for (IndexDeclaration declaration : INDEXES) {
+         try {
+            Index index = new Index().named(declaration.name).background();
+            for (String field : declaration.fields) {
+               if (field.startsWith("-")) {
+                  index.on(field.substring(1), Sort.Direction.DESC);
+               } else {
+                  index.on(field, Sort.Direction.ASC);
+               }
+            }
+            template.indexOps(declaration.entityClass).ensureIndex(index);
+            ensured++;
+         } catch (Exception e) {
+            log.warn("Index {} cannot be ensured on {}: {}", declaration.name,
+                  template.getCollectionName(declaration.entityClass), e.getMessage());
+         }
+      }
+      log.info("{} MongoDB indexes have been ensured", ensured);
+      if (ensured == INDEXES.size()) {
+         dropObsoleteIndexes();
+      }
+      return ensured;
+   }
+
+   /** Drop the obsolete indexes if they still exist. */
+   private void dropObsoleteIndexes() {
+      for (IndexDeclaration declaration : OBSOLETE_INDEXES) {
+         try {
+            IndexOperations indexOps = template.indexOps(declaration.entityClass);
+            if (indexOps.getIndexInfo().stream().anyMatch(info -> declaration.name.equals(info.getName()))) {
+               indexOps.dropIndex(declaration.name);
+               log.info("Obsolete index {} has been dropped", declaration.name);
+            }
+         } catch (Exception e) {
+            log.warn("Obsolete index {} cannot be dropped on {}: {}", declaration.name,
+                  template.getCollectionName(declaration.entityClass), e.getMessage());
+         }
+      }
+   }
+
+   /**
+    * Run explain on each repository query and report the winning plans.
+    * @return A diagnostic for each checked query.
+    */
+   public List<QueryPlanDiagnostic> explainQueries() {
+      List<QueryPlanDiagnostic> diagnostics = new ArrayList<>();
+      for (QueryDeclaration declaration : QUERIES) {
+         String collection = template.getCollectionName(declaration.entityClass);
+         QueryPlanDiagnostic diagnostic = new QueryPlanDiagnostic(declaration.name, collection);
+         try {
+            Document find = new Document("find", collection).append("filter", declaration.filter);
+            if (declaration.sort != null) {
+               find.append("sort", declaration.sort);
+            }
+            Document explain = template.getDb().runCommand(
+                  new Document("explain", find).append("verbosity", "queryPlanner"));
+
+            Document queryPlanner = explain.get("queryPlanner", Document.class);
+            if (queryPlanner != null) {
+               collectStages(queryPlanner.get("winningPlan", Document.class), diagnostic);
+            }
+            if (diagnostic.isCollectionScan()) {
+               log.warn("Query {} on {} is doing a collection scan", declaration.name, collection);
+            }
+         } catch (Exception e) {
+            log.warn("Query {} on {} cannot be explained: {}", declaration.name, collection, e.getMessage());
+            diagnostic.error = e.getMessage();
+         }
+         diagnostics.add(diagnostic);
+      }
+      return diagnostics;
+   }
+
+   /** Walk a query plan stages tree, collecting stage and index names. */
+   private void collectStages(Document plan, QueryPlanDiagnostic diagnostic) {
+      if (plan == null) {
+         return;
+      }
+      String stage = plan.getString("stage");
+      if (stage != null) {
+         diagnostic.stages.add(stage);
+      }
+      if (plan.getString("indexName") != null) {
+         diagnostic.indexName = plan.getString("indexName");
+      }
+      collectStages(plan.get("inputStage", Document.class), diagnostic);
+      Object inputStages = plan.get("inputStages");
+      if (inputStages instanceof List) {
+         for (Object inputStage : (List<?>) inputStages) {
+            if (inputStage instanceof Document) {
+               collectStages((Document) inputStage, diagnostic);
+            }
+         }
+      }
+   }
+
+   /** Declaration of an index on an entity collection. Fields prefixed by '-' are descending. */
+   private static class IndexDeclaration {
+      private final Class<?> entityClass;
+      private final String name;
+      private final String[] fields;
+
+      IndexDeclaration(Class<?> entityClass, String name, String... fields) {
+         this.entityClass = entityClass;
+         this.name = name;
+         this.fields = fields;
+      }
+   }
+
+   /** Declaration of a repository query filter and sort. */
+   private static class QueryDeclaration {
+      private final String name;
+      private final Class<?> entityClass;
+      private final Document filter;
+      private final Document sort;
+
+      QueryDeclaration(String name, Class<?> entityClass, Document filter, Document sort) {
+         this.name = name;
+         this.entityClass = entityClass;
+         this.filter = filter;
+         this.sort = sort;
+      }
+   }
+
+   /** Result of the query plan analysis of a repository query. */
+   public static class QueryPlanDiagnostic {
+      private final String query;
+      private final String collection;
+      private final List<String> stages = new ArrayList<>();
+      private String indexName;
+      private String error;
+
+      QueryPlanDiagnostic(String query, String collection) {
+         this.query = query;
+         this.collection = collection;
+      }
+
+      public String getQuery() {
+         return query;
+      }
+      public String getCollection() {
+         return collection;
+      }
+      public List<String> getStages() {
+         return stages;
+      }
+      public String getIndexName() {
+         return indexName;
+      }
+      public String getError() {
+         return error;
+      }
+      public boolean isCollectionScan() {
+         return stages.contains("COLLSCAN");
+      }
+   }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import io.github.microcks.repository.ResponseRepository;
+import io.github.microcks.repository.ServiceRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Default MockDefinitionSource reading Services and Responses from MongoDB repositories.
+ * @author laurent
+ */
+@Component
+@ConditionalOnProperty(name = "mocks.source", havingValue = "mongo", matchIfMissing = true)
+public class MongoMockDefinitionSource implements MockDefinitionSource {
+
+   @Autowired
+   private ServiceRepository serviceRepository;
+
+   @Autowired
+   private ResponseRepository responseRepository;
+
+
+   @Override
+   public List<Service> findAllServices() {
+      return serviceRepository.findAll();
+   }
+
+   @Override
+   public Service findServiceByNameAndVersion(String name, String version) {
+      return serviceRepository.findByNameAndVersion(name, version);
+   }
+
+   @Override
+   public List<Response> findResponsesByOperationIdAndDispatchCriteria(String operationId, String dispatchCriteria) {
+      return responseRepository.findByOperationIdAndDispatchCriteria(operationId, dispatchCriteria);
+   }
+
+   @Override
+   public List<Response> findResponsesByOperationIdAndName(String operationId, String name) {
+      return responseRepository.findByOperationIdAndName(operationId, name);
+   }
+}
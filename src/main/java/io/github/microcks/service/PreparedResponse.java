@@ -0,0 +1,338 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.Header;
+import io.github.microcks.domain.Response;
+import io.github.microcks.util.CompressionHelper;
+import io.github.microcks.util.EntityTagHelper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable "wire form" of a mock Response: content is pre-encoded as UTF-8 bytes and status, Content-Type,
+ * Content-Length and other headers are computed once so that serving it does not require any transcoding
+ * or header parsing. Only the Location header, that depends on the incoming request, is built on demand.
+ * An ETag - the one defined by mock or a strong one computed from content hash - is also prepared for answering
+ * conditional requests. Compressed
+ * variants of content (gzip or deflate) are computed once on first demand and kept next to the uncompressed one.
+ * When content is compressible, its uncompressed form is served with Vary: Accept-Encoding like the others.
+ * @author laurent
+ */
+public class PreparedResponse {
+
+   /** Content type of responses having content but no media type, as the String converter would have written it. */
+   private static final MediaType DEFAULT_CONTENT_TYPE = MediaType.valueOf("text/plain;charset=UTF-8");
+
+   private final Response response;
+   private final byte[] body;
+   private final HttpStatus status;
+   private final HttpHeaders headers;
+   private final HttpHeaders notModifiedHeaders;
+   private final String location;
+   private final String etag;
+
+   private volatile EncodedVariant identityVariant;
+   private volatile EncodedVariant gzipVariant;
+   private volatile EncodedVariant deflateVariant;
+
+   private PreparedResponse(Response response, byte[] body, HttpStatus status, HttpHeaders headers,
+                            HttpHeaders notModifiedHeaders, String location, String etag) {
+      this.response = response;
+      this.body = body;
+      this.status = status;
+      this.headers = headers;
+      this.notModifiedHeaders = notModifiedHeaders;
+      this.location = location;
+      this.etag = etag;
+   }
+
+   /**
+    * Prepare the wire form of a mock Response.
+    * @param response The mock response to prepare
+    * @return The prepared response
+    */
+   public static PreparedResponse prepare(Response response) {
+      byte[] body = (response.getContent() != null ? response.getContent().getBytes(StandardCharsets.UTF_8) : null);
+      HttpStatus status = (response.getStatus() != null ?
+            HttpStatus.valueOf(Integer.parseInt(response.getStatus())) : HttpStatus.OK);
+
+      // Deal with specific headers (content-type and redirect directive).
+      HttpHeaders headers = new HttpHeaders();
+      if (response.getMediaType() != null) {
+         headers.setContentType(MediaType.valueOf(response.getMediaType() + ";charset=UTF-8"));
+      } else if (body != null) {
+         // Body is now sent as bytes: do not let it go as application/octet-stream.
+         headers.setContentType(DEFAULT_CONTENT_TYPE);
+      }
+      if (body != null) {
+         headers.setContentLength(body.length);
+      }
+
+      // Adding other generic headers (caching directives and so on...)
+      String location = null;
+      if (response.getHeaders() != null) {
+         for (Header header : response.getHeaders()) {
+            if ("Location".equals(header.getName())) {
+               location = header.getValues().iterator().next();
+            } else if (!HttpHeaders.TRANSFER_ENCODING.equalsIgnoreCase(header.getName())
+                  && !HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getName())) {
+               headers.put(header.getName(), new ArrayList<>(header.getValues()));
+            }
+         }
+      }
+      // Keep the entity tag defined by mock if any, compute one from content otherwise.
+      String etag = headers.getFirst(HttpHeaders.ETAG);
+      if (etag == null) {
+         etag = EntityTagHelper.buildStrongETag(body);
+         headers.setETag(etag);
+      }
+
+      // Not modified responses carry the same headers but without content description.
+      HttpHeaders notModifiedHeaders = new HttpHeaders();
+      notModifiedHeaders.putAll(headers);
+      notModifiedHeaders.remove(HttpHeaders.CONTENT_TYPE);
+      notModifiedHeaders.remove(HttpHeaders.CONTENT_LENGTH);
+
+      return new PreparedResponse(response, body, status, HttpHeaders.readOnlyHttpHeaders(headers),
+            HttpHeaders.readOnlyHttpHeaders(notModifiedHeaders), location, etag);
+   }
+
+   /** @return The original mock response */
+   public Response getResponse() {
+      return response;
+   }
+
+   /** @return The UTF-8 encoded content of response. May be null. */
+   public byte[] getBody() {
+      return body;
+   }
+
+   /** @return The status of response */
+   public HttpStatus getStatus() {
+      return status;
+   }
+
+   /** @return The read-only pre-built headers of response (excluding Location). */
+   public HttpHeaders getHeaders() {
+      return headers;
+   }
+
+   /** @return The entity tag of response content */
+   public String getETag() {
+      return etag;
+   }
+
+   /**
+    * Get the entity tag of a representation of response content.
+    * @param encoding The content encoding of representation (null for identity)
+    * @return The entity tag of representation
+    */
+   public String getETag(String encoding) {
+      return (encoding == null || body == null) ? etag : getVariant(encoding).etag;
+   }
+
+   /**
+    * Get the compressed body of response, compressing it on first call.
+    * @param encoding The content encoding (gzip or deflate)
+    * @return The compressed content of response. May be null if response has no content.
+    */
+   public byte[] getEncodedBody(String encoding) {
+      return (body == null) ? null : getVariant(encoding).body;
+   }
+
+   /** @return The relative location of response if any, null otherwise. */
+   public String getLocation() {
+      return location;
+   }
+
+   /**
+    * Build a ResponseEntity from this prepared response.
+    * @param locationPrefix The prefix to prepend to relative location in order to make it absolute from the
+    *                       client perspective. Only used when response has a Location header.
+    * @return A response entity holding the pre-encoded body
+    */
+   public ResponseEntity<byte[]> toResponseEntity(String locationPrefix) {
+      return toResponseEntity(locationPrefix, null);
+   }
+
+   /**
+    * Build a ResponseEntity from this prepared response using a content encoding.
+    * @param locationPrefix The prefix to prepend to relative location in order to make it absolute from the
+    *                       client perspective. Only used when response has a Location header.
+    * @param encoding The content encoding to use (gzip or deflate), null for identity.
+    * @return A response entity holding the pre-encoded and possibly compressed body
+    */
+   public ResponseEntity<byte[]> toResponseEntity(String locationPrefix, String encoding) {
+      return toResponseEntity(locationPrefix, encoding, false);
+   }
+
+   /**
+    * Build a ResponseEntity from this prepared response using a content encoding.
+    * @param locationPrefix The prefix to prepend to relative location in order to make it absolute from the
+    *                       client perspective. Only used when response has a Location header.
+    * @param encoding The content encoding to use (gzip or deflate), null for identity.
+    * @param compressible Whether response content may be compressed depending on request. If true, the
+    *                     identity representation also carries a Vary: Accept-Encoding header.
+    * @return A response entity holding the pre-encoded and possibly compressed body
+    */
+   public ResponseEntity<byte[]> toResponseEntity(String locationPrefix, String encoding, boolean compressible) {
+      byte[] responseBody = body;
+      HttpHeaders responseHeaders = headers;
+      if ((encoding != null || compressible) && body != null) {
+         EncodedVariant variant = getVariant(encoding);
+         responseBody = variant.body;
+         responseHeaders = variant.headers;
+      }
+      if (location == null) {
+         return new ResponseEntity<>(responseBody, responseHeaders, status);
+      }
+      HttpHeaders locationHeaders = new HttpHeaders();
+      locationHeaders.putAll(responseHeaders);
+      locationHeaders.add(HttpHeaders.LOCATION, locationPrefix + location);
+      return new ResponseEntity<>(responseBody, locationHeaders, status);
+   }
+
+   /**
+    * Build a 304 Not Modified ResponseEntity (without body) from this prepared response.
+    * @return A not modified response entity
+    */
+   public ResponseEntity<byte[]> toNotModifiedEntity() {
+      return toNotModifiedEntity(null);
+   }
+
+   /**
+    * Build a 304 Not Modified ResponseEntity (without body) for a representation of this prepared response.
+    * @param encoding The content encoding of representation (null for identity)
+    * @return A not modified response entity
+    */
+   public ResponseEntity<byte[]> toNotModifiedEntity(String encoding) {
+      return toNotModifiedEntity(encoding, false);
+   }
+
+   /**
+    * Build a 304 Not Modified ResponseEntity (without body) for a representation of this prepared response.
+    * @param encoding The content encoding of representation (null for identity)
+    * @param compressible Whether response content may be compressed depending on request. If true, the
+    *                     identity representation also carries a Vary: Accept-Encoding header.
+    * @return A not modified response entity
+    */
+   public ResponseEntity<byte[]> toNotModifiedEntity(String encoding, boolean compressible) {
+      if ((encoding != null || compressible) && body != null) {
+         return new ResponseEntity<>(getVariant(encoding).notModifiedHeaders, HttpStatus.NOT_MODIFIED);
+      }
+      return new ResponseEntity<>(notModifiedHeaders, HttpStatus.NOT_MODIFIED);
+   }
+
+   /**
+    * @return An estimation of this prepared response memory footprint in bytes. Room for compressed variants is
+    * included as the size of uncompressed body.
+    */
+   public int getWeight() {
+      int weight = (body != null ? 2 * body.length : 0);
+      if (response.getContent() != null) {
+         weight += 2 * response.getContent().length();
+      }
+      return weight;
+   }
+
+   private EncodedVariant getVariant(String encoding) {
+      if (encoding == null) {
+         if (identityVariant == null) {
+            // Identity variant is cheap to build, concurrent builds are harmless.
+            identityVariant = new EncodedVariant(null);
+         }
+         return identityVariant;
+      }
+      boolean gzip = CompressionHelper.GZIP.equals(encoding);
+      EncodedVariant variant = (gzip ? gzipVariant : deflateVariant);
+      if (variant == null) {
+         synchronized (this) {
+            variant = (gzip ? gzipVariant : deflateVariant);
+            if (variant == null) {
+               variant = new EncodedVariant(gzip ? CompressionHelper.GZIP : CompressionHelper.DEFLATE);
+               if (gzip) {
+                  gzipVariant = variant;
+               } else {
+                  deflateVariant = variant;
+               }
+            }
+         }
+      }
+      return variant;
+   }
+
+   /** Add Accept-Encoding to Vary header without touching the values list shared with prepared headers. */
+   private static void addVaryOnEncoding(HttpHeaders variantHeaders) {
+      List<String> vary = new ArrayList<>(variantHeaders.getVary());
+      if (!vary.contains(HttpHeaders.ACCEPT_ENCODING)) {
+         vary.add(HttpHeaders.ACCEPT_ENCODING);
+      }
+      variantHeaders.setVary(vary);
+   }
+
+   /** Derive the entity tag of an encoded representation, keeping the mock-defined tag format (weak, unquoted). */
+   private static String buildVariantETag(String etag, String encoding) {
+      if (etag.endsWith("\"")) {
+         return etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+      }
+      return etag + "-" + encoding;
+   }
+
+   /** A representation of response content - compressed or identity (null encoding) - with its own headers. */
+   private class EncodedVariant {
+      private final byte[] body;
+      private final String etag;
+      private final HttpHeaders headers;
+      private final HttpHeaders notModifiedHeaders;
+
+      private EncodedVariant(String encoding) {
+         if (encoding == null) {
+            this.body = PreparedResponse.this.body;
+            this.etag = PreparedResponse.this.etag;
+         } else {
+            this.body = CompressionHelper.compress(PreparedResponse.this.body, encoding);
+            // Each representation should have its own entity tag.
+            this.etag = buildVariantETag(PreparedResponse.this.etag, encoding);
+         }
+
+         HttpHeaders variantHeaders = new HttpHeaders();
+         variantHeaders.putAll(PreparedResponse.this.headers);
+         if (encoding != null) {
+            variantHeaders.set(HttpHeaders.CONTENT_ENCODING, encoding);
+            variantHeaders.setContentLength(body.length);
+            variantHeaders.set(HttpHeaders.ETAG, etag);
+         }
+         addVaryOnEncoding(variantHeaders);
+         this.headers = HttpHeaders.readOnlyHttpHeaders(variantHeaders);
+
+         HttpHeaders variantNotModifiedHeaders = new HttpHeaders();
+         variantNotModifiedHeaders.putAll(PreparedResponse.this.notModifiedHeaders);
+         variantNotModifiedHeaders.set(HttpHeaders.ETAG, etag);
+         addVaryOnEncoding(variantNotModifiedHeaders);
+         this.notModifiedHeaders = HttpHeaders.readOnlyHttpHeaders(variantNotModifiedHeaders);
+      }
+   }
+}
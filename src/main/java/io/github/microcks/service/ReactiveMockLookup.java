@@ -0,0 +1,108 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+/**
+ * Non-blocking lookup of mock Services and Responses for the reactive mock pipeline. Lookups share the
+ * MockRoutingIndex and MockResponseCache of servlet controllers: they are answered from memory when possible
+ * and only fall back to the reactive MongoDB driver on cache misses, so no request thread is ever blocked.
+ * @author laurent
+ */
+@Component
+@ConditionalOnProperty(name = "mocks.reactive-listener.enabled", havingValue = "true")
+public class ReactiveMockLookup {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(ReactiveMockLookup.class);
+
+   @Autowired
+   private ReactiveMongoTemplate mongoTemplate;
+
+   @Autowired
+   private MockRoutingIndex routingIndex;
+
+   @Autowired
+   private MockResponseCache responseCache;
+
+
+   /**
+    * Get the routes of a Service using its name and version.
+    * @param serviceName The name of Service to get routes for
+    * @param serviceVersion The version of Service to get routes for
+    * @return A Mono of service routes, empty if no such service exists.
+    */
+   public Mono<MockRoutingIndex.ServiceRoutes> getServiceRoutes(String serviceName, String serviceVersion) {
+      MockRoutingIndex.ServiceRoutes routes = routingIndex.getServiceRoutesIfPresent(serviceName, serviceVersion);
+      if (routes != null) {
+         return Mono.just(routes);
+      }
+      log.debug("Routes of service [{}, {}] not indexed yet, loading them", serviceName, serviceVersion);
+      long generation = routingIndex.getGeneration();
+      return mongoTemplate.findOne(new Query(Criteria.where("name").is(serviceName).and("version").is(serviceVersion)),
+            Service.class).map(service -> routingIndex.registerService(service, generation));
+   }
+
+   /**
+    * Find the prepared wire form of the first Response of an operation having the given dispatch criteria.
+    * @param operationId The identifier of operation
+    * @param dispatchCriteria The dispatch criteria of response
+    * @return A Mono of matching prepared response, empty if none.
+    */
+   public Mono<PreparedResponse> findPreparedByOperationIdAndDispatchCriteria(String operationId, String dispatchCriteria) {
+      return findPrepared(operationId, "dispatchCriteria", dispatchCriteria, false);
+   }
+
+   /**
+    * Find the prepared wire form of the first Response of an operation having the given name.
+    * @param operationId The identifier of operation
+    * @param name The name of response
+    * @return A Mono of matching prepared response, empty if none.
+    */
+   public Mono<PreparedResponse> findPreparedByOperationIdAndName(String operationId, String name) {
+      return findPrepared(operationId, "name", name, true);
+   }
+
+   private Mono<PreparedResponse> findPrepared(String operationId, String field, String criteria, boolean byName) {
+      Optional<PreparedResponse> cached = responseCache.getPreparedIfPresent(operationId, criteria, byName);
+      if (cached != null) {
+         return Mono.justOrEmpty(cached);
+      }
+      long generation = responseCache.getGeneration();
+      return mongoTemplate.findOne(new Query(Criteria.where("operationId").is(operationId).and(field).is(criteria)),
+                  Response.class)
+            .map(Optional::of)
+            .defaultIfEmpty(Optional.empty())
+            .flatMap(response -> Mono.justOrEmpty(
+                  responseCache.putPrepared(operationId, criteria, byName, response.orElse(null), generation)));
+   }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.util.CompressionHelper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Component responsible for content encoding negotiation of mock and API responses. It holds the
+ * compression configuration and reports the number of bytes saved by compression.
+ * @author laurent
+ */
+@Component
+public class ResponseCompressor {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(ResponseCompressor.class);
+
+   @Autowired(required = false)
+   private MeterRegistry meterRegistry;
+
+   @Value("${mocks.compression.enabled:true}")
+   private boolean enabled;
+
+   @Value("${mocks.compression.min-response-size:2048}")
+   private int minResponseSize;
+
+   private final AtomicLong savedBytes = new AtomicLong();
+   private final Map<String, Counter> savedBytesCounters = new ConcurrentHashMap<>();
+
+
+   /**
+    * Select the content encoding to use for a response.
+    * @param request The incoming request holding Accept-Encoding header
+    * @param contentType The content type of response (may be null)
+    * @param contentLength The length of uncompressed response content
+    * @return The content encoding to apply or null if response should not be compressed.
+    */
+   public String selectEncoding(HttpServletRequest request, String contentType, int contentLength) {
+      return selectEncoding(request.getMethod(), request.getHeader(HttpHeaders.ACCEPT_ENCODING), contentType, contentLength);
+   }
+
+   /**
+    * Select the content encoding to use for a response.
+    * @param method The Http method of incoming request
+    * @param acceptEncoding The Accept-Encoding header of incoming request (may be null)
+    * @param contentType The content type of response (may be null)
+    * @param contentLength The length of uncompressed response content
+    * @return The content encoding to apply or null if response should not be compressed.
+    */
+   public String selectEncoding(String method, String acceptEncoding, String contentType, int contentLength) {
+      if ("HEAD".equals(method) || !isCompressible(contentType, contentLength)) {
+         return null;
+      }
+      return CompressionHelper.negotiateEncoding(acceptEncoding);
+   }
+
+   /**
+    * Tell if a response may be compressed depending on request Accept-Encoding header. If so, all its
+    * representations - including uncompressed one - should carry a Vary: Accept-Encoding header.
+    * @param contentType The content type of response (may be null)
+    * @param contentLength The length of uncompressed response content
+    * @return True if response content may be compressed.
+    */
+   public boolean isCompressible(String contentType, int contentLength) {
+      return enabled && contentLength >= minResponseSize && CompressionHelper.isCompressible(contentType);
+   }
+
+   /**
+    * Record the bytes saved by compressing a response.
+    * @param source The source of response (mock endpoint or api)
+    * @param originalLength The length of uncompressed content
+    * @param compressedLength The length of compressed content
+    */
+   public void recordSavedBytes(String source, int originalLength, int compressedLength) {
+      long saved = Math.max(0, originalLength - compressedLength);
+      savedBytes.addAndGet(saved);
+      if (meterRegistry != null) {
+         savedBytesCounters.computeIfAbsent(source, s -> Counter.builder("mocks.compression.saved")
+               .baseUnit("bytes")
+               .description("Bytes saved by compressing responses")
+               .tag("source", s)
+               .register(meterRegistry)).increment(saved);
+      }
+      log.trace("Compression saved {} bytes on {} response", saved, source);
+   }
+
+   /** @return The total number of bytes saved by compression since startup. */
+   public long getSavedBytes() {
+      return savedBytes.get();
+   }
+}
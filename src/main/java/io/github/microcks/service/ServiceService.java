@@ -19,17 +19,35 @@
 package io.github.microcks.service;
 
 import io.github.microcks.domain.*;
+import io.github.microcks.event.ServiceUpdateEvent;
+import io.github.microcks.event.ServiceUpdateEvent.ChangeType;
 import io.github.microcks.repository.*;
 import io.github.microcks.util.*;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Bean defining service operations around Service domain objects.
@@ -41,6 +59,9 @@ public class ServiceService {
    /** A simple logger for diagnostic messages. */
    private static Logger log = LoggerFactory.getLogger(ServiceService.class);
 
+   /** Message arrays mapped from sets, whose order is not stable and should not change the content hash. */
+   private static final Set<String> MESSAGE_UNORDERED_PATHS = new HashSet<>(Arrays.asList("headers", "headers.values"));
+
    @Autowired
    private ServiceRepository serviceRepository;
 
@@ -56,6 +77,12 @@ public class ServiceService {
    @Autowired
    private TestResultRepository testResultRepository;
 
+   @Autowired
+   private ApplicationContext applicationContext;
+
+   @Autowired
+   private MongoTemplate template;
+
    @Value("${network.username}")
    private final String username = null;
 
@@ -113,6 +140,7 @@ public class ServiceService {
       for (Service service : services){
          Service existingService = serviceRepository.findByNameAndVersion(service.getName(), service.getVersion());
          log.debug("Service [{}, {}] exists ? {}", service.getName(), service.getVersion(), existingService != null);
+         ChangeType changeType = (existingService != null ? ChangeType.UPDATED : ChangeType.CREATED);
          if (existingService != null){
             // Retrieve its previous identifier and metadatas.
             service.setId(existingService.getId());
@@ -126,46 +154,27 @@ public class ServiceService {
          }
 
          service.getMetadata().objectUpdated();
-         service = serviceRepository.save(service);
-
-         // Remove resources previously attached to service.
-         List<Resource> existingResources = resourceRepository.findByServiceId(service.getId());
-         if (existingResources != null && existingResources.size() > 0){
-            resourceRepository.deleteAll(existingResources);
+         // Assign identifier of new service now so that it is saved only once, after its messages.
+         if (service.getId() == null) {
+            service.setId(new ObjectId().toHexString());
          }
 
-         // Save new resources.
+         // Replace resources previously attached to service.
+         template.remove(new Query(Criteria.where("serviceId").is(service.getId())), Resource.class);
          List<Resource> resources = importer.getResourceDefinitions(service);
          for (Resource resource : resources){
             resource.setServiceId(service.getId());
          }
-         resourceRepository.saveAll(resources);
-
-         for (Operation operation : service.getOperations()){
-            String operationId = IdBuilder.buildOperationId(service, operation);
-
-            // Remove messages previously attached to service.
-            requestRepository.deleteAll(requestRepository.findByOperationId(operationId));
-            responseRepository.deleteAll(responseRepository.findByOperationId(operationId));
-
-            Map<Request, Response> messages = importer.getMessageDefinitions(service, operation);
-
-            // Associate response with operation before saving.
-            for (Response response : messages.values()){
-               response.setOperationId(operationId);
-            }
-            responseRepository.saveAll(messages.values());
-            // Associate request with response and operation before saving.
-            for (Request request : messages.keySet()){
-               request.setOperationId(operationId);
-               request.setResponseId(messages.get(request).getId());
-            }
-            requestRepository.saveAll(messages.keySet());
+         if (!resources.isEmpty()) {
+            template.insert(resources, Resource.class);
          }
 
+         persistMessages(importer, service, existingService);
+
          // When extracting message informations, we may have modified Operation because discovered new resource paths
-         // depending on variable URI parts. As a consequence, we got to update Service in repository.
+         // depending on variable URI parts. As a consequence, we save Service in repository once messages are there.
          serviceRepository.save(service);
+         publishServiceUpdate(service, changeType);
       }
       log.info("Having imported {} services definitions into repository", services.size());
       return services;
@@ -229,6 +238,7 @@ public class ServiceService {
       service.addOperation(delOp);
 
       serviceRepository.save(service);
+      publishServiceUpdate(service, ChangeType.CREATED);
       log.info("Having create Service '{}' for generic resource {}", service.getId(), resource);
 
       return service;
@@ -257,6 +267,7 @@ public class ServiceService {
 
       // Finally delete service.
       serviceRepository.delete(service);
+      publishServiceUpdate(service, ChangeType.DELETED);
       log.info("Service [{}] has been fully deleted", id);
    }
 
@@ -278,6 +289,7 @@ public class ServiceService {
             operation.setDefaultDelay(delay);
             operation.setOverride(true);
             serviceRepository.save(service);
+            publishServiceUpdate(service, ChangeType.UPDATED);
             return true;
          }
       }
@@ -285,6 +297,142 @@ public class ServiceService {
    }
 
 
+   /**
+    * Persist the messages of all the operations of an imported service. Messages are compared with the stored
+    * ones using their content hash: unchanged messages are kept as is, changed or removed ones are deleted with
+    * a single query and new ones are inserted with an unordered bulk.
+    */
+   private void persistMessages(MockRepositoryImporter importer, Service service, Service existingService)
+         throws MockRepositoryImportException {
+      // Messages of operations that have disappeared should also be removed.
+      Set<String> operationIds = new HashSet<>();
+      for (Operation operation : service.getOperations()) {
+         operationIds.add(IdBuilder.buildOperationId(service, operation));
+      }
+      if (existingService != null) {
+         for (Operation operation : existingService.getOperations()) {
+            operationIds.add(IdBuilder.buildOperationId(existingService, operation));
+         }
+      }
+
+      // Only load keys of stored messages, indexed by operation, content hash (and response for requests).
+      Map<String, Deque<String>> storedResponses = new HashMap<>();
+      for (Response response : findMessageKeys(Response.class, operationIds)) {
+         storedResponses.computeIfAbsent(buildMessageKey(response.getOperationId(), response.getContentHash(), null),
+               k -> new ArrayDeque<>()).add(response.getId());
+      }
+      Map<String, Deque<String>> storedRequests = new HashMap<>();
+      for (Request request : findMessageKeys(Request.class, operationIds)) {
+         storedRequests.computeIfAbsent(buildMessageKey(request.getOperationId(), request.getContentHash(),
+               request.getResponseId()), k -> new ArrayDeque<>()).add(request.getId());
+      }
+
+      Set<String> keptResponseIds = new HashSet<>();
+      Set<String> keptRequestIds = new HashSet<>();
+      List<Response> newResponses = new ArrayList<>();
+      List<Request> newRequests = new ArrayList<>();
+      for (Operation operation : service.getOperations()) {
+         String operationId = IdBuilder.buildOperationId(service, operation);
+         Map<Request, Response> messages = importer.getMessageDefinitions(service, operation);
+
+         // A response may be shared by several requests, process it once.
+         Map<Response, String> responseHashes = new IdentityHashMap<>();
+         for (Map.Entry<Request, Response> message : messages.entrySet()) {
+            Response response = message.getValue();
+            String responseHash = responseHashes.get(response);
+            if (responseHash == null) {
+               response.setOperationId(operationId);
+               responseHash = hashMessage(response, null);
+               response.setContentHash(responseHash);
+               responseHashes.put(response, responseHash);
+
+               String storedId = pollMessageId(storedResponses, buildMessageKey(operationId, responseHash, null));
+               if (storedId != null) {
+                  response.setId(storedId);
+                  keptResponseIds.add(storedId);
+               } else {
+                  response.setId(new ObjectId().toHexString());
+                  newResponses.add(response);
+               }
+            }
+
+            // Associate request with response and operation, a request changes if its response changes.
+            Request request = message.getKey();
+            request.setOperationId(operationId);
+            request.setResponseId(response.getId());
+            request.setContentHash(hashMessage(request, responseHash));
+            String storedId = pollMessageId(storedRequests,
+                  buildMessageKey(operationId, request.getContentHash(), request.getResponseId()));
+            if (storedId != null) {
+               request.setId(storedId);
+               keptRequestIds.add(storedId);
+            } else {
+               // Bulk insert does not report generated ids back into messages.
+               request.setId(new ObjectId().toHexString());
+               newRequests.add(request);
+            }
+         }
+      }
+
+      // Remove stored messages that have not been kept then insert new ones.
+      removeMessages(Request.class, storedRequests);
+      removeMessages(Response.class, storedResponses);
+      if (!newResponses.isEmpty()) {
+         template.bulkOps(BulkOperations.BulkMode.UNORDERED, Response.class).insert(newResponses).execute();
+      }
+      if (!newRequests.isEmpty()) {
+         template.bulkOps(BulkOperations.BulkMode.UNORDERED, Request.class).insert(newRequests).execute();
+      }
+      log.debug("Service [{}, {}] messages: {} responses and {} requests kept, {} and {} written", service.getName(),
+            service.getVersion(), keptResponseIds.size(), keptRequestIds.size(), newResponses.size(), newRequests.size());
+   }
+
+   /** Find stored messages of operations, only retrieving the fields needed for diff. */
+   private <T extends Message> List<T> findMessageKeys(Class<T> messageClass, Set<String> operationIds) {
+      Query query = new Query(Criteria.where("operationId").in(operationIds));
+      query.fields().include("id").include("operationId").include("contentHash").include("responseId");
+      return template.find(query, messageClass);
+   }
+
+   /** Remove with a single query the stored messages that have not been polled. */
+   private void removeMessages(Class<? extends Message> messageClass, Map<String, Deque<String>> storedMessages) {
+      List<ObjectId> ids = storedMessages.values().stream().flatMap(Deque::stream)
+            .filter(ObjectId::isValid).map(ObjectId::new).collect(Collectors.toList());
+      List<String> otherIds = storedMessages.values().stream().flatMap(Deque::stream)
+            .filter(id -> !ObjectId.isValid(id)).collect(Collectors.toList());
+      if (!ids.isEmpty()) {
+         template.remove(new Query(Criteria.where("_id").in(ids)), messageClass);
+      }
+      if (!otherIds.isEmpty()) {
+         template.remove(new Query(Criteria.where("_id").in(otherIds)), messageClass);
+      }
+   }
+
+   /** Compute the hash of a message content, excluding identifiers and links to other documents. */
+   private String hashMessage(Message message, String responseHash) {
+      Document document = new Document();
+      template.getConverter().write(message, document);
+      if (responseHash != null) {
+         document.append("responseHash", responseHash);
+      }
+      return ContentHashHelper.hash(document, MESSAGE_UNORDERED_PATHS, "_id", "_class", "responseId", "contentHash");
+   }
+
+   private static String buildMessageKey(String operationId, String contentHash, String responseId) {
+      return operationId + "|" + contentHash + "|" + responseId;
+   }
+
+   private static String pollMessageId(Map<String, Deque<String>> storedMessages, String key) {
+      Deque<String> ids = storedMessages.get(key);
+      return ids != null ? ids.poll() : null;
+   }
+
+   /** Publish a ServiceUpdateEvent so that caches and indexes bound to service can be refreshed. */
+   private void publishServiceUpdate(Service service, ChangeType changeType) {
+      applicationContext.publishEvent(new ServiceUpdateEvent(this, service.getId(), service.getName(),
+            service.getVersion(), changeType));
+   }
+
    /** Recopy overriden operation mutable properties into newService. */
    private void copyOverridenOperations(Service existingService, Service newService) {
       for (Operation existingOperation : existingService.getOperations()) {
@@ -0,0 +1,82 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.microcks.util.soapui.SoapUIXPathBuilder;
+import io.github.microcks.util.soapui.SoapUIXPathMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.xpath.XPathExpressionException;
+
+/**
+ * A bounded cache of SoapUIXPathMatcher used by QUERY_MATCH dispatchers. Matchers are cached using the
+ * dispatcher rules so that any change on operation dispatcher rules leads to a new matcher.
+ * @author laurent
+ */
+@Component
+public class XPathMatcherCache {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(XPathMatcherCache.class);
+
+   @Value("${mocks.xpath-cache.max-size:1000}")
+   private long maxSize;
+
+   private Cache<String, SoapUIXPathMatcher> matchers;
+
+
+   @PostConstruct
+   public void initializeCache() {
+      matchers = Caffeine.newBuilder().maximumSize(maxSize).build();
+   }
+
+   /**
+    * Evaluate a payload using a matcher built from SoapUI dispatcher rules.
+    * @param rules The SoapUI XPath rules (typically operation dispatcher rules)
+    * @param payload The XML payload to evaluate
+    * @return The result of evaluation
+    * @throws XPathExpressionException if rules cannot be compiled or evaluation fails
+    * @throws XMLStreamException if payload cannot be read
+    */
+   public String evaluate(String rules, String payload) throws XPathExpressionException, XMLStreamException {
+      return getMatcher(rules).evaluate(payload);
+   }
+
+   /** Invalidate all the matchers. */
+   public void invalidateAll() {
+      matchers.invalidateAll();
+   }
+
+   private SoapUIXPathMatcher getMatcher(String rules) throws XPathExpressionException {
+      SoapUIXPathMatcher matcher = matchers.getIfPresent(rules);
+      if (matcher == null) {
+         matcher = SoapUIXPathBuilder.buildSoapUIXPathMatcherFromRules(rules);
+         log.debug("Built a new XPath matcher, streaming evaluation: {}", matcher.isStreaming());
+         matchers.put(rules, matcher);
+      }
+      return matcher;
+   }
+}
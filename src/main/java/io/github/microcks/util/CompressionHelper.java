@@ -0,0 +1,118 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Helper class for HTTP content encodings negotiation and compression.
+ * @author laurent
+ */
+public class CompressionHelper {
+
+   /** The gzip content encoding. */
+   public static final String GZIP = "gzip";
+   /** The deflate content encoding. */
+   public static final String DEFLATE = "deflate";
+
+   /**
+    * Select the preferred supported content encoding from an Accept-Encoding header value.
+    * @param acceptEncoding The value of Accept-Encoding header (may be null)
+    * @return GZIP or DEFLATE if one of them is accepted, null otherwise.
+    */
+   public static String negotiateEncoding(String acceptEncoding) {
+      if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+         return null;
+      }
+      String selected = null;
+      float selectedQuality = 0f;
+      for (String candidate : acceptEncoding.split(",")) {
+         String[] parts = candidate.trim().split(";");
+         String coding = parts[0].trim().toLowerCase();
+         float quality = 1f;
+         for (int i=1; i<parts.length; i++) {
+            String param = parts[i].trim();
+            if (param.startsWith("q=")) {
+               try {
+                  quality = Float.parseFloat(param.substring(2));
+               } catch (NumberFormatException nfe) {
+                  quality = 0f;
+               }
+            }
+         }
+         if ("*".equals(coding)) {
+            coding = GZIP;
+         }
+         // Prefer gzip over deflate when having the same quality.
+         if ((GZIP.equals(coding) || DEFLATE.equals(coding)) && quality > 0f
+               && (quality > selectedQuality || (quality == selectedQuality && GZIP.equals(coding)))) {
+            selected = coding;
+            selectedQuality = quality;
+         }
+      }
+      return selected;
+   }
+
+   /**
+    * Tell if a content type is worth being compressed (textual formats).
+    * @param contentType The content type of response (may be null)
+    * @return True if content type denotes a textual format
+    */
+   public static boolean isCompressible(String contentType) {
+      if (contentType == null) {
+         return false;
+      }
+      String type = contentType.toLowerCase();
+      return type.startsWith("text/") || type.contains("json") || type.contains("xml")
+            || type.contains("javascript") || type.contains("yaml");
+   }
+
+   /**
+    * Compress content using the given encoding.
+    * @param content The content to compress
+    * @param encoding GZIP or DEFLATE
+    * @return The compressed content
+    */
+   public static byte[] compress(byte[] content, String encoding) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, content.length / 4));
+      try (OutputStream out = compressingStream(bytes, encoding)) {
+         out.write(content);
+      } catch (IOException ioe) {
+         // Should not happen with in-memory streams.
+         throw new UncheckedIOException(ioe);
+      }
+      return bytes.toByteArray();
+   }
+
+   /**
+    * Wrap an output stream so that content written to it gets compressed on the fly.
+    * @param out The stream receiving compressed content
+    * @param encoding GZIP or DEFLATE
+    * @return The compressing stream. It must be closed to write the compression trailer.
+    * @throws IOException if compression header cannot be written
+    */
+   public static OutputStream compressingStream(OutputStream out, String encoding) throws IOException {
+      return GZIP.equals(encoding) ? new GZIPOutputStream(out) : new DeflaterOutputStream(out);
+   }
+}
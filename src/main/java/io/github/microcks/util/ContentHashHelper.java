@@ -0,0 +1,96 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util;
+
+import org.bson.Document;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Helper class for computing content hashes of documents, used to detect changes between stored and imported
+ * definitions. Hash does not depend on keys order. Arrays are ordered unless they are declared as unordered
+ * because they come from sets (like message headers) whose iteration order is not stable.
+ * @author laurent
+ */
+public class ContentHashHelper {
+
+   /**
+    * Compute the content hash of a document, all its arrays being considered as ordered.
+    * @param document The document to hash
+    * @param excludedKeys The top-level keys that should not be part of hash (eg: identifiers)
+    * @return An hexadecimal representation of hash
+    */
+   public static String hash(Document document, String... excludedKeys) {
+      return hash(document, Collections.emptySet(), excludedKeys);
+   }
+
+   /**
+    * Compute the content hash of a document.
+    * @param document The document to hash
+    * @param unorderedPaths The dotted paths of arrays coming from sets, whose elements order should not be part
+    *                       of hash (eg: "headers" and "headers.values" for a message)
+    * @param excludedKeys The top-level keys that should not be part of hash (eg: identifiers)
+    * @return An hexadecimal representation of hash
+    */
+   public static String hash(Document document, Set<String> unorderedPaths, String... excludedKeys) {
+      Map<String, Object> canonical = new TreeMap<>(document);
+      canonical.keySet().removeAll(Arrays.asList(excludedKeys));
+      return DigestUtils.md5DigestAsHex(canonicalize(canonical, "", unorderedPaths)
+            .getBytes(StandardCharsets.UTF_8));
+   }
+
+   private static String canonicalize(Object value, String path, Set<String> unorderedPaths) {
+      if (value instanceof Map) {
+         StringBuilder builder = new StringBuilder("{");
+         for (Map.Entry<?, ?> entry : new TreeMap<>((Map<?, ?>) value).entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            builder.append(quote(key)).append(':')
+                  .append(canonicalize(entry.getValue(), path.isEmpty() ? key : path + "." + key, unorderedPaths))
+                  .append(',');
+         }
+         return builder.append('}').toString();
+      }
+      if (value instanceof Collection) {
+         // Elements of arrays share the path of array, as in MongoDB queries.
+         Stream<String> elements = ((Collection<?>) value).stream()
+               .map(element -> canonicalize(element, path, unorderedPaths));
+         if (value instanceof Set || unorderedPaths.contains(path)) {
+            elements = elements.sorted();
+         }
+         return "[" + elements.collect(Collectors.joining(",")) + "]";
+      }
+      if (value instanceof String) {
+         return quote((String) value);
+      }
+      return String.valueOf(value);
+   }
+
+   private static String quote(String value) {
+      return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+   }
+}
@@ -0,0 +1,262 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util;
+
+import org.bson.BsonRegularExpression;
+import org.bson.Document;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Helper class evaluating a MongoDB query document against in-memory documents. Only a subset of the query
+ * language is supported: equality on (dotted) field paths, comparison operators ($eq, $ne, $gt, $gte,
+ * $lt, $lte), $in, $nin, $exists, $regex (with $options or as a regular expression value) and the $and,
+ * $or, $nor logical operators. Documents using an unsupported operator never match. When a query is
+ * evaluated against many documents, it should be compiled once using {@link #compile(Document)}.
+ * @author laurent
+ */
+public class DocumentQueryMatcher {
+
+   /**
+    * Tell if a document matches a query.
+    * @param query The MongoDB query document
+    * @param document The document to evaluate
+    * @return True if document matches all the query criteria
+    */
+   public static boolean matches(Document query, Document document) {
+      return compile(query).test(document);
+   }
+
+   /**
+    * Compile a query for evaluation against many documents: regular expressions are compiled only once.
+    * @param query The MongoDB query document
+    * @return A predicate telling if a document matches all the query criteria
+    * @throws java.util.regex.PatternSyntaxException if a regular expression of query is invalid
+    */
+   public static Predicate<Document> compile(Document query) {
+      Document compiled = (Document) compileRegexes(query);
+      return document -> matchesCompiled(compiled, document);
+   }
+
+   /** Replace the regular expressions of a query (and their $options) by compiled patterns. */
+   private static Object compileRegexes(Object condition) {
+      if (condition instanceof BsonRegularExpression) {
+         BsonRegularExpression regex = (BsonRegularExpression) condition;
+         return Pattern.compile(regex.getPattern(), toFlags(regex.getOptions()));
+      }
+      if (condition instanceof List) {
+         return ((List<?>) condition).stream().map(DocumentQueryMatcher::compileRegexes).collect(Collectors.toList());
+      }
+      if (!(condition instanceof Document)) {
+         return condition;
+      }
+      Document query = (Document) condition;
+      Document compiled = new Document();
+      for (Map.Entry<String, Object> entry : query.entrySet()) {
+         if ("$regex".equals(entry.getKey())) {
+            compiled.put("$regex", compileRegex(entry.getValue(), query.get("$options")));
+         } else if (!"$options".equals(entry.getKey()) || !query.containsKey("$regex")) {
+            compiled.put(entry.getKey(), compileRegexes(entry.getValue()));
+         }
+      }
+      return compiled;
+   }
+
+   private static Object compileRegex(Object regex, Object options) {
+      String extraOptions = options instanceof String ? (String) options : "";
+      if (regex instanceof String) {
+         return Pattern.compile((String) regex, toFlags(extraOptions));
+      }
+      if (regex instanceof BsonRegularExpression) {
+         BsonRegularExpression expression = (BsonRegularExpression) regex;
+         return Pattern.compile(expression.getPattern(), toFlags(expression.getOptions() + extraOptions));
+      }
+      return regex;
+   }
+
+   private static int toFlags(String options) {
+      int flags = 0;
+      for (char option : options.toCharArray()) {
+         switch (option) {
+            case 'i':
+               flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+               break;
+            case 'm':
+               flags |= Pattern.MULTILINE;
+               break;
+            case 's':
+               flags |= Pattern.DOTALL;
+               break;
+            case 'x':
+               flags |= Pattern.COMMENTS;
+               break;
+            default:
+               break;
+         }
+      }
+      return flags;
+   }
+
+   private static boolean matchesCompiled(Document query, Document document) {
+      for (Map.Entry<String, Object> criterion : query.entrySet()) {
+         if (!matchesCriterion(criterion.getKey(), criterion.getValue(), document)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static boolean matchesCriterion(String key, Object condition, Document document) {
+      switch (key) {
+         case "$and":
+            return asQueries(condition).stream().allMatch(query -> matchesCompiled(query, document));
+         case "$or":
+            return asQueries(condition).stream().anyMatch(query -> matchesCompiled(query, document));
+         case "$nor":
+            return asQueries(condition).stream().noneMatch(query -> matchesCompiled(query, document));
+         default:
+            if (key.startsWith("$")) {
+               return false;
+            }
+      }
+      boolean exists = hasPath(document, key);
+      Object value = exists ? getPath(document, key) : null;
+      if (condition instanceof Document && isOperatorDocument((Document) condition)) {
+         for (Map.Entry<String, Object> operator : ((Document) condition).entrySet()) {
+            if (!matchesOperator(operator.getKey(), operator.getValue(), value, exists)) {
+               return false;
+            }
+         }
+         return true;
+      }
+      return matchesValue(value, condition);
+   }
+
+   private static boolean matchesOperator(String operator, Object operand, Object value, boolean exists) {
+      switch (operator) {
+         case "$eq":
+            return matchesValue(value, operand);
+         case "$ne":
+            return !matchesValue(value, operand);
+         case "$gt":
+            return anyCompares(value, operand, c -> c > 0);
+         case "$gte":
+            return anyCompares(value, operand, c -> c >= 0);
+         case "$lt":
+            return anyCompares(value, operand, c -> c < 0);
+         case "$lte":
+            return anyCompares(value, operand, c -> c <= 0);
+         case "$in":
+            return operand instanceof Collection
+                  && ((Collection<?>) operand).stream().anyMatch(candidate -> matchesValue(value, candidate));
+         case "$nin":
+            return operand instanceof Collection
+                  && ((Collection<?>) operand).stream().noneMatch(candidate -> matchesValue(value, candidate));
+         case "$exists":
+            return Boolean.TRUE.equals(operand) == exists;
+         case "$regex":
+            return operand instanceof Pattern && matchesValue(value, operand);
+         default:
+            return false;
+      }
+   }
+
+   /**
+    * Equality as MongoDB understands it: an array value matches if it or one of its elements is equal. An
+    * expected pattern matches string values instead.
+    */
+   private static boolean matchesValue(Object value, Object expected) {
+      if (expected instanceof Pattern) {
+         Pattern pattern = (Pattern) expected;
+         return anyValue(value, candidate -> candidate instanceof String && pattern.matcher((String) candidate).find());
+      }
+      if (valueEquals(value, expected)) {
+         return true;
+      }
+      return value instanceof List && ((List<?>) value).stream().anyMatch(element -> valueEquals(element, expected));
+   }
+
+   private static boolean valueEquals(Object value, Object expected) {
+      if (value instanceof Number && expected instanceof Number) {
+         return ((Number) value).doubleValue() == ((Number) expected).doubleValue();
+      }
+      return Objects.equals(value, expected);
+   }
+
+   private static boolean anyCompares(Object value, Object operand, IntPredicate test) {
+      return anyValue(value, candidate -> {
+         Integer comparison = compare(candidate, operand);
+         return comparison != null && test.test(comparison);
+      });
+   }
+
+   private static boolean anyValue(Object value, Predicate<Object> test) {
+      if (value instanceof List) {
+         return ((List<?>) value).stream().anyMatch(test);
+      }
+      return test.test(value);
+   }
+
+   @SuppressWarnings("unchecked")
+   private static Integer compare(Object value, Object operand) {
+      if (value instanceof Number && operand instanceof Number) {
+         return Double.compare(((Number) value).doubleValue(), ((Number) operand).doubleValue());
+      }
+      if (value instanceof Comparable && operand != null && value.getClass().equals(operand.getClass())) {
+         return ((Comparable<Object>) value).compareTo(operand);
+      }
+      return null;
+   }
+
+   private static boolean isOperatorDocument(Document condition) {
+      return !condition.isEmpty() && condition.keySet().stream().allMatch(key -> key.startsWith("$"));
+   }
+
+   @SuppressWarnings("unchecked")
+   private static List<Document> asQueries(Object condition) {
+      return condition instanceof List ? (List<Document>) condition : Collections.emptyList();
+   }
+
+   private static boolean hasPath(Document document, String path) {
+      Object current = document;
+      for (String part : path.split("\\.")) {
+         if (!(current instanceof Map) || !((Map<?, ?>) current).containsKey(part)) {
+            return false;
+         }
+         current = ((Map<?, ?>) current).get(part);
+      }
+      return true;
+   }
+
+   private static Object getPath(Document document, String path) {
+      Object current = document;
+      for (String part : path.split("\\.")) {
+         current = ((Map<?, ?>) current).get(part);
+      }
+      return current;
+   }
+}
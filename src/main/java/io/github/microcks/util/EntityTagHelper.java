@@ -0,0 +1,94 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.DigestUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Helper class for computing entity tags and evaluating conditional requests (If-None-Match).
+ * @author laurent
+ */
+public class EntityTagHelper {
+
+   /**
+    * Build a strong entity tag from a content hash.
+    * @param content The content to build a tag for
+    * @return A quoted strong entity tag
+    */
+   public static String buildStrongETag(byte[] content) {
+      return "\"" + DigestUtils.md5DigestAsHex(content != null ? content : new byte[0]) + "\"";
+   }
+
+   /**
+    * Build a strong entity tag from an opaque version identifier.
+    * @param version A version identifier that changes each time entity is updated
+    * @return A quoted strong entity tag
+    */
+   public static String buildStrongETag(String version) {
+      return "\"" + version + "\"";
+   }
+
+   /**
+    * Tell if request is a safe one (GET or HEAD) whose If-None-Match header matches the given entity tag.
+    * @param request The incoming request
+    * @param etag The current entity tag of resource
+    * @return True if resource was not modified and a 304 should be returned, false otherwise.
+    */
+   public static boolean isNotModified(HttpServletRequest request, String etag) {
+      Enumeration<String> ifNoneMatches = request.getHeaders(HttpHeaders.IF_NONE_MATCH);
+      return isNotModified(request.getMethod(),
+            ifNoneMatches != null ? Collections.list(ifNoneMatches) : Collections.<String>emptyList(), etag);
+   }
+
+   /**
+    * Tell if request is a safe one (GET or HEAD) whose If-None-Match header values match the given entity tag.
+    * @param method The Http method of incoming request
+    * @param ifNoneMatches The values of If-None-Match header of incoming request
+    * @param etag The current entity tag of resource
+    * @return True if resource was not modified and a 304 should be returned, false otherwise.
+    */
+   public static boolean isNotModified(String method, List<String> ifNoneMatches, String etag) {
+      if (etag == null || !("GET".equals(method) || "HEAD".equals(method))) {
+         return false;
+      }
+      // Entity tag may be a weak one when defined by a mock.
+      if (etag.startsWith("W/")) {
+         etag = etag.substring(2);
+      }
+      for (String ifNoneMatch : ifNoneMatches) {
+         for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            // If-None-Match uses weak comparison, so ignore weak indicator.
+            if (candidate.startsWith("W/")) {
+               candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || etag.equals(candidate)) {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+}
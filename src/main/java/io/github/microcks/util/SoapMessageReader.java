@@ -0,0 +1,98 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+
+/**
+ * Helper class for reading SOAP messages in a streaming way, without parsing the whole envelope.
+ * @author laurent
+ */
+public class SoapMessageReader {
+
+   /** The name of the SOAP Action Http header (SOAP 1.1). */
+   public static final String SOAP_ACTION_HEADER = "SOAPAction";
+
+   private static final String BODY_ELEMENT = "Body";
+
+   private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+
+   static {
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+   }
+
+   private SoapMessageReader() {}
+
+   /**
+    * Read the qualified name of the first child element of SOAP envelope Body. Reading stops as soon
+    * as this element is found so that the remaining of message is not parsed.
+    * @param payload The SOAP message payload
+    * @return The name of first Body child element or null if Body is missing or empty.
+    * @throws XMLStreamException if payload is not well-formed XML.
+    */
+   public static QName readFirstBodyElementName(String payload) throws XMLStreamException {
+      XMLStreamReader reader = factory.createXMLStreamReader(new StringReader(payload));
+      try {
+         int depth = 0;
+         boolean inBody = false;
+         while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+               depth++;
+               if (inBody) {
+                  return reader.getName();
+               }
+               // Body is expected to be a direct child of Envelope.
+               inBody = (depth == 2 && BODY_ELEMENT.equals(reader.getLocalName()));
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+               if (inBody) {
+                  // Body is empty.
+                  return null;
+               }
+               depth--;
+            }
+         }
+      } finally {
+         reader.close();
+      }
+      return null;
+   }
+
+   /**
+    * Extract the SOAP action from the value of SOAPAction header, removing surrounding quotes.
+    * @param headerValue The raw value of SOAPAction header (may be null)
+    * @return The SOAP action or null if header is missing or empty.
+    */
+   public static String extractSoapAction(String headerValue) {
+      if (headerValue == null) {
+         return null;
+      }
+      String action = headerValue.trim();
+      if (action.length() >= 2 && action.startsWith("\"") && action.endsWith("\"")) {
+         action = action.substring(1, action.length() - 1);
+      }
+      return action.isEmpty() ? null : action;
+   }
+}
@@ -0,0 +1,404 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util.dispatcher;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * An immutable and thread-safe evaluator compiled from a JsonEvaluationSpecification. JSON Pointer expression,
+ * regular expressions and range bounds are parsed once at compilation time so that evaluating a payload only
+ * costs its parsing and a lookup into the cases. Payloads may be evaluated on a whole JSON tree or by streaming
+ * their tokens only as far as needed for resolving the JSON Pointer.
+ * @author laurent
+ */
+public class CompiledJsonEvaluator {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(CompiledJsonEvaluator.class);
+
+   private static final String DEFAULT_CASE = "default";
+   private static final String FOUND_CASE = "found";
+   private static final String MISSING_CASE = "missing";
+
+   private static final ObjectMapper mapper = new ObjectMapper();
+
+   private final JsonPointer pointer;
+   private final EvaluationOperator operator;
+   private final Map<String, String> cases;
+   private final String defaultCase;
+
+   /** Regular expressions cases, in cases declaration order. */
+   private final List<PatternCase> patternCases;
+   /** Range cases sorted on their lower bound. */
+   private final RangeCase[] rangeCases;
+   /** Whether range cases are disjoint and can be looked up using binary search. */
+   private final boolean disjointRanges;
+
+
+   private CompiledJsonEvaluator(JsonPointer pointer, EvaluationOperator operator, Map<String, String> cases,
+         List<PatternCase> patternCases, RangeCase[] rangeCases, boolean disjointRanges) {
+      this.pointer = pointer;
+      this.operator = operator;
+      this.cases = cases;
+      this.defaultCase = cases.get(DEFAULT_CASE);
+      this.patternCases = patternCases;
+      this.rangeCases = rangeCases;
+      this.disjointRanges = disjointRanges;
+   }
+
+   /**
+    * Compile a specification into an evaluator.
+    * @param specification The evaluation specification (JSONPointer expression + operator + cases)
+    * @return A new immutable evaluator
+    * @throws JsonMappingException if specification is incomplete or its expressions are invalid
+    */
+   public static CompiledJsonEvaluator compile(JsonEvaluationSpecification specification) throws JsonMappingException {
+      if (specification.getExp() == null || specification.getOperator() == null) {
+         throw new JsonMappingException("JsonEvaluationSpecification should define an exp and an operator");
+      }
+      JsonPointer pointer;
+      try {
+         pointer = JsonPointer.compile(specification.getExp());
+      } catch (IllegalArgumentException iae) {
+         throw new JsonMappingException(specification.getExp() + " is not a valid JSON Pointer expression");
+      }
+
+      // Keep cases declaration order as it matters for regular expressions and overlapping ranges.
+      List<String> caseKeys = new ArrayList<>();
+      Map<String, String> cases = new HashMap<>();
+      if (specification.getCases() != null) {
+         caseKeys.addAll(specification.getCases().keySet());
+         cases.putAll(specification.getCases());
+      }
+
+      List<PatternCase> patternCases = new ArrayList<>();
+      List<RangeCase> rangeCases = new ArrayList<>();
+      for (String caseKey : caseKeys) {
+         if (EvaluationOperator.regexp.equals(specification.getOperator()) && !DEFAULT_CASE.equals(caseKey)) {
+            try {
+               patternCases.add(new PatternCase(Pattern.compile(caseKey), cases.get(caseKey)));
+            } catch (PatternSyntaxException pse) {
+               throw new JsonMappingException(caseKey + " is not a valid regular expression");
+            }
+         } else if (EvaluationOperator.range.equals(specification.getOperator())
+               || EvaluationOperator.size.equals(specification.getOperator())) {
+            RangeCase rangeCase = RangeCase.parse(caseKey, cases.get(caseKey));
+            if (rangeCase != null) {
+               rangeCases.add(rangeCase);
+            }
+         }
+      }
+
+      // Check if ranges are disjoint once sorted, otherwise first declared matching range wins.
+      RangeCase[] sortedRanges = rangeCases.toArray(new RangeCase[0]);
+      Arrays.sort(sortedRanges, (r1, r2) -> Double.compare(r1.min, r2.min));
+      boolean disjoint = true;
+      for (int i = 1; i < sortedRanges.length && disjoint; i++) {
+         RangeCase previous = sortedRanges[i - 1];
+         RangeCase current = sortedRanges[i];
+         disjoint = previous.max < current.min
+               || (previous.max == current.min && !(previous.maxIncluded && current.minIncluded));
+      }
+
+      return new CompiledJsonEvaluator(pointer, specification.getOperator(), Collections.unmodifiableMap(cases),
+            Collections.unmodifiableList(patternCases),
+            disjoint ? sortedRanges : rangeCases.toArray(new RangeCase[0]), disjoint);
+   }
+
+   /**
+    * Evaluate a Json payload regarding this compiled specification.
+    * @param jsonText The Json payload to evaluate
+    * @return The result of evaluation is whether one of the cases, whether the default case.
+    * @throws JsonMappingException if incoming Json payload is malformed or invalid
+    */
+   public String evaluate(String jsonText) throws JsonMappingException {
+      // Parse json text ang get root node.
+      JsonNode rootNode;
+      try {
+         rootNode = mapper.readTree(jsonText);
+      } catch (Exception e) {
+         log.error("Exception while parsing Json text", e);
+         throw new JsonMappingException("Exception while parsing Json payload");
+      }
+
+      // Retrieve evaluated node within JSON tree.
+      JsonNode evaluatedNode = rootNode.at(pointer);
+      return evaluateCase(evaluatedNode.asText(), evaluatedNode.isArray() ? evaluatedNode.size() : -1);
+   }
+
+   /**
+    * Evaluate a Json payload regarding this compiled specification by streaming its tokens. Payload is only read
+    * as far as needed for resolving the JSON Pointer (and counting array elements for the size operator), so
+    * that no JSON tree is built. For well-formed payloads without duplicated keys, result is the same as the
+    * one of {@link #evaluate(String)}.
+    * @param jsonText The Json payload to evaluate
+    * @return The result of evaluation is whether one of the cases, whether the default case.
+    * @throws JsonMappingException if incoming Json payload is malformed or invalid
+    */
+   public String evaluateStreaming(String jsonText) throws JsonMappingException {
+      try (JsonParser parser = mapper.getFactory().createParser(jsonText)) {
+         JsonToken token = parser.nextToken();
+         if (token == null) {
+            throw new JsonMappingException("Json payload is empty");
+         }
+         if (!moveToPointer(parser, token)) {
+            // Node is missing, so its text is empty as for a MissingNode.
+            return evaluateCase("", -1);
+         }
+         switch (parser.currentToken()) {
+            case START_ARRAY:
+               int size = 0;
+               while (parser.nextToken() != JsonToken.END_ARRAY) {
+                  parser.skipChildren();
+                  size++;
+               }
+               return evaluateCase("", size);
+            case START_OBJECT:
+               return evaluateCase("", -1);
+            case VALUE_NUMBER_INT:
+               return evaluateCase(parser.getNumberValue().toString(), -1);
+            case VALUE_NUMBER_FLOAT:
+               // Mimic DoubleNode text representation.
+               return evaluateCase(Double.toString(parser.getDoubleValue()), -1);
+            case VALUE_NULL:
+               return evaluateCase("null", -1);
+            default:
+               return evaluateCase(parser.getText(), -1);
+         }
+      } catch (IOException ioe) {
+         log.error("Exception while streaming Json text", ioe);
+         throw new JsonMappingException("Exception while parsing Json payload");
+      }
+   }
+
+   /**
+    * Move parser to the value targeted by pointer, skipping siblings without reading their content.
+    * @return True if parser current token is the targeted value, false if value is missing.
+    */
+   private boolean moveToPointer(JsonParser parser, JsonToken token) throws IOException {
+      JsonPointer current = pointer;
+      while (!current.matches()) {
+         if (token == JsonToken.START_OBJECT) {
+            String property = current.getMatchingProperty();
+            boolean found = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+               String name = parser.getCurrentName();
+               token = parser.nextToken();
+               if (name.equals(property)) {
+                  found = true;
+                  break;
+               }
+               parser.skipChildren();
+            }
+            if (!found) {
+               return false;
+            }
+         } else if (token == JsonToken.START_ARRAY) {
+            int index = current.getMatchingIndex();
+            if (index < 0) {
+               return false;
+            }
+            boolean found = false;
+            int i = 0;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+               if (i == index) {
+                  found = true;
+                  break;
+               }
+               parser.skipChildren();
+               i++;
+            }
+            if (!found) {
+               return false;
+            }
+         } else {
+            // Scalar values cannot be traversed.
+            return false;
+         }
+         current = current.tail();
+      }
+      return true;
+   }
+
+   /**
+    * Find the matching case for an evaluated value.
+    * @param caseKey The text value of evaluated node
+    * @param arraySize The size of evaluated node if it is an array, -1 otherwise
+    * @return The matching case or the default one.
+    */
+   String evaluateCase(String caseKey, int arraySize) {
+      switch (operator) {
+         case equals:
+            // Consider simple equality.
+            String value = cases.get(caseKey);
+            return (value != null ? value : defaultCase);
+
+         case range:
+            // Consider range evaluation.
+            double caseNumber;
+            try {
+               caseNumber = Double.parseDouble(caseKey);
+            } catch (NumberFormatException nfe) {
+               log.error(caseKey + " into range expression cannot be parsed as number. Considering default case.");
+               return defaultCase;
+            }
+            return findRangeMatchingCase(caseNumber);
+
+         case regexp:
+            // Consider regular expression evaluation for each case key.
+            for (PatternCase patternCase : patternCases) {
+               if (patternCase.pattern.matcher(caseKey).matches()) {
+                  return patternCase.value;
+               }
+            }
+            break;
+
+         case size:
+            // Consider size evaluation.
+            if (arraySize >= 0) {
+               return findRangeMatchingCase(arraySize);
+            }
+            break;
+
+         case presence:
+            // Consider presence evaluation.
+            if (caseKey != null && caseKey.length() > 0) {
+               if (cases.containsKey(FOUND_CASE)) {
+                  return cases.get(FOUND_CASE);
+               }
+            } else {
+               if (cases.containsKey(MISSING_CASE)) {
+                  return cases.get(MISSING_CASE);
+               }
+            }
+            break;
+      }
+      return defaultCase;
+   }
+
+   /** @return The JSON Pointer expression of this evaluator */
+   JsonPointer getPointer() {
+      return pointer;
+   }
+
+   /** @return The operator of this evaluator */
+   EvaluationOperator getOperator() {
+      return operator;
+   }
+
+   /** Find the range containing caseNumber, using binary search when ranges are disjoint. */
+   private String findRangeMatchingCase(double caseNumber) {
+      if (disjointRanges) {
+         // Find the last range whose lower bound is lower or equal to caseNumber.
+         int low = 0;
+         int high = rangeCases.length - 1;
+         int candidate = -1;
+         while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (rangeCases[middle].min <= caseNumber) {
+               candidate = middle;
+               low = middle + 1;
+            } else {
+               high = middle - 1;
+            }
+         }
+         // When caseNumber is an excluded lower bound, it may belong to previous range.
+         for (int i = candidate; i >= 0 && i >= candidate - 1; i--) {
+            if (rangeCases[i].contains(caseNumber)) {
+               return rangeCases[i].value;
+            }
+         }
+      } else {
+         for (RangeCase rangeCase : rangeCases) {
+            if (rangeCase.contains(caseNumber)) {
+               return rangeCase.value;
+            }
+         }
+      }
+      return defaultCase;
+   }
+
+
+   /** A compiled regular expression case. */
+   private static class PatternCase {
+      private final Pattern pattern;
+      private final String value;
+
+      private PatternCase(Pattern pattern, String value) {
+         this.pattern = pattern;
+         this.value = value;
+      }
+   }
+
+   /** A pre-parsed range case such as <code>[4.2;5.0[</code>. */
+   private static class RangeCase {
+      private final double min;
+      private final double max;
+      private final boolean minIncluded;
+      private final boolean maxIncluded;
+      private final String value;
+
+      private RangeCase(double min, double max, boolean minIncluded, boolean maxIncluded, String value) {
+         this.min = min;
+         this.max = max;
+         this.minIncluded = minIncluded;
+         this.maxIncluded = maxIncluded;
+         this.value = value;
+      }
+
+      private boolean contains(double number) {
+         return (minIncluded ? number >= min : number > min) && (maxIncluded ? number <= max : number < max);
+      }
+
+      /** Parse a range key. Return null if key is not a valid range expression. */
+      private static RangeCase parse(String key, String value) {
+         boolean hasCorrectStart = key.startsWith("[") || key.startsWith("]");
+         boolean hasCorrectEnd = key.endsWith("[") || key.endsWith("]");
+         if (!hasCorrectStart || !hasCorrectEnd || !key.contains(";")) {
+            return null;
+         }
+         try {
+            // Considering min on the left side and max on the right side.
+            String[] minAndMax = key.split(";");
+            double min = Double.parseDouble(minAndMax[0].substring(1));
+            double max = Double.parseDouble(minAndMax[1].substring(0, minAndMax[1].length() - 1));
+            return new RangeCase(min, max, key.startsWith("["), key.endsWith("]"), value);
+         } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            log.warn(key + " expression cannot be parsed as number for min and max range.");
+         }
+         return null;
+      }
+   }
+}
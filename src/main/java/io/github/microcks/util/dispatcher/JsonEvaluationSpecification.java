@@ -30,6 +30,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 @JsonPropertyOrder({ "exp", "operator", "cases" })
 public class JsonEvaluationSpecification {
 
+   private static final ObjectMapper mapper = new ObjectMapper();
+
    private String exp;
    private EvaluationOperator operator;
    private DispatchCases cases;
@@ -67,7 +69,6 @@ public class JsonEvaluationSpecification {
    public static JsonEvaluationSpecification buildFromJsonString(String jsonPayload) throws JsonMappingException {
       JsonEvaluationSpecification specification = null;
       try {
-         ObjectMapper mapper = new ObjectMapper();
          specification = mapper.readValue(jsonPayload, JsonEvaluationSpecification.class);
       } catch (Exception e) {
          throw new JsonMappingException("Given JSON string cannot be interpreted as valid JsonEvaluationSpecification");
@@ -0,0 +1,332 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util.snapshot;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A read-only, memory-mapped binary snapshot of a catalog of Services and Responses. Only the offset index is
+ * decoded when snapshot is opened, Services and Responses are decoded from the mapped file on lookup.
+ * <p>
+ * Layout of a snapshot file (version 1), all numbers are big-endian:
+ * <pre>
+ * header  : magic "MCKS" (4 bytes) | format version (int)
+ * records : (type byte ('S' for Service, 'R' for Response) | payload length (int) | Smile payload)*
+ * index   : Smile encoded {@link Index} holding the offset of each record
+ * trailer : index offset (long) | index length (int) | magic "MCKS" (4 bytes)
+ * </pre>
+ * Snapshots are produced by {@link CatalogSnapshotWriter}.
+ * @author laurent
+ */
+public class CatalogSnapshot {
+
+   /** The magic bytes starting and ending a snapshot file. */
+   static final byte[] MAGIC = {'M', 'C', 'K', 'S'};
+   /** The current version of snapshot format. */
+   static final int FORMAT_VERSION = 1;
+   /** The record type of Services. */
+   static final byte SERVICE_RECORD = 'S';
+   /** The record type of Responses. */
+   static final byte RESPONSE_RECORD = 'R';
+   /** The length of header: magic and format version. */
+   static final int HEADER_LENGTH = MAGIC.length + 4;
+   /** The length of trailer: index offset, index length and magic. */
+   static final int TRAILER_LENGTH = 8 + 4 + MAGIC.length;
+   /** The length of record prefix: type and payload length. */
+   static final int RECORD_PREFIX_LENGTH = 1 + 4;
+
+   private final ByteBuffer buffer;
+   private final ObjectMapper mapper = createMapper();
+   private final Map<String, Long> serviceOffsets = new HashMap<>();
+   private final Map<String, List<ResponseEntry>> responseEntries = new HashMap<>();
+   private final int responseCount;
+
+
+   private CatalogSnapshot(ByteBuffer buffer) throws IOException {
+      this.buffer = buffer;
+
+      // Check header and trailer before reading index.
+      if (buffer.limit() < HEADER_LENGTH + TRAILER_LENGTH || !hasMagic(0) || !hasMagic(buffer.limit() - MAGIC.length)) {
+         throw new IOException("Not a catalog snapshot: magic bytes not found");
+      }
+      int version = buffer.getInt(MAGIC.length);
+      if (version != FORMAT_VERSION) {
+         throw new IOException("Unsupported catalog snapshot format version " + version);
+      }
+      long indexOffset = buffer.getLong(buffer.limit() - TRAILER_LENGTH);
+      int indexLength = buffer.getInt(buffer.limit() - TRAILER_LENGTH + 8);
+      if (indexOffset < HEADER_LENGTH || indexOffset + indexLength > buffer.limit() - TRAILER_LENGTH) {
+         throw new IOException("Corrupted catalog snapshot: invalid index location");
+      }
+
+      Index index = mapper.readValue(new ByteBufferBackedInputStream(slice(indexOffset, indexLength)), Index.class);
+      for (ServiceEntry entry : index.getServices()) {
+         serviceOffsets.putIfAbsent(buildServiceKey(entry.getName(), entry.getVersion()), entry.getOffset());
+      }
+      for (ResponseEntry entry : index.getResponses()) {
+         responseEntries.computeIfAbsent(entry.getOperationId(), k -> new ArrayList<>()).add(entry);
+      }
+      responseCount = index.getResponses().size();
+   }
+
+   /**
+    * Open and memory-map a snapshot file.
+    * @param path The path of snapshot file
+    * @return The opened snapshot
+    * @throws IOException if file cannot be read or is not a valid snapshot
+    */
+   public static CatalogSnapshot open(Path path) throws IOException {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+         if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("Catalog snapshots larger than 2GB are not supported");
+         }
+         // Mapping remains valid after channel is closed.
+         MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+         return new CatalogSnapshot(mapped);
+      }
+   }
+
+   /** @return The number of Services in snapshot */
+   public int getServiceCount() {
+      return serviceOffsets.size();
+   }
+
+   /** @return The number of Responses in snapshot */
+   public int getResponseCount() {
+      return responseCount;
+   }
+
+   /**
+    * Decode all the Services of snapshot.
+    * @return The Services of snapshot
+    * @throws IOException if a record cannot be decoded
+    */
+   public List<Service> getServices() throws IOException {
+      List<Service> services = new ArrayList<>(serviceOffsets.size());
+      for (Long offset : serviceOffsets.values()) {
+         services.add(readRecord(offset, SERVICE_RECORD, Service.class));
+      }
+      return services;
+   }
+
+   /**
+    * Find a Service using its name and version.
+    * @param name The name of Service
+    * @param version The version of Service
+    * @return The Service or null if none.
+    * @throws IOException if record cannot be decoded
+    */
+   public Service findService(String name, String version) throws IOException {
+      Long offset = serviceOffsets.get(buildServiceKey(name, version));
+      return offset != null ? readRecord(offset, SERVICE_RECORD, Service.class) : null;
+   }
+
+   /**
+    * Find the Responses of an operation having the given dispatch criteria.
+    * @param operationId The identifier of operation
+    * @param dispatchCriteria The dispatch criteria of responses
+    * @return The matching responses, may be empty.
+    * @throws IOException if a record cannot be decoded
+    */
+   public List<Response> findResponsesByOperationIdAndDispatchCriteria(String operationId, String dispatchCriteria)
+         throws IOException {
+      List<Response> responses = new ArrayList<>();
+      for (ResponseEntry entry : responseEntries.getOrDefault(operationId, Collections.emptyList())) {
+         if (Objects.equals(dispatchCriteria, entry.getDispatchCriteria())) {
+            responses.add(readRecord(entry.getOffset(), RESPONSE_RECORD, Response.class));
+         }
+      }
+      return responses;
+   }
+
+   /**
+    * Find the Responses of an operation having the given name.
+    * @param operationId The identifier of operation
+    * @param name The name of responses
+    * @return The matching responses, may be empty.
+    * @throws IOException if a record cannot be decoded
+    */
+   public List<Response> findResponsesByOperationIdAndName(String operationId, String name) throws IOException {
+      List<Response> responses = new ArrayList<>();
+      for (ResponseEntry entry : responseEntries.getOrDefault(operationId, Collections.emptyList())) {
+         if (Objects.equals(name, entry.getName())) {
+            responses.add(readRecord(entry.getOffset(), RESPONSE_RECORD, Response.class));
+         }
+      }
+      return responses;
+   }
+
+   /** Create the Smile mapper used for encoding and decoding snapshot records and index. */
+   static ObjectMapper createMapper() {
+      SmileFactory factory = new SmileFactory();
+      // Operation identifiers are repeated a lot in index, let them be back-referenced.
+      factory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+      return new ObjectMapper(factory).configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+   }
+
+   private <T> T readRecord(long offset, byte expectedType, Class<T> type) throws IOException {
+      if (buffer.get((int) offset) != expectedType) {
+         throw new IOException("Corrupted catalog snapshot: unexpected record type at offset " + offset);
+      }
+      int length = buffer.getInt((int) offset + 1);
+      return mapper.readValue(new ByteBufferBackedInputStream(slice(offset + RECORD_PREFIX_LENGTH, length)), type);
+   }
+
+   /** Get an independent view of a region of mapped file, so that concurrent reads do not interfere. */
+   private ByteBuffer slice(long offset, int length) {
+      ByteBuffer view = buffer.duplicate();
+      view.position((int) offset);
+      view.limit((int) offset + length);
+      return view;
+   }
+
+   private boolean hasMagic(int position) {
+      byte[] bytes = new byte[MAGIC.length];
+      for (int i = 0; i < bytes.length; i++) {
+         bytes[i] = buffer.get(position + i);
+      }
+      return Arrays.equals(MAGIC, bytes);
+   }
+
+   private static String buildServiceKey(String name, String version) {
+      return name + ":" + version;
+   }
+
+
+   /** The offset index of a snapshot. */
+   public static class Index {
+      private List<ServiceEntry> services = new ArrayList<>();
+      private List<ResponseEntry> responses = new ArrayList<>();
+
+      public List<ServiceEntry> getServices() {
+         return services;
+      }
+      public void setServices(List<ServiceEntry> services) {
+         this.services = services;
+      }
+
+      public List<ResponseEntry> getResponses() {
+         return responses;
+      }
+      public void setResponses(List<ResponseEntry> responses) {
+         this.responses = responses;
+      }
+   }
+
+   /** Index entry of a Service record. */
+   public static class ServiceEntry {
+      private String name;
+      private String version;
+      private long offset;
+
+      public ServiceEntry() {
+      }
+      public ServiceEntry(String name, String version, long offset) {
+         this.name = name;
+         this.version = version;
+         this.offset = offset;
+      }
+
+      public String getName() {
+         return name;
+      }
+      public void setName(String name) {
+         this.name = name;
+      }
+
+      public String getVersion() {
+         return version;
+      }
+      public void setVersion(String version) {
+         this.version = version;
+      }
+
+      public long getOffset() {
+         return offset;
+      }
+      public void setOffset(long offset) {
+         this.offset = offset;
+      }
+   }
+
+   /** Index entry of a Response record. */
+   public static class ResponseEntry {
+      private String operationId;
+      private String dispatchCriteria;
+      private String name;
+      private long offset;
+
+      public ResponseEntry() {
+      }
+      public ResponseEntry(String operationId, String dispatchCriteria, String name, long offset) {
+         this.operationId = operationId;
+         this.dispatchCriteria = dispatchCriteria;
+         this.name = name;
+         this.offset = offset;
+      }
+
+      public String getOperationId() {
+         return operationId;
+      }
+      public void setOperationId(String operationId) {
+         this.operationId = operationId;
+      }
+
+      public String getDispatchCriteria() {
+         return dispatchCriteria;
+      }
+      public void setDispatchCriteria(String dispatchCriteria) {
+         this.dispatchCriteria = dispatchCriteria;
+      }
+
+      public String getName() {
+         return name;
+      }
+      public void setName(String name) {
+         this.name = name;
+      }
+
+      public long getOffset() {
+         return offset;
+      }
+      public void setOffset(long offset) {
+         this.offset = offset;
+      }
+   }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writer of binary catalog snapshots (see {@link CatalogSnapshot} for layout). Records are streamed to output as
+ * they are written and only the offset index is kept in memory until writer is closed.
+ * @author laurent
+ */
+public class CatalogSnapshotWriter implements Closeable {
+
+   private static final int BUFFER_SIZE = 64 * 1024;
+
+   private final DataOutputStream output;
+   private final ObjectMapper mapper = CatalogSnapshot.createMapper();
+   private final CatalogSnapshot.Index index = new CatalogSnapshot.Index();
+   private long position;
+   private boolean closed = false;
+
+
+   /**
+    * Create a new writer and write snapshot header.
+    * @param stream The stream to write snapshot to, it is closed when writer is closed
+    * @throws IOException if header cannot be written
+    */
+   public CatalogSnapshotWriter(OutputStream stream) throws IOException {
+      output = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+      output.write(CatalogSnapshot.MAGIC);
+      output.writeInt(CatalogSnapshot.FORMAT_VERSION);
+      position = CatalogSnapshot.HEADER_LENGTH;
+   }
+
+   /**
+    * Write a Service record.
+    * @param service The Service to write
+    * @throws IOException if record cannot be written
+    */
+   public void writeService(Service service) throws IOException {
+      long offset = writeRecord(CatalogSnapshot.SERVICE_RECORD, service);
+      index.getServices().add(new CatalogSnapshot.ServiceEntry(service.getName(), service.getVersion(), offset));
+   }
+
+   /**
+    * Write a Response record.
+    * @param response The Response to write
+    * @throws IOException if record cannot be written
+    */
+   public void writeResponse(Response response) throws IOException {
+      long offset = writeRecord(CatalogSnapshot.RESPONSE_RECORD, response);
+      index.getResponses().add(new CatalogSnapshot.ResponseEntry(response.getOperationId(),
+            response.getDispatchCriteria(), response.getName(), offset));
+   }
+
+   /** Write the index and trailer, then close the underlying stream. */
+   @Override
+   public void close() throws IOException {
+      if (closed) {
+         return;
+      }
+      closed = true;
+      byte[] payload = mapper.writeValueAsBytes(index);
+      output.write(payload);
+      output.writeLong(position);
+      output.writeInt(payload.length);
+      output.write(CatalogSnapshot.MAGIC);
+      output.close();
+   }
+
+   private long writeRecord(byte type, Object value) throws IOException {
+      if (closed) {
+         throw new IOException("Catalog snapshot writer is closed");
+      }
+      byte[] payload = mapper.writeValueAsBytes(value);
+      long offset = position;
+      output.writeByte(type);
+      output.writeInt(payload.length);
+      output.write(payload);
+      position += CatalogSnapshot.RECORD_PREFIX_LENGTH + payload.length;
+      return offset;
+   }
+}
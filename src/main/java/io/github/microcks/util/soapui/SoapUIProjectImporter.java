@@ -239,6 +239,7 @@ public class SoapUIProjectImporter implements MockRepositoryImporter {
          WsdlOperation wo = wi.getOperationByName(mockOperation.getName());
          operation.setInputName(wo.getInputName());
          operation.setOutputName(wo.getOutputName());
+         operation.setAction(wo.getAction());
 
          WsdlMockOperation wmo = (WsdlMockOperation)mockOperation;
          operation.setDispatcher(wmo.getDispatchStyle());
@@ -27,6 +27,8 @@ import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.servlet.http.HttpServletRequest;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Utility class that holds methods for creating binding environments for
@@ -46,12 +48,42 @@ public class SoapUIScriptEngineBinder{
     * @param request The wrapped incoming servlet request.
     */
    public static void bindSoapUIEnvironment(ScriptEngine engine, String requestContent, HttpServletRequest request){
+      engine.setBindings(buildSoapUIBindings(engine, requestContent, request), ScriptContext.ENGINE_SCOPE);
+   }
+
+   /**
+    * Create a SoapUI binding environment without modifying the ScriptEngine state. Returned bindings
+    * can be used for evaluating scripts or compiled scripts of a shared engine.
+    * @param engine The engine used for creating bindings.
+    * @param requestContent The content of request to use as data
+    * @param request The wrapped incoming servlet request.
+    * @return The bindings holding SoapUI environment.
+    */
+   public static Bindings buildSoapUIBindings(ScriptEngine engine, String requestContent, HttpServletRequest request){
       // Build a map of header values.
       StringToStringsMap headers = new StringToStringsMap();
       for (String headerName : Collections.list(request.getHeaderNames())) {
          headers.put(headerName, Collections.list(request.getHeaders(headerName)));
       }
+      return buildSoapUIBindings(engine, requestContent, headers, request);
+   }
+
+   /**
+    * Create a SoapUI binding environment from request content and headers only, for requests that are
+    * not serviced by a servlet container. The wrapped request of mockRequest is null in that case.
+    * @param engine The engine used for creating bindings.
+    * @param requestContent The content of request to use as data
+    * @param requestHeaders The headers of request
+    * @return The bindings holding SoapUI environment.
+    */
+   public static Bindings buildSoapUIBindings(ScriptEngine engine, String requestContent, Map<String, List<String>> requestHeaders){
+      StringToStringsMap headers = new StringToStringsMap();
+      headers.putAll(requestHeaders);
+      return buildSoapUIBindings(engine, requestContent, headers, null);
+   }
 
+   private static Bindings buildSoapUIBindings(ScriptEngine engine, String requestContent, StringToStringsMap headers,
+                                               HttpServletRequest request){
       // Build a fake request container.
       FakeSoapUIMockRequest mockRequest = new FakeSoapUIMockRequest(requestContent, headers);
       mockRequest.setRequest(request);
@@ -60,6 +92,6 @@ public class SoapUIScriptEngineBinder{
       Bindings bindings = engine.createBindings();
       bindings.put("mockRequest", mockRequest);
       bindings.put("log", log);
-      engine.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+      return bindings;
    }
 }
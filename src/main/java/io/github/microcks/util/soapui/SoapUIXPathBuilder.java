@@ -38,9 +38,34 @@ public class SoapUIXPathBuilder {
     * @throws XPathExpressionException if something wrong occurs.
     */
    public static XPathExpression buildXPathMatcherFromRules(String rules) throws XPathExpressionException {
-      XPath xpath = XPathFactory.newInstance().newXPath();
       WritableNamespaceContext nsContext = new WritableNamespaceContext();
+      String xpathExpression = parseRules(rules, nsContext);
+      return compile(xpathExpression, nsContext);
+   }
+
+   /**
+    * Build a reusable and thread-safe matcher from SoapUI Rules.
+    * @param rules The string representing the rules.
+    * @return A SoapUIXPathMatcher following the given rules
+    * @throws XPathExpressionException if something wrong occurs.
+    */
+   public static SoapUIXPathMatcher buildSoapUIXPathMatcherFromRules(String rules) throws XPathExpressionException {
+      WritableNamespaceContext nsContext = new WritableNamespaceContext();
+      String xpathExpression = parseRules(rules, nsContext);
+      return new SoapUIXPathMatcher(xpathExpression, nsContext);
+   }
 
+   /** Compile an XPath expression using namespace context. */
+   static XPathExpression compile(String xpathExpression, WritableNamespaceContext nsContext)
+         throws XPathExpressionException {
+      XPath xpath = XPathFactory.newInstance().newXPath();
+      // Set namespace context and compile expression.
+      xpath.setNamespaceContext(nsContext);
+      return xpath.compile(xpathExpression);
+   }
+
+   /** Parse SoapUI rules, filling namespace context and returning expression to evaluate. */
+   private static String parseRules(String rules, WritableNamespaceContext nsContext) {
       // Parse SoapUI rules for getting namespaces and expression to evaluate.
       // declare namespace ser='http://www.example.com/test/service';
       // //ser:sayHello/name
@@ -57,9 +82,6 @@ public class SoapUIXPathBuilder {
             xpathExpression = line;
          }
       }
-
-      // Set namespace context and compile expression.
-      xpath.setNamespaceContext(nsContext);
-      return xpath.compile(xpathExpression);
+      return xpathExpression;
    }
 }
@@ -0,0 +1,185 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util.soapui;
+
+import io.github.microcks.util.WritableNamespaceContext;
+import org.xml.sax.InputSource;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+
+/**
+ * A reusable and thread-safe matcher built from SoapUI XPath rules. As XPathExpression is not thread-safe,
+ * compiled expressions are pooled and borrowed for each evaluation. Simple element paths (such as
+ * <code>//ser:sayHello/name</code> or <code>/ser:sayHello/name</code>) are evaluated by streaming the
+ * payload instead of building a whole DOM.
+ * @author laurent
+ */
+public class SoapUIXPathMatcher {
+
+   /** Simple paths are only made of named element steps, optionally starting with the descendant axis. */
+   private static final Pattern SIMPLE_PATH_PATTERN = Pattern.compile("^//?([\\w.-]+:)?[\\w.-]+(/([\\w.-]+:)?[\\w.-]+)*$");
+
+   private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+
+   static {
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+   }
+
+   private final String xpathExpression;
+   private final WritableNamespaceContext nsContext;
+   private final Queue<XPathExpression> expressionsPool = new ConcurrentLinkedQueue<>();
+
+   private final List<QName> streamingSteps;
+   private final boolean descendantStart;
+
+
+   /**
+    * Create a new matcher. Expression is compiled once for validation.
+    * @param xpathExpression The XPath expression to evaluate
+    * @param nsContext The namespace context declaring expression prefixes
+    * @throws XPathExpressionException if expression cannot be compiled
+    */
+   SoapUIXPathMatcher(String xpathExpression, WritableNamespaceContext nsContext) throws XPathExpressionException {
+      this.xpathExpression = xpathExpression;
+      this.nsContext = nsContext;
+      this.expressionsPool.offer(SoapUIXPathBuilder.compile(xpathExpression, nsContext));
+
+      this.descendantStart = xpathExpression.startsWith("//");
+      this.streamingSteps = buildStreamingSteps(xpathExpression, nsContext);
+   }
+
+   /** @return Whether this matcher evaluates payloads in a streaming way */
+   public boolean isStreaming() {
+      return streamingSteps != null;
+   }
+
+   /**
+    * Evaluate the matcher expression on payload and return the string value of result.
+    * @param payload The XML payload to evaluate
+    * @return The string value of the first matching node. Empty if no match.
+    * @throws XPathExpressionException if evaluation fails
+    * @throws XMLStreamException if payload cannot be read during streaming evaluation
+    */
+   public String evaluate(String payload) throws XPathExpressionException, XMLStreamException {
+      if (streamingSteps != null) {
+         return evaluateStreaming(payload);
+      }
+      XPathExpression expression = expressionsPool.poll();
+      if (expression == null) {
+         expression = SoapUIXPathBuilder.compile(xpathExpression, nsContext);
+      }
+      try {
+         return expression.evaluate(new InputSource(new StringReader(payload)));
+      } finally {
+         expressionsPool.offer(expression);
+      }
+   }
+
+   /** Evaluate simple path by browsing payload events and collecting text of first matching element. */
+   private String evaluateStreaming(String payload) throws XMLStreamException {
+      XMLStreamReader reader = factory.createXMLStreamReader(new StringReader(payload));
+      try {
+         List<QName> elementsStack = new ArrayList<>();
+         StringBuilder text = null;
+         int matchDepth = -1;
+         while (reader.hasNext()) {
+            int event = reader.next();
+            switch (event) {
+               case XMLStreamConstants.START_ELEMENT:
+                  elementsStack.add(new QName(reader.getNamespaceURI(), reader.getLocalName()));
+                  if (text == null && matchesSteps(elementsStack)) {
+                     text = new StringBuilder();
+                     matchDepth = elementsStack.size();
+                  }
+                  break;
+               case XMLStreamConstants.CHARACTERS:
+               case XMLStreamConstants.CDATA:
+               case XMLStreamConstants.SPACE:
+                  if (text != null) {
+                     text.append(reader.getText());
+                  }
+                  break;
+               case XMLStreamConstants.END_ELEMENT:
+                  if (text != null && elementsStack.size() == matchDepth) {
+                     // String value of element is the concatenation of its descendant texts.
+                     return text.toString();
+                  }
+                  elementsStack.remove(elementsStack.size() - 1);
+                  break;
+               default:
+                  break;
+            }
+         }
+      } finally {
+         reader.close();
+      }
+      return "";
+   }
+
+   /** Check if current elements stack matches the path steps. */
+   private boolean matchesSteps(List<QName> elementsStack) {
+      int offset = elementsStack.size() - streamingSteps.size();
+      if (offset < 0 || (!descendantStart && offset != 0)) {
+         return false;
+      }
+      for (int i = 0; i < streamingSteps.size(); i++) {
+         if (!streamingSteps.get(i).equals(elementsStack.get(offset + i))) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /** Build qualified names of path steps if expression is eligible to streaming, null otherwise. */
+   private static List<QName> buildStreamingSteps(String xpathExpression, WritableNamespaceContext nsContext) {
+      if (!SIMPLE_PATH_PATTERN.matcher(xpathExpression).matches()) {
+         return null;
+      }
+      List<QName> steps = new ArrayList<>();
+      for (String step : xpathExpression.replaceFirst("^//?", "").split("/")) {
+         int colonIndex = step.indexOf(':');
+         if (colonIndex > 0) {
+            String namespaceURI = nsContext.getNamespaceURI(step.substring(0, colonIndex));
+            if (namespaceURI == null) {
+               return null;
+            }
+            steps.add(new QName(namespaceURI, step.substring(colonIndex + 1)));
+         } else {
+            // Unprefixed names in XPath 1.0 always refer to no namespace.
+            steps.add(new QName(XMLConstants.NULL_NS_URI, step));
+         }
+      }
+      return Collections.unmodifiableList(steps);
+   }
+}
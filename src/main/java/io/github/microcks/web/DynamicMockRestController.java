@@ -23,23 +23,41 @@ import io.github.microcks.domain.Operation;
 import io.github.microcks.domain.Service;
 import io.github.microcks.domain.ServiceType;
 import io.github.microcks.event.MockInvocationEvent;
-import io.github.microcks.repository.GenericResourceRepository;
-import io.github.microcks.repository.ServiceRepository;
+import io.github.microcks.service.GenericResourceStore;
+import io.github.microcks.service.MockDelayScheduler;
+import io.github.microcks.service.MockRoutingIndex;
+import io.github.microcks.util.EntityTagHelper;
 import org.bson.Document;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
 import org.bson.json.JsonParseException;
+import org.bson.json.JsonWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author laurent
@@ -52,18 +70,27 @@ public class DynamicMockRestController {
    private static Logger log = LoggerFactory.getLogger(DynamicMockRestController.class);
 
    public static final String ID_FIELD = "id";
+   public static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+   private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+   @Autowired
+   private MockRoutingIndex routingIndex;
 
    @Autowired
-   ServiceRepository serviceRepository;
+   private GenericResourceStore resourceStore;
 
    @Autowired
-   GenericResourceRepository genericResourceRepository;
+   private MockDelayScheduler delayScheduler;
 
    @Autowired
    private ApplicationContext applicationContext;
 
+   @Value("${mocks.dynarest.max-page-size:1000}")
+   private int maxPageSize;
+
    @RequestMapping(value = "/{service}/{version}/{resource}", method = RequestMethod.POST)
-   public ResponseEntity<String> createResource(
+   public DeferredResult<ResponseEntity<String>> createResource(
          @PathVariable("service") String serviceName,
          @PathVariable("version") String version,
          @PathVariable("resource") String resource,
@@ -85,34 +112,32 @@ public class DynamicMockRestController {
             // Try parsing body payload that should be json.
             document = Document.parse(body);
             // Now create a generic resource.
-            genericResource = new GenericResource();
-            genericResource.setServiceId(mockContext.service.getId());
-            genericResource.setPayload(document);
-
-            genericResource = genericResourceRepository.save(genericResource);
+            genericResource = resourceStore.createResource(mockContext.service.getId(), document);
          } catch (JsonParseException jpe) {
             // Return a 422 code : unprocessable entity.
-            return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
+            return MockDelayScheduler.completed(new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY));
          }
 
          // Append id and wait if specified before returning.
          document.append(ID_FIELD, genericResource.getId());
-         waitForDelay(startTime, delay, mockContext);
-         return new ResponseEntity<>(document.toJson(), HttpStatus.CREATED);
+         return releaseResponse(new ResponseEntity<>(document.toJson(), HttpStatus.CREATED),
+               startTime, delay, mockContext);
       }
       // Return a 400 code : bad request.
-      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+      return MockDelayScheduler.completed(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
    }
 
    @RequestMapping(value = "/{service}/{version}/{resource}", method = RequestMethod.GET)
-   public ResponseEntity<String> findResources(
+   public DeferredResult<ResponseEntity<StreamingResponseBody>> findResources(
          @PathVariable("service") String serviceName,
          @PathVariable("version") String version,
          @PathVariable("resource") String resource,
          @RequestParam(value = "page", required = false, defaultValue = "0") int page,
          @RequestParam(value = "size", required = false, defaultValue = "20") int size,
+         @RequestParam(value = "after", required = false) String after,
          @RequestParam(value="delay", required=false) Long delay,
-         @RequestBody(required=false) String body
+         @RequestBody(required=false) String body,
+         HttpServletRequest request
    ) {
       log.debug("Find resources '{}' for service '{}-{}'", resource, serviceName, version);
       long startTime = System.currentTimeMillis();
@@ -121,34 +146,59 @@ public class DynamicMockRestController {
 
       MockContext mockContext = getMockContext(serviceName, version, "GET /" + resource);
       if (mockContext != null) {
+         String serviceId = mockContext.service.getId();
+         int pageSize = Math.max(1, Math.min(size, maxPageSize));
 
-         List<GenericResource> genericResources = null;
-         if (body == null) {
-            genericResources = genericResourceRepository.findByServiceId(mockContext.service.getId(), new PageRequest(page, size));
-         } else {
-            genericResources = genericResourceRepository.findByServiceIdAndJSONQuery(mockContext.service.getId(), body);
+         // Only select the keys of resources page: payloads are streamed later.
+         List<GenericResource> resourceKeys = null;
+         long totalCount = 0;
+         try {
+            resourceKeys = resourceStore.findResourceKeys(serviceId, body, after, page, pageSize);
+            totalCount = resourceStore.countResources(serviceId, body);
+         } catch (JsonParseException | IllegalArgumentException e) {
+            // Return a 400 code : bad request.
+            return MockDelayScheduler.completed(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+         }
+
+         // Answer conditional requests if none of the resources has changed.
+         String etag = buildETag(resourceKeys);
+         if (EntityTagHelper.isNotModified(request, etag)) {
+            return releaseResponse(buildNotModifiedResponse(etag), startTime, delay, mockContext);
          }
 
-         // Transform and collect resources.
-         List<String> resources = genericResources.stream()
-               .map(genericResource -> transformToResourceJSON(genericResource))
-               .collect(Collectors.toList());
+         HttpHeaders headers = buildETagHeaders(etag);
+         headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+         headers.set(TOTAL_COUNT_HEADER, String.valueOf(totalCount));
+         if (resourceKeys.size() == pageSize) {
+            // Give the cursor of next page using the last resource identifier.
+            String nextPage = ServletUriComponentsBuilder.fromRequest(request)
+                  .replaceQueryParam("page")
+                  .replaceQueryParam("after", resourceKeys.get(pageSize - 1).getId())
+                  .replaceQueryParam("size", pageSize)
+                  .build().toUriString();
+            headers.add(HttpHeaders.LINK, "<" + nextPage + ">; rel=\"next\"");
+         }
+
+         // Stream resources from store cursor straight to response.
+         List<String> ids = resourceKeys.stream().map(GenericResource::getId).collect(Collectors.toList());
+         StreamingResponseBody responseBody = outputStream -> writeResources(outputStream, serviceId, ids);
 
          // Wait if specified before returning.
-         waitForDelay(startTime, delay, mockContext);
-         return new ResponseEntity<>(formatToJSONArray(resources), HttpStatus.OK);
+         return releaseResponse(new ResponseEntity<>(responseBody, headers, HttpStatus.OK),
+               startTime, delay, mockContext);
       }
       // Return a 400 code : bad request.
-      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+      return MockDelayScheduler.completed(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
    }
 
    @RequestMapping(value = "/{service}/{version}/{resource}/{resourceId}", method = RequestMethod.GET)
-   public ResponseEntity<String> getResource(
+   public DeferredResult<ResponseEntity<String>> getResource(
          @PathVariable("service") String serviceName,
          @PathVariable("version") String version,
          @PathVariable("resource") String resource,
          @PathVariable("resourceId") String resourceId,
-         @RequestParam(value="delay", required=false) Long delay
+         @RequestParam(value="delay", required=false) Long delay,
+         HttpServletRequest request
    ) {
       log.debug("Get resource '{}:{}' for service '{}-{}'", resource, resourceId, serviceName, version);
       long startTime = System.currentTimeMillis();
@@ -158,26 +208,30 @@ public class DynamicMockRestController {
       MockContext mockContext = getMockContext(serviceName, version, "GET /" + resource + "/:id");
       if (mockContext != null) {
          // Get the requested generic resource.
-         GenericResource genericResource = genericResourceRepository.findById(resourceId).get();
-
-         // Wait if specified before returning.
-         waitForDelay(startTime, delay, mockContext);
+         GenericResource genericResource = resourceStore.getResource(mockContext.service.getId(), resourceId);
 
          if (genericResource != null) {
+            // Answer conditional requests if resource has not changed.
+            String etag = buildETag(genericResource);
+            if (EntityTagHelper.isNotModified(request, etag)) {
+               return releaseResponse(buildNotModifiedResponse(etag), startTime, delay, mockContext);
+            }
             // Return the resource as well as a 200 code.
-            return new ResponseEntity<>(transformToResourceJSON(genericResource), HttpStatus.OK);
+            return releaseResponse(new ResponseEntity<>(transformToResourceJSON(genericResource),
+                  buildETagHeaders(etag), HttpStatus.OK), startTime, delay, mockContext);
          } else {
             // Return a 404 code : not found.
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            return releaseResponse(new ResponseEntity<>(HttpStatus.NOT_FOUND),
+                  startTime, delay, mockContext);
          }
       }
 
       // Return a 400 code : bad request.
-      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+      return MockDelayScheduler.completed(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
    }
 
    @RequestMapping(value = "/{service}/{version}/{resource}/{resourceId}", method = RequestMethod.PUT)
-   public ResponseEntity<String> updateResource(
+   public DeferredResult<ResponseEntity<String>> updateResource(
          @PathVariable("service") String serviceName,
          @PathVariable("version") String version,
          @PathVariable("resource") String resource,
@@ -194,7 +248,7 @@ public class DynamicMockRestController {
       MockContext mockContext = getMockContext(serviceName, version, "PUT /" + resource + "/:id");
       if (mockContext != null) {
          // Get the requested generic resource.
-         GenericResource genericResource = genericResourceRepository.findById(resourceId).get();
+         GenericResource genericResource = resourceStore.getResource(mockContext.service.getId(), resourceId);
          if (genericResource != null) {
             Document document = null;
 
@@ -203,40 +257,38 @@ public class DynamicMockRestController {
                document = Document.parse(body);
                document.remove(ID_FIELD);
 
-               // Now update the generic resource payload.
+               // Now update the generic resource payload and version.
                genericResource.setPayload(document);
+               genericResource.setVersion(genericResource.getVersion() + 1);
 
-               genericResourceRepository.save(genericResource);
+               resourceStore.saveResource(genericResource);
             } catch (JsonParseException jpe) {
                // Return a 422 code : unprocessable entity.
-               return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
+               return MockDelayScheduler.completed(new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY));
             }
-            // Wait if specified before returning.
-            waitForDelay(startTime, delay, mockContext);
-
-            // Return the updated resource as well as a 200 code.
-            return new ResponseEntity<>(transformToResourceJSON(genericResource), HttpStatus.OK);
+            // Return the updated resource as well as a 200 code, waiting if specified.
+            return releaseResponse(new ResponseEntity<>(transformToResourceJSON(genericResource),
+                  buildETagHeaders(buildETag(genericResource)), HttpStatus.OK), startTime, delay, mockContext);
 
          } else {
-            // Wait if specified before returning.
-            waitForDelay(startTime, delay, mockContext);
-
-            // Return a 404 code : not found.
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            // Return a 404 code : not found, waiting if specified.
+            return releaseResponse(new ResponseEntity<>(HttpStatus.NOT_FOUND),
+                  startTime, delay, mockContext);
          }
       }
 
       // Return a 400 code : bad request.
-      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+      return MockDelayScheduler.completed(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
    }
 
    @RequestMapping(value = "/{service}/{version}/{resource}/{resourceId}", method = RequestMethod.DELETE)
-   public ResponseEntity<String> deleteResource(
+   public DeferredResult<ResponseEntity<String>> deleteResource(
          @PathVariable("service") String serviceName,
          @PathVariable("version") String version,
          @PathVariable("resource") String resource,
          @PathVariable("resourceId") String resourceId,
-         @RequestParam(value="delay", required=false) Long delay
+         @RequestParam(value="delay", required=false) Long delay,
+         HttpServletRequest request
    ) {
       log.debug("Update resource '{}:{}' for service '{}-{}'", resource, resourceId, serviceName, version);
       long startTime = System.currentTimeMillis();
@@ -245,17 +297,15 @@ public class DynamicMockRestController {
 
       MockContext mockContext = getMockContext(serviceName, version, "DELETE /" + resource + "/:id");
       if (mockContext != null) {
-         genericResourceRepository.deleteById(resourceId);
+         resourceStore.deleteResource(mockContext.service.getId(), resourceId);
 
-         // Wait if specified before returning.
-         waitForDelay(startTime, delay, mockContext);
-
-         // Return a 204 code : done and no content returned.
-         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+         // Return a 204 code : done and no content returned, waiting if specified.
+         return releaseResponse(new ResponseEntity<>(HttpStatus.NO_CONTENT),
+               startTime, delay, mockContext);
       }
 
       // Return a 400 code : bad request.
-      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+      return MockDelayScheduler.completed(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
    }
 
    /** Sanitize the service name (check encoding and so on...) */
@@ -269,7 +319,7 @@ public class DynamicMockRestController {
 
    /** Retrieve a MockContext corresponding to operation on service. Null if not found or not valid. */
    private MockContext getMockContext(String serviceName, String version, String operationName) {
-      Service service = serviceRepository.findByNameAndVersion(serviceName, version);
+      Service service = routingIndex.getService(serviceName, version);
       if (service != null && ServiceType.GENERIC_REST.equals(service.getType())) {
          for (Operation operation : service.getOperations()) {
             if (operationName.equals(operation.getName())) {
@@ -280,52 +330,68 @@ public class DynamicMockRestController {
       return null;
    }
 
-   private String transformToResourceJSON(GenericResource genericResource) {
-      Document document = genericResource.getPayload();
-      document.append(ID_FIELD, genericResource.getId());
-      return document.toJson();
+   /** Build a strong entity tag from resource identifier and payload version. */
+   private String buildETag(GenericResource genericResource) {
+      return EntityTagHelper.buildStrongETag(genericResource.getId() + "-" + genericResource.getVersion());
    }
 
-   private String formatToJSONArray(List<String> resources) {
-      StringBuilder builder = new StringBuilder("[");
-      for (int i=0; i<resources.size(); i++) {
-         builder.append(resources.get(i));
-         if (i < resources.size() - 1) {
-            builder.append(", ");
-         }
+   /** Build a strong entity tag from resources identifiers and payload versions. */
+   private String buildETag(List<GenericResource> genericResources) {
+      StringBuilder versions = new StringBuilder();
+      for (GenericResource genericResource : genericResources) {
+         versions.append(genericResource.getId()).append(':').append(genericResource.getVersion()).append(';');
       }
-      return builder.append("]").toString();
+      return EntityTagHelper.buildStrongETag(versions.toString().getBytes(StandardCharsets.UTF_8));
    }
 
-   private void waitForDelay(Long since, Long delay, MockContext mockContext) {
-      // Setting delay to default one if not set.
-      if (delay == null && mockContext.operation.getDefaultDelay() != null) {
-         delay = mockContext.operation.getDefaultDelay();
-      }
+   private HttpHeaders buildETagHeaders(String etag) {
+      HttpHeaders headers = new HttpHeaders();
+      headers.setETag(etag);
+      return headers;
+   }
+
+   private <T> ResponseEntity<T> buildNotModifiedResponse(String etag) {
+      return new ResponseEntity<>(buildETagHeaders(etag), HttpStatus.NOT_MODIFIED);
+   }
+
+   private String transformToResourceJSON(GenericResource genericResource) {
+      Document document = genericResource.getPayload();
+      document.append(ID_FIELD, genericResource.getId());
+      return document.toJson();
+   }
 
-      if (delay != null && delay > -1) {
-         log.debug("Mock delay is turned on, waiting if necessary...");
-         long duration = System.currentTimeMillis() - since;
-         if (duration < delay) {
-            Object semaphore = new Object();
-            synchronized (semaphore) {
-               try {
-                  semaphore.wait(delay - duration);
-               } catch (Exception e) {
-                  log.debug("Delay semaphore was interrupted");
-               }
+   /** Write resources as a JSON array, encoding each payload directly to output. */
+   private void writeResources(OutputStream outputStream, String serviceId, List<String> ids) throws IOException {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+      writer.write('[');
+      try (Stream<GenericResource> resources = resourceStore.streamResources(serviceId, ids)) {
+         Iterator<GenericResource> iterator = resources.iterator();
+         while (iterator.hasNext()) {
+            GenericResource genericResource = iterator.next();
+            Document document = genericResource.getPayload();
+            document.append(ID_FIELD, genericResource.getId());
+            DOCUMENT_CODEC.encode(new JsonWriter(writer), document, EncoderContext.builder().build());
+            if (iterator.hasNext()) {
+               writer.write(", ");
             }
          }
-         log.debug("Delay now expired, releasing response !");
       }
+      writer.write(']');
+      writer.flush();
+   }
 
-      // Publish an invocation event before returning.
-      MockInvocationEvent event = new MockInvocationEvent(this, mockContext.service.getName(),
-            mockContext.service.getVersion(),
-            "DynamicMockRestController",
-            new Date(since), since - System.currentTimeMillis());
-      applicationContext.publishEvent(event);
-      log.debug("Mock invocation event has been published");
+   private <T> DeferredResult<ResponseEntity<T>> releaseResponse(ResponseEntity<T> response, long since, Long delay,
+                                                                 MockContext mockContext) {
+      // Release response, waiting for delay if necessary, and publish an invocation event on release.
+      return delayScheduler.release(response,
+            delayScheduler.computeRemainingDelay(delay, mockContext.operation.getDefaultDelay(), since), () -> {
+               MockInvocationEvent event = new MockInvocationEvent(this, mockContext.service.getName(),
+                     mockContext.service.getVersion(),
+                     "DynamicMockRestController",
+                     new Date(since), since - System.currentTimeMillis());
+               applicationContext.publishEvent(event);
+               log.debug("Mock invocation event has been published");
+            });
    }
 
    private class MockContext {
@@ -29,6 +29,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -47,16 +48,25 @@ public class ExportController {
    private ImportExportService importExportService;
 
    @RequestMapping(value = "/export", method = RequestMethod.GET)
-   public ResponseEntity<?> exportRepository(@RequestParam(value = "serviceIds") List<String> serviceIds) {
+   public ResponseEntity<StreamingResponseBody> exportRepository(
+         @RequestParam(value = "serviceIds") List<String> serviceIds) {
       log.debug("Extracting export for serviceIds {}", serviceIds);
-      String json = importExportService.exportRepository(serviceIds, "json");
-
-      byte[] body = json.getBytes();
       HttpHeaders responseHeaders = new HttpHeaders();
       responseHeaders.setContentType(MediaType.APPLICATION_JSON);
       responseHeaders.set("Content-Disposition", "attachment; filename=microcks-repository.json");
-      responseHeaders.setContentLength(body.length);
 
-      return new ResponseEntity<Object>(body, responseHeaders, HttpStatus.OK);
+      // Export is streamed (and compressed on the fly if client accepts it, see CompressionFilter).
+      return new ResponseEntity<>(outputStream -> importExportService.exportRepository(serviceIds, "json", outputStream),
+            responseHeaders, HttpStatus.OK);
+   }
+
+   @RequestMapping(value = "/export/snapshot", method = RequestMethod.GET)
+   public ResponseEntity<StreamingResponseBody> exportCatalogSnapshot() {
+      log.debug("Extracting binary catalog snapshot");
+      HttpHeaders responseHeaders = new HttpHeaders();
+      responseHeaders.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+      responseHeaders.set("Content-Disposition", "attachment; filename=microcks-catalog.snapshot");
+
+      return new ResponseEntity<>(importExportService::exportCatalogSnapshot, responseHeaders, HttpStatus.OK);
    }
 }
@@ -19,12 +19,11 @@
 package io.github.microcks.web;
 
 import io.github.microcks.domain.GenericResource;
-import io.github.microcks.repository.GenericResourceRepository;
+import io.github.microcks.service.GenericResourceStore;
 import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -48,7 +47,7 @@ public class GenericResourceController {
    public static final String ID_FIELD = "id";
 
    @Autowired
-   GenericResourceRepository genericResourceRepository;
+   GenericResourceStore resourceStore;
 
    @RequestMapping(value = "/genericresources/service/{serviceId}", method = RequestMethod.GET)
    public List<GenericResource> listResources(
@@ -58,7 +57,7 @@ public class GenericResourceController {
    ) {
       log.debug("List resources for service '{}'", serviceId);
 
-      List<GenericResource> genericResources = genericResourceRepository.findByServiceId(serviceId, new PageRequest(page, size));
+      List<GenericResource> genericResources = resourceStore.findResources(serviceId, page, size);
       // Transform and collect resources.
       List<GenericResource> resources = genericResources.stream()
             .map(genericResource -> addIdToPayload(genericResource))
@@ -74,7 +73,7 @@ public class GenericResourceController {
       log.debug("Counting resources for service '{}'", serviceId);
 
       Map<String, Long> counter = new HashMap<>();
-      counter.put("counter", genericResourceRepository.countByServiceId(serviceId));
+      counter.put("counter", resourceStore.countResources(serviceId));
       return counter;
    }
 
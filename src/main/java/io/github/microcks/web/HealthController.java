@@ -20,6 +20,7 @@ package io.github.microcks.web;
 
 import io.github.microcks.domain.ImportJob;
 import io.github.microcks.repository.ImportJobRepository;
+import io.github.microcks.service.MongoIndexManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,6 +45,9 @@ public class HealthController {
    @Autowired
    private ImportJobRepository jobRepository;
 
+   @Autowired
+   private MongoIndexManager indexManager;
+
    @RequestMapping(value = "/health", method = RequestMethod.GET)
    public ResponseEntity<String> health() {
       log.trace("Health check endpoint invoked");
@@ -59,4 +63,10 @@ public class HealthController {
       log.trace("Health check is OK");
       return new ResponseEntity<String>(HttpStatus.OK);
    }
+
+   @RequestMapping(value = "/health/queries", method = RequestMethod.GET)
+   public List<MongoIndexManager.QueryPlanDiagnostic> explainQueries() {
+      log.debug("Explaining repositories queries plans");
+      return indexManager.explainQueries();
+   }
 }
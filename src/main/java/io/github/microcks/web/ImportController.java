@@ -30,6 +30,8 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+
 /**
  * A Controller for importing new definitions into microcks repository.
  * @author laurent
@@ -50,10 +52,10 @@ public class ImportController {
       if (!file.isEmpty()){
          log.debug("Content type of " + file.getOriginalFilename() + " is " + file.getContentType());
          if (MediaType.APPLICATION_JSON_VALUE.equals(file.getContentType())){
-            try {
-               byte[] bytes = file.getBytes();
-               String json = new String(bytes);
-               importExportService.importRepository(json);
+            // Parse file incrementally rather than loading it into memory.
+            try (InputStream stream = file.getInputStream()) {
+               ImportExportService.ImportReport report = importExportService.importRepository(stream);
+               return new ResponseEntity<Object>(report, HttpStatus.CREATED);
             } catch (Exception e){
                log.error(e.getMessage());
             }
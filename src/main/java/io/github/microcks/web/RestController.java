@@ -18,42 +18,29 @@
  */
 package io.github.microcks.web;
 
-import io.github.microcks.domain.Header;
 import io.github.microcks.domain.Operation;
-import io.github.microcks.domain.Response;
 import io.github.microcks.domain.Service;
-import io.github.microcks.event.MockInvocationEvent;
-import io.github.microcks.repository.ResponseRepository;
-import io.github.microcks.repository.ServiceRepository;
-import io.github.microcks.util.DispatchCriteriaHelper;
-import io.github.microcks.util.DispatchStyles;
-import io.github.microcks.util.IdBuilder;
-import io.github.microcks.util.dispatcher.JsonEvaluationSpecification;
-import io.github.microcks.util.dispatcher.JsonExpressionEvaluator;
-import io.github.microcks.util.dispatcher.JsonMappingException;
-import io.github.microcks.util.soapui.SoapUIScriptEngineBinder;
+import io.github.microcks.service.MockDelayScheduler;
+import io.github.microcks.service.MockDispatcher;
+import io.github.microcks.service.MockRoutingIndex;
+import io.github.microcks.service.PreparedResponse;
+import io.github.microcks.service.ResponseCompressor;
+import io.github.microcks.util.EntityTagHelper;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.util.UriUtils;
 
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.servlet.http.HttpServletRequest;
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
 
 /**
  * A controller for mocking Rest responses.
@@ -67,17 +54,20 @@ public class RestController {
    private static Logger log = LoggerFactory.getLogger(RestController.class);
 
    @Autowired
-   private ServiceRepository serviceRepository;
+   private MockRoutingIndex routingIndex;
 
    @Autowired
-   private ResponseRepository responseRepository;
+   private MockDispatcher dispatcher;
 
    @Autowired
-   private ApplicationContext applicationContext;
+   private MockDelayScheduler delayScheduler;
+
+   @Autowired
+   private ResponseCompressor compressor;
 
 
    @RequestMapping(value = "/{service}/{version}/**")
-   public ResponseEntity<?> execute(
+   public DeferredResult<ResponseEntity<?>> execute(
          @PathVariable("service") String serviceName,
          @PathVariable("version") String version,
          @RequestParam(value="delay", required=false) Long delay,
@@ -110,145 +100,65 @@ public class RestController {
       if (resourcePath.contains("+")) {
          resourcePath = resourcePath.replace('+', ' ');
       }
-      Service service = serviceRepository.findByNameAndVersion(serviceName, version);
-      Operation rOperation = null;
-      for (Operation operation : service.getOperations()){
-         // Select operation based onto Http verb (GET, POST, PUT, etc ...)
-         if (operation.getMethod().equals(request.getMethod().toUpperCase())){
-            // ... then check is we have a matching resource path.
-            if (operation.getResourcePaths() != null && operation.getResourcePaths().contains(resourcePath)){
-               rOperation = operation;
-               break;
-            }
-         }
+      MockRoutingIndex.ServiceRoutes routes = routingIndex.getServiceRoutes(serviceName, version);
+      if (routes == null) {
+         return MockDelayScheduler.completed(new ResponseEntity<Object>(HttpStatus.NOT_FOUND));
       }
+      Service service = routes.getService();
+
+      // Select operation based onto Http verb (GET, POST, PUT, etc ...) and matching resource path.
+      Operation rOperation = routes.findOperation(request.getMethod(), resourcePath);
 
       if (rOperation != null){
          log.debug("Found a valid operation {} with rules: {}", rOperation.getName(), rOperation.getDispatcherRules());
 
-         Response response = null;
-         String uriPattern = getURIPattern(rOperation.getName());
-         String dispatchCriteria = null;
-
          // Depending on dispatcher, evaluate request with rules.
-         if (DispatchStyles.SEQUENCE.equals(rOperation.getDispatcher())){
-            dispatchCriteria = DispatchCriteriaHelper.extractFromURIPattern(uriPattern, resourcePath);
-         }
-         else if (DispatchStyles.SCRIPT.equals(rOperation.getDispatcher())){
-            ScriptEngineManager sem = new ScriptEngineManager();
-            try{
-               // Evaluating request with script coming from operation dispatcher rules.
-               ScriptEngine se = sem.getEngineByExtension("groovy");
-               SoapUIScriptEngineBinder.bindSoapUIEnvironment(se, body, request);
-               dispatchCriteria = (String) se.eval(rOperation.getDispatcherRules());
-            } catch (Exception e){
-               log.error("Error during Script evaluation", e);
-            }
-         }
-         // New cases related to services/operations/messages coming from a postman collection file.
-         else if (DispatchStyles.URI_PARAMS.equals(rOperation.getDispatcher())){
-            String fullURI = request.getRequestURL() + "?" + request.getQueryString();
-            dispatchCriteria = DispatchCriteriaHelper.extractFromURIParams(rOperation.getDispatcherRules(), fullURI);
-         }
-         else if (DispatchStyles.URI_PARTS.equals(rOperation.getDispatcher())){
-            dispatchCriteria = DispatchCriteriaHelper.extractFromURIPattern(uriPattern, resourcePath);
-         }
-         else if (DispatchStyles.URI_ELEMENTS.equals(rOperation.getDispatcher())){
-            dispatchCriteria = DispatchCriteriaHelper.extractFromURIPattern(uriPattern, resourcePath);
-            String fullURI = request.getRequestURL() + "?" + request.getQueryString();
-            dispatchCriteria += DispatchCriteriaHelper.extractFromURIParams(rOperation.getDispatcherRules(), fullURI);
-         }
-         else if (DispatchStyles.JSON_BODY.equals(rOperation.getDispatcher())) {
-            JsonEvaluationSpecification specification = null;
-            try {
-               specification = JsonEvaluationSpecification.buildFromJsonString(rOperation.getDispatcherRules());
-               dispatchCriteria = JsonExpressionEvaluator.evaluate(body, specification);
-            } catch (JsonMappingException jme) {
-               log.error("Dispatching rules of request cannot be interpreted as valid JSON", jme);
-            }
-         }
-
-         log.debug("Dispatch criteria for finding response is {}", dispatchCriteria);
-         List<Response> responses = responseRepository.findByOperationIdAndDispatchCriteria(
-               IdBuilder.buildOperationId(service, rOperation), dispatchCriteria);
-         if (!responses.isEmpty()) {
-            response = responses.get(0);
-         } else {
-            // When using the JSON_BODY dispatcher, return of evaluation may be the name of response.
-            responses = responseRepository.findByOperationIdAndName(IdBuilder.buildOperationId(service, rOperation),
-                  dispatchCriteria);
-            if (!responses.isEmpty()) {
-               response = responses.get(0);
-            }
-         }
+         String fullURI = request.getRequestURL() + "?" + request.getQueryString();
+         String dispatchCriteria = dispatcher.computeRestDispatchCriteria(rOperation, resourcePath, fullURI, body,
+               request);
+         PreparedResponse response = dispatcher.findRestResponse(service, rOperation, dispatchCriteria);
 
          if (response != null) {
-            // Setting delay to default one if not set.
-            if (delay == null && rOperation.getDefaultDelay() != null) {
-               delay = rOperation.getDefaultDelay();
+            // Publish an invocation event when response is released, after delay.
+            Runnable invocationPublisher = dispatcher.buildInvocationPublisher(service, version, response, startTime);
+
+            // Negotiate content encoding, compressed variants are computed once and cached.
+            String encoding = null;
+            boolean compressible = false;
+            if (response.getBody() != null) {
+               encoding = compressor.selectEncoding(request, response.getResponse().getMediaType(),
+                     response.getBody().length);
+               compressible = compressor.isCompressible(response.getResponse().getMediaType(),
+                     response.getBody().length);
             }
 
-            if (delay != null && delay > -1) {
-               log.debug("Mock delay is turned on, waiting if necessary...");
-               long duration = System.currentTimeMillis() - startTime;
-               if (duration < delay) {
-                  Object semaphore = new Object();
-                  synchronized (semaphore) {
-                     try {
-                        semaphore.wait(delay - duration);
-                     } catch (Exception e) {
-                        log.debug("Delay semaphore was interrupted");
-                     }
-                  }
-                }
-                log.debug("Delay now expired, releasing response !");
+            // Answer conditional requests if content has not changed since last retrieval.
+            if (HttpStatus.OK.equals(response.getStatus())
+                  && EntityTagHelper.isNotModified(request, response.getETag(encoding))) {
+               return delayScheduler.release(response.toNotModifiedEntity(encoding, compressible),
+                     delayScheduler.computeRemainingDelay(delay, rOperation.getDefaultDelay(), startTime),
+                     invocationPublisher);
             }
 
-            // Publish an invocation event before returning.
-            MockInvocationEvent event = new MockInvocationEvent(this, service.getName(), version,
-               response.getName(), new Date(startTime), startTime - System.currentTimeMillis());
-            applicationContext.publishEvent(event);
-            log.debug("Mock invocation event has been published");
-
-            HttpStatus status = (response.getStatus() != null ?
-                HttpStatus.valueOf(Integer.parseInt(response.getStatus())) : HttpStatus.OK);
-
-            // Deal with specific headers (content-type and redirect directive).
-            HttpHeaders responseHeaders = new HttpHeaders();
-            if (response.getMediaType() != null) {
-               responseHeaders.setContentType(MediaType.valueOf(response.getMediaType() + ";charset=UTF-8"));
+            // Status, content-type and other headers have been prepared once. We should only process
+            // location in order to make relative URI specified an absolute one from the client perspective.
+            String locationPrefix = null;
+            if (response.getLocation() != null) {
+               locationPrefix = "http://" + request.getServerName() + ":" + request.getServerPort()
+                     + request.getContextPath() + "/rest" + serviceAndVersion;
             }
 
-            // Adding other generic headers (caching directives and so on...)
-            if (response.getHeaders() != null) {
-               for (Header header : response.getHeaders()) {
-                  if ("Location".equals(header.getName())) {
-                     // We should process location in order to make relative URI specified an absolute one from
-                     // the client perspective.
-                     String location = "http://" + request.getServerName() + ":" + request.getServerPort()
-                        + request.getContextPath() + "/rest"
-                        + serviceAndVersion + header.getValues().iterator().next();
-                     responseHeaders.add(header.getName(), location);
-                  } else {
-                     if (!HttpHeaders.TRANSFER_ENCODING.equalsIgnoreCase(header.getName())) {
-                        responseHeaders.put(header.getName(), new ArrayList<>(header.getValues()));
-                     }
-                  }
-               }
+            // Release response, waiting for delay if necessary.
+            ResponseEntity<byte[]> entity = response.toResponseEntity(locationPrefix, encoding, compressible);
+            if (encoding != null) {
+               compressor.recordSavedBytes("mock", response.getBody().length, entity.getBody().length);
             }
-            return new ResponseEntity<Object>(response.getContent(), responseHeaders, status);
+            return delayScheduler.release(entity,
+                  delayScheduler.computeRemainingDelay(delay, rOperation.getDefaultDelay(), startTime),
+                  invocationPublisher);
          }
-         return new ResponseEntity<Object>(HttpStatus.BAD_REQUEST);
-      }
-      return new ResponseEntity<Object>(HttpStatus.NOT_FOUND);
-   }
-
-
-   private String getURIPattern(String operationName) {
-      if (operationName.startsWith("GET ") || operationName.startsWith("POST ")
-            || operationName.startsWith("PUT ") || operationName.startsWith("DELETE ")) {
-         return operationName.substring(operationName.indexOf(' ') + 1);
+         return MockDelayScheduler.completed(new ResponseEntity<Object>(HttpStatus.BAD_REQUEST));
       }
-      return operationName;
+      return MockDelayScheduler.completed(new ResponseEntity<Object>(HttpStatus.NOT_FOUND));
    }
 }
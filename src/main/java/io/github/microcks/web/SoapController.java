@@ -19,37 +19,27 @@
 package io.github.microcks.web;
 
 import io.github.microcks.domain.Operation;
-import io.github.microcks.domain.Response;
 import io.github.microcks.domain.Service;
-import io.github.microcks.event.MockInvocationEvent;
-import io.github.microcks.repository.ResponseRepository;
-import io.github.microcks.repository.ServiceRepository;
-import io.github.microcks.util.DispatchStyles;
-import io.github.microcks.util.IdBuilder;
-import io.github.microcks.util.SoapMessageValidator;
-import io.github.microcks.util.soapui.SoapUIScriptEngineBinder;
-import io.github.microcks.util.soapui.SoapUIXPathBuilder;
+import io.github.microcks.service.MockDelayScheduler;
+import io.github.microcks.service.MockDispatcher;
+import io.github.microcks.service.MockRoutingIndex;
+import io.github.microcks.service.PreparedResponse;
+import io.github.microcks.service.ResponseCompressor;
+import io.github.microcks.util.CompressionHelper;
+import io.github.microcks.util.SoapMessageReader;
 import org.apache.xmlbeans.XmlError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.ApplicationContext;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.xml.sax.InputSource;
+import org.springframework.web.context.request.async.DeferredResult;
 
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.servlet.http.HttpServletRequest;
-import javax.xml.xpath.XPathExpression;
-import java.io.StringReader;
-import java.util.Date;
 import java.util.List;
-import java.util.regex.Pattern;
 
 /**
  * A controller for mocking Soap responses.
@@ -62,21 +52,30 @@ public class SoapController {
    /** A simple logger for diagnostic messages. */
    private static Logger log = LoggerFactory.getLogger(SoapController.class);
 
+   /** The content type of SOAP responses. */
+   private static final String SOAP_CONTENT_TYPE = "text/xml;charset=UTF-8";
+
+   /** The read-only headers of SOAP responses: Content-Type is always "text/xml". */
+   private static final HttpHeaders SOAP_RESPONSE_HEADERS = buildSoapResponseHeaders(null);
+   private static final HttpHeaders SOAP_VARY_RESPONSE_HEADERS = buildSoapResponseHeaders("identity");
+   private static final HttpHeaders SOAP_GZIP_RESPONSE_HEADERS = buildSoapResponseHeaders(CompressionHelper.GZIP);
+   private static final HttpHeaders SOAP_DEFLATE_RESPONSE_HEADERS = buildSoapResponseHeaders(CompressionHelper.DEFLATE);
+
    @Autowired
-   private ServiceRepository serviceRepository;
+   private MockRoutingIndex routingIndex;
 
    @Autowired
-   private ResponseRepository responseRepository;
+   private MockDispatcher dispatcher;
 
    @Autowired
-   private ApplicationContext applicationContext;
+   private MockDelayScheduler delayScheduler;
 
-   @Value("${validation.resourceUrl}")
-   private final String resourceUrl = null;
+   @Autowired
+   private ResponseCompressor compressor;
 
 
    @RequestMapping(value = "/{service}/{version}/**", method = RequestMethod.POST)
-   public ResponseEntity<?> execute(
+   public DeferredResult<ResponseEntity<?>> execute(
          @PathVariable("service") String serviceName,
          @PathVariable("version") String version,
          @RequestParam(value="validate", required=false) Boolean validate,
@@ -95,130 +94,75 @@ public class SoapController {
       }
 
       // Retrieve service and correct operation.
-      Service service = serviceRepository.findByNameAndVersion(serviceName, version);
-      Operation rOperation = null;
-      for (Operation operation : service.getOperations()) {
-         // Enhancement : try getting operation from soap:body directly!
-         if (hasPayloadCorrectStructureForOperation(body, operation.getInputName())) {
-            rOperation = operation;
-            break;
-         }
+      MockRoutingIndex.ServiceRoutes routes = routingIndex.getServiceRoutes(serviceName, version);
+      if (routes == null) {
+         return MockDelayScheduler.completed(new ResponseEntity<Object>(HttpStatus.NOT_FOUND));
       }
+      Service service = routes.getService();
+
+      Operation rOperation = findOperation(routes, request.getHeader(SoapMessageReader.SOAP_ACTION_HEADER), body);
 
       if (rOperation != null) {
          log.debug("Found a valid operation with rules: {}", rOperation.getDispatcherRules());
 
          if (validate != null && validate) {
             log.debug("Soap message validation is turned on, validating...");
-            try {
-               List<XmlError> errors = SoapMessageValidator.validateSoapMessage(
-                     rOperation.getInputName(), service.getXmlNS(), body,
-                     resourceUrl + service.getName() + "-" + version + ".wsdl", true);
-               log.debug("SoapBody validation errors: " + errors.size());
-
-               // Return a 400 http code with errors.
-               if (errors != null && errors.size() > 0) {
-                  return new ResponseEntity<Object>(errors, HttpStatus.BAD_REQUEST);
-               }
-            } catch (Exception e) {
-               log.error("Error during Soap validation", e);
+            List<XmlError> errors = dispatcher.validateSoapMessage(service, rOperation, version, body);
+            // Return a 400 http code with errors.
+            if (!errors.isEmpty()) {
+               return MockDelayScheduler.completed(new ResponseEntity<Object>(errors, HttpStatus.BAD_REQUEST));
             }
          }
 
-         Response response = null;
-         String dispatchCriteria = null;
-
          // Depending on dispatcher, evaluate request with rules.
-         if (DispatchStyles.QUERY_MATCH.equals(rOperation.getDispatcher())) {
-            dispatchCriteria = getDispatchCriteriaFromXPathEval(rOperation, body);
-
-         } else if (DispatchStyles.SCRIPT.equals(rOperation.getDispatcher())) {
-            dispatchCriteria = getDispatchCriteriaFromScriptEval(rOperation, body, request);
+         String dispatchCriteria = dispatcher.computeSoapDispatchCriteria(rOperation, body, request);
+         PreparedResponse response = dispatcher.findSoapResponse(service, rOperation, dispatchCriteria);
+         if (response == null) {
+            return MockDelayScheduler.completed(new ResponseEntity<Object>(HttpStatus.BAD_REQUEST));
          }
 
-         log.debug("Dispatch criteria for finding response is {}", dispatchCriteria);
-         List<Response> responses = responseRepository.findByOperationIdAndDispatchCriteria(
-               IdBuilder.buildOperationId(service, rOperation), dispatchCriteria);
-         if (!responses.isEmpty()) {
-            response = responses.get(0);
-         }
+         // Content-Type is always "text/xml" and body has been pre-encoded.
+         HttpStatus status = (response.getResponse().isFault() ? HttpStatus.INTERNAL_SERVER_ERROR : HttpStatus.OK);
+         byte[] responseBody = response.getBody();
+         HttpHeaders responseHeaders = SOAP_RESPONSE_HEADERS;
 
-         // Setting delay to default one if not set.
-         if (delay == null && rOperation.getDefaultDelay() != null) {
-            delay = rOperation.getDefaultDelay();
+         // Negotiate content encoding, compressed variants are computed once and cached.
+         String encoding = (responseBody != null ?
+               compressor.selectEncoding(request, SOAP_CONTENT_TYPE, responseBody.length) : null);
+         if (responseBody != null && compressor.isCompressible(SOAP_CONTENT_TYPE, responseBody.length)) {
+            responseHeaders = SOAP_VARY_RESPONSE_HEADERS;
          }
-
-         if (delay != null && delay > -1) {
-            log.debug("Mock delay is turned on, waiting if necessary...");
-            long duration = System.currentTimeMillis() - startTime;
-            if (duration < delay) {
-               Object semaphore = new Object();
-               synchronized (semaphore) {
-                  try {
-                     semaphore.wait(delay - duration);
-                  } catch (Exception e) {
-                     log.debug("Delay semaphore was interrupted");
-                  }
-               }
-            }
-            log.debug("Delay now expired, releasing response !");
+         if (encoding != null) {
+            responseBody = response.getEncodedBody(encoding);
+            responseHeaders = (CompressionHelper.GZIP.equals(encoding) ?
+                  SOAP_GZIP_RESPONSE_HEADERS : SOAP_DEFLATE_RESPONSE_HEADERS);
+            compressor.recordSavedBytes("mock", response.getBody().length, responseBody.length);
          }
 
-         // Publish an invocation event before returning.
-         MockInvocationEvent event = new MockInvocationEvent(this, service.getName(), version,
-               response.getName(), new Date(startTime), startTime - System.currentTimeMillis());
-         applicationContext.publishEvent(event);
-         log.debug("Mock invocation event has been published");
-
-         // Set Content-Type to "text/xml".
-         HttpHeaders responseHeaders = new HttpHeaders();
-         responseHeaders.setContentType(MediaType.valueOf("text/xml;charset=UTF-8"));
-         if (response.isFault()) {
-            return new ResponseEntity<Object>(response.getContent(), responseHeaders, HttpStatus.INTERNAL_SERVER_ERROR);
-         }
-         return new ResponseEntity<Object>(response.getContent(), responseHeaders, HttpStatus.OK);
+         // Release response, waiting for delay if necessary, and publish invocation event on release.
+         return delayScheduler.release(new ResponseEntity<Object>(responseBody, responseHeaders, status),
+               delayScheduler.computeRemainingDelay(delay, rOperation.getDefaultDelay(), startTime),
+               dispatcher.buildInvocationPublisher(service, version, response, startTime));
       }
 
-      return new ResponseEntity<Object>(HttpStatus.NOT_FOUND);
-   }
-
-   /**
-    * Check if given SOAP payload has a correct structure for given operation name.
-    * @param payload SOAP payload to check structure
-    * @param operationName Name of operation to check structure against
-    * @return True if payload is correct for operation, false otherwise.
-    */
-   protected boolean hasPayloadCorrectStructureForOperation(String payload, String operationName) {
-      String openingPattern = "(.*):Body>(\\s*)<(\\w+):" + operationName + "(.*)>(.*)";
-      String closingPattern = "(.*)</(\\w+):" + operationName + ">(\\s*)</(.*):Body>(.*)";
-
-      Pattern op = Pattern.compile(openingPattern, Pattern.DOTALL);
-      Pattern cp = Pattern.compile(closingPattern, Pattern.DOTALL);
-
-      return (op.matcher(payload).matches() && cp.matcher(payload).matches());
+      return MockDelayScheduler.completed(new ResponseEntity<Object>(HttpStatus.NOT_FOUND));
    }
 
-   private String getDispatchCriteriaFromXPathEval(Operation operation, String body) {
-      try {
-         // Evaluating request regarding XPath build with operation dispatcher rules.
-         XPathExpression xpath = SoapUIXPathBuilder.buildXPathMatcherFromRules(operation.getDispatcherRules());
-         return xpath.evaluate(new InputSource(new StringReader(body)));
-      } catch (Exception e) {
-         log.error("Error during Xpath evaluation", e);
-      }
-      return null;
+   /** Find the Operation of a SOAP invocation using its SOAPAction header value and its payload. */
+   Operation findOperation(MockRoutingIndex.ServiceRoutes routes, String soapActionHeader, String payload) {
+      return MockDispatcher.findSoapOperation(routes, soapActionHeader, payload);
    }
 
-   private String getDispatchCriteriaFromScriptEval(Operation operation, String body, HttpServletRequest request) {
-      ScriptEngineManager sem = new ScriptEngineManager();
-      try {
-         // Evaluating request with script coming from operation dispatcher rules.
-         ScriptEngine se = sem.getEngineByExtension("groovy");
-         SoapUIScriptEngineBinder.bindSoapUIEnvironment(se, body, request);
-         return (String) se.eval(operation.getDispatcherRules());
-      } catch (Exception e) {
-         log.error("Error during Script evaluation", e);
+   private static HttpHeaders buildSoapResponseHeaders(String encoding) {
+      HttpHeaders headers = new HttpHeaders();
+      headers.setContentType(MediaType.valueOf(SOAP_CONTENT_TYPE));
+      if (encoding != null) {
+         // Identity representation of a compressible response does not declare its encoding but varies too.
+         if (!"identity".equals(encoding)) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, encoding);
+         }
+         headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
       }
-      return null;
+      return HttpHeaders.readOnlyHttpHeaders(headers);
    }
 }
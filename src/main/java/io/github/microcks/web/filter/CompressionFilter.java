@@ -0,0 +1,152 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.web.filter;
+
+import io.github.microcks.service.ResponseCompressor;
+import io.github.microcks.util.CompressionHelper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.function.Predicate;
+
+/**
+ * Servlet filter compressing dynamic responses on the fly when client accepts it and when response
+ * is large enough (see ResponseCompressor for threshold). Response is buffered before being compressed,
+ * except for streaming requests whose response is compressed on the fly. Excluded requests are left untouched.
+ * @author laurent
+ */
+public class CompressionFilter implements Filter {
+
+   private final ResponseCompressor compressor;
+   private final String source;
+   private final Predicate<HttpServletRequest> streamingRequests;
+   private final Predicate<HttpServletRequest> excludedRequests;
+
+   /**
+    * Build a new filter.
+    * @param compressor The compressor holding configuration and metrics
+    * @param source The source of responses for metrics (eg: api)
+    */
+   public CompressionFilter(ResponseCompressor compressor, String source) {
+      this(compressor, source, request -> false);
+   }
+
+   /**
+    * Build a new filter.
+    * @param compressor The compressor holding configuration and metrics
+    * @param source The source of responses for metrics (eg: api)
+    * @param streamingRequests Tells the requests whose response is streamed and should not be buffered
+    */
+   public CompressionFilter(ResponseCompressor compressor, String source,
+         Predicate<HttpServletRequest> streamingRequests) {
+      this(compressor, source, streamingRequests, request -> false);
+   }
+
+   /**
+    * Build a new filter.
+    * @param compressor The compressor holding configuration and metrics
+    * @param source The source of responses for metrics (eg: api)
+    * @param streamingRequests Tells the requests whose response is streamed and should not be buffered
+    * @param excludedRequests Tells the requests whose response should neither be wrapped nor compressed
+    */
+   public CompressionFilter(ResponseCompressor compressor, String source,
+         Predicate<HttpServletRequest> streamingRequests, Predicate<HttpServletRequest> excludedRequests) {
+      this.compressor = compressor;
+      this.source = source;
+      this.streamingRequests = streamingRequests;
+      this.excludedRequests = excludedRequests;
+   }
+
+   @Override
+   public void init(FilterConfig filterConfig) throws ServletException {
+   }
+
+   @Override
+   public void destroy() {
+   }
+
+   @Override
+   public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+         throws IOException, ServletException {
+      HttpServletRequest request = (HttpServletRequest) servletRequest;
+      HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+      if (excludedRequests.test(request)) {
+         chain.doFilter(request, response);
+         return;
+      }
+      if (streamingRequests.test(request)) {
+         StreamingCompressionResponseWrapper streamingWrapper =
+               WebUtils.getNativeResponse(response, StreamingCompressionResponseWrapper.class);
+         if (streamingWrapper == null) {
+            streamingWrapper = new StreamingCompressionResponseWrapper(request, response, compressor, source);
+         }
+         chain.doFilter(request, streamingWrapper);
+
+         // Wait for async processing to complete before completing response.
+         if (!request.isAsyncStarted()) {
+            streamingWrapper.finish();
+         }
+         return;
+      }
+
+      // Response may have already been wrapped if we're in an async dispatch.
+      ContentCachingResponseWrapper wrapper = WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
+      if (wrapper == null) {
+         wrapper = new ContentCachingResponseWrapper(response);
+      }
+      chain.doFilter(request, wrapper);
+
+      // Wait for async processing to complete before writing response.
+      if (!request.isAsyncStarted()) {
+         writeResponse(request, wrapper);
+      }
+   }
+
+   private void writeResponse(HttpServletRequest request, ContentCachingResponseWrapper wrapper) throws IOException {
+      HttpServletResponse rawResponse = (HttpServletResponse) wrapper.getResponse();
+      byte[] content = wrapper.getContentAsByteArray();
+
+      String encoding = null;
+      if (!rawResponse.isCommitted() && rawResponse.getHeader(HttpHeaders.CONTENT_ENCODING) == null) {
+         encoding = compressor.selectEncoding(request, wrapper.getContentType(), content.length);
+         // Uncompressed representation of a compressible response varies too.
+         if (compressor.isCompressible(wrapper.getContentType(), content.length)) {
+            rawResponse.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+         }
+      }
+      if (encoding != null) {
+         byte[] compressed = CompressionHelper.compress(content, encoding);
+         if (compressed.length < content.length) {
+            rawResponse.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+            rawResponse.setContentLength(compressed.length);
+            rawResponse.getOutputStream().write(compressed);
+            rawResponse.flushBuffer();
+            compressor.recordSavedBytes(source, content.length, compressed.length);
+            return;
+         }
+      }
+      wrapper.copyBodyToResponse();
+   }
+}
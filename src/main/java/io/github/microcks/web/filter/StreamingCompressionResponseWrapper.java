@@ -0,0 +1,235 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.web.filter;
+
+import io.github.microcks.service.ResponseCompressor;
+import io.github.microcks.util.CompressionHelper;
+import org.springframework.http.HttpHeaders;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Response wrapper compressing content on the fly, without buffering it. As content length is not known
+ * in advance, the compression threshold is not applied: encoding is negotiated when the output stream is
+ * first requested and announced Content-Length is dropped if content is compressed.
+ * @author laurent
+ */
+public class StreamingCompressionResponseWrapper extends HttpServletResponseWrapper {
+
+   private final HttpServletRequest request;
+   private final ResponseCompressor compressor;
+   private final String source;
+
+   private long contentLength = -1;
+   private ServletOutputStream outputStream;
+   private PrintWriter writer;
+   private CompressingOutputStream compressingStream;
+
+   /**
+    * Build a new wrapper.
+    * @param request The incoming request holding Accept-Encoding header
+    * @param response The response to wrap
+    * @param compressor The compressor holding configuration and metrics
+    * @param source The source of responses for metrics (eg: api)
+    */
+   public StreamingCompressionResponseWrapper(HttpServletRequest request, HttpServletResponse response,
+         ResponseCompressor compressor, String source) {
+      super(response);
+      this.request = request;
+      this.compressor = compressor;
+      this.source = source;
+   }
+
+   @Override
+   public void setContentLength(int len) {
+      setContentLengthLong(len);
+   }
+
+   @Override
+   public void setContentLengthLong(long len) {
+      // Defer until we know if content is compressed.
+      if (outputStream == null) {
+         contentLength = len;
+      } else if (compressingStream == null) {
+         super.setContentLengthLong(len);
+      }
+   }
+
+   @Override
+   public void setHeader(String name, String value) {
+      if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+         setContentLengthLong(Long.parseLong(value));
+      } else {
+         super.setHeader(name, value);
+      }
+   }
+
+   @Override
+   public void addHeader(String name, String value) {
+      if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+         setContentLengthLong(Long.parseLong(value));
+      } else {
+         super.addHeader(name, value);
+      }
+   }
+
+   @Override
+   public ServletOutputStream getOutputStream() throws IOException {
+      if (outputStream == null) {
+         String encoding = null;
+         if (!isCommitted() && getStatus() < 300 && getHeader(HttpHeaders.CONTENT_ENCODING) == null) {
+            encoding = compressor.selectEncoding(request, getContentType(), Integer.MAX_VALUE);
+            // Uncompressed representation of a compressible response varies too.
+            if (compressor.isCompressible(getContentType(), Integer.MAX_VALUE)) {
+               super.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+         }
+         if (encoding != null) {
+            super.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+            compressingStream = new CompressingOutputStream(super.getOutputStream(), encoding);
+            outputStream = compressingStream;
+         } else {
+            if (contentLength >= 0) {
+               super.setContentLengthLong(contentLength);
+            }
+            outputStream = super.getOutputStream();
+         }
+      }
+      return outputStream;
+   }
+
+   @Override
+   public PrintWriter getWriter() throws IOException {
+      if (writer == null) {
+         writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+      }
+      return writer;
+   }
+
+   @Override
+   public void flushBuffer() throws IOException {
+      if (writer != null) {
+         writer.flush();
+      }
+      if (outputStream != null) {
+         outputStream.flush();
+      }
+      super.flushBuffer();
+   }
+
+   /**
+    * Complete the response, writing compression trailer if content has been compressed.
+    * @throws IOException if response cannot be written
+    */
+   public void finish() throws IOException {
+      if (writer != null) {
+         writer.flush();
+      }
+      if (compressingStream != null) {
+         compressingStream.finish();
+         compressor.recordSavedBytes(source, (int) Math.min(Integer.MAX_VALUE, compressingStream.originalLength),
+               (int) Math.min(Integer.MAX_VALUE, compressingStream.compressedLength));
+         return;
+      }
+      if (contentLength >= 0 && outputStream == null && !isCommitted()) {
+         super.setContentLengthLong(contentLength);
+      }
+      super.flushBuffer();
+   }
+
+   /** Servlet output stream compressing content and counting bytes before and after compression. */
+   private static class CompressingOutputStream extends ServletOutputStream {
+
+      private final ServletOutputStream target;
+      private final OutputStream compressed;
+      private long originalLength;
+      private long compressedLength;
+      private boolean finished;
+
+      CompressingOutputStream(ServletOutputStream target, String encoding) throws IOException {
+         this.target = target;
+         this.compressed = CompressionHelper.compressingStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+               target.write(b);
+               compressedLength++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+               target.write(b, off, len);
+               compressedLength += len;
+            }
+
+            @Override
+            public void flush() throws IOException {
+               target.flush();
+            }
+         }, encoding);
+      }
+
+      @Override
+      public void write(int b) throws IOException {
+         compressed.write(b);
+         originalLength++;
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+         compressed.write(b, off, len);
+         originalLength += len;
+      }
+
+      @Override
+      public void flush() throws IOException {
+         compressed.flush();
+      }
+
+      @Override
+      public void close() throws IOException {
+         finish();
+      }
+
+      void finish() throws IOException {
+         if (!finished) {
+            finished = true;
+            // Closing compressed stream writes the trailer and releases the deflater.
+            compressed.close();
+         }
+      }
+
+      @Override
+      public boolean isReady() {
+         return target.isReady();
+      }
+
+      @Override
+      public void setWriteListener(WriteListener writeListener) {
+         target.setWriteListener(writeListener);
+      }
+   }
+}
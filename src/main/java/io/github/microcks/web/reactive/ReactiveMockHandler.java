@@ -0,0 +1,340 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.web.reactive;
+
+import io.github.microcks.domain.Operation;
+import io.github.microcks.domain.Service;
+import io.github.microcks.service.MockDelayScheduler;
+import io.github.microcks.service.MockDispatcher;
+import io.github.microcks.service.MockRoutingIndex;
+import io.github.microcks.service.PreparedResponse;
+import io.github.microcks.service.ReactiveMockLookup;
+import io.github.microcks.service.ResponseCompressor;
+import io.github.microcks.util.EntityTagHelper;
+import io.github.microcks.util.IdBuilder;
+import io.github.microcks.util.SoapMessageReader;
+import org.apache.xmlbeans.XmlError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.util.UriUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+/**
+ * Non-blocking handler for mocking Rest and Soap responses. It shares the dispatch semantics of RestController
+ * and SoapController through MockDispatcher but reads request bodies asynchronously, loads Services and Responses
+ * through ReactiveMockLookup and waits for delays using timers instead of threads. Blocking evaluations (Groovy
+ * dispatch scripts and SOAP validation) are offloaded to an elastic scheduler and CPU intensive JSON or XPath
+ * evaluations to the parallel scheduler, so that I/O threads stay free.
+ * @author laurent
+ */
+@Component
+@ConditionalOnProperty(name = "mocks.reactive-listener.enabled", havingValue = "true")
+public class ReactiveMockHandler {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(ReactiveMockHandler.class);
+
+   /** The content type of SOAP responses. */
+   private static final MediaType SOAP_CONTENT_TYPE = MediaType.valueOf("text/xml;charset=UTF-8");
+
+   @Autowired
+   private ReactiveMockLookup lookup;
+
+   @Autowired
+   private MockDispatcher dispatcher;
+
+   @Autowired
+   private MockDelayScheduler delayScheduler;
+
+   @Autowired
+   private ResponseCompressor compressor;
+
+   /** Scheduler for blocking evaluations, so that they never run on I/O threads. */
+   private final Scheduler evaluationScheduler = Schedulers.elastic();
+
+
+   /** @return The routes of mock endpoints served by this handler. */
+   public RouterFunction<ServerResponse> routes() {
+      return RouterFunctions.route(RequestPredicates.path("/rest/{service}/{version}/**"), this::executeRest)
+            .andRoute(RequestPredicates.POST("/soap/{service}/{version}/**"), this::executeSoap);
+   }
+
+   /**
+    * Service a Rest mock invocation.
+    * @param request The incoming request
+    * @return A Mono of mock response
+    */
+   public Mono<ServerResponse> executeRest(ServerRequest request) {
+      long startTime = System.currentTimeMillis();
+      String version = request.pathVariable("version");
+      log.info("Servicing reactive mock response for service [{}, {}] on uri {} with verb {}",
+            request.pathVariable("service"), version, request.path(), request.methodName());
+
+      Long delay;
+      try {
+         delay = getDelay(request);
+      } catch (NumberFormatException nfe) {
+         return ServerResponse.badRequest().build();
+      }
+
+      // Extract resourcePath for matching with correct operation.
+      String requestURI = request.uri().getRawPath();
+      String serviceAndVersion = "/" + UriUtils.encodeFragment(request.pathVariable("service"), "UTF-8") + "/" + version;
+      String resourcePath = UriUtils.decode(
+            requestURI.substring(requestURI.indexOf(serviceAndVersion) + serviceAndVersion.length()), "UTF-8");
+      log.debug("Found resourcePath: {}", resourcePath);
+
+      // If serviceName or resourcePath were encoded with '+' instead of '%20', replace them.
+      String serviceName = request.pathVariable("service").replace('+', ' ');
+      String operationPath = resourcePath.replace('+', ' ');
+
+      return request.bodyToMono(String.class)
+            .map(Optional::of)
+            .defaultIfEmpty(Optional.empty())
+            .flatMap(body -> lookup.getServiceRoutes(serviceName, version)
+                  .flatMap(routes -> dispatchRest(request, routes, serviceAndVersion, operationPath,
+                        body.orElse(null), delay, startTime))
+                  .switchIfEmpty(ServerResponse.notFound().build()));
+   }
+
+   /**
+    * Service a Soap mock invocation.
+    * @param request The incoming request
+    * @return A Mono of mock response
+    */
+   public Mono<ServerResponse> executeSoap(ServerRequest request) {
+      long startTime = System.currentTimeMillis();
+      String version = request.pathVariable("version");
+      log.info("Servicing reactive mock response for service [{}, {}]", request.pathVariable("service"), version);
+
+      Long delay;
+      try {
+         delay = getDelay(request);
+      } catch (NumberFormatException nfe) {
+         return ServerResponse.badRequest().build();
+      }
+      boolean validate = request.queryParam("validate").map(Boolean::valueOf).orElse(false);
+
+      // If serviceName was encoded with '+' instead of '%20', replace them.
+      String serviceName = request.pathVariable("service").replace('+', ' ');
+
+      // As with SoapController, a request body is required.
+      return request.bodyToMono(String.class)
+            .flatMap(body -> lookup.getServiceRoutes(serviceName, version)
+                  .flatMap(routes -> dispatchSoap(request, routes, version, body, validate, delay, startTime))
+                  .switchIfEmpty(ServerResponse.notFound().build()))
+            .switchIfEmpty(ServerResponse.badRequest().build());
+   }
+
+   private Mono<ServerResponse> dispatchRest(ServerRequest request, MockRoutingIndex.ServiceRoutes routes,
+         String serviceAndVersion, String resourcePath, String body, Long delay, long startTime) {
+
+      Service service = routes.getService();
+
+      // Select operation based onto Http verb (GET, POST, PUT, etc ...) and matching resource path.
+      Operation rOperation = routes.findOperation(request.methodName(), resourcePath);
+      if (rOperation == null) {
+         return ServerResponse.notFound().build();
+      }
+      log.debug("Found a valid operation {} with rules: {}", rOperation.getName(), rOperation.getDispatcherRules());
+
+      String operationId = IdBuilder.buildOperationId(service, rOperation);
+      return evaluate(rOperation, () -> dispatcher.computeRestDispatchCriteria(rOperation, resourcePath,
+                  getFullURI(request), body, request.headers().asHttpHeaders()))
+            .flatMap(criteria ->
+               // When using the JSON_BODY dispatcher, return of evaluation may be the name of response.
+               lookup.findPreparedByOperationIdAndDispatchCriteria(operationId, criteria.orElse(null))
+                     .switchIfEmpty(Mono.defer(() ->
+                           lookup.findPreparedByOperationIdAndName(operationId, criteria.orElse(null)))))
+            .flatMap(response -> renderRest(request, service, rOperation, serviceAndVersion, response, delay, startTime))
+            .switchIfEmpty(ServerResponse.badRequest().build());
+   }
+
+   private Mono<ServerResponse> renderRest(ServerRequest request, Service service, Operation rOperation,
+         String serviceAndVersion, PreparedResponse response, Long delay, long startTime) {
+
+      // Negotiate content encoding, compressed variants are computed once and cached.
+      String encoding = null;
+      boolean compressible = false;
+      if (response.getBody() != null) {
+         encoding = compressor.selectEncoding(request.methodName(),
+               request.headers().asHttpHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING),
+               response.getResponse().getMediaType(), response.getBody().length);
+         compressible = compressor.isCompressible(response.getResponse().getMediaType(), response.getBody().length);
+      }
+
+      ResponseEntity<byte[]> entity;
+      if (HttpStatus.OK.equals(response.getStatus()) && EntityTagHelper.isNotModified(request.methodName(),
+            request.headers().header(HttpHeaders.IF_NONE_MATCH), response.getETag(encoding))) {
+         // Answer conditional requests if content has not changed since last retrieval.
+         entity = response.toNotModifiedEntity(encoding, compressible);
+      } else {
+         // Make relative location an absolute one from the client perspective.
+         String locationPrefix = null;
+         if (response.getLocation() != null) {
+            URI uri = request.uri();
+            locationPrefix = "http://" + uri.getHost() + ":" + uri.getPort() + "/rest" + serviceAndVersion;
+         }
+         entity = response.toResponseEntity(locationPrefix, encoding, compressible);
+         if (encoding != null) {
+            compressor.recordSavedBytes("mock", response.getBody().length, entity.getBody().length);
+         }
+      }
+      return release(toServerResponse(entity),
+            delayScheduler.computeRemainingDelay(delay, rOperation.getDefaultDelay(), startTime),
+            dispatcher.buildInvocationPublisher(service, request.pathVariable("version"), response, startTime));
+   }
+
+   private Mono<ServerResponse> dispatchSoap(ServerRequest request, MockRoutingIndex.ServiceRoutes routes,
+         String version, String body, boolean validate, Long delay, long startTime) {
+
+      Service service = routes.getService();
+
+      Operation operation = MockDispatcher.findSoapOperation(routes,
+            request.headers().asHttpHeaders().getFirst(SoapMessageReader.SOAP_ACTION_HEADER), body);
+      if (operation == null) {
+         return ServerResponse.notFound().build();
+      }
+      Operation rOperation = operation;
+      log.debug("Found a valid operation with rules: {}", rOperation.getDispatcherRules());
+
+      Mono<List<XmlError>> validation = Mono.just(Collections.emptyList());
+      if (validate) {
+         log.debug("Soap message validation is turned on, validating...");
+         validation = Mono.fromCallable(() -> dispatcher.validateSoapMessage(service, rOperation, version, body))
+               .subscribeOn(evaluationScheduler);
+      }
+
+      return validation.flatMap(errors -> {
+         // Return a 400 http code with errors.
+         if (!errors.isEmpty()) {
+            return ServerResponse.badRequest().contentType(MediaType.APPLICATION_JSON)
+                  .body(BodyInserters.fromObject(errors));
+         }
+         return evaluate(rOperation, () -> dispatcher.computeSoapDispatchCriteria(rOperation, body,
+                     request.headers().asHttpHeaders()))
+               .flatMap(criteria -> lookup.findPreparedByOperationIdAndDispatchCriteria(
+                     IdBuilder.buildOperationId(service, rOperation), criteria.orElse(null)))
+               .flatMap(response -> renderSoap(request, service, rOperation, version, response, delay, startTime))
+               .switchIfEmpty(ServerResponse.badRequest().build());
+      });
+   }
+
+   private Mono<ServerResponse> renderSoap(ServerRequest request, Service service, Operation rOperation,
+         String version, PreparedResponse response, Long delay, long startTime) {
+
+      // Content-Type is always "text/xml" and body has been pre-encoded.
+      HttpStatus status = (response.getResponse().isFault() ? HttpStatus.INTERNAL_SERVER_ERROR : HttpStatus.OK);
+      byte[] responseBody = response.getBody();
+      HttpHeaders responseHeaders = new HttpHeaders();
+      responseHeaders.setContentType(SOAP_CONTENT_TYPE);
+
+      // Negotiate content encoding, compressed variants are computed once and cached.
+      String encoding = (responseBody != null ? compressor.selectEncoding(request.methodName(),
+            request.headers().asHttpHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING),
+            SOAP_CONTENT_TYPE.toString(), responseBody.length) : null);
+      if (encoding != null) {
+         responseBody = response.getEncodedBody(encoding);
+         responseHeaders.set(HttpHeaders.CONTENT_ENCODING, encoding);
+         compressor.recordSavedBytes("mock", response.getBody().length, responseBody.length);
+      }
+      if (encoding != null || (responseBody != null
+            && compressor.isCompressible(SOAP_CONTENT_TYPE.toString(), responseBody.length))) {
+         responseHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+      }
+
+      return release(toServerResponse(new ResponseEntity<>(responseBody, responseHeaders, status)),
+            delayScheduler.computeRemainingDelay(delay, rOperation.getDefaultDelay(), startTime),
+            dispatcher.buildInvocationPublisher(service, version, response, startTime));
+   }
+
+   /**
+    * Compute dispatch criteria out of I/O threads when they come from an evaluation: blocking scripts go to the
+    * elastic scheduler and CPU intensive body evaluations to the parallel one.
+    */
+   private Mono<Optional<String>> evaluate(Operation rOperation, Callable<String> evaluation) {
+      Mono<Optional<String>> criteria = Mono.fromCallable(() -> Optional.ofNullable(evaluation.call()));
+      if (dispatcher.isScriptEvaluated(rOperation)) {
+         return criteria.subscribeOn(evaluationScheduler);
+      }
+      if (dispatcher.isBodyEvaluated(rOperation)) {
+         return criteria.subscribeOn(Schedulers.parallel());
+      }
+      return criteria;
+   }
+
+   /**
+    * Release a response once remaining delay has expired, using a timer instead of blocking a thread. The
+    * onRelease callback is run when delay has expired, just before response is released.
+    */
+   private Mono<ServerResponse> release(Mono<ServerResponse> response, long remainingDelay, Runnable onRelease) {
+      Mono<ServerResponse> released = Mono.<Void>fromRunnable(onRelease)
+            .onErrorResume(e -> {
+               log.warn("Exception while running release callback of delayed response", e);
+               return Mono.empty();
+            })
+            .then(response);
+      if (remainingDelay <= 0) {
+         return released;
+      }
+      log.debug("Mock delay is turned on, deferring response for {} ms", remainingDelay);
+      return Mono.delay(Duration.ofMillis(remainingDelay)).then(released);
+   }
+
+   private static Mono<ServerResponse> toServerResponse(ResponseEntity<byte[]> entity) {
+      ServerResponse.BodyBuilder builder = ServerResponse.status(entity.getStatusCode())
+            .headers(headers -> headers.putAll(entity.getHeaders()));
+      if (entity.getBody() != null) {
+         return builder.body(BodyInserters.fromObject(entity.getBody()));
+      }
+      return builder.build();
+   }
+
+   private static Long getDelay(ServerRequest request) {
+      return request.queryParam("delay").map(Long::valueOf).orElse(null);
+   }
+
+   /** Rebuild the full request URI as servlet request URL followed by query string. */
+   private static String getFullURI(ServerRequest request) {
+      URI uri = request.uri();
+      return uri.getScheme() + "://" + uri.getRawAuthority() + uri.getRawPath() + "?" + uri.getRawQuery();
+   }
+}
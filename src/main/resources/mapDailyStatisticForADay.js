@@ -1,3 +1,3 @@
 function(){ 
-   emit(this.day, this);
+   emit(this.day, {'dailyCount': this.dailyCount, 'hourlyCounts': this.hourlyCounts});
 }
\ No newline at end of file
@@ -56,6 +56,7 @@ public class DailyStatisticsFeederTest {
 
       // Fire event a first time.
       feeder.onApplicationEvent(event);
+      feeder.flush();
 
       SimpleDateFormat formater = new SimpleDateFormat("yyyyMMdd");
       String day = formater.format(today.getTime());
@@ -70,6 +71,7 @@ public class DailyStatisticsFeederTest {
 
       // Fire event a second time.
       feeder.onApplicationEvent(event);
+      feeder.flush();
 
       stat = statisticsRepository.findByDayAndServiceNameAndServiceVersion(day, "TestService1", "1.0");
       assertNotNull(stat);
@@ -80,4 +82,69 @@ public class DailyStatisticsFeederTest {
       assertEquals(2, stat.getDailyCount());
       assertEquals(new Integer(2), stat.getHourlyCount().get( String.valueOf(today.get(Calendar.HOUR_OF_DAY)) ));
    }
+
+   @Test
+   public void testBatchedFlush() {
+      Calendar today = Calendar.getInstance();
+      MockInvocationEvent event = new MockInvocationEvent(this, "TestService1", "1.0", "123456789", today.getTime(), 100);
+      MockInvocationEvent otherEvent = new MockInvocationEvent(this, "TestService2", "1.0", "123456789", today.getTime(), 100);
+
+      // Fire a bunch of events before flushing.
+      for (int i=0; i<5; i++) {
+         feeder.onApplicationEvent(event);
+      }
+      feeder.onApplicationEvent(otherEvent);
+
+      SimpleDateFormat formater = new SimpleDateFormat("yyyyMMdd");
+      String day = formater.format(today.getTime());
+      feeder.flush();
+
+      String minuteKey = String.valueOf(60 * today.get(Calendar.HOUR_OF_DAY) + today.get(Calendar.MINUTE));
+      DailyStatistic stat = statisticsRepository.findByDayAndServiceNameAndServiceVersion(day, "TestService1", "1.0");
+      assertNotNull(stat);
+      assertEquals(5, stat.getDailyCount());
+      assertEquals(24, stat.getHourlyCount().size());
+      assertEquals(24 * 60, stat.getMinuteCount().size());
+      assertEquals(new Integer(5), stat.getMinuteCount().get(minuteKey));
+
+      stat = statisticsRepository.findByDayAndServiceNameAndServiceVersion(day, "TestService2", "1.0");
+      assertNotNull(stat);
+      assertEquals(1, stat.getDailyCount());
+      assertEquals(0, feeder.getDroppedCount());
+   }
+
+   @Test
+   public void testFlushAcrossMidnight() {
+      Calendar beforeMidnight = Calendar.getInstance();
+      beforeMidnight.add(Calendar.DAY_OF_MONTH, -1);
+      beforeMidnight.set(Calendar.HOUR_OF_DAY, 23);
+      beforeMidnight.set(Calendar.MINUTE, 59);
+      Calendar afterMidnight = Calendar.getInstance();
+      afterMidnight.set(Calendar.HOUR_OF_DAY, 0);
+      afterMidnight.set(Calendar.MINUTE, 1);
+
+      // Statistic of previous day is already known when batch straddles midnight.
+      feeder.onApplicationEvent(new MockInvocationEvent(this, "TestService1", "1.0", "123456789",
+            beforeMidnight.getTime(), 100));
+      feeder.flush();
+      feeder.onApplicationEvent(new MockInvocationEvent(this, "TestService1", "1.0", "123456789",
+            beforeMidnight.getTime(), 100));
+      feeder.onApplicationEvent(new MockInvocationEvent(this, "TestService1", "1.0", "123456789",
+            afterMidnight.getTime(), 100));
+      feeder.flush();
+
+      SimpleDateFormat formater = new SimpleDateFormat("yyyyMMdd");
+      DailyStatistic stat = statisticsRepository.findByDayAndServiceNameAndServiceVersion(
+            formater.format(beforeMidnight.getTime()), "TestService1", "1.0");
+      assertEquals(2, stat.getDailyCount());
+      assertEquals(new Integer(2), stat.getHourlyCount().get("23"));
+
+      // Document of new day should have been initialized with hourly counters array.
+      stat = statisticsRepository.findByDayAndServiceNameAndServiceVersion(
+            formater.format(afterMidnight.getTime()), "TestService1", "1.0");
+      assertNotNull(stat);
+      assertEquals(1, stat.getDailyCount());
+      assertEquals(24, stat.getHourlyCount().size());
+      assertEquals(new Integer(1), stat.getHourlyCount().get("0"));
+   }
 }
@@ -19,20 +19,33 @@
 package io.github.microcks.repository;
 
 import io.github.microcks.domain.DailyStatistic;
+import io.github.microcks.repository.CustomDailyStatisticRepository.StatisticIncrement;
+import org.bson.Document;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.convert.ConverterNotFoundException;
 import org.springframework.data.mongodb.UncategorizedMongoDbException;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.annotation.DirtiesContext.ClassMode;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.*;
+
 /**
  * Test case for CustomDailyStatisticRepository class.
  * @author laurent
@@ -45,6 +58,9 @@ public class CustomDailyStatisticRepositoryTest {
    @Autowired
    DailyStatisticRepository repository;
 
+   @Autowired
+   MongoTemplate template;
+
    @Before
    public void setUp(){
       // Create a bunch of statistics...
@@ -83,6 +99,146 @@ public class CustomDailyStatisticRepositoryTest {
       }
    }
 
+   @Test
+   public void testCompactLayout(){
+      DailyStatistic stat = repository.findByDayAndServiceNameAndServiceVersion("20140930", "TestService1", "1.0");
+      assertEquals(24, stat.getHourlyCount().size());
+      assertEquals(24 * 60, stat.getMinuteCount().size());
+
+      repository.incrementDailyStatistic("20140930", "TestService1", "1.0", "14", "870");
+
+      // Only non zero minutes should be stored.
+      Document document = template.findById(stat.getId(), Document.class, "dailyStatistic");
+      assertEquals(24, document.get("hourlyCounts", List.class).size());
+      assertEquals(1, document.get("minuteCounts", Document.class).size());
+
+      stat = repository.findByDayAndServiceNameAndServiceVersion("20140930", "TestService1", "1.0");
+      assertEquals(3, stat.getDailyCount());
+      assertEquals(new Integer(1), stat.getHourlyCount().get("14"));
+      assertEquals(new Integer(1), stat.getMinuteCount().get("870"));
+      assertEquals(new Integer(0), stat.getMinuteCount().get("871"));
+   }
+
+   @Test
+   public void testMigrateLegacyDailyStatistics(){
+      // Insert a statistic using the legacy map layout.
+      Map<String, Integer> hourlyCount = initializeHourlyMap();
+      hourlyCount.put("10", 3);
+      Map<String, Integer> minuteCount = new HashMap<String, Integer>(24*60);
+      for (int i=0; i<24*60; i++){
+         minuteCount.put(String.valueOf(i), 0);
+      }
+      minuteCount.put("600", 2);
+      minuteCount.put("601", 1);
+      Document legacy = new Document("day", "20140929").append("serviceName", "TestService1")
+            .append("serviceVersion", "1.0").append("dailyCount", 3L)
+            .append("hourlyCount", new Document(new HashMap<String, Object>(hourlyCount)))
+            .append("minuteCount", new Document(new HashMap<String, Object>(minuteCount)));
+      template.insert(legacy, "dailyStatistic");
+
+      assertEquals(1, repository.migrateLegacyDailyStatistics());
+      assertEquals(0, repository.migrateLegacyDailyStatistics());
+
+      Document document = template.findById(legacy.get("_id"), Document.class, "dailyStatistic");
+      assertNull(document.get("hourlyCount"));
+      assertNull(document.get("minuteCount"));
+      assertEquals(2, document.get("minuteCounts", Document.class).size());
+
+      DailyStatistic stat = repository.findByDayAndServiceNameAndServiceVersion("20140929", "TestService1", "1.0");
+      assertEquals(3, stat.getDailyCount());
+      assertEquals(new Integer(3), stat.getHourlyCount().get("10"));
+      assertEquals(new Integer(0), stat.getHourlyCount().get("11"));
+      assertEquals(new Integer(2), stat.getMinuteCount().get("600"));
+      assertEquals(new Integer(1), stat.getMinuteCount().get("601"));
+   }
+
+   @Test
+   public void testMigrateLegacyDailyStatisticsKeepsCompactIncrements(){
+      // Insert a statistic using the legacy map layout.
+      Map<String, Integer> hourlyCount = initializeHourlyMap();
+      hourlyCount.put("10", 3);
+      Document legacy = new Document("day", "20140929").append("serviceName", "TestService1")
+            .append("serviceVersion", "1.0").append("dailyCount", 3L)
+            .append("hourlyCount", new Document(new HashMap<String, Object>(hourlyCount)))
+            .append("minuteCount", new Document("600", 3));
+      template.insert(legacy, "dailyStatistic");
+
+      // Another node already using compact layout increments it before migration.
+      StatisticIncrement increment = new StatisticIncrement("20140929", "TestService1", "1.0");
+      increment.increment("10", "600");
+      increment.increment("11", "660");
+      repository.incrementDailyStatistics(Collections.singletonList(increment));
+
+      assertEquals(1, repository.migrateLegacyDailyStatistics());
+
+      DailyStatistic stat = repository.findByDayAndServiceNameAndServiceVersion("20140929", "TestService1", "1.0");
+      assertEquals(5, stat.getDailyCount());
+      assertEquals(new Integer(4), stat.getHourlyCount().get("10"));
+      assertEquals(new Integer(1), stat.getHourlyCount().get("11"));
+      assertEquals(new Integer(4), stat.getMinuteCount().get("600"));
+      assertEquals(new Integer(1), stat.getMinuteCount().get("660"));
+   }
+
+   @Test
+   public void testIncrementMissingDailyStatistics(){
+      StatisticIncrement existing = new StatisticIncrement("20140930", "TestService1", "1.0");
+      existing.increment("10", "600");
+      StatisticIncrement missing = new StatisticIncrement("20141001", "TestService1", "1.0");
+      missing.increment("10", "600");
+
+      // Increments never create documents, the missing one is reported.
+      List<StatisticIncrement> notApplied = repository.incrementDailyStatistics(Arrays.asList(existing, missing));
+      assertEquals(1, notApplied.size());
+      assertSame(missing, notApplied.get(0));
+      assertNull(repository.findByDayAndServiceNameAndServiceVersion("20141001", "TestService1", "1.0"));
+      assertEquals(3, repository.findByDayAndServiceNameAndServiceVersion("20140930", "TestService1", "1.0")
+            .getDailyCount());
+
+      // Once initialized, the hourly counters are an array and increments apply.
+      assertTrue(repository.initializeDailyStatistics(Collections.singletonList(missing)).isEmpty());
+      assertTrue(repository.incrementDailyStatistics(Collections.singletonList(missing)).isEmpty());
+      DailyStatistic stat = repository.findByDayAndServiceNameAndServiceVersion("20141001", "TestService1", "1.0");
+      Document document = template.findById(stat.getId(), Document.class, "dailyStatistic");
+      assertEquals(24, document.get("hourlyCounts", List.class).size());
+      assertEquals(1, stat.getDailyCount());
+      assertEquals(new Integer(1), stat.getHourlyCount().get("10"));
+   }
+
+   @Test
+   public void testEnsureUniqueDailyStatistics(){
+      // A previous version declared the key index without uniqueness and let duplicates be created.
+      template.indexOps(DailyStatistic.class).ensureIndex(new Index().named("day_serviceName_serviceVersion")
+            .on("day", Direction.ASC).on("serviceName", Direction.ASC).on("serviceVersion", Direction.ASC));
+      template.insert(buildCompactStatistic(2L, 10, "600"), "dailyStatistic");
+      template.insert(buildCompactStatistic(3L, 11, "660"), "dailyStatistic");
+
+      assertEquals(1, repository.ensureUniqueDailyStatistics());
+
+      List<Document> documents = template.find(new Query(Criteria.where("day").is("20141001")), Document.class,
+            "dailyStatistic");
+      assertEquals(1, documents.size());
+      DailyStatistic stat = repository.findByDayAndServiceNameAndServiceVersion("20141001", "TestService1", "1.0");
+      assertEquals(5, stat.getDailyCount());
+      assertEquals(new Integer(2), stat.getHourlyCount().get("10"));
+      assertEquals(new Integer(3), stat.getHourlyCount().get("11"));
+      assertEquals(new Integer(2), stat.getMinuteCount().get("600"));
+      assertEquals(new Integer(3), stat.getMinuteCount().get("660"));
+
+      // Index has been recreated as unique and ensuring again is idempotent.
+      assertTrue(template.indexOps(DailyStatistic.class).getIndexInfo().stream()
+            .anyMatch(index -> "day_serviceName_serviceVersion".equals(index.getName()) && index.isUnique()));
+      assertEquals(0, repository.ensureUniqueDailyStatistics());
+   }
+
+   private Document buildCompactStatistic(long dailyCount, int hour, String minuteKey){
+      List<Integer> hourlyCounts = new ArrayList<>(Collections.nCopies(24, 0));
+      hourlyCounts.set(hour, (int) dailyCount);
+      return new Document("day", "20141001").append("serviceName", "TestService1")
+            .append("serviceVersion", "1.0").append("dailyCount", dailyCount)
+            .append("hourlyCounts", hourlyCounts)
+            .append("minuteCounts", new Document(minuteKey, (int) dailyCount));
+   }
+
    private Map<String, Integer> initializeHourlyMap(){
       Map<String, Integer> result = new HashMap<String, Integer>(24);
       for (int i=0; i<24; i++){
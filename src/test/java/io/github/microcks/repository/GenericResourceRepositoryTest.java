@@ -28,7 +28,10 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -108,4 +111,34 @@ public class GenericResourceRepositoryTest {
       assertEquals(1, dynaResources.size());
       assertEquals(resource2.getId(), dynaResources.get(0).getId());
    }
+
+   @Test
+   public void testPageAndStreamGenericResources() {
+      for (int i = 0; i < 5; i++) {
+         GenericResource resource = new GenericResource();
+         resource.setServiceId("service-1");
+         resource.setPayload(Document.parse("{ \"foo\": " + i + ", \"bar\": \"" + (i % 2 == 0 ? "even" : "odd") + "\" }"));
+         repository.save(resource);
+      }
+
+      assertEquals(3, repository.countByServiceIdAndJSONQuery("service-1", "{ \"bar\": \"even\" }"));
+      assertEquals(5, repository.countByServiceIdAndJSONQuery("service-1", null));
+
+      // Keyset pagination on matching resources, only keys are retrieved.
+      List<GenericResource> keys = repository.findKeysByServiceIdAndJSONQuery("service-1", "{ \"bar\": \"even\" }", null, 0, 2);
+      assertEquals(2, keys.size());
+      assertNull(keys.get(0).getPayload());
+      List<GenericResource> nextKeys = repository.findKeysByServiceIdAndJSONQuery("service-1", "{ \"bar\": \"even\" }",
+            keys.get(1).getId(), 0, 2);
+      assertEquals(1, nextKeys.size());
+
+      // Offset pagination on all resources.
+      assertEquals(1, repository.findKeysByServiceIdAndJSONQuery("service-1", null, null, 4, 2).size());
+
+      try (Stream<GenericResource> resources = repository.streamByIds(
+            Arrays.asList(nextKeys.get(0).getId(), keys.get(0).getId()))) {
+         List<Integer> foos = resources.map(r -> r.getPayload().getInteger("foo")).collect(Collectors.toList());
+         assertEquals(Arrays.asList(0, 4), foos);
+      }
+   }
 }
@@ -0,0 +1,142 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.CatalogChange;
+import io.github.microcks.domain.CatalogVersion;
+import io.github.microcks.domain.Service;
+import io.github.microcks.domain.ServiceType;
+import io.github.microcks.event.ServiceUpdateEvent;
+import io.github.microcks.repository.RepositoryTestsConfiguration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for CatalogCoherenceManager class.
+ * @author laurent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = RepositoryTestsConfiguration.class)
+@TestPropertySource(properties = "mocks.coherence.gap-timeout=0")
+public class CatalogCoherenceManagerTest {
+
+   @Autowired
+   private CatalogCoherenceManager coherenceManager;
+
+   @Autowired
+   private MockRoutingIndex routingIndex;
+
+   @Autowired
+   private ApplicationContext applicationContext;
+
+   @Autowired
+   private MongoTemplate template;
+
+   @Test
+   public void testLocalChangesAreRecorded() {
+      applicationContext.publishEvent(new ServiceUpdateEvent(this, "123", "Order Service", "1.0",
+            ServiceUpdateEvent.ChangeType.CREATED));
+      applicationContext.publishEvent(new ServiceUpdateEvent(this, "123", "Order Service", "1.0",
+            ServiceUpdateEvent.ChangeType.UPDATED));
+
+      assertEquals(2, coherenceManager.getCatalogVersion());
+      List<CatalogChange> changes = template.findAll(CatalogChange.class);
+      assertEquals(2, changes.size());
+      for (CatalogChange change : changes) {
+         assertEquals("123", change.getServiceId());
+         assertEquals(coherenceManager.getNodeId(), change.getNodeId());
+      }
+
+      // Own changes are acknowledged without being replayed.
+      assertEquals(2, coherenceManager.poll());
+      assertEquals(2, coherenceManager.getLastSeenVersion());
+      assertEquals(2, template.count(new Query(), CatalogChange.class));
+   }
+
+   @Test
+   public void testRemoteChangesInvalidateService() {
+      routingIndex.registerService(buildService("Order Service", "1.0"), routingIndex.getGeneration());
+      routingIndex.registerService(buildService("Pastry Service", "1.0"), routingIndex.getGeneration());
+
+      recordRemoteChange(1, "Order Service", "1.0");
+      assertEquals(1, coherenceManager.poll());
+      assertEquals(1, coherenceManager.getLastSeenVersion());
+
+      assertNull(routingIndex.getServiceRoutesIfPresent("Order Service", "1.0"));
+      assertNotNull(routingIndex.getServiceRoutesIfPresent("Pastry Service", "1.0"));
+      // Replayed changes are not recorded again.
+      assertEquals(1, coherenceManager.getCatalogVersion());
+   }
+
+   @Test
+   public void testMissingChangesInvalidateAll() {
+      routingIndex.registerService(buildService("Order Service", "1.0"), routingIndex.getGeneration());
+      routingIndex.registerService(buildService("Pastry Service", "1.0"), routingIndex.getGeneration());
+
+      // Change 1 is missing: replay stops until gap timeout, then everything is invalidated.
+      recordRemoteChange(2, "Order Service", "1.0");
+      assertEquals(0, coherenceManager.poll());
+      assertNotNull(routingIndex.getServiceRoutesIfPresent("Pastry Service", "1.0"));
+
+      assertEquals(0, coherenceManager.poll());
+      assertEquals(2, coherenceManager.getLastSeenVersion());
+      assertNull(routingIndex.getServiceRoutesIfPresent("Order Service", "1.0"));
+      assertNull(routingIndex.getServiceRoutesIfPresent("Pastry Service", "1.0"));
+   }
+
+   private Service buildService(String name, String version) {
+      Service service = new Service();
+      service.setId(name + "-" + version);
+      service.setName(name);
+      service.setVersion(version);
+      service.setType(ServiceType.REST);
+      return service;
+   }
+
+   private void recordRemoteChange(long version, String serviceName, String serviceVersion) {
+      CatalogVersion catalogVersion = new CatalogVersion();
+      catalogVersion.setId(CatalogVersion.CATALOG_ID);
+      catalogVersion.setVersion(version);
+      template.save(catalogVersion);
+
+      CatalogChange change = new CatalogChange();
+      change.setVersion(version);
+      change.setServiceId(serviceName + "-" + serviceVersion);
+      change.setServiceName(serviceName);
+      change.setServiceVersion(serviceVersion);
+      change.setChangeType(ServiceUpdateEvent.ChangeType.UPDATED.name());
+      change.setNodeId("another-node");
+      change.setTimestamp(new Date());
+      template.insert(change);
+   }
+}
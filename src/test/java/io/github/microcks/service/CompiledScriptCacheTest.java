@@ -0,0 +1,89 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.repository.RepositoryTestsConfiguration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.script.CompiledScript;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for CompiledScriptCache class.
+ * @author laurent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = RepositoryTestsConfiguration.class)
+public class CompiledScriptCacheTest {
+
+   private static final String SCRIPT = "return mockRequest.requestContent.toUpperCase()";
+
+   private static final Map<String, List<String>> HEADERS = Collections.singletonMap("Accept",
+         Collections.singletonList("application/json"));
+
+   @Autowired
+   private CompiledScriptCache scriptCache;
+
+   @Test
+   public void testCompiledScriptReuse() throws Exception {
+      assertEquals("RODENBACH", scriptCache.evaluate(SCRIPT, "rodenbach", HEADERS));
+      CompiledScript compiled = scriptCache.getCompiledScript(SCRIPT);
+
+      // Same source should not be compiled again, even for another request.
+      assertEquals("WESTMALLE", scriptCache.evaluate(SCRIPT, "westmalle", HEADERS));
+      assertSame(compiled, scriptCache.getCompiledScript(SCRIPT));
+
+      // Changed source leads to a new compilation.
+      assertNotSame(compiled, scriptCache.getCompiledScript(SCRIPT + ".reverse()"));
+   }
+
+   @Test
+   public void testBindingsIsolation() throws Exception {
+      // Undeclared variables are stored into bindings, they should not leak from one call to another.
+      String script = "if (!binding.variables.containsKey('calls')) { calls = 0 }\n"
+            + "calls = calls + 1\n"
+            + "return mockRequest.requestContent + '-' + calls";
+
+      assertEquals("rodenbach-1", scriptCache.evaluate(script, "rodenbach", HEADERS));
+      assertEquals("westmalle-1", scriptCache.evaluate(script, "westmalle", HEADERS));
+      assertEquals("rodenbach-1", scriptCache.evaluate(script, "rodenbach", HEADERS));
+   }
+
+   @Test
+   public void testInvalidateAll() throws Exception {
+      CompiledScript compiled = scriptCache.getCompiledScript(SCRIPT);
+      assertSame(compiled, scriptCache.getCompiledScript(SCRIPT));
+
+      scriptCache.invalidateAll();
+      CompiledScript recompiled = scriptCache.getCompiledScript(SCRIPT);
+      assertNotSame(compiled, recompiled);
+      assertEquals("CHIMAY", scriptCache.evaluate(SCRIPT, "chimay", HEADERS));
+      assertSame(recompiled, scriptCache.getCompiledScript(SCRIPT));
+   }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.GenericResource;
+import io.github.microcks.event.ServiceUpdateEvent;
+import io.github.microcks.repository.GenericResourceRepository;
+import io.github.microcks.repository.RepositoryTestsConfiguration;
+import org.bson.Document;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for GenericResourceStore class using memory storage with write-behind durability.
+ * @author laurent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = RepositoryTestsConfiguration.class)
+@TestPropertySource(properties = {"mocks.dynarest.storage=memory", "mocks.dynarest.durability=write-behind",
+      "mocks.dynarest.flush-interval=3600000", "mocks.dynarest.flush-batch-size=2"})
+public class GenericResourceStoreTest {
+
+   @Autowired
+   private GenericResourceStore store;
+
+   @Autowired
+   private GenericResourceRepository repository;
+
+   @Test
+   public void testWriteBehind() {
+      GenericResource first = store.createResource("service-1", Document.parse("{\"name\": \"Rodenbach\"}"));
+      GenericResource second = store.createResource("service-1", Document.parse("{\"name\": \"Orval\"}"));
+      store.createResource("service-1", Document.parse("{\"name\": \"Westmalle\"}"));
+      assertNotNull(first.getId());
+
+      // Resources are readable before being written to repository.
+      assertEquals(3, store.countResources("service-1"));
+      assertEquals(0, repository.count());
+      assertEquals("Rodenbach", store.getResource("service-1", first.getId()).getPayload().getString("name"));
+      assertNull(store.getResource("service-2", first.getId()));
+
+      // Page in creation order.
+      List<GenericResource> page = store.findResources("service-1", 1, 2);
+      assertEquals(1, page.size());
+      assertEquals("Westmalle", page.get(0).getPayload().getString("name"));
+
+      // Updates and deletions are coalesced with creations.
+      GenericResource updated = store.getResource("service-1", second.getId());
+      updated.getPayload().put("name", "Orval Trappist");
+      updated.setVersion(1);
+      store.saveResource(updated);
+      store.deleteResource("service-1", first.getId());
+      assertEquals(3, store.getPendingWritesCount());
+
+      assertEquals(3, store.flush());
+      assertEquals(0, store.getPendingWritesCount());
+      assertEquals(2, repository.countByServiceId("service-1"));
+      assertEquals("Orval Trappist", repository.findById(second.getId()).get().getPayload().getString("name"));
+      assertFalse(repository.findById(first.getId()).isPresent());
+   }
+
+   @Test
+   public void testFindResourcesWithQuery() {
+      store.createResource("service-1", Document.parse("{\"name\": \"Rodenbach\", \"country\": \"Belgium\"}"));
+      store.createResource("service-1", Document.parse("{\"name\": \"Orval\", \"country\": \"Belgium\"}"));
+      store.createResource("service-1", Document.parse("{\"name\": \"Leffe\", \"country\": \"France\"}"));
+      store.createResource("service-1", Document.parse("{\"name\": \"Westmalle\", \"country\": \"Belgium\"}"));
+
+      String query = "{\"country\": \"Belgium\"}";
+      assertEquals(3, store.countResources("service-1", query));
+      assertEquals(0, store.countResources("service-2", query));
+
+      // Walk through matching resources using keyset pagination.
+      List<GenericResource> keys = store.findResourceKeys("service-1", query, null, 0, 2);
+      assertEquals(2, keys.size());
+      assertNull(keys.get(0).getPayload());
+      List<GenericResource> nextKeys = store.findResourceKeys("service-1", query, keys.get(1).getId(), 0, 2);
+      assertEquals(1, nextKeys.size());
+
+      try (Stream<GenericResource> resources = store.streamResources("service-1",
+            Arrays.asList(nextKeys.get(0).getId(), keys.get(0).getId()))) {
+         List<String> names = resources.map(resource -> resource.getPayload().getString("name"))
+               .collect(Collectors.toList());
+         assertEquals(Arrays.asList("Rodenbach", "Westmalle"), names);
+      }
+   }
+
+   @Test
+   public void testLoadFromRepository() {
+      GenericResource resource = new GenericResource();
+      resource.setServiceId("service-1");
+      resource.setPayload(Document.parse("{\"name\": \"Rodenbach\"}"));
+      repository.save(resource);
+
+      assertEquals(1, store.countResources("service-1"));
+      store.createResource("service-1", Document.parse("{\"name\": \"Orval\"}"));
+      assertEquals(2, store.countResources("service-1"));
+
+      // Dropping the service keeps the pending writes.
+      store.onApplicationEvent(new ServiceUpdateEvent(this, "service-1", "Beers", "1.0",
+            ServiceUpdateEvent.ChangeType.DELETED));
+      assertEquals(2, store.countResources("service-1"));
+   }
+
+   @Test
+   public void testConcurrentWritesOfSameResource() throws Exception {
+      GenericResource created = store.createResource("service-1", Document.parse("{\"count\": -1}"));
+
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      for (int i = 0; i < 200; i++) {
+         final int count = i;
+         executor.submit(() -> {
+            GenericResource resource = store.getResource("service-1", created.getId());
+            resource.getPayload().put("count", count);
+            store.saveResource(resource);
+         });
+      }
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+      // Whatever the interleaving, flushed state is the one kept in memory.
+      store.flush();
+      assertEquals(store.getResource("service-1", created.getId()).getPayload().get("count"),
+            repository.findById(created.getId()).get().getPayload().get("count"));
+   }
+}
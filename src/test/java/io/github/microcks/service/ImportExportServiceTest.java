@@ -18,25 +18,41 @@
  */
 package io.github.microcks.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.microcks.domain.Resource;
+import io.github.microcks.domain.Response;
 import io.github.microcks.domain.ResourceType;
 import io.github.microcks.domain.Service;
+import io.github.microcks.event.ServiceUpdateEvent;
 import io.github.microcks.repository.RepositoryTestsConfiguration;
 import io.github.microcks.repository.ResourceRepository;
+import io.github.microcks.repository.ResponseRepository;
 import io.github.microcks.repository.ServiceRepository;
+import io.github.microcks.util.snapshot.CatalogSnapshot;
 import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.Assert.*;
 
@@ -52,12 +68,21 @@ public class ImportExportServiceTest {
    @Autowired
    private ImportExportService service;
 
+   @Autowired
+   private ConfigurableApplicationContext applicationContext;
+
    @Autowired
    private ServiceRepository repository;
 
    @Autowired
    private ResourceRepository resourceRepository;
 
+   @Autowired
+   private ResponseRepository responseRepository;
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
    private List<String> ids = new ArrayList<>();
 
    @Before
@@ -127,6 +152,41 @@ public class ImportExportServiceTest {
       }
    }
 
+   @Test
+   public void testExportRepositoryToStream() throws Exception {
+      // Stream export through gzip as done when client accepts compressed responses.
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      service.exportRepository(ids, "json", new GZIPOutputStream(bytes));
+
+      ImportExportService.ImportExportModel model = new ObjectMapper().readValue(
+            new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray())), ImportExportService.ImportExportModel.class);
+      assertEquals(3, model.getServices().size());
+      assertEquals(1, model.getResources().size());
+      assertEquals("Resource 1", model.getResources().get(0).getName());
+      assertNotNull(model.getRequests());
+      assertNotNull(model.getResponses());
+   }
+
+   @Test
+   public void testExportCatalogSnapshot() throws Exception {
+      Response response = new Response();
+      response.setName("laurent");
+      response.setOperationId(ids.get(0) + "-sayHello");
+      response.setDispatchCriteria("?name=laurent");
+      response.setContent("Hello laurent!");
+      responseRepository.save(response);
+
+      File file = folder.newFile();
+      service.exportCatalogSnapshot(new FileOutputStream(file));
+
+      CatalogSnapshot snapshot = CatalogSnapshot.open(file.toPath());
+      assertEquals(3, snapshot.getServiceCount());
+      assertEquals(1, snapshot.getResponseCount());
+      assertNotNull(snapshot.findService("MyService-hello", "1.1"));
+      assertEquals("Hello laurent!", snapshot.findResponsesByOperationIdAndName(ids.get(0) + "-sayHello", "laurent")
+            .get(0).getContent());
+   }
+
    @Test
    public void testImportRepository(){
       // Setup and export result.
@@ -151,4 +211,49 @@ public class ImportExportServiceTest {
       assertEquals("<wsdl></wsdl>", resources.get(0).getContent());
       assertEquals(ResourceType.WSDL, resources.get(0).getType());
    }
+
+   @Test
+   public void testImportRepositoryFromStream() {
+      List<ServiceUpdateEvent> events = new ArrayList<>();
+      applicationContext.addApplicationListener((ApplicationListener<ServiceUpdateEvent>) events::add);
+
+      String json = "{\"services\":[{\"name\":\"Imp1\",\"version\":\"1.2\",\"operations\":[],\"id\":\"imp1\"},"
+            + "{\"name\":\"Imp2\",\"version\":\"1.1\",\"operations\":[]}], "
+            + "\"resources\":[{\"name\":\"Resource 1\",\"type\":\"NOT_A_TYPE\",\"serviceId\":\"imp1\"},"
+            + "{\"name\":\"Resource 2\",\"content\":\"<wsdl></wsdl>\",\"type\":\"WSDL\",\"serviceId\":\"imp1\",\"id\":\"res2\"}], "
+            + "\"requests\":[], \"responses\":[]}";
+
+      ImportExportService.ImportReport report = service.importRepository(
+            new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+      assertTrue(report.isCompleted());
+      assertEquals(2, report.getImported("services"));
+      assertEquals(1, report.getImported("resources"));
+      assertEquals(1, report.getFailed());
+      assertEquals(1, report.getErrors().size());
+      assertEquals("resources", report.getErrors().get(0).getCollection());
+
+      Service imported = repository.findByNameAndVersion("Imp2", "1.1");
+      assertNotNull(imported);
+      // Services without identifier get one that is also notified.
+      assertEquals(2, events.size());
+      assertTrue(events.stream().anyMatch(event -> imported.getId().equals(event.getServiceId())));
+      assertTrue(events.stream().allMatch(event -> event.getServiceId() != null));
+      List<Resource> resources = resourceRepository.findByServiceId("imp1");
+      assertEquals(1, resources.size());
+      assertEquals("Resource 2", resources.get(0).getName());
+
+      // Importing same definitions again replaces them.
+      report = service.importRepository(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+      assertEquals(2, report.getImported("services"));
+      assertEquals(1, report.getImported("resources"));
+      assertEquals("imp1", repository.findByNameAndVersion("Imp1", "1.2").getId());
+      assertEquals(1, resourceRepository.findByServiceId("imp1").size());
+
+      // Malformed definitions abort import but keep what has been imported.
+      report = service.importRepository(new ByteArrayInputStream(
+            "{\"services\":[{\"name\":\"Imp3\",\"version\":\"1.0\"}], \"resources\": [{".getBytes(StandardCharsets.UTF_8)));
+      assertFalse(report.isCompleted());
+      assertEquals(1, report.getImported("services"));
+      assertNotNull(repository.findByNameAndVersion("Imp3", "1.0"));
+   }
 }
@@ -0,0 +1,109 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for MockDelayScheduler class.
+ * @author laurent
+ */
+public class MockDelaySchedulerTest {
+
+   private MockDelayScheduler delayScheduler;
+
+   @Before
+   public void setUp() {
+      delayScheduler = new MockDelayScheduler();
+      delayScheduler.initializeTimer();
+   }
+
+   @After
+   public void tearDown() {
+      delayScheduler.shutdownTimer();
+   }
+
+   @Test
+   public void testComputeRemainingDelay() {
+      long startTime = System.currentTimeMillis();
+      assertEquals(0, delayScheduler.computeRemainingDelay(null, null, startTime));
+      assertEquals(0, delayScheduler.computeRemainingDelay(-1L, 500L, startTime));
+      assertTrue(delayScheduler.computeRemainingDelay(null, 500L, startTime) > 0);
+      assertTrue(delayScheduler.computeRemainingDelay(300L, 5000L, startTime) <= 300);
+      assertEquals(0, delayScheduler.computeRemainingDelay(100L, null, startTime - 200));
+   }
+
+   @Test
+   public void testReleaseWithoutDelay() {
+      ResponseEntity<String> response = new ResponseEntity<>("Hello", HttpStatus.OK);
+
+      DeferredResult<ResponseEntity<String>> result = delayScheduler.release(response, 0);
+      assertTrue(result.hasResult());
+      assertSame(response, result.getResult());
+   }
+
+   @Test
+   public void testReleaseWithDelay() throws Exception {
+      ResponseEntity<String> response = new ResponseEntity<>("Hello", HttpStatus.OK);
+
+      long startTime = System.currentTimeMillis();
+      DeferredResult<ResponseEntity<String>> result = delayScheduler.release(response, 200);
+      assertFalse(result.hasResult());
+
+      // Wait for the timer to release response.
+      while (!result.hasResult() && System.currentTimeMillis() - startTime < 5000) {
+         Thread.sleep(20);
+      }
+      assertTrue(System.currentTimeMillis() - startTime >= 200);
+      assertSame(response, result.getResult());
+   }
+
+   @Test
+   public void testReleaseCallbackAfterDelay() throws Exception {
+      ResponseEntity<String> response = new ResponseEntity<>("Hello", HttpStatus.OK);
+      AtomicLong releaseTime = new AtomicLong();
+
+      long startTime = System.currentTimeMillis();
+      DeferredResult<ResponseEntity<String>> result = delayScheduler.release(response, 200,
+            () -> releaseTime.set(System.currentTimeMillis()));
+      assertEquals(0, releaseTime.get());
+
+      // Wait for the timer to release response, callback should have run before.
+      while (!result.hasResult() && System.currentTimeMillis() - startTime < 5000) {
+         Thread.sleep(20);
+      }
+      assertTrue(result.hasResult());
+      assertTrue(releaseTime.get() - startTime >= 200);
+
+      // Without delay, callback runs immediately.
+      releaseTime.set(0);
+      result = delayScheduler.release(response, 0, () -> releaseTime.set(System.currentTimeMillis()));
+      assertTrue(result.hasResult());
+      assertTrue(releaseTime.get() > 0);
+   }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.Operation;
+import io.github.microcks.util.DispatchCriteriaHelper;
+import io.github.microcks.util.DispatchStyles;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for MockDispatcher class.
+ * @author laurent
+ */
+public class MockDispatcherTest {
+
+   private MockDispatcher dispatcher = new MockDispatcher();
+
+   @Test
+   public void testComputeRestDispatchCriteria() {
+      Operation operation = new Operation();
+      operation.setName("GET /order/:id");
+      operation.setMethod("GET");
+      operation.setDispatcher(DispatchStyles.URI_PARTS);
+      operation.setDispatcherRules("id");
+
+      assertEquals(DispatchCriteriaHelper.extractFromURIPattern("/order/:id", "/order/123"),
+            dispatcher.computeRestDispatchCriteria(operation, "/order/123", "http://localhost/order/123?null",
+                  null, Collections.emptyMap()));
+
+      operation.setDispatcher(DispatchStyles.URI_ELEMENTS);
+      operation.setDispatcherRules("id && status");
+      String fullURI = "http://localhost/order/123?status=pending";
+      assertEquals(DispatchCriteriaHelper.extractFromURIPattern("/order/:id", "/order/123")
+                  + DispatchCriteriaHelper.extractFromURIParams("id && status", fullURI),
+            dispatcher.computeRestDispatchCriteria(operation, "/order/123", fullURI, null, Collections.emptyMap()));
+
+      // Without dispatcher, there's no criteria.
+      operation.setDispatcher(null);
+      assertNull(dispatcher.computeRestDispatchCriteria(operation, "/order/123", fullURI, null,
+            Collections.emptyMap()));
+   }
+
+   @Test
+   public void testEvaluationKinds() {
+      Operation operation = new Operation();
+      operation.setDispatcher(DispatchStyles.JSON_BODY);
+      assertTrue(dispatcher.isBodyEvaluated(operation));
+      assertFalse(dispatcher.isScriptEvaluated(operation));
+
+      operation.setDispatcher(DispatchStyles.QUERY_MATCH);
+      assertTrue(dispatcher.isBodyEvaluated(operation));
+
+      operation.setDispatcher(DispatchStyles.SCRIPT);
+      assertFalse(dispatcher.isBodyEvaluated(operation));
+      assertTrue(dispatcher.isScriptEvaluated(operation));
+
+      operation.setDispatcher(DispatchStyles.URI_PARTS);
+      assertFalse(dispatcher.isBodyEvaluated(operation));
+      assertFalse(dispatcher.isScriptEvaluated(operation));
+   }
+}
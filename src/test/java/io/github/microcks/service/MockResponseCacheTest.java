@@ -0,0 +1,92 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.Response;
+import io.github.microcks.repository.RepositoryTestsConfiguration;
+import io.github.microcks.repository.ResponseRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for MockResponseCache class.
+ * @author laurent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = RepositoryTestsConfiguration.class)
+public class MockResponseCacheTest {
+
+   @Autowired
+   private MockResponseCache responseCache;
+
+   @Autowired
+   private ResponseRepository responseRepository;
+
+   @Test
+   public void testCachedLookups() {
+      Response response = new Response();
+      response.setName("laurent");
+      response.setOperationId("1234-sayHello");
+      response.setDispatchCriteria("?name=laurent");
+      response.setContent("Hello laurent!");
+      responseRepository.save(response);
+
+      Response found = responseCache.findByOperationIdAndDispatchCriteria("1234-sayHello", "?name=laurent");
+      assertNotNull(found);
+      assertEquals("Hello laurent!", found.getContent());
+      assertNull(responseCache.findByOperationIdAndDispatchCriteria("1234-sayHello", "?name=karla"));
+      assertNotNull(responseCache.findByOperationIdAndName("1234-sayHello", "laurent"));
+      assertEquals(3, responseCache.getStats().missCount());
+
+      // Second lookups should be served from cache, misses included.
+      responseRepository.deleteAll();
+      assertNotNull(responseCache.findByOperationIdAndDispatchCriteria("1234-sayHello", "?name=laurent"));
+      assertNull(responseCache.findByOperationIdAndDispatchCriteria("1234-sayHello", "?name=karla"));
+      assertEquals(2, responseCache.getStats().hitCount());
+
+      // Invalidating service should force a reload from repository.
+      responseCache.invalidateService("1234");
+      assertNull(responseCache.findByOperationIdAndDispatchCriteria("1234-sayHello", "?name=laurent"));
+   }
+
+   @Test
+   public void testPutPreparedLoadedBeforeInvalidation() {
+      Response response = new Response();
+      response.setName("laurent");
+      response.setOperationId("1234-sayHello");
+      response.setContent("Hello laurent!");
+
+      // Response is loaded, then service is invalidated before response is cached.
+      long generation = responseCache.getGeneration();
+      responseCache.invalidateService("1234");
+      assertNotNull(responseCache.putPrepared("1234-sayHello", "laurent", true, response, generation));
+      assertNull(responseCache.getPreparedIfPresent("1234-sayHello", "laurent", true));
+
+      // Caching with current generation keeps the response.
+      responseCache.putPrepared("1234-sayHello", "laurent", true, response, responseCache.getGeneration());
+      assertTrue(responseCache.getPreparedIfPresent("1234-sayHello", "laurent", true).isPresent());
+   }
+}
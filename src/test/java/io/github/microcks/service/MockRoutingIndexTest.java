@@ -0,0 +1,174 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.Operation;
+import io.github.microcks.domain.Service;
+import io.github.microcks.domain.ServiceType;
+import io.github.microcks.event.ServiceUpdateEvent;
+import io.github.microcks.repository.RepositoryTestsConfiguration;
+import io.github.microcks.repository.ServiceRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.xml.namespace.QName;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for MockRoutingIndex class.
+ * @author laurent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = RepositoryTestsConfiguration.class)
+public class MockRoutingIndexTest {
+
+   @Autowired
+   private MockRoutingIndex routingIndex;
+
+   @Autowired
+   private ServiceService serviceService;
+
+   @Autowired
+   private ServiceRepository repository;
+
+   @Test
+   public void testFindOperation() {
+      Service service = new Service();
+      service.setName("Order Service");
+      service.setVersion("1.0");
+      service.setType(ServiceType.REST);
+
+      Operation getOp = new Operation();
+      getOp.setName("GET /order/:id");
+      getOp.setMethod("GET");
+      getOp.addResourcePath("/order/123");
+      getOp.addResourcePath("/order/456");
+      service.addOperation(getOp);
+
+      Operation putOp = new Operation();
+      putOp.setName("PUT /order/:id");
+      putOp.setMethod("PUT");
+      putOp.addResourcePath("/order/123");
+      service.addOperation(putOp);
+      repository.save(service);
+
+      MockRoutingIndex.ServiceRoutes routes = routingIndex.getServiceRoutes("Order Service", "1.0");
+      assertNotNull(routes);
+      assertEquals(service.getId(), routes.getService().getId());
+      assertEquals("GET /order/:id", routes.findOperation("get", "/order/456").getName());
+      assertEquals("PUT /order/:id", routes.findOperation("PUT", "/order/123").getName());
+      assertNull(routes.findOperation("PUT", "/order/456"));
+      assertNull(routes.findOperation("DELETE", "/order/123"));
+
+      assertNull(routingIndex.getServiceRoutes("Order Service", "2.0"));
+   }
+
+   @Test
+   public void testFindSoapOperation() {
+      Service service = new Service();
+      service.setName("HelloService");
+      service.setVersion("1.0");
+      service.setType(ServiceType.SOAP_HTTP);
+      service.setXmlNS("http://www.example.com/hello");
+
+      Operation helloOp = new Operation();
+      helloOp.setName("sayHello");
+      helloOp.setInputName("sayHello");
+      helloOp.setAction("http://www.example.com/hello/sayHello");
+      service.addOperation(helloOp);
+
+      Operation helloWorldOp = new Operation();
+      helloWorldOp.setName("sayHelloWorld");
+      helloWorldOp.setInputName("sayHelloWorld");
+      helloWorldOp.setAction("http://www.example.com/hello/sayHelloWorld");
+      service.addOperation(helloWorldOp);
+      repository.save(service);
+
+      MockRoutingIndex.ServiceRoutes routes = routingIndex.getServiceRoutes("HelloService", "1.0");
+      QName helloElement = new QName("http://www.example.com/hello", "sayHello");
+
+      // Action and body agree or body is unknown: use action.
+      assertEquals("sayHello", routes.findSoapOperation("http://www.example.com/hello/sayHello", helloElement).getName());
+      assertEquals("sayHelloWorld", routes.findSoapOperation("http://www.example.com/hello/sayHelloWorld", null).getName());
+      // No or unknown action: use body, with or without namespace.
+      assertEquals("sayHello", routes.findSoapOperation(null, helloElement).getName());
+      assertEquals("sayHello", routes.findSoapOperation("unknown", new QName("sayHello")).getName());
+      // Action and body disagree: body wins.
+      assertEquals("sayHello", routes.findSoapOperation("http://www.example.com/hello/sayHelloWorld", helloElement).getName());
+      assertEquals("sayHelloWorld", routes.findSoapOperation("http://www.example.com/hello/sayHello",
+            new QName("http://www.example.com/hello", "sayHelloWorld")).getName());
+      // Body matches no operation: keep action.
+      assertEquals("sayHello", routes.findSoapOperation("http://www.example.com/hello/sayHello",
+            new QName("http://www.example.com/hello", "sayGoodbye")).getName());
+      assertNull(routes.findSoapOperation(null, new QName("http://www.example.com/hello", "sayGoodbye")));
+   }
+
+   @Test
+   public void testInvalidationOnServiceUpdate() {
+      Service created = null;
+      try {
+         created = serviceService.createGenericResourceService("Order Service", "1.0", "order");
+      } catch (Exception e) {
+         fail("No exception should be thrown");
+      }
+
+      Service indexed = routingIndex.getService("Order Service", "1.0");
+      assertNotNull(indexed);
+      for (Operation operation : indexed.getOperations()) {
+         assertNull(operation.getDefaultDelay());
+      }
+
+      // Update operation and check index has been refreshed.
+      serviceService.updateOperation(created.getId(), "GET /order", null, null, 100L);
+      indexed = routingIndex.getService("Order Service", "1.0");
+      for (Operation operation : indexed.getOperations()) {
+         if ("GET /order".equals(operation.getName())) {
+            assertEquals(Long.valueOf(100L), operation.getDefaultDelay());
+         }
+      }
+
+      // Delete service and check index does not hold it anymore.
+      serviceService.deleteService(created.getId());
+      assertNull(routingIndex.getService("Order Service", "1.0"));
+   }
+
+   @Test
+   public void testRegisterServiceLoadedBeforeInvalidation() {
+      Service service = new Service();
+      service.setName("Order Service");
+      service.setVersion("1.0");
+
+      // Service is loaded, then an update is received before it is registered.
+      long generation = routingIndex.getGeneration();
+      routingIndex.onApplicationEvent(new ServiceUpdateEvent(this, "1234", "Order Service", "1.0",
+            ServiceUpdateEvent.ChangeType.UPDATED));
+      assertNotNull(routingIndex.registerService(service, generation));
+      assertNull(routingIndex.getServiceRoutesIfPresent("Order Service", "1.0"));
+
+      // Registering with current generation keeps the routes.
+      routingIndex.registerService(service, routingIndex.getGeneration());
+      assertNotNull(routingIndex.getServiceRoutesIfPresent("Order Service", "1.0"));
+   }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.DailyStatistic;
+import io.github.microcks.domain.GenericResource;
+import io.github.microcks.domain.Request;
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import io.github.microcks.repository.RepositoryTestsConfiguration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for MongoIndexManager class.
+ * @author laurent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = RepositoryTestsConfiguration.class)
+public class MongoIndexManagerTest {
+
+   @Autowired
+   private MongoIndexManager indexManager;
+
+   @Autowired
+   private MongoTemplate template;
+
+   @Test
+   public void testEnsureIndexes() {
+      // Previous versions declared an index now superseded.
+      template.indexOps(GenericResource.class)
+            .ensureIndex(new Index().named("serviceId").on("serviceId", Direction.ASC));
+
+      assertEquals(8, indexManager.ensureIndexes());
+      // Ensuring twice should be idempotent.
+      assertEquals(8, indexManager.ensureIndexes());
+
+      List<String> indexes = getIndexNames(Response.class);
+      assertTrue(indexes.contains("operationId_dispatchCriteria"));
+      assertTrue(indexes.contains("operationId_name"));
+      assertTrue(indexes.contains("testCaseId"));
+
+      indexes = getIndexNames(Request.class);
+      assertTrue(indexes.contains("operationId"));
+      assertTrue(indexes.contains("testCaseId"));
+
+      assertTrue(getIndexNames(Service.class).contains("name_version"));
+      indexes = getIndexNames(GenericResource.class);
+      assertTrue(indexes.contains("serviceId__id"));
+      assertFalse(indexes.contains("serviceId"));
+
+      assertTrue(getIndexNames(DailyStatistic.class).contains("day_dailyCount"));
+   }
+
+   @Test
+   public void testExplainQueries() {
+      indexManager.ensureIndexes();
+
+      List<MongoIndexManager.QueryPlanDiagnostic> diagnostics = indexManager.explainQueries();
+      assertEquals(10, diagnostics.size());
+      for (MongoIndexManager.QueryPlanDiagnostic diagnostic : diagnostics) {
+         assertNotNull(diagnostic.getQuery());
+         assertNotNull(diagnostic.getCollection());
+      }
+   }
+
+   private List<String> getIndexNames(Class<?> entityClass) {
+      return template.indexOps(entityClass).getIndexInfo().stream()
+            .map(IndexInfo::getName).collect(Collectors.toList());
+   }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.service;
+
+import io.github.microcks.domain.Header;
+import io.github.microcks.domain.Response;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for PreparedResponse class.
+ * @author laurent
+ */
+public class PreparedResponseTest {
+
+   @Test
+   public void testPrepare() {
+      Response response = new Response();
+      response.setName("created");
+      response.setStatus("201");
+      response.setMediaType("application/json");
+      response.setContent("{\"name\": \"Déjà vu\"}");
+      response.setHeaders(new HashSet<>(Arrays.asList(
+            buildHeader("Cache-Control", "no-cache"),
+            buildHeader("Transfer-Encoding", "chunked"),
+            buildHeader("Location", "/beers/1"))));
+
+      PreparedResponse prepared = PreparedResponse.prepare(response);
+      byte[] expectedBody = "{\"name\": \"Déjà vu\"}".getBytes(StandardCharsets.UTF_8);
+
+      assertSame(response, prepared.getResponse());
+      assertEquals(HttpStatus.CREATED, prepared.getStatus());
+      assertArrayEquals(expectedBody, prepared.getBody());
+      assertEquals(MediaType.valueOf("application/json;charset=UTF-8"), prepared.getHeaders().getContentType());
+      assertEquals(expectedBody.length, prepared.getHeaders().getContentLength());
+      assertEquals("no-cache", prepared.getHeaders().getFirst("Cache-Control"));
+      assertNull(prepared.getHeaders().getFirst(HttpHeaders.TRANSFER_ENCODING));
+      assertNull(prepared.getHeaders().getFirst(HttpHeaders.LOCATION));
+      assertEquals("/beers/1", prepared.getLocation());
+      assertNotNull(prepared.getETag());
+      assertEquals(prepared.getETag(), prepared.getHeaders().getETag());
+
+      ResponseEntity<byte[]> entity = prepared.toResponseEntity("http://localhost:8080/rest/Beers/1.0");
+      assertEquals(HttpStatus.CREATED, entity.getStatusCode());
+      assertSame(prepared.getBody(), entity.getBody());
+      assertEquals("http://localhost:8080/rest/Beers/1.0/beers/1", entity.getHeaders().getFirst(HttpHeaders.LOCATION));
+      assertEquals("no-cache", entity.getHeaders().getFirst("Cache-Control"));
+
+      // Not modified response should not describe content.
+      entity = prepared.toNotModifiedEntity();
+      assertEquals(HttpStatus.NOT_MODIFIED, entity.getStatusCode());
+      assertNull(entity.getBody());
+      assertEquals(prepared.getETag(), entity.getHeaders().getETag());
+      assertNull(entity.getHeaders().getContentType());
+      assertEquals("no-cache", entity.getHeaders().getFirst("Cache-Control"));
+   }
+
+   @Test
+   public void testPrepareWithoutMediaType() {
+      Response response = new Response();
+      response.setName("plain");
+      response.setContent("Déjà vu");
+
+      PreparedResponse prepared = PreparedResponse.prepare(response);
+      assertArrayEquals("Déjà vu".getBytes(StandardCharsets.UTF_8), prepared.getBody());
+      assertEquals(MediaType.valueOf("text/plain;charset=UTF-8"), prepared.getHeaders().getContentType());
+
+      ResponseEntity<byte[]> entity = prepared.toResponseEntity(null);
+      assertEquals(MediaType.valueOf("text/plain;charset=UTF-8"), entity.getHeaders().getContentType());
+      assertNull(prepared.toNotModifiedEntity().getHeaders().getContentType());
+   }
+
+   @Test
+   public void testPrepareWithoutLocation() {
+      Response response = new Response();
+      response.setName("empty");
+      response.setContent(null);
+
+      PreparedResponse prepared = PreparedResponse.prepare(response);
+      assertEquals(HttpStatus.OK, prepared.getStatus());
+      assertNull(prepared.getBody());
+      assertNull(prepared.getHeaders().getContentType());
+
+      ResponseEntity<byte[]> entity = prepared.toResponseEntity(null);
+      assertEquals(prepared.getHeaders(), entity.getHeaders());
+      assertNull(entity.getBody());
+   }
+
+   @Test
+   public void testCompressedVariants() {
+      StringBuilder content = new StringBuilder("[");
+      for (int i=0; i<100; i++) {
+         content.append("{\"name\": \"Rodenbach\", \"country\": \"Belgium\"},");
+      }
+      Response response = new Response();
+      response.setName("beers");
+      response.setMediaType("application/json");
+      response.setContent(content.append("]").toString());
+
+      PreparedResponse prepared = PreparedResponse.prepare(response);
+      byte[] gzipped = prepared.getEncodedBody("gzip");
+      assertTrue(gzipped.length < prepared.getBody().length);
+      // Variant should be computed only once.
+      assertSame(gzipped, prepared.getEncodedBody("gzip"));
+      assertNotEquals(prepared.getETag(), prepared.getETag("gzip"));
+      assertEquals(prepared.getETag(), prepared.getETag(null));
+
+      ResponseEntity<byte[]> entity = prepared.toResponseEntity(null, "gzip");
+      assertSame(gzipped, entity.getBody());
+      assertEquals("gzip", entity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+      assertEquals(gzipped.length, entity.getHeaders().getContentLength());
+      assertEquals(prepared.getETag("gzip"), entity.getHeaders().getETag());
+      assertEquals(MediaType.valueOf("application/json;charset=UTF-8"), entity.getHeaders().getContentType());
+
+      entity = prepared.toResponseEntity(null, "deflate");
+      assertEquals("deflate", entity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+
+      // Uncompressed form is left untouched.
+      entity = prepared.toResponseEntity(null);
+      assertNull(entity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+      assertSame(prepared.getBody(), entity.getBody());
+   }
+
+   @Test
+   public void testVaryOnCompressibleIdentity() {
+      Response response = new Response();
+      response.setName("beers");
+      response.setMediaType("application/json");
+      response.setContent("[{\"name\": \"Rodenbach\"}]");
+      response.setHeaders(new HashSet<>(Collections.singletonList(buildHeader("Vary", "Origin"))));
+
+      PreparedResponse prepared = PreparedResponse.prepare(response);
+
+      // Identity representation of a compressible response varies on encoding like compressed ones.
+      ResponseEntity<byte[]> entity = prepared.toResponseEntity(null, null, true);
+      assertSame(prepared.getBody(), entity.getBody());
+      assertNull(entity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+      assertEquals(prepared.getETag(), entity.getHeaders().getETag());
+      assertEquals(Arrays.asList("Origin", HttpHeaders.ACCEPT_ENCODING), entity.getHeaders().getVary());
+      assertEquals(Arrays.asList("Origin", HttpHeaders.ACCEPT_ENCODING),
+            prepared.toNotModifiedEntity(null, true).getHeaders().getVary());
+      assertEquals(Arrays.asList("Origin", HttpHeaders.ACCEPT_ENCODING),
+            prepared.toResponseEntity(null, "gzip", true).getHeaders().getVary());
+
+      // Prepared headers are left untouched.
+      assertEquals(Collections.singletonList("Origin"), prepared.getHeaders().getVary());
+      assertEquals(Collections.singletonList("Origin"), prepared.toResponseEntity(null).getHeaders().getVary());
+   }
+
+   @Test
+   public void testMockDefinedETag() {
+      Response response = new Response();
+      response.setName("beer");
+      response.setMediaType("application/json");
+      response.setContent("{\"name\": \"Rodenbach\"}");
+      response.setHeaders(new HashSet<>(Collections.singletonList(buildHeader("ETag", "W/\"rodenbach-1\""))));
+
+      // Entity tag defined by mock is kept.
+      PreparedResponse prepared = PreparedResponse.prepare(response);
+      assertEquals("W/\"rodenbach-1\"", prepared.getETag());
+      assertEquals(Collections.singletonList("W/\"rodenbach-1\""), prepared.getHeaders().get(HttpHeaders.ETAG));
+      assertEquals("W/\"rodenbach-1\"", prepared.toNotModifiedEntity().getHeaders().getFirst(HttpHeaders.ETAG));
+
+      // Encoded representations derive their own from it.
+      assertEquals("W/\"rodenbach-1-gzip\"", prepared.getETag("gzip"));
+      assertEquals("W/\"rodenbach-1-gzip\"",
+            prepared.toResponseEntity(null, "gzip").getHeaders().getFirst(HttpHeaders.ETAG));
+
+      // Even unquoted ones.
+      response.setHeaders(new HashSet<>(Collections.singletonList(buildHeader("ETag", "rodenbach-1"))));
+      prepared = PreparedResponse.prepare(response);
+      assertEquals("rodenbach-1", prepared.getETag());
+      assertEquals("rodenbach-1-deflate",
+            prepared.toNotModifiedEntity("deflate", true).getHeaders().getFirst(HttpHeaders.ETAG));
+   }
+
+   private Header buildHeader(String name, String value) {
+      Header header = new Header();
+      header.setName(name);
+      header.setValues(new HashSet<>(Collections.singletonList(value)));
+      return header;
+   }
+}
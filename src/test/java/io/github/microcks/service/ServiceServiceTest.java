@@ -18,20 +18,35 @@
  */
 package io.github.microcks.service;
 
+import io.github.microcks.domain.Message;
 import io.github.microcks.domain.Operation;
+import io.github.microcks.domain.Request;
+import io.github.microcks.domain.Response;
 import io.github.microcks.domain.Service;
 import io.github.microcks.domain.ServiceType;
 import io.github.microcks.repository.RepositoryTestsConfiguration;
+import io.github.microcks.repository.RequestRepository;
+import io.github.microcks.repository.ResponseRepository;
 import io.github.microcks.repository.ServiceRepository;
 import io.github.microcks.util.DispatchStyles;
 import io.github.microcks.util.EntityAlreadyExistsException;
+import io.github.microcks.util.IdBuilder;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 import static org.junit.Assert.*;
 
 /**
@@ -49,6 +64,15 @@ public class ServiceServiceTest {
    @Autowired
    private ServiceRepository repository;
 
+   @Autowired
+   private RequestRepository requestRepository;
+
+   @Autowired
+   private ResponseRepository responseRepository;
+
+   @Autowired
+   private MongoTemplate template;
+
    @Test
    public void testCreateGenericResourceService() {
       Service created = null;
@@ -101,4 +125,80 @@ public class ServiceServiceTest {
       }
       Service second = service.createGenericResourceService("Order Service", "1.0", "order");
    }
+
+   @Test
+   public void testImportServiceDefinitionTwice() throws Exception {
+      File artifact = new File("target/test-classes/io/github/microcks/util/openapi/cars-openapi.yaml");
+      List<Service> services = service.importServiceDefinition(artifact);
+      assertEquals(1, services.size());
+      Service imported = repository.findByNameAndVersion(services.get(0).getName(), services.get(0).getVersion());
+      assertNotNull(imported);
+
+      List<String> operationIds = new ArrayList<>();
+      for (Operation operation : imported.getOperations()) {
+         operationIds.add(IdBuilder.buildOperationId(imported, operation));
+      }
+      List<Response> responses = responseRepository.findByOperationIdIn(operationIds);
+      List<Request> requests = requestRepository.findByOperationIdIn(operationIds);
+      assertFalse(responses.isEmpty());
+      for (Request request : requests) {
+         assertNotNull(request.getContentHash());
+         assertTrue(responses.stream().anyMatch(response -> response.getId().equals(request.getResponseId())));
+      }
+
+      // Importing unchanged artifact again keeps the same service and messages.
+      service.importServiceDefinition(artifact);
+      assertEquals(1, repository.count());
+      assertEquals(imported.getId(), repository.findByNameAndVersion(imported.getName(), imported.getVersion()).getId());
+      assertEquals(ids(responses), ids(responseRepository.findByOperationIdIn(operationIds)));
+      assertEquals(ids(requests), ids(requestRepository.findByOperationIdIn(operationIds)));
+
+      // A changed response is rewritten while the other ones are kept.
+      Response changed = responses.get(0);
+      changed.setContentHash("outdated");
+      responseRepository.save(changed);
+      service.importServiceDefinition(artifact);
+      List<Response> reimported = responseRepository.findByOperationIdIn(operationIds);
+      assertEquals(responses.size(), reimported.size());
+      assertFalse(ids(reimported).contains(changed.getId()));
+      assertEquals(responses.size() - 1, ids(reimported).stream().filter(ids(responses)::contains).count());
+   }
+
+   @Test
+   public void testReimportKeepsMessageIds() throws Exception {
+      File artifact = new File("target/test-classes/io/github/microcks/util/openapi/cars-openapi.yaml");
+      Service imported = service.importServiceDefinition(artifact).get(0);
+      List<String> operationIds = new ArrayList<>();
+      for (Operation operation : imported.getOperations()) {
+         operationIds.add(IdBuilder.buildOperationId(imported, operation));
+      }
+      List<Response> responses = responseRepository.findByOperationIdIn(operationIds);
+      List<Request> requests = requestRepository.findByOperationIdIn(operationIds);
+      assertFalse(responses.isEmpty());
+      assertFalse(requests.isEmpty());
+
+      // Both requests and responses are inserted with pre-assigned ObjectIds.
+      for (Request request : requests) {
+         assertTrue(ObjectId.isValid(request.getId()));
+         Document stored = template.findById(request.getId(), Document.class, "request");
+         assertEquals(ObjectId.class, stored.get("_id").getClass());
+      }
+      for (Response response : responses) {
+         assertTrue(ObjectId.isValid(response.getId()));
+         Document stored = template.findById(response.getId(), Document.class, "response");
+         assertEquals(ObjectId.class, stored.get("_id").getClass());
+      }
+
+      // Re-importing unchanged artifact many times changes no request nor response id.
+      for (int i=0; i<2; i++) {
+         service.importServiceDefinition(artifact);
+         assertEquals(ids(responses), ids(responseRepository.findByOperationIdIn(operationIds)));
+         assertEquals(ids(requests), ids(requestRepository.findByOperationIdIn(operationIds)));
+      }
+   }
+
+   private static Set<String> ids(List<? extends Message> messages) {
+      return messages.stream().map(message -> message instanceof Response ? ((Response) message).getId()
+            : ((Request) message).getId()).collect(Collectors.toSet());
+   }
 }
@@ -0,0 +1,87 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for CompressionHelper class.
+ * @author laurent
+ */
+public class CompressionHelperTest {
+
+   @Test
+   public void testNegotiateEncoding() {
+      assertNull(CompressionHelper.negotiateEncoding(null));
+      assertNull(CompressionHelper.negotiateEncoding(""));
+      assertNull(CompressionHelper.negotiateEncoding("br, identity"));
+      assertEquals("gzip", CompressionHelper.negotiateEncoding("gzip, deflate, br"));
+      assertEquals("gzip", CompressionHelper.negotiateEncoding("deflate, gzip"));
+      assertEquals("deflate", CompressionHelper.negotiateEncoding("deflate"));
+      assertEquals("deflate", CompressionHelper.negotiateEncoding("gzip;q=0.5, deflate;q=0.8"));
+      assertNull(CompressionHelper.negotiateEncoding("gzip;q=0"));
+      assertEquals("gzip", CompressionHelper.negotiateEncoding("*"));
+   }
+
+   @Test
+   public void testIsCompressible() {
+      assertTrue(CompressionHelper.isCompressible("application/json;charset=UTF-8"));
+      assertTrue(CompressionHelper.isCompressible("text/xml"));
+      assertTrue(CompressionHelper.isCompressible("application/soap+xml"));
+      assertFalse(CompressionHelper.isCompressible("image/png"));
+      assertFalse(CompressionHelper.isCompressible(null));
+   }
+
+   @Test
+   public void testCompress() throws IOException {
+      StringBuilder builder = new StringBuilder();
+      for (int i=0; i<200; i++) {
+         builder.append("{\"name\": \"Rodenbach\", \"country\": \"Belgium\"},");
+      }
+      byte[] content = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+      byte[] gzipped = CompressionHelper.compress(content, CompressionHelper.GZIP);
+      assertTrue(gzipped.length < content.length);
+      assertArrayEquals(content, readAll(new GZIPInputStream(new ByteArrayInputStream(gzipped))));
+
+      byte[] deflated = CompressionHelper.compress(content, CompressionHelper.DEFLATE);
+      assertTrue(deflated.length < content.length);
+      assertArrayEquals(content, readAll(new InflaterInputStream(new ByteArrayInputStream(deflated))));
+   }
+
+   private byte[] readAll(InputStream stream) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int read;
+      while ((read = stream.read(buffer)) != -1) {
+         out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+   }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for ContentHashHelper class.
+ * @author laurent
+ */
+public class ContentHashHelperTest {
+
+   @Test
+   public void testHash() {
+      Document document = new Document("_id", "1").append("name", "Rodenbach").append("content", "{\"foo\": 1}")
+            .append("headers", Arrays.asList(new Document("name", "x-a").append("values", Arrays.asList("1", "2")),
+                  new Document("name", "x-b").append("values", Arrays.asList("3"))));
+      Document reordered = new Document("headers", Arrays.asList(
+                  new Document("values", Arrays.asList("3")).append("name", "x-b"),
+                  new Document("name", "x-a").append("values", Arrays.asList("2", "1"))))
+            .append("content", "{\"foo\": 1}").append("name", "Rodenbach").append("_id", "2");
+
+      Set<String> unorderedPaths = new HashSet<>(Arrays.asList("headers", "headers.values"));
+
+      String hash = ContentHashHelper.hash(document, unorderedPaths, "_id");
+      assertEquals(32, hash.length());
+      assertEquals(hash, ContentHashHelper.hash(reordered, unorderedPaths, "_id"));
+      assertNotEquals(hash, ContentHashHelper.hash(reordered, unorderedPaths));
+      // Without unordered paths, arrays order matters.
+      assertNotEquals(ContentHashHelper.hash(document, "_id"), ContentHashHelper.hash(reordered, "_id"));
+
+      reordered.put("content", "{\"foo\": 2}");
+      assertNotEquals(hash, ContentHashHelper.hash(reordered, unorderedPaths, "_id"));
+
+      // Quoting prevents values from colliding with structure.
+      assertNotEquals(ContentHashHelper.hash(new Document("a", "b\",\"c")),
+            ContentHashHelper.hash(new Document("a", "b").append("c", "")));
+   }
+
+   @Test
+   public void testHashOrderedArrays() {
+      Document document = new Document("name", "list").append("queryParameters", Arrays.asList(
+            new Document("name", "page").append("value", "1"), new Document("name", "size").append("value", "10")));
+      Document reordered = new Document("name", "list").append("queryParameters", Arrays.asList(
+            new Document("name", "size").append("value", "10"), new Document("name", "page").append("value", "1")));
+
+      // Only arrays declared as unordered - or Java sets - can be reordered without changing hash.
+      Set<String> unorderedPaths = new HashSet<>(Arrays.asList("headers", "headers.values"));
+      assertNotEquals(ContentHashHelper.hash(document, unorderedPaths), ContentHashHelper.hash(reordered, unorderedPaths));
+      assertEquals(ContentHashHelper.hash(new Document("values", new HashSet<>(Arrays.asList("1", "2")))),
+            ContentHashHelper.hash(new Document("values", Arrays.asList("2", "1")), Collections.singleton("values")));
+   }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util;
+
+import org.bson.BsonRegularExpression;
+import org.bson.Document;
+import org.junit.Test;
+
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for DocumentQueryMatcher class.
+ * @author laurent
+ */
+public class DocumentQueryMatcherTest {
+
+   private static final Document BEER = Document.parse("{\"name\": \"Rodenbach\", \"country\": \"Belgium\", "
+         + "\"rating\": 4.2, \"type\": {\"name\": \"Brown ale\"}, \"tags\": [\"sour\", \"red\"]}");
+
+   @Test
+   public void testEquality() {
+      assertTrue(DocumentQueryMatcher.matches(Document.parse("{}"), BEER));
+      assertTrue(DocumentQueryMatcher.matches(Document.parse("{\"country\": \"Belgium\"}"), BEER));
+      assertFalse(DocumentQueryMatcher.matches(Document.parse("{\"country\": \"Belgium\", \"name\": \"Orval\"}"), BEER));
+      assertTrue(DocumentQueryMatcher.matches(Document.parse("{\"type.name\": \"Brown ale\"}"), BEER));
+      assertTrue(DocumentQueryMatcher.matches(Document.parse("{\"tags\": \"red\"}"), BEER));
+      assertFalse(DocumentQueryMatcher.matches(Document.parse("{\"tags\": \"blond\"}"), BEER));
+      assertFalse(DocumentQueryMatcher.matches(Document.parse("{\"missing\": \"value\"}"), BEER));
+   }
+
+   @Test
+   public void testOperators() {
+      assertTrue(DocumentQueryMatcher.matches(Document.parse("{\"rating\": {\"$gt\": 4}}"), BEER));
+      assertFalse(DocumentQueryMatcher.matches(Document.parse("{\"rating\": {\"$gte\": 4, \"$lt\": 4.2}}"), BEER));
+      assertTrue(DocumentQueryMatcher.matches(Document.parse("{\"country\": {\"$in\": [\"Belgium\", \"France\"]}}"), BEER));
+      assertFalse(DocumentQueryMatcher.matches(Document.parse("{\"country\": {\"$nin\": [\"Belgium\"]}}"), BEER));
+      assertTrue(DocumentQueryMatcher.matches(Document.parse("{\"country\": {\"$ne\": \"France\"}}"), BEER));
+      assertTrue(DocumentQueryMatcher.matches(Document.parse("{\"missing\": {\"$exists\": false}}"), BEER));
+      assertTrue(DocumentQueryMatcher.matches(Document.parse("{\"name\": {\"$regex\": \"^Roden\"}}"), BEER));
+      assertFalse(DocumentQueryMatcher.matches(Document.parse("{\"name\": {\"$where\": \"true\"}}"), BEER));
+   }
+
+   @Test
+   public void testLogicalOperators() {
+      assertTrue(DocumentQueryMatcher.matches(
+            Document.parse("{\"$or\": [{\"country\": \"France\"}, {\"rating\": {\"$lte\": 5}}]}"), BEER));
+      assertFalse(DocumentQueryMatcher.matches(
+            Document.parse("{\"$and\": [{\"country\": \"Belgium\"}, {\"name\": \"Orval\"}]}"), BEER));
+      assertTrue(DocumentQueryMatcher.matches(Document.parse("{\"$nor\": [{\"country\": \"France\"}]}"), BEER));
+   }
+
+   @Test
+   public void testRegularExpressions() {
+      assertFalse(DocumentQueryMatcher.matches(Document.parse("{\"name\": {\"$regex\": \"^roden\"}}"), BEER));
+      assertTrue(DocumentQueryMatcher.matches(
+            new Document("name", new Document("$regex", "^roden").append("$options", "i")), BEER));
+      assertTrue(DocumentQueryMatcher.matches(
+            Document.parse("{\"name\": {\"$regex\": \"^roden\", \"$options\": \"i\"}}"), BEER));
+      assertTrue(DocumentQueryMatcher.matches(Document.parse("{\"name\": /^RODEN/i}"), BEER));
+      assertTrue(DocumentQueryMatcher.matches(
+            new Document("name", new Document("$regex", new BsonRegularExpression("BACH$", "i"))), BEER));
+      assertTrue(DocumentQueryMatcher.matches(Document.parse("{\"tags\": {\"$in\": [/^re/, \"blond\"]}}"), BEER));
+      assertFalse(DocumentQueryMatcher.matches(Document.parse("{\"country\": /^France/}"), BEER));
+   }
+
+   @Test
+   public void testCompiledQuery() {
+      Predicate<Document> matcher = DocumentQueryMatcher.compile(
+            Document.parse("{\"name\": {\"$regex\": \"^o\", \"$options\": \"i\"}}"));
+      assertFalse(matcher.test(BEER));
+      assertTrue(matcher.test(Document.parse("{\"name\": \"Orval\"}")));
+      assertTrue(matcher.test(Document.parse("{\"name\": \"orval\"}")));
+   }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for EntityTagHelper class.
+ * @author laurent
+ */
+public class EntityTagHelperTest {
+
+   @Test
+   public void testBuildStrongETag() {
+      String etag = EntityTagHelper.buildStrongETag("Hello".getBytes(StandardCharsets.UTF_8));
+      assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+      assertEquals(etag, EntityTagHelper.buildStrongETag("Hello".getBytes(StandardCharsets.UTF_8)));
+      assertNotEquals(etag, EntityTagHelper.buildStrongETag("Hello!".getBytes(StandardCharsets.UTF_8)));
+
+      assertEquals("\"1234-2\"", EntityTagHelper.buildStrongETag("1234-2"));
+   }
+
+   @Test
+   public void testIsNotModified() {
+      String etag = "\"1234-2\"";
+
+      MockHttpServletRequest request = new MockHttpServletRequest("GET", "/dynarest/Beers/1.0/beer/1234");
+      assertFalse(EntityTagHelper.isNotModified(request, etag));
+
+      request.addHeader("If-None-Match", "\"1234-1\"");
+      assertFalse(EntityTagHelper.isNotModified(request, etag));
+
+      request = new MockHttpServletRequest("GET", "/dynarest/Beers/1.0/beer/1234");
+      request.addHeader("If-None-Match", "\"1234-1\", W/\"1234-2\"");
+      assertTrue(EntityTagHelper.isNotModified(request, etag));
+
+      request = new MockHttpServletRequest("HEAD", "/dynarest/Beers/1.0/beer/1234");
+      request.addHeader("If-None-Match", "*");
+      assertTrue(EntityTagHelper.isNotModified(request, etag));
+
+      // Unsafe methods should never be answered with a 304.
+      request = new MockHttpServletRequest("PUT", "/dynarest/Beers/1.0/beer/1234");
+      request.addHeader("If-None-Match", etag);
+      assertFalse(EntityTagHelper.isNotModified(request, etag));
+
+      // Weak entity tags defined by mocks use weak comparison too.
+      request = new MockHttpServletRequest("GET", "/rest/Beers/1.0/beer/1234");
+      request.addHeader("If-None-Match", "\"1234-2\"");
+      assertTrue(EntityTagHelper.isNotModified(request, "W/\"1234-2\""));
+   }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util;
+
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+
+import static org.junit.Assert.*;
+
+/**
+ * This is a test case for SoapMessageReader class.
+ * @author laurent
+ */
+public class SoapMessageReaderTest {
+
+   @Test
+   public void testReadFirstBodyElementName() throws Exception {
+      String payload = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:hel=\"http://www.example.com/hello\">\n" +
+            "   <soapenv:Header>\n" +
+            "      <hel:trace>1234</hel:trace>\n" +
+            "   </soapenv:Header>\n" +
+            "   <soapenv:Body>\n" +
+            "      <hel:sayHello>\n" +
+            "         <name>Karla</name>\n" +
+            "      </hel:sayHello>\n" +
+            "   </soapenv:Body>\n" +
+            "</soapenv:Envelope>";
+
+      QName name = SoapMessageReader.readFirstBodyElementName(payload);
+      assertEquals(new QName("http://www.example.com/hello", "sayHello"), name);
+
+      // Reading should stop before reaching malformed end of document.
+      name = SoapMessageReader.readFirstBodyElementName(payload.substring(0, payload.indexOf("<name>")));
+      assertEquals("sayHello", name.getLocalPart());
+   }
+
+   @Test
+   public void testReadDashNamespaceBodyElementName() throws Exception {
+      String payload = "<soap-env:Envelope xmlns:soap-env=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:hel=\"http://www.example.com/hello\">\n" +
+            "   <soap-env:Header/>\n" +
+            "   <soap-env:Body>\n" +
+            "      <hel:sayHello>\n" +
+            "         <name>Karla</name>\n" +
+            "      </hel:sayHello>\n" +
+            "   </soap-env:Body>\n" +
+            "</soap-env:Envelope>";
+
+      assertEquals(new QName("http://www.example.com/hello", "sayHello"),
+            SoapMessageReader.readFirstBodyElementName(payload));
+   }
+
+   @Test
+   public void testReadBodyElementNameWithNS() throws Exception {
+      String payload = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">\n" +
+            "   <soapenv:Header/>\n" +
+            "   <soapenv:Body>\n" +
+            "      <hel:sayHello xmlns:hel=\"http://www.example.com/hello\">\n" +
+            "         <name>Karla</name>\n" +
+            "      </hel:sayHello>\n" +
+            "   </soapenv:Body>\n" +
+            "</soapenv:Envelope>";
+
+      assertEquals(new QName("http://www.example.com/hello", "sayHello"),
+            SoapMessageReader.readFirstBodyElementName(payload));
+   }
+
+   @Test
+   public void testReadDashNamespaceBodyElementNameWithNS() throws Exception {
+      String payload = "<soap-env:Envelope xmlns:soap-env=\"http://schemas.xmlsoap.org/soap/envelope/\">\n" +
+            "   <soap-env:Header/>\n" +
+            "   <soap-env:Body>\n" +
+            "      <hel:sayHello xmlns:hel=\"http://www.example.com/hello\">\n" +
+            "         <name>Karla</name>\n" +
+            "      </hel:sayHello>\n" +
+            "   </soap-env:Body>\n" +
+            "</soap-env:Envelope>";
+
+      assertEquals(new QName("http://www.example.com/hello", "sayHello"),
+            SoapMessageReader.readFirstBodyElementName(payload));
+   }
+
+   @Test
+   public void testReadOtherBodyElementName() throws Exception {
+      String payload = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">\n" +
+            "   <soapenv:Header/>\n" +
+            "   <soapenv:Body>\n" +
+            "      <hel:sayHelloWorld xmlns:hel=\"http://www.example.com/hello\">\n" +
+            "         <name>Karla</name>\n" +
+            "      </hel:sayHelloWorld>\n" +
+            "   </soapenv:Body>\n" +
+            "</soapenv:Envelope>";
+
+      QName name = SoapMessageReader.readFirstBodyElementName(payload);
+      assertEquals("sayHelloWorld", name.getLocalPart());
+      assertNotEquals("sayHello", name.getLocalPart());
+   }
+
+   @Test
+   public void testReadEmptyBody() throws Exception {
+      String payload = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">\n" +
+            "   <soapenv:Body/>\n" +
+            "</soapenv:Envelope>";
+
+      assertNull(SoapMessageReader.readFirstBodyElementName(payload));
+   }
+
+   @Test
+   public void testExtractSoapAction() {
+      assertEquals("http://www.example.com/hello/sayHello",
+            SoapMessageReader.extractSoapAction("\"http://www.example.com/hello/sayHello\""));
+      assertEquals("sayHello", SoapMessageReader.extractSoapAction("sayHello"));
+      assertNull(SoapMessageReader.extractSoapAction("\"\""));
+      assertNull(SoapMessageReader.extractSoapAction(null));
+   }
+}
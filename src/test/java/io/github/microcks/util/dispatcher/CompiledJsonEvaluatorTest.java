@@ -0,0 +1,137 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util.dispatcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+/**
+ * This is a test case for CompiledJsonEvaluator.
+ * @author laurent
+ */
+public class CompiledJsonEvaluatorTest {
+
+   @Test
+   public void testAdjacentRanges() throws Exception {
+      DispatchCases cases = new DispatchCases();
+      cases.put("[0;5]", "Low");
+      cases.put("]5;10[", "Medium");
+      cases.put("[10;20]", "High");
+      cases.put("]30;40]", "Very high");
+      cases.put("default", "Unknown");
+
+      JsonEvaluationSpecification specification = new JsonEvaluationSpecification();
+      specification.setExp("/rating");
+      specification.setOperator(EvaluationOperator.range);
+      specification.setCases(cases);
+
+      CompiledJsonEvaluator evaluator = CompiledJsonEvaluator.compile(specification);
+      assertEquals("Unknown", evaluator.evaluate("{\"rating\": -1}"));
+      assertEquals("Low", evaluator.evaluate("{\"rating\": 0}"));
+      assertEquals("Low", evaluator.evaluate("{\"rating\": 5}"));
+      assertEquals("Medium", evaluator.evaluate("{\"rating\": 5.1}"));
+      assertEquals("High", evaluator.evaluate("{\"rating\": 10}"));
+      assertEquals("High", evaluator.evaluate("{\"rating\": 20}"));
+      assertEquals("Unknown", evaluator.evaluate("{\"rating\": 25}"));
+      assertEquals("Unknown", evaluator.evaluate("{\"rating\": 30}"));
+      assertEquals("Very high", evaluator.evaluate("{\"rating\": 40}"));
+      assertEquals("Unknown", evaluator.evaluate("{\"rating\": \"none\"}"));
+   }
+
+   @Test
+   public void testOverlappingSizeRanges() throws Exception {
+      DispatchCases cases = new DispatchCases();
+      cases.put("[0;5]", "Small");
+      cases.put("[3;3]", "Exactly three");
+      cases.put("default", "Unknown");
+
+      JsonEvaluationSpecification specification = new JsonEvaluationSpecification();
+      specification.setExp("/cars");
+      specification.setOperator(EvaluationOperator.size);
+      specification.setCases(cases);
+
+      // Overlapping ranges are evaluated in declaration order, as with JsonExpressionEvaluator.
+      CompiledJsonEvaluator evaluator = CompiledJsonEvaluator.compile(specification);
+      String payload = "{\"cars\": [1, 2, 3]}";
+      assertEquals(JsonExpressionEvaluator.evaluate(payload, specification), evaluator.evaluate(payload));
+      assertEquals("Small", evaluator.evaluate("{\"cars\": [1]}"));
+      assertEquals("Unknown", evaluator.evaluate("{\"cars\": \"none\"}"));
+   }
+
+   @Test(expected = JsonMappingException.class)
+   public void testInvalidRegexp() throws Exception {
+      DispatchCases cases = new DispatchCases();
+      cases.put("[a-z", "Invalid");
+
+      JsonEvaluationSpecification specification = new JsonEvaluationSpecification();
+      specification.setExp("/name");
+      specification.setOperator(EvaluationOperator.regexp);
+      specification.setCases(cases);
+
+      CompiledJsonEvaluator.compile(specification);
+   }
+
+   @Test
+   public void testStreamingEvaluation() throws Exception {
+      String payload = "{\"driver\": {\"name\": \"Laurent\", \"licence\": null, \"rating\": 4.20}, \"cars\": [" +
+            "{\"name\": \"307\", \"tags\": [\"old\", {\"nested\": true}], \"year\": 2003}, " +
+            "{\"name\": \"jean-pierre\", \"model\": \"Peugeot Traveller\", \"year\": 2017}], \"0\": \"zero\"}";
+
+      DispatchCases cases = new DispatchCases();
+      cases.put("Laurent", "Driver");
+      cases.put("jean-pierre", "Car");
+      cases.put("2017", "Recent");
+      cases.put("4.2", "Rated");
+      cases.put("null", "Null");
+      cases.put("true", "True");
+      cases.put("zero", "Zero");
+      cases.put("", "Empty");
+      cases.put("default", "Unknown");
+
+      String[] expressions = {"/driver/name", "/cars/1/name", "/cars/1/year", "/driver/rating", "/driver/licence",
+            "/cars/0/tags/1/nested", "/0", "/cars", "/driver", "/cars/2/name", "/cars/name", "/driver/name/first",
+            "/unknown", ""};
+      for (String expression : expressions) {
+         JsonEvaluationSpecification specification = new JsonEvaluationSpecification();
+         specification.setExp(expression);
+         specification.setOperator(EvaluationOperator.equals);
+         specification.setCases(cases);
+
+         CompiledJsonEvaluator evaluator = CompiledJsonEvaluator.compile(specification);
+         assertEquals(expression, evaluator.evaluate(payload), evaluator.evaluateStreaming(payload));
+      }
+
+      // Check array elements counting.
+      DispatchCases sizeCases = new DispatchCases();
+      sizeCases.put("[0;1]", "Few");
+      sizeCases.put("[2;5]", "Some");
+      sizeCases.put("default", "Unknown");
+
+      JsonEvaluationSpecification specification = new JsonEvaluationSpecification();
+      specification.setExp("/cars");
+      specification.setOperator(EvaluationOperator.size);
+      specification.setCases(sizeCases);
+
+      CompiledJsonEvaluator evaluator = CompiledJsonEvaluator.compile(specification);
+      assertEquals("Some", evaluator.evaluateStreaming(payload));
+      assertEquals(evaluator.evaluate(payload), evaluator.evaluateStreaming(payload));
+      specification.setExp("/cars/0/tags/0");
+      assertEquals("Unknown", CompiledJsonEvaluator.compile(specification).evaluateStreaming(payload));
+   }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util.snapshot;
+
+import io.github.microcks.domain.Operation;
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import io.github.microcks.domain.ServiceType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for CatalogSnapshot and CatalogSnapshotWriter classes.
+ * @author laurent
+ */
+public class CatalogSnapshotTest {
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   @Test
+   public void testWriteAndLookup() throws Exception {
+      File file = writeSnapshot();
+
+      CatalogSnapshot snapshot = CatalogSnapshot.open(file.toPath());
+      assertEquals(2, snapshot.getServiceCount());
+      assertEquals(3, snapshot.getResponseCount());
+      assertEquals(2, snapshot.getServices().size());
+
+      Service service = snapshot.findService("HelloService", "1.0");
+      assertNotNull(service);
+      assertEquals(ServiceType.SOAP_HTTP, service.getType());
+      assertEquals("sayHello", service.getOperations().get(0).getName());
+      assertNull(snapshot.findService("HelloService", "2.0"));
+
+      List<Response> responses = snapshot.findResponsesByOperationIdAndDispatchCriteria("1234-sayHello", "?name=karla");
+      assertEquals(1, responses.size());
+      assertEquals("Hello karla!", responses.get(0).getContent());
+      responses = snapshot.findResponsesByOperationIdAndName("1234-sayHello", "laurent");
+      assertEquals(1, responses.size());
+      assertEquals("?name=laurent", responses.get(0).getDispatchCriteria());
+      assertEquals(1, snapshot.findResponsesByOperationIdAndDispatchCriteria("5678-GET /beer", null).size());
+      assertTrue(snapshot.findResponsesByOperationIdAndName("1234-sayHello", "yacine").isEmpty());
+      assertTrue(snapshot.findResponsesByOperationIdAndName("unknown", "laurent").isEmpty());
+   }
+
+   @Test
+   public void testInvalidSnapshot() throws Exception {
+      File file = writeSnapshot();
+      // Corrupt the trailer magic bytes.
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+         raf.seek(raf.length() - 1);
+         raf.write('X');
+      }
+      try {
+         CatalogSnapshot.open(file.toPath());
+         fail("IOException should have been thrown");
+      } catch (IOException ioe) {
+         assertTrue(ioe.getMessage().contains("magic"));
+      }
+
+      // Format version should be checked.
+      file = writeSnapshot();
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+         raf.seek(CatalogSnapshot.MAGIC.length);
+         raf.writeInt(CatalogSnapshot.FORMAT_VERSION + 1);
+      }
+      try {
+         CatalogSnapshot.open(file.toPath());
+         fail("IOException should have been thrown");
+      } catch (IOException ioe) {
+         assertTrue(ioe.getMessage().contains("version"));
+      }
+   }
+
+   private File writeSnapshot() throws IOException {
+      File file = folder.newFile();
+      try (CatalogSnapshotWriter writer = new CatalogSnapshotWriter(new FileOutputStream(file))) {
+         writer.writeService(buildService("HelloService", ServiceType.SOAP_HTTP, "sayHello"));
+         writer.writeService(buildService("BeerCatalog", ServiceType.REST, "GET /beer"));
+         writer.writeResponse(buildResponse("1234-sayHello", "laurent", "?name=laurent"));
+         writer.writeResponse(buildResponse("1234-sayHello", "karla", "?name=karla"));
+         writer.writeResponse(buildResponse("5678-GET /beer", "default", null));
+      }
+      return file;
+   }
+
+   private Service buildService(String name, ServiceType type, String operationName) {
+      Service service = new Service();
+      service.setName(name);
+      service.setVersion("1.0");
+      service.setType(type);
+      Operation operation = new Operation();
+      operation.setName(operationName);
+      service.addOperation(operation);
+      return service;
+   }
+
+   private Response buildResponse(String operationId, String name, String dispatchCriteria) {
+      Response response = new Response();
+      response.setOperationId(operationId);
+      response.setName(name);
+      response.setDispatchCriteria(dispatchCriteria);
+      response.setContent("Hello " + name + "!");
+      return response;
+   }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.util.soapui;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import javax.xml.xpath.XPathExpression;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * This is a test case for SoapUIXPathMatcher class.
+ * @author laurent
+ */
+public class SoapUIXPathMatcherTest {
+
+   private static final String PAYLOAD = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:hel=\"http://www.example.com/hello\">\n" +
+         "   <soapenv:Header/>\n" +
+         "   <soapenv:Body>\n" +
+         "      <hel:sayHello>\n" +
+         "         <name>Karla</name>\n" +
+         "         <title><![CDATA[Mrs]]> <!-- comment -->Doe</title>\n" +
+         "      </hel:sayHello>\n" +
+         "   </soapenv:Body>\n" +
+         "</soapenv:Envelope>";
+
+   @Test
+   public void testStreamingEvaluation() throws Exception {
+      String[] rules = {
+            "declare namespace hel='http://www.example.com/hello';\n//hel:sayHello/name",
+            "declare namespace hel='http://www.example.com/hello';\n//hel:sayHello/title",
+            "declare namespace env='http://schemas.xmlsoap.org/soap/envelope/';\n"
+                  + "declare namespace hel='http://www.example.com/hello';\n/env:Envelope/env:Body/hel:sayHello/name",
+            "declare namespace hel='http://www.example.com/hello';\n/hel:sayHello/name",
+            "declare namespace hel='http://www.example.com/hello';\n//hel:sayHello/unknown",
+            "//name"
+      };
+
+      for (String rule : rules) {
+         SoapUIXPathMatcher matcher = SoapUIXPathBuilder.buildSoapUIXPathMatcherFromRules(rule);
+         assertTrue(matcher.isStreaming());
+
+         // Streaming evaluation should give the same results as the DOM based one.
+         XPathExpression expression = SoapUIXPathBuilder.buildXPathMatcherFromRules(rule);
+         assertEquals(expression.evaluate(new InputSource(new StringReader(PAYLOAD))),
+               matcher.evaluate(PAYLOAD));
+      }
+   }
+
+   @Test
+   public void testPooledEvaluation() throws Exception {
+      SoapUIXPathMatcher matcher = SoapUIXPathBuilder.buildSoapUIXPathMatcherFromRules(
+            "declare namespace hel='http://www.example.com/hello';\n//hel:sayHello[name='Karla']/title");
+      assertFalse(matcher.isStreaming());
+      assertEquals("Mrs Doe", matcher.evaluate(PAYLOAD));
+      assertEquals("Mrs Doe", matcher.evaluate(PAYLOAD));
+   }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.web;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextClosedEvent;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Context initializer for end-to-end tests: start an in-memory MongoDB server and point the application to it.
+ * It is shared with the mock runtime tests, whose build includes it from these test sources.
+ * @author laurent
+ */
+public class EmbeddedMongoInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+   @Override
+   public void initialize(ConfigurableApplicationContext applicationContext) {
+      MongoServer mongoServer = new MongoServer(new MemoryBackend());
+      InetSocketAddress address = mongoServer.bind();
+      TestPropertyValues.of("spring.data.mongodb.uri=mongodb://" + address.getHostString() + ":"
+            + address.getPort() + "/microcks").applyTo(applicationContext);
+      applicationContext.addApplicationListener(
+            (ApplicationListener<ContextClosedEvent>) event -> mongoServer.shutdown());
+   }
+}
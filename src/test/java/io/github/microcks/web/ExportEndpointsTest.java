@@ -0,0 +1,128 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.web;
+
+import io.github.microcks.MicrocksApplication;
+import io.github.microcks.domain.Operation;
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import io.github.microcks.domain.ServiceType;
+import io.github.microcks.repository.ResponseRepository;
+import io.github.microcks.repository.ServiceRepository;
+import io.github.microcks.util.IdBuilder;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * End-to-end test of repository export endpoints compression: JSON export is compressed on the fly while
+ * binary catalog snapshot is streamed as is.
+ * @author laurent
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = MicrocksApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ContextConfiguration(initializers = EmbeddedMongoInitializer.class)
+public class ExportEndpointsTest {
+
+   @LocalServerPort
+   private int port;
+
+   @Autowired
+   private ServiceRepository serviceRepository;
+
+   @Autowired
+   private ResponseRepository responseRepository;
+
+   private OkHttpClient client;
+
+   private String serviceId;
+
+
+   @Before
+   public void setUp() {
+      Service service = new Service();
+      service.setName("BeerCatalog");
+      service.setVersion("1.0");
+      service.setType(ServiceType.REST);
+      Operation operation = new Operation();
+      operation.setName("GET /beer");
+      operation.setMethod("GET");
+      operation.addResourcePath("/beer");
+      service.addOperation(operation);
+      service = serviceRepository.save(service);
+      serviceId = service.getId();
+
+      // Make content large enough for being compressed.
+      StringBuilder content = new StringBuilder("[");
+      for (int i=0; i<100; i++) {
+         content.append("{\"name\": \"Rodenbach\", \"country\": \"Belgium\"},");
+      }
+      Response response = new Response();
+      response.setName("default");
+      response.setOperationId(IdBuilder.buildOperationId(service, operation));
+      response.setMediaType("application/json");
+      response.setContent(content.append("]").toString());
+      responseRepository.save(response);
+
+      client = new OkHttpClient();
+   }
+
+   @After
+   public void tearDown() {
+      client.dispatcher().executorService().shutdown();
+      client.connectionPool().evictAll();
+   }
+
+   @Test
+   public void testJsonExportCompressed() throws Exception {
+      try (okhttp3.Response response = client.newCall(new Request.Builder()
+            .url("http://localhost:" + port + "/api/export?serviceIds=" + serviceId)
+            .header("Accept-Encoding", "gzip").get().build()).execute()) {
+         assertEquals(200, response.code());
+         assertEquals("gzip", response.header("Content-Encoding"));
+         assertTrue(response.headers("Vary").contains("Accept-Encoding"));
+      }
+   }
+
+   @Test
+   public void testSnapshotExportNotCompressed() throws Exception {
+      try (okhttp3.Response response = client.newCall(new Request.Builder()
+            .url("http://localhost:" + port + "/api/export/snapshot")
+            .header("Accept-Encoding", "gzip").get().build()).execute()) {
+         assertEquals(200, response.code());
+         assertNull(response.header("Content-Encoding"));
+         assertFalse(response.headers("Vary").contains("Accept-Encoding"));
+         assertEquals("application/octet-stream", response.header("Content-Type"));
+         byte[] snapshot = response.body().bytes();
+         assertEquals("MCKS", new String(snapshot, 0, 4, StandardCharsets.US_ASCII));
+      }
+   }
+}
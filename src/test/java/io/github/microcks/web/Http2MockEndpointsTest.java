@@ -0,0 +1,187 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.web;
+
+import io.github.microcks.MicrocksApplication;
+import io.github.microcks.domain.Operation;
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import io.github.microcks.domain.ServiceType;
+import io.github.microcks.repository.ResponseRepository;
+import io.github.microcks.repository.ServiceRepository;
+import io.github.microcks.util.IdBuilder;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * End-to-end test of mock endpoints using the "http2" profile: many concurrent mock calls are
+ * multiplexed on a single cleartext HTTP/2 (h2c) connection.
+ * @author laurent
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = MicrocksApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("http2")
+@ContextConfiguration(initializers = EmbeddedMongoInitializer.class)
+public class Http2MockEndpointsTest {
+
+   private static final int CONCURRENT_CALLS = 50;
+
+   private static final String SOAP_REQUEST = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:hel=\"http://www.example.com/hello\">\n" +
+         "   <soapenv:Header/>\n" +
+         "   <soapenv:Body>\n" +
+         "      <hel:sayHello>\n" +
+         "         <name>Karla</name>\n" +
+         "      </hel:sayHello>\n" +
+         "   </soapenv:Body>\n" +
+         "</soapenv:Envelope>";
+
+   @LocalServerPort
+   private int port;
+
+   @Autowired
+   private ServiceRepository serviceRepository;
+
+   @Autowired
+   private ResponseRepository responseRepository;
+
+   private OkHttpClient client;
+   private ExecutorService executor;
+
+
+   @Before
+   public void setUp() {
+      // Create a REST service and a SOAP service with a single response each.
+      Service restService = new Service();
+      restService.setName("BeerCatalog");
+      restService.setVersion("1.0");
+      restService.setType(ServiceType.REST);
+      Operation restOperation = new Operation();
+      restOperation.setName("GET /beer");
+      restOperation.setMethod("GET");
+      restOperation.addResourcePath("/beer");
+      restService.addOperation(restOperation);
+      restService = serviceRepository.save(restService);
+      saveResponse(IdBuilder.buildOperationId(restService, restOperation), "application/json",
+            "[{\"name\": \"Rodenbach\", \"country\": \"Belgium\"}]");
+
+      Service soapService = new Service();
+      soapService.setName("HelloService");
+      soapService.setVersion("1.0");
+      soapService.setType(ServiceType.SOAP_HTTP);
+      soapService.setXmlNS("http://www.example.com/hello");
+      Operation soapOperation = new Operation();
+      soapOperation.setName("sayHello");
+      soapOperation.setInputName("sayHello");
+      soapService.addOperation(soapOperation);
+      soapService = serviceRepository.save(soapService);
+      saveResponse(IdBuilder.buildOperationId(soapService, soapOperation), null,
+            "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+                  + "<hel:sayHelloResponse xmlns:hel=\"http://www.example.com/hello\"><sayHello>Hello Karla !</sayHello>"
+                  + "</hel:sayHelloResponse></soapenv:Body></soapenv:Envelope>");
+
+      // Use cleartext HTTP/2 with prior knowledge, without any HTTP/1.1 fallback.
+      client = new OkHttpClient.Builder()
+            .protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE))
+            .build();
+      client.dispatcher().setMaxRequestsPerHost(CONCURRENT_CALLS);
+      executor = Executors.newFixedThreadPool(CONCURRENT_CALLS);
+   }
+
+   @After
+   public void tearDown() {
+      executor.shutdownNow();
+      client.dispatcher().executorService().shutdown();
+      client.connectionPool().evictAll();
+   }
+
+   @Test
+   public void testMultiplexedMockCalls() throws Exception {
+      Request restRequest = new Request.Builder()
+            .url("http://localhost:" + port + "/rest/BeerCatalog/1.0/beer")
+            .get().build();
+      Request soapRequest = new Request.Builder()
+            .url("http://localhost:" + port + "/soap/HelloService/1.0")
+            .post(RequestBody.create(MediaType.parse("text/xml"), SOAP_REQUEST)).build();
+
+      // Establish the connection first.
+      try (okhttp3.Response response = client.newCall(restRequest).execute()) {
+         assertEquals(200, response.code());
+         assertEquals(Protocol.H2_PRIOR_KNOWLEDGE, response.protocol());
+      }
+
+      // Now fire concurrent calls on both endpoints.
+      List<Future<String>> results = new ArrayList<>();
+      for (int i=0; i<CONCURRENT_CALLS; i++) {
+         results.add(executor.submit(call(i % 2 == 0 ? restRequest : soapRequest)));
+      }
+      for (int i=0; i<CONCURRENT_CALLS; i++) {
+         String body = results.get(i).get();
+         if (i % 2 == 0) {
+            assertTrue(body.contains("Rodenbach"));
+         } else {
+            assertTrue(body.contains("Hello Karla !"));
+         }
+      }
+
+      // All the calls should have been multiplexed on a single connection.
+      assertEquals(1, client.connectionPool().connectionCount());
+   }
+
+   private Callable<String> call(Request request) {
+      return () -> {
+         try (okhttp3.Response response = client.newCall(request).execute()) {
+            assertEquals(200, response.code());
+            assertEquals(Protocol.H2_PRIOR_KNOWLEDGE, response.protocol());
+            return response.body().string();
+         }
+      };
+   }
+
+   private void saveResponse(String operationId, String mediaType, String content) {
+      Response response = new Response();
+      response.setName("default");
+      response.setOperationId(operationId);
+      response.setMediaType(mediaType);
+      response.setContent(content);
+      responseRepository.save(response);
+   }
+}
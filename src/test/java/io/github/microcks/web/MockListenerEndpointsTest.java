@@ -0,0 +1,133 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.web;
+
+import io.github.microcks.MicrocksApplication;
+import io.github.microcks.config.MockListenerConfiguration;
+import io.github.microcks.domain.Operation;
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import io.github.microcks.domain.ServiceType;
+import io.github.microcks.repository.ResponseRepository;
+import io.github.microcks.repository.ServiceRepository;
+import io.github.microcks.util.IdBuilder;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.junit.Assert.*;
+
+/**
+ * End-to-end test of the dedicated mock-serving listener: mock endpoints are answered on the mock port
+ * while management APIs are only exposed on the main port.
+ * @author laurent
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = MicrocksApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+      properties = {"mocks.listener.enabled=true", "mocks.listener.port=0"})
+@ContextConfiguration(initializers = EmbeddedMongoInitializer.class)
+public class MockListenerEndpointsTest {
+
+   @LocalServerPort
+   private int port;
+
+   @Autowired
+   private MockListenerConfiguration mockListener;
+
+   @Autowired
+   private ServiceRepository serviceRepository;
+
+   @Autowired
+   private ResponseRepository responseRepository;
+
+   @Autowired
+   private ApplicationContext applicationContext;
+
+   private OkHttpClient client;
+
+
+   @Before
+   public void setUp() {
+      Service service = new Service();
+      service.setName("BeerCatalog");
+      service.setVersion("1.0");
+      service.setType(ServiceType.REST);
+      Operation operation = new Operation();
+      operation.setName("GET /beer");
+      operation.setMethod("GET");
+      operation.addResourcePath("/beer");
+      service.addOperation(operation);
+      service = serviceRepository.save(service);
+
+      Response response = new Response();
+      response.setName("default");
+      response.setOperationId(IdBuilder.buildOperationId(service, operation));
+      response.setMediaType("application/json");
+      response.setContent("[{\"name\": \"Rodenbach\", \"country\": \"Belgium\"}]");
+      responseRepository.save(response);
+
+      client = new OkHttpClient();
+   }
+
+   @After
+   public void tearDown() {
+      client.dispatcher().executorService().shutdown();
+      client.connectionPool().evictAll();
+   }
+
+   @Test
+   public void testMockServedOnDedicatedListener() throws Exception {
+      assertTrue(mockListener.isRunning());
+      assertNotEquals(port, mockListener.getPort());
+
+      try (okhttp3.Response response = client.newCall(new Request.Builder()
+            .url("http://localhost:" + mockListener.getPort() + "/rest/BeerCatalog/1.0/beer").get().build()).execute()) {
+         assertEquals(200, response.code());
+         assertTrue(response.body().string().contains("Rodenbach"));
+      }
+   }
+
+   @Test
+   public void testManagementApiNotServedOnDedicatedListener() throws Exception {
+      try (okhttp3.Response response = client.newCall(new Request.Builder()
+            .url("http://localhost:" + mockListener.getPort() + "/api/services").get().build()).execute()) {
+         assertEquals(404, response.code());
+      }
+      try (okhttp3.Response response = client.newCall(new Request.Builder()
+            .url("http://localhost:" + port + "/rest/BeerCatalog/1.0/beer").get().build()).execute()) {
+         assertEquals(200, response.code());
+      }
+   }
+
+   @Test
+   public void testNoReactiveMongoClientWhenReactiveListenerDisabled() {
+      assertTrue(applicationContext.getBeansOfType(com.mongodb.reactivestreams.client.MongoClient.class).isEmpty());
+      assertTrue(applicationContext.getBeansOfType(ReactiveMongoTemplate.class).isEmpty());
+   }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.web;
+
+import io.github.microcks.MicrocksApplication;
+import io.github.microcks.config.MockListenerConfiguration;
+import io.github.microcks.config.ReactiveMockListenerConfiguration;
+import io.github.microcks.domain.Operation;
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import io.github.microcks.domain.ServiceType;
+import io.github.microcks.repository.ResponseRepository;
+import io.github.microcks.repository.ServiceRepository;
+import io.github.microcks.util.IdBuilder;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark comparing the servlet mock pipeline (dedicated listener with a bounded worker pool) and the reactive
+ * mock pipeline under high concurrency, with mock responses having a delay. This class is not matched by default
+ * Surefire includes, run it explicitly using: <code>mvn test -Dtest=MockPipelineBenchmark</code>. Concurrency,
+ * number of calls and delay can be tuned using "benchmark.concurrency", "benchmark.calls" and "benchmark.delay"
+ * system properties.
+ * @author laurent
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = MicrocksApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+      properties = {"mocks.listener.enabled=true", "mocks.listener.port=0", "mocks.listener.worker-threads=16",
+            "mocks.reactive-listener.enabled=true", "mocks.reactive-listener.port=0"})
+@ContextConfiguration(initializers = EmbeddedMongoInitializer.class)
+public class MockPipelineBenchmark {
+
+   /** A simple logger for diagnostic messages. */
+   private static Logger log = LoggerFactory.getLogger(MockPipelineBenchmark.class);
+
+   private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 500);
+   private static final int CALLS = Integer.getInteger("benchmark.calls", 10000);
+   private static final int DELAY = Integer.getInteger("benchmark.delay", 50);
+
+   @Autowired
+   private MockListenerConfiguration servletListener;
+
+   @Autowired
+   private ReactiveMockListenerConfiguration reactiveListener;
+
+   @Autowired
+   private ServiceRepository serviceRepository;
+
+   @Autowired
+   private ResponseRepository responseRepository;
+
+
+   @Before
+   public void setUp() {
+      Service service = new Service();
+      service.setName("BeerCatalog");
+      service.setVersion("1.0");
+      service.setType(ServiceType.REST);
+      Operation operation = new Operation();
+      operation.setName("GET /beer");
+      operation.setMethod("GET");
+      operation.addResourcePath("/beer");
+      service.addOperation(operation);
+      service = serviceRepository.save(service);
+
+      Response response = new Response();
+      response.setName("default");
+      response.setOperationId(IdBuilder.buildOperationId(service, operation));
+      response.setMediaType("application/json");
+      response.setContent("[{\"name\": \"Rodenbach\", \"country\": \"Belgium\"}]");
+      responseRepository.save(response);
+   }
+
+   @Test
+   public void compareMockPipelines() throws Exception {
+      String path = "/rest/BeerCatalog/1.0/beer?delay=" + DELAY;
+
+      // Warm up both pipelines (caches, JIT, connections) before measuring.
+      run("servlet", "http://localhost:" + servletListener.getPort() + path, CALLS / 10);
+      run("reactive", "http://localhost:" + reactiveListener.getPort() + path, CALLS / 10);
+
+      Result servlet = run("servlet", "http://localhost:" + servletListener.getPort() + path, CALLS);
+      Result reactive = run("reactive", "http://localhost:" + reactiveListener.getPort() + path, CALLS);
+
+      log.info("Mock pipelines benchmark with {} concurrent calls, {} calls and {} ms delay", CONCURRENCY, CALLS, DELAY);
+      log.info(servlet.toString());
+      log.info(reactive.toString());
+      assertEquals(0, servlet.errors);
+      assertEquals(0, reactive.errors);
+   }
+
+   private Result run(String pipeline, String url, int calls) throws InterruptedException {
+      Dispatcher dispatcher = new Dispatcher();
+      dispatcher.setMaxRequests(CONCURRENCY);
+      dispatcher.setMaxRequestsPerHost(CONCURRENCY);
+      OkHttpClient client = new OkHttpClient.Builder()
+            .dispatcher(dispatcher)
+            .connectionPool(new ConnectionPool(CONCURRENCY, 1, TimeUnit.MINUTES))
+            .readTimeout(1, TimeUnit.MINUTES)
+            .build();
+
+      long[] latencies = new long[calls];
+      AtomicInteger index = new AtomicInteger();
+      AtomicInteger errors = new AtomicInteger();
+      CountDownLatch latch = new CountDownLatch(calls);
+      Request request = new Request.Builder().url(url).get().build();
+
+      long start = System.nanoTime();
+      for (int i=0; i<calls; i++) {
+         long callStart = System.nanoTime();
+         client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+               errors.incrementAndGet();
+               latch.countDown();
+            }
+            @Override
+            public void onResponse(Call call, okhttp3.Response response) {
+               try (okhttp3.Response r = response) {
+                  r.body().bytes();
+                  if (r.code() != 200) {
+                     errors.incrementAndGet();
+                  }
+               } catch (IOException e) {
+                  errors.incrementAndGet();
+               }
+               latencies[index.getAndIncrement()] = System.nanoTime() - callStart;
+               latch.countDown();
+            }
+         });
+      }
+      latch.await(5, TimeUnit.MINUTES);
+      long elapsed = System.nanoTime() - start;
+
+      dispatcher.executorService().shutdown();
+      client.connectionPool().evictAll();
+
+      long[] measured = Arrays.copyOf(latencies, index.get());
+      Arrays.sort(measured);
+      return new Result(pipeline, calls, elapsed, errors.get(), measured);
+   }
+
+
+   private static class Result {
+      private final String pipeline;
+      private final int calls;
+      private final long elapsed;
+      private final int errors;
+      private final long[] latencies;
+
+      private Result(String pipeline, int calls, long elapsed, int errors, long[] latencies) {
+         this.pipeline = pipeline;
+         this.calls = calls;
+         this.elapsed = elapsed;
+         this.errors = errors;
+         this.latencies = latencies;
+      }
+
+      private double percentile(double p) {
+         if (latencies.length == 0) {
+            return 0;
+         }
+         return latencies[Math.min(latencies.length - 1, (int) (latencies.length * p))] / 1000000.0;
+      }
+
+      @Override
+      public String toString() {
+         return String.format("%-8s: %8.0f calls/s, p50 %6.1f ms, p99 %6.1f ms, errors %d", pipeline,
+               calls / (elapsed / 1000000000.0), percentile(0.5), percentile(0.99), errors);
+      }
+   }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to Laurent Broudoux (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.microcks.web;
+
+import io.github.microcks.MicrocksApplication;
+import io.github.microcks.config.ReactiveMockListenerConfiguration;
+import io.github.microcks.domain.Operation;
+import io.github.microcks.domain.Response;
+import io.github.microcks.domain.Service;
+import io.github.microcks.domain.ServiceType;
+import io.github.microcks.repository.ResponseRepository;
+import io.github.microcks.repository.ServiceRepository;
+import io.github.microcks.util.IdBuilder;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.junit.Assert.*;
+
+/**
+ * End-to-end test of the reactive mock-serving pipeline: Rest and Soap mocks are answered by the non-blocking
+ * listener with the same dispatch semantics as servlet controllers.
+ * @author laurent
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = MicrocksApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+      properties = {"mocks.reactive-listener.enabled=true", "mocks.reactive-listener.port=0"})
+@ContextConfiguration(initializers = EmbeddedMongoInitializer.class)
+public class ReactiveMockEndpointsTest {
+
+   private static final String SOAP_REQUEST = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:hel=\"http://www.example.com/hello\">\n" +
+         "   <soapenv:Header/>\n" +
+         "   <soapenv:Body>\n" +
+         "      <hel:sayHello>\n" +
+         "         <name>Karla</name>\n" +
+         "      </hel:sayHello>\n" +
+         "   </soapenv:Body>\n" +
+         "</soapenv:Envelope>";
+
+   @Autowired
+   private ReactiveMockListenerConfiguration reactiveListener;
+
+   @Autowired
+   private ServiceRepository serviceRepository;
+
+   @Autowired
+   private ResponseRepository responseRepository;
+
+   private OkHttpClient client;
+
+
+   @Before
+   public void setUp() {
+      // Create a REST service with a sequence dispatcher and a SOAP service.
+      Service restService = new Service();
+      restService.setName("BeerCatalog");
+      restService.setVersion("1.0");
+      restService.setType(ServiceType.REST);
+      Operation restOperation = new Operation();
+      restOperation.setName("GET /beer/{name}");
+      restOperation.setMethod("GET");
+      restOperation.setDispatcher("URI_PARTS");
+      restOperation.setDispatcherRules("name");
+      restOperation.addResourcePath("/beer/Rodenbach");
+      restOperation.addResourcePath("/beer/Westmalle");
+      restService.addOperation(restOperation);
+      restService = serviceRepository.save(restService);
+      String restOperationId = IdBuilder.buildOperationId(restService, restOperation);
+      saveResponse(restOperationId, "rodenbach", "/name=Rodenbach", "application/json",
+            "{\"name\": \"Rodenbach\", \"country\": \"Belgium\"}");
+      saveResponse(restOperationId, "westmalle", "/name=Westmalle", "application/json",
+            "{\"name\": \"Westmalle\", \"country\": \"Belgium\"}");
+
+      Service soapService = new Service();
+      soapService.setName("HelloService");
+      soapService.setVersion("1.0");
+      soapService.setType(ServiceType.SOAP_HTTP);
+      soapService.setXmlNS("http://www.example.com/hello");
+      Operation soapOperation = new Operation();
+      soapOperation.setName("sayHello");
+      soapOperation.setInputName("sayHello");
+      soapService.addOperation(soapOperation);
+      soapService = serviceRepository.save(soapService);
+      saveResponse(IdBuilder.buildOperationId(soapService, soapOperation), "default", null, null,
+            "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+                  + "<hel:sayHelloResponse xmlns:hel=\"http://www.example.com/hello\"><sayHello>Hello Karla !</sayHello>"
+                  + "</hel:sayHelloResponse></soapenv:Body></soapenv:Envelope>");
+
+      client = new OkHttpClient();
+   }
+
+   @After
+   public void tearDown() {
+      client.dispatcher().executorService().shutdown();
+      client.connectionPool().evictAll();
+   }
+
+   @Test
+   public void testRestMockDispatching() throws Exception {
+      assertTrue(reactiveListener.isRunning());
+
+      try (okhttp3.Response response = call("/rest/BeerCatalog/1.0/beer/Westmalle")) {
+         assertEquals(200, response.code());
+         assertTrue(response.header("Content-Type").startsWith("application/json"));
+         assertNotNull(response.header("ETag"));
+         assertTrue(response.body().string().contains("Westmalle"));
+      }
+      try (okhttp3.Response response = call("/rest/BeerCatalog/1.0/beer/Rodenbach")) {
+         assertEquals(200, response.code());
+         assertTrue(response.body().string().contains("Rodenbach"));
+      }
+      // Unknown operation and unknown service.
+      try (okhttp3.Response response = call("/rest/BeerCatalog/1.0/wine")) {
+         assertEquals(404, response.code());
+      }
+      try (okhttp3.Response response = call("/rest/WineCatalog/1.0/wine")) {
+         assertEquals(404, response.code());
+      }
+   }
+
+   @Test
+   public void testRestMockDelay() throws Exception {
+      long start = System.currentTimeMillis();
+      try (okhttp3.Response response = call("/rest/BeerCatalog/1.0/beer/Rodenbach?delay=300")) {
+         assertEquals(200, response.code());
+      }
+      assertTrue(System.currentTimeMillis() - start >= 300);
+   }
+
+   @Test
+   public void testSoapMockDispatching() throws Exception {
+      Request request = new Request.Builder()
+            .url("http://localhost:" + reactiveListener.getPort() + "/soap/HelloService/1.0")
+            .post(RequestBody.create(MediaType.parse("text/xml"), SOAP_REQUEST)).build();
+      try (okhttp3.Response response = client.newCall(request).execute()) {
+         assertEquals(200, response.code());
+         assertTrue(response.header("Content-Type").startsWith("text/xml"));
+         assertTrue(response.body().string().contains("Hello Karla !"));
+      }
+   }
+
+   private okhttp3.Response call(String path) throws Exception {
+      return client.newCall(new Request.Builder()
+            .url("http://localhost:" + reactiveListener.getPort() + path).get().build()).execute();
+   }
+
+   private void saveResponse(String operationId, String name, String dispatchCriteria, String mediaType, String content) {
+      Response response = new Response();
+      response.setName(name);
+      response.setOperationId(operationId);
+      response.setDispatchCriteria(dispatchCriteria);
+      response.setMediaType(mediaType);
+      response.setContent(content);
+      responseRepository.save(response);
+   }
+}
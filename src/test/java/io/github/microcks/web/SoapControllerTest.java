@@ -18,10 +18,15 @@
  */
 package io.github.microcks.web;
 
+import io.github.microcks.domain.Operation;
+import io.github.microcks.domain.Service;
+import io.github.microcks.domain.ServiceType;
+import io.github.microcks.service.MockRoutingIndex;
+import org.junit.Before;
 import org.junit.Test;
 
-import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * This is a Test for SoapController class.
@@ -29,10 +34,32 @@ import static org.junit.Assert.assertTrue;
  */
 public class SoapControllerTest {
 
+   private static final String HELLO_ACTION = "http://www.example.com/hello/sayHello";
+   private static final String HELLO_WORLD_ACTION = "http://www.example.com/hello/sayHelloWorld";
+
+   private SoapController soapController = new SoapController();
+
+   private MockRoutingIndex.ServiceRoutes routes;
+
+   @Before
+   public void setUp() {
+      Service service = new Service();
+      service.setName("HelloService");
+      service.setVersion("1.0");
+      service.setType(ServiceType.SOAP_HTTP);
+      service.setXmlNS("http://www.example.com/hello");
+      service.addOperation(buildOperation("sayHello", HELLO_ACTION));
+      service.addOperation(buildOperation("sayHelloWorld", HELLO_WORLD_ACTION));
+      // Both goodbye operations share the same action.
+      service.addOperation(buildOperation("sayGoodbye", "http://www.example.com/hello/goodbye"));
+      service.addOperation(buildOperation("sayGoodbyeWorld", "http://www.example.com/hello/goodbye"));
+
+      MockRoutingIndex routingIndex = new MockRoutingIndex();
+      routes = routingIndex.registerService(service, routingIndex.getGeneration());
+   }
+
    @Test
    public void testOriginalOperationParsing() {
-      SoapController soapController = new SoapController();
-
       String originalPayload = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:hel=\"http://www.example.com/hello\">\n" +
             "   <soapenv:Header/>\n" +
             "   <soapenv:Body>\n" +
@@ -42,13 +69,12 @@ public class SoapControllerTest {
             "   </soapenv:Body>\n" +
             "</soapenv:Envelope>";
 
-      assertTrue(soapController.hasPayloadCorrectStructureForOperation(originalPayload, "sayHello"));
+      assertEquals("sayHello", soapController.findOperation(routes, HELLO_ACTION, originalPayload).getName());
+      assertEquals("sayHello", soapController.findOperation(routes, "\"" + HELLO_ACTION + "\"", originalPayload).getName());
    }
 
    @Test
    public void testDashNamespaceOperationParsing() {
-      SoapController soapController = new SoapController();
-
       String dashNamespacePayload = "<soap-env:Envelope xmlns:soap-env=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:hel=\"http://www.example.com/hello\">\n" +
             "   <soap-env:Header/>\n" +
             "   <soap-env:Body>\n" +
@@ -58,13 +84,11 @@ public class SoapControllerTest {
             "   </soap-env:Body>\n" +
             "</soap-env:Envelope>";
 
-      assertTrue(soapController.hasPayloadCorrectStructureForOperation(dashNamespacePayload, "sayHello"));
+      assertEquals("sayHello", soapController.findOperation(routes, HELLO_ACTION, dashNamespacePayload).getName());
    }
 
    @Test
    public void testOriginalOperationWithNSParsing() {
-      SoapController soapController = new SoapController();
-
       String originalPayloadOpWithNamespace = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">\n" +
             "   <soapenv:Header/>\n" +
             "   <soapenv:Body>\n" +
@@ -74,13 +98,11 @@ public class SoapControllerTest {
             "   </soapenv:Body>\n" +
             "</soapenv:Envelope>";
 
-      assertTrue(soapController.hasPayloadCorrectStructureForOperation(originalPayloadOpWithNamespace, "sayHello"));
+      assertEquals("sayHello", soapController.findOperation(routes, HELLO_ACTION, originalPayloadOpWithNamespace).getName());
    }
 
    @Test
    public void testDashNamespaceOperationWithNSParsing() {
-      SoapController soapController = new SoapController();
-
       String dashNamespacePayloadOpWithNamespace = "<soap-env:Envelope xmlns:soap-env=\"http://schemas.xmlsoap.org/soap/envelope/\">\n" +
             "   <soap-env:Header/>\n" +
             "   <soap-env:Body>\n" +
@@ -90,23 +112,61 @@ public class SoapControllerTest {
             "   </soap-env:Body>\n" +
             "</soap-env:Envelope>";
 
-      assertTrue(soapController.hasPayloadCorrectStructureForOperation(dashNamespacePayloadOpWithNamespace, "sayHello"));
+      assertEquals("sayHello", soapController.findOperation(routes, HELLO_ACTION, dashNamespacePayloadOpWithNamespace).getName());
    }
 
    @Test
    public void testNegativeOperationMatching() {
-      SoapController soapController = new SoapController();
+      String otherOperationPayload = buildPayload("sayHelloWorld");
+
+      assertEquals("sayHelloWorld", soapController.findOperation(routes, HELLO_WORLD_ACTION, otherOperationPayload).getName());
+      assertNull(soapController.findOperation(routes, null, buildPayload("sayBonjour")));
+   }
 
-      String otherOperationPayload = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">\n" +
+   @Test
+   public void testStaleActionOperationMatching() {
+      // SOAPAction designates another operation than body element: body element wins.
+      assertEquals("sayHelloWorld", soapController.findOperation(routes, HELLO_ACTION, buildPayload("sayHelloWorld")).getName());
+      assertEquals("sayHello", soapController.findOperation(routes, HELLO_WORLD_ACTION, buildPayload("sayHello")).getName());
+      // Unknown SOAPAction: body element is used.
+      assertEquals("sayHello", soapController.findOperation(routes, "http://www.example.com/hello/unknown", buildPayload("sayHello")).getName());
+      // Body element matches no operation: SOAPAction is kept.
+      assertEquals("sayHello", soapController.findOperation(routes, HELLO_ACTION, buildPayload("sayBonjour")).getName());
+   }
+
+   @Test
+   public void testMissingActionOperationMatching() {
+      assertEquals("sayHelloWorld", soapController.findOperation(routes, null, buildPayload("sayHelloWorld")).getName());
+      assertEquals("sayHelloWorld", soapController.findOperation(routes, "", buildPayload("sayHelloWorld")).getName());
+      assertEquals("sayHelloWorld", soapController.findOperation(routes, "\"\"", buildPayload("sayHelloWorld")).getName());
+   }
+
+   @Test
+   public void testSharedActionOperationMatching() {
+      // Action shared by many operations cannot be used: body element is the only way to dispatch.
+      assertEquals("sayGoodbye", soapController.findOperation(routes, "http://www.example.com/hello/goodbye",
+            buildPayload("sayGoodbye")).getName());
+      assertEquals("sayGoodbyeWorld", soapController.findOperation(routes, "http://www.example.com/hello/goodbye",
+            buildPayload("sayGoodbyeWorld")).getName());
+      assertNull(soapController.findOperation(routes, "http://www.example.com/hello/goodbye", buildPayload("sayBonjour")));
+   }
+
+   private Operation buildOperation(String name, String action) {
+      Operation operation = new Operation();
+      operation.setName(name);
+      operation.setInputName(name);
+      operation.setAction(action);
+      return operation;
+   }
+
+   private String buildPayload(String operationElement) {
+      return "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">\n" +
             "   <soapenv:Header/>\n" +
             "   <soapenv:Body>\n" +
-            "      <hel:sayHelloWorld xmlns:hel=\"http://www.example.com/hello\">\n" +
+            "      <hel:" + operationElement + " xmlns:hel=\"http://www.example.com/hello\">\n" +
             "         <name>Karla</name>\n" +
-            "      </hel:sayHelloWorld>\n" +
+            "      </hel:" + operationElement + ">\n" +
             "   </soapenv:Body>\n" +
             "</soapenv:Envelope>";
-
-      assertTrue(soapController.hasPayloadCorrectStructureForOperation(otherOperationPayload, "sayHelloWorld"));
-      assertFalse(soapController.hasPayloadCorrectStructureForOperation(otherOperationPayload, "sayHello"));
    }
 }